@@ -3,6 +3,7 @@ package net.gudenau.usbcap.driver.beagle;
 import com.totalphase.beagle.BeagleExt;
 import java.io.IOException;
 import java.nio.*;
+import java.time.Instant;
 import java.util.List;
 import net.gudenau.usbcap.UsbSpeed;
 import net.gudenau.usbcap.capture.AbstractCaptureDevice;
@@ -41,6 +42,10 @@ public final class BeagleDevice extends AbstractCaptureDevice{
     
     private volatile int handle;
     
+    // Used to turn the sample counts of the device into timestamps.
+    private long startTime;
+    private int sampleRate;
+    
     BeagleDevice(short device, int id, boolean inUse){
         this.device = device;
         this.id = id;
@@ -95,6 +100,26 @@ public final class BeagleDevice extends AbstractCaptureDevice{
         if(result < 0){
             throw new IOException("Failed to start capture: " + bg_status_string(result));
         }
+        
+        // Sample counts start at 0 when the capture is enabled.
+        var now = Instant.now();
+        startTime = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        sampleRate = bg_samplerate(handle, 0);
+        if(sampleRate <= 0){
+            throw new IOException("Failed to get the sample rate: " + bg_status_string(sampleRate));
+        }
+    }
+    
+    /**
+     * Converts a sample count from the device into a timestamp.
+     *
+     * @param samples The sample count
+     *
+     * @return The timestamp in nanoseconds since the Unix epoch
+     */
+    private long toTimestamp(long samples){
+        // The sample rate is in kHz, split the conversion up to avoid overflowing on long captures.
+        return startTime + (samples / sampleRate) * 1_000_000L + (samples % sampleRate) * 1_000_000L / sampleRate;
     }
     
     @Override
@@ -117,13 +142,15 @@ public final class BeagleDevice extends AbstractCaptureDevice{
         
             var events = eventsBuffer.get(0);
         
+            var timestamp = toTimestamp(time_sopBuffer.get(0));
+        
             // TODO Figure out what events are *useful*
             if((events & BG_EVENT_USB_RESET) != 0){
-                eventBuffer.add(new ResetEvent());
+                eventBuffer.add(new ResetEvent(timestamp));
             }
         
             if(result > 0){
-                eventBuffer.add(new PacketEvent(dataBuffer.slice(0, result)));
+                eventBuffer.add(new PacketEvent(dataBuffer.slice(0, result), timestamp));
             }
         }
     }
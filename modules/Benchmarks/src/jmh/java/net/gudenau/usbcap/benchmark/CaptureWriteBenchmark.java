@@ -0,0 +1,57 @@
+package net.gudenau.usbcap.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.filter.CaptureFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Writes packets to a capture file with {@link CaptureFilter}, one invocation writes and closes an entire file so
+ * background compression is included. The score is per event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class CaptureWriteBenchmark{
+    private static final int EVENTS = 100_000;
+    
+    @Param({"false", "true"})
+    public boolean compress;
+    
+    private Event[] events;
+    private Path path;
+    
+    @Setup
+    public void setup() throws IOException{
+        events = Datasets.packets(EVENTS);
+        path = Files.createTempFile("usbcap", ".bin");
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException{
+        Files.deleteIfExists(path);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void write() throws IOException{
+        try(var filter = new CaptureFilter(path, compress)){
+            for(var event : events){
+                event.reset();
+                filter.handleEvent(event);
+            }
+        }
+    }
+}
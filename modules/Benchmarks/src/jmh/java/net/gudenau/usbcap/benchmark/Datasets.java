@@ -0,0 +1,86 @@
+package net.gudenau.usbcap.benchmark;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.capture.SyntheticCaptureDevice;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.event.SetupDataEvent;
+import net.gudenau.usbcap.filter.ControlTransferFilter;
+import net.gudenau.usbcap.filter.Filter;
+import net.gudenau.usbcap.filter.PacketFilter;
+
+/**
+ * The event streams the benchmarks replay, all of them come from a {@link SyntheticCaptureDevice} with a fixed seed so
+ * every run sees the same data.
+ *
+ * Every stream starts with the bus reset the synthetic bus begins with, so filters start over when a stream wraps.
+ */
+final class Datasets{
+    private static final long SEED = 0x55534243L;
+    
+    private Datasets(){}
+    
+    /**
+     * Gets raw packets, a mix of SOFs, isochronous, interrupt, bulk and control transfers.
+     *
+     * @param count The amount of events
+     *
+     * @return The packets
+     *
+     * @throws IOException If the events could not be generated
+     */
+    static Event[] packets(int count) throws IOException{
+        return capture(count).toArray(Event[]::new);
+    }
+    
+    /**
+     * Gets the SETUP and data events of the control transfers that enumerate the devices after a reset.
+     *
+     * @return The events of a single enumeration burst
+     *
+     * @throws IOException If the events could not be generated
+     */
+    static Event[] enumeration() throws IOException{
+        List<Event> events = new ArrayList<>();
+        for(var event : capture(200_000, new PacketFilter())){
+            if(
+                event instanceof ResetEvent ||
+                event instanceof SetupDataEvent ||
+                event instanceof DataEvent data && data.endpoint() == 0
+            ){
+                events.add(event);
+            }
+        }
+        return events.toArray(Event[]::new);
+    }
+    
+    /**
+     * Gets decoded transfers, the control transfers of the enumeration followed by mostly data transfers.
+     *
+     * @param count The amount of events
+     *
+     * @return The transfers
+     *
+     * @throws IOException If the events could not be generated
+     */
+    static Event[] transfers(int count) throws IOException{
+        return capture(count, new PacketFilter(), new ControlTransferFilter()).toArray(Event[]::new);
+    }
+    
+    private static List<Event> capture(int count, Filter... filters) throws IOException{
+        try(var device = new SyntheticCaptureDevice(SEED)){
+            device.open();
+            device.addFilters(filters);
+            device.beginCapture(UsbSpeed.HIGH_SPEED);
+            List<Event> events = new ArrayList<>(count);
+            for(int i = 0; i < count; i++){
+                events.add(device.captureEvent());
+            }
+            return events;
+        }
+    }
+}
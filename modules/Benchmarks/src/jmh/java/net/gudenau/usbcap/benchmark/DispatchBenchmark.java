@@ -0,0 +1,87 @@
+package net.gudenau.usbcap.benchmark;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.capture.AbstractCaptureDevice;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.filter.ControlTransferFilter;
+import net.gudenau.usbcap.filter.DeviceFilter;
+import net.gudenau.usbcap.filter.PacketFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Runs the whole dispatch loop of {@link AbstractCaptureDevice} with the default decoding filters, the device replays
+ * packets from memory so only the library is measured. One operation is a single delivered event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class DispatchBenchmark{
+    @Param({"64"})
+    public int batchSize;
+    
+    @Param({"false", "true"})
+    public boolean metrics;
+    
+    private ReplayDevice device;
+    
+    @Setup
+    public void setup() throws IOException{
+        device = new ReplayDevice(new Replay(Datasets.packets(500_000)), batchSize);
+        device.open();
+        device.addFilters(new PacketFilter(), new ControlTransferFilter(), new DeviceFilter());
+        if(metrics){
+            device.enableMetrics("benchmark");
+        }
+        device.beginCapture(UsbSpeed.HIGH_SPEED);
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException{
+        device.close();
+    }
+    
+    @Benchmark
+    public Event captureEvent() throws IOException{
+        return device.captureEvent();
+    }
+    
+    /**
+     * A capture device that hands out batches of events from a dataset.
+     */
+    private static final class ReplayDevice extends AbstractCaptureDevice{
+        private final Replay replay;
+        private final int batchSize;
+        
+        ReplayDevice(Replay replay, int batchSize){
+            this.replay = replay;
+            this.batchSize = batchSize;
+        }
+        
+        @Override
+        protected void doOpen(){}
+        
+        @Override
+        protected void doBeginCapture(UsbSpeed speed){}
+        
+        @Override
+        protected void doCaptureEvent(List<Event> eventBuffer){
+            for(int i = 0; i < batchSize; i++){
+                eventBuffer.add(replay.next());
+            }
+        }
+        
+        @Override
+        protected void doClose(){}
+    }
+}
@@ -0,0 +1,63 @@
+package net.gudenau.usbcap.benchmark;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.capture.FileCaptureDevice;
+import net.gudenau.usbcap.filter.CaptureFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reads a capture file with {@link FileCaptureDevice}, one invocation replays the entire file and the score is per
+ * event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class FileReplayBenchmark{
+    private static final int EVENTS = 100_000;
+    
+    @Param({"false", "true"})
+    public boolean compress;
+    
+    private Path path;
+    
+    @Setup
+    public void setup() throws IOException{
+        path = Files.createTempFile("usbcap", ".bin");
+        try(var filter = new CaptureFilter(path, compress)){
+            for(var event : Datasets.packets(EVENTS)){
+                filter.handleEvent(event);
+            }
+        }
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException{
+        Files.deleteIfExists(path);
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(EVENTS)
+    public void replay(Blackhole blackhole) throws IOException{
+        try(var device = new FileCaptureDevice(path)){
+            device.open();
+            device.beginCapture(UsbSpeed.HIGH_SPEED);
+            for(int i = 0; i < EVENTS; i++){
+                blackhole.consume(device.captureEvent());
+            }
+        }
+    }
+}
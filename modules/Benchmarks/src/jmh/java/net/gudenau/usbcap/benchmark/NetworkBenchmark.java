@@ -0,0 +1,76 @@
+package net.gudenau.usbcap.benchmark;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.capture.NetworkCaptureDevice;
+import net.gudenau.usbcap.filter.NetworkFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * Sends packets from a {@link NetworkFilter} to a {@link NetworkCaptureDevice} over loopback, the device drains them on
+ * its own thread. One operation is a single sent event.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class NetworkBenchmark{
+    private Replay replay;
+    private Thread server;
+    private NetworkFilter filter;
+    
+    @Setup
+    public void setup() throws IOException, InterruptedException{
+        replay = new Replay(Datasets.packets(500_000));
+        
+        int port;
+        try(var socket = new ServerSocket(0)){
+            port = socket.getLocalPort();
+        }
+        server = new Thread(()->{
+            try(var device = new NetworkCaptureDevice(port, 1)){
+                device.open();
+                device.beginCapture(UsbSpeed.HIGH_SPEED);
+                while(true){
+                    device.captureEvent();
+                }
+            }catch(IOException ignored){
+                // The filter closed the connection.
+            }
+        }, "NetworkBenchmark server");
+        server.setDaemon(true);
+        server.start();
+        
+        // The server might not be listening yet.
+        for(int attempt = 0; ; attempt++){
+            try{
+                filter = new NetworkFilter("localhost", port, 16 * 1024 * 1024, 0);
+                break;
+            }catch(IOException e){
+                if(attempt == 100){
+                    throw e;
+                }
+                Thread.sleep(50);
+            }
+        }
+    }
+    
+    @TearDown
+    public void tearDown() throws IOException, InterruptedException{
+        filter.close();
+        server.join(TimeUnit.SECONDS.toMillis(10));
+    }
+    
+    @Benchmark
+    public boolean send(){
+        return filter.handleEvent(replay.next());
+    }
+}
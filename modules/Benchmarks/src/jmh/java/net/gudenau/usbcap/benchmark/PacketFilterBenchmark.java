@@ -0,0 +1,36 @@
+package net.gudenau.usbcap.benchmark;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import net.gudenau.usbcap.filter.PacketFilter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Passes a mixed stream of raw packets through a {@link PacketFilter}, one event per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PacketFilterBenchmark{
+    private Replay replay;
+    private PacketFilter filter;
+    
+    @Setup
+    public void setup() throws IOException{
+        replay = new Replay(Datasets.packets(500_000));
+        filter = new PacketFilter();
+    }
+    
+    @Benchmark
+    public void handleEvent(Blackhole blackhole){
+        blackhole.consume(filter.handleEvent(replay.next()));
+        blackhole.consume(filter.getPendingEvents());
+    }
+}
@@ -0,0 +1,32 @@
+package net.gudenau.usbcap.benchmark;
+
+import net.gudenau.usbcap.event.Event;
+
+/**
+ * Hands out the events of a dataset in order, starting over at the end.
+ */
+final class Replay{
+    private final Event[] events;
+    private int index = 0;
+    
+    Replay(Event[] events){
+        if(events.length == 0){
+            throw new IllegalArgumentException("Dataset was empty");
+        }
+        this.events = events;
+    }
+    
+    /**
+     * Gets the next event, ready to be passed to a filter.
+     *
+     * @return The next event
+     */
+    Event next(){
+        var event = events[index];
+        if(++index == events.length){
+            index = 0;
+        }
+        event.reset();
+        return event;
+    }
+}
@@ -0,0 +1,6 @@
+module net.gudenau.UsbCapture.drivers.Synthetic {
+    requires net.gudenau.UsbCapture;
+    requires org.jetbrains.annotations;
+    
+    provides net.gudenau.usbcap.driver.CaptureDriver with net.gudenau.usbcap.driver.synthetic.SyntheticDriver;
+}
\ No newline at end of file
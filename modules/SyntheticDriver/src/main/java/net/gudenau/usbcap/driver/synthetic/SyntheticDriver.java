@@ -0,0 +1,28 @@
+package net.gudenau.usbcap.driver.synthetic;
+
+import java.util.Set;
+import net.gudenau.usbcap.capture.CaptureDevice;
+import net.gudenau.usbcap.capture.SyntheticCaptureDevice;
+import net.gudenau.usbcap.driver.CaptureDriver;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A capture driver that provides a single {@link SyntheticCaptureDevice}, allowing code that looks for capture
+ * devices to run without hardware.
+ *
+ * The device is configured with the {@code usbcap.synthetic.seed} and {@code usbcap.synthetic.rate} system
+ * properties, the rate is in bytes per second and 0 generates traffic as fast as possible.
+ */
+public final class SyntheticDriver implements CaptureDriver{
+    @Override
+    public @NotNull String getDriverName(){
+        return "synthetic";
+    }
+    
+    @Override
+    public @NotNull Set<@NotNull CaptureDevice> getCaptureDevices(){
+        long seed = Long.getLong("usbcap.synthetic.seed", 0);
+        long rate = Long.getLong("usbcap.synthetic.rate", 0);
+        return Set.of(new SyntheticCaptureDevice(seed, rate));
+    }
+}
@@ -0,0 +1,8 @@
+module net.gudenau.UsbCapture.drivers.Usbmon {
+    requires transitive net.gudenau.UsbCapture;
+    requires org.jetbrains.annotations;
+    
+    exports net.gudenau.usbcap.driver.usbmon;
+    
+    provides net.gudenau.usbcap.driver.CaptureDriver with net.gudenau.usbcap.driver.usbmon.UsbmonDriver;
+}
@@ -0,0 +1,69 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads events from a usbmon character device.
+ *
+ * Every read of the device returns a single event. The mmap API returns batches but is set up with ioctls, which would
+ * need native code or the incubating jdk.incubator.foreign linker. This module deliberately depends on neither, so
+ * live captures read the device and ring files are used for batched reads.
+ */
+final class UsbmonCharacterSource implements UsbmonSource{
+    // The kernel caps the captured data at a fifth of the largest ring, 1200KiB.
+    private static final int MAX_CAPTURED = 1200 * 1024 / 5;
+    
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(UsbmonRecord.READ_HEADER_SIZE + MAX_CAPTURED)
+        .order(ByteOrder.nativeOrder());
+    
+    UsbmonCharacterSource(Path path) throws IOException{
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+    }
+    
+    @Override
+    public boolean read(List<UsbmonRecord> records) throws IOException{
+        buffer.clear();
+        if(!fill(UsbmonRecord.READ_HEADER_SIZE)){
+            return false;
+        }
+        int size = UsbmonRecord.READ_HEADER_SIZE + UsbmonRecord.capturedLength(buffer, 0);
+        if(size > buffer.capacity()){
+            throw new IOException("usbmon event of " + size + " bytes is too large");
+        }
+        if(!fill(size)){
+            throw new IOException("Truncated usbmon event");
+        }
+        records.add(UsbmonRecord.read(buffer, 0, UsbmonRecord.READ_HEADER_SIZE));
+        return true;
+    }
+    
+    /**
+     * Reads from the device until the buffer holds at least the provided amount of bytes.
+     *
+     * @param size The amount of bytes required
+     *
+     * @return False if the end of the stream was reached
+     *
+     * @throws IOException If the device could not be read
+     */
+    private boolean fill(int size) throws IOException{
+        while(buffer.position() < size){
+            if(channel.read(buffer) < 0){
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
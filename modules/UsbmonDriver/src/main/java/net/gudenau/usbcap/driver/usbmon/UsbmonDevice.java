@@ -0,0 +1,78 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.capture.AbstractCaptureDevice;
+import net.gudenau.usbcap.event.Event;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A capture device for the binary interface of Linux's usbmon, captures the traffic of a single bus with
+ * {@code /dev/usbmonN} or of every bus with {@code /dev/usbmon0}.
+ *
+ * Reading the devices requires root or read permissions on them. A ring file written by {@link UsbmonRingWriter} can
+ * be used instead of a device, it is mapped into memory and read in batches.
+ *
+ * usbmon reports transfers and not packets, so this device produces {@link net.gudenau.usbcap.event.SetupDataEvent}s
+ * and {@link net.gudenau.usbcap.event.DataEvent}s directly and does not need a
+ * {@link net.gudenau.usbcap.filter.PacketFilter}. Control transfers are reported once they complete. The buffers of the
+ * events are only valid until the next time this device needs to capture events.
+ */
+public final class UsbmonDevice extends AbstractCaptureDevice{
+    private final Path path;
+    private final List<UsbmonRecord> records = new ArrayList<>();
+    private UsbmonSource source;
+    private UsbmonTranslator translator;
+    
+    /**
+     * Creates a new capture device for a usbmon character device or ring file.
+     *
+     * @param path The path of the device or file
+     */
+    public UsbmonDevice(@NotNull Path path){
+        Objects.requireNonNull(path, "path was null");
+        this.path = path.toAbsolutePath();
+    }
+    
+    @Override
+    protected void doOpen() throws IOException{
+        source = Files.isRegularFile(path) ? new UsbmonRingSource(path) : new UsbmonCharacterSource(path);
+    }
+    
+    // usbmon sees the transfers of every device on the bus, whatever speed they run at.
+    @Override
+    protected void doBeginCapture(UsbSpeed speed){
+        translator = new UsbmonTranslator();
+    }
+    
+    @Override
+    protected void doCaptureEvent(List<Event> eventBuffer) throws IOException{
+        if(translator == null){
+            throw new IOException("usbmon capture was not started");
+        }
+        
+        records.clear();
+        if(!source.read(records)){
+            throw new IOException("End of usbmon stream " + path);
+        }
+        for(var record : records){
+            translator.translate(record, eventBuffer);
+        }
+    }
+    
+    @Override
+    protected void doClose() throws IOException{
+        records.clear();
+        source.close();
+    }
+    
+    @Override
+    public String toString(){
+        return "UsbmonDevice[path=" + path + ']';
+    }
+}
@@ -0,0 +1,44 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import net.gudenau.usbcap.capture.CaptureDevice;
+import net.gudenau.usbcap.driver.CaptureDriver;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Capture driver for Linux's usbmon, provides a device for every readable {@code /dev/usbmonN}.
+ *
+ * The usbmon module has to be loaded for the devices to exist.
+ */
+public final class UsbmonDriver implements CaptureDriver{
+    private static final Path DEVICES = Path.of("/dev");
+    
+    @Override
+    public @NotNull String getDriverName(){
+        return "usbmon";
+    }
+    
+    @Override
+    public @NotNull Set<@NotNull CaptureDevice> getCaptureDevices(){
+        if(!Files.isDirectory(DEVICES)){
+            return Set.of();
+        }
+        
+        Set<CaptureDevice> devices = new HashSet<>();
+        try(var stream = Files.newDirectoryStream(DEVICES, "usbmon[0-9]*")){
+            for(var path : stream){
+                if(Files.isReadable(path)){
+                    devices.add(new UsbmonDevice(path));
+                }
+            }
+        }catch(IOException e){
+            throw new UncheckedIOException("Failed to get usbmon devices", e);
+        }
+        return devices;
+    }
+}
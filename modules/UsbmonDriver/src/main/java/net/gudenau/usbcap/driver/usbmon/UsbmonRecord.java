@@ -0,0 +1,210 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A single usbmon event, the submission, completion or submission error of an URB.
+ *
+ * In the binary usbmon API every event is a header followed by the captured data, all in the byte order of the host:
+ * <pre>
+ * +----+------+----------+----------+--------+-----+-------------+-----------+--------+--------+----------+
+ * | id | type | transfer | endpoint | device | bus | setup, data | timestamp | status | length | captured |
+ * +----+------+----------+----------+--------+-----+-------------+-----------+--------+--------+----------+
+ * |  0 |   8  |     9    |    10    |   11   |  12 |    14, 15   |   16, 24  |   28   |   32   |    36    |
+ * +----+------+----------+----------+--------+-----+-------------+-----------+--------+--------+----------+
+ * </pre>
+ * followed by the setup packet or the isochronous error and descriptor counts at 40, the interval at 48, the start
+ * frame at 52, the transfer flags at 56 and the descriptor count again at 60. The read API only returns the first 48
+ * bytes of the header, the mmap API returns all 64 and aligns every event to 64 bytes. Isochronous events have their
+ * packet descriptors in front of the data, [int status][int offset][int length][int padding] each.
+ *
+ * @param id The kernel's identifier for the URB, the same for the submission and completion
+ * @param type The type of the event, {@link #SUBMISSION}, {@link #COMPLETION} or {@link #ERROR}
+ * @param transferType The type of the transfer, one of the {@code TRANSFER_*} constants
+ * @param endpoint The endpoint with the direction in the top bit
+ * @param device The address of the device
+ * @param bus The bus number of the device
+ * @param timestamp The time of the event in nanoseconds since the Unix epoch
+ * @param status The status of the URB, 0 or a negative errno
+ * @param length The length of the URB's data, which may be longer than what was captured
+ * @param isoCount The amount of isochronous packet descriptors in front of the data
+ * @param interval The polling interval of periodic transfers
+ * @param startFrame The frame of the first isochronous packet
+ * @param setup The SETUP packet of a control submission or null
+ * @param data The captured data, including isochronous packet descriptors
+ */
+public record UsbmonRecord(
+    long id,
+    byte type,
+    byte transferType,
+    int endpoint,
+    int device,
+    int bus,
+    long timestamp,
+    int status,
+    int length,
+    int isoCount,
+    int interval,
+    int startFrame,
+    @Nullable ByteBuffer setup,
+    @NotNull ByteBuffer data
+){
+    /**
+     * An URB was submitted to the host controller.
+     */
+    public static final byte SUBMISSION = 'S';
+    
+    /**
+     * An URB was completed by the host controller.
+     */
+    public static final byte COMPLETION = 'C';
+    
+    /**
+     * An URB could not be submitted.
+     */
+    public static final byte ERROR = 'E';
+    
+    /**
+     * Marks the unused end of the mmap ring.
+     */
+    static final byte FILLER = '@';
+    
+    public static final byte TRANSFER_ISOCHRONOUS = 0;
+    public static final byte TRANSFER_INTERRUPT = 1;
+    public static final byte TRANSFER_CONTROL = 2;
+    public static final byte TRANSFER_BULK = 3;
+    
+    /**
+     * The size of the header in the mmap API and in ring files.
+     */
+    static final int HEADER_SIZE = 64;
+    
+    /**
+     * The size of the header returned by reading the character device.
+     */
+    static final int READ_HEADER_SIZE = 48;
+    
+    /**
+     * The alignment of every event in the mmap API and in ring files.
+     */
+    static final int ALIGNMENT = 64;
+    
+    /**
+     * The size of an isochronous packet descriptor.
+     */
+    static final int ISO_DESCRIPTOR_SIZE = 16;
+    
+    private static final int CAPTURED_OFFSET = 36;
+    
+    public UsbmonRecord{
+        Objects.requireNonNull(data, "data was null");
+        if(setup != null && setup.remaining() != 8){
+            throw new IllegalArgumentException("SETUP packet must be 8 bytes, got " + setup.remaining());
+        }
+    }
+    
+    /**
+     * Checks if this event is for a device to host transfer.
+     *
+     * @return True if the endpoint is an IN endpoint
+     */
+    public boolean isIn(){
+        return (endpoint & 0x80) != 0;
+    }
+    
+    /**
+     * Gets the amount of data that follows the header of an event.
+     *
+     * @param buffer The buffer containing the header
+     * @param offset The offset of the header
+     *
+     * @return The amount of captured bytes
+     */
+    static int capturedLength(ByteBuffer buffer, int offset){
+        return buffer.order(ByteOrder.nativeOrder()).getInt(offset + CAPTURED_OFFSET);
+    }
+    
+    /**
+     * Gets the type of the event with a header at the provided offset.
+     *
+     * @param buffer The buffer containing the header
+     * @param offset The offset of the header
+     *
+     * @return The type of the event
+     */
+    static byte type(ByteBuffer buffer, int offset){
+        return buffer.get(offset + 8);
+    }
+    
+    /**
+     * Parses an event, the setup and data buffers are slices of the provided buffer and are not copied.
+     *
+     * @param buffer The buffer containing the event in native byte order
+     * @param offset The offset of the header
+     * @param headerSize The size of the header, {@link #HEADER_SIZE} or {@link #READ_HEADER_SIZE}
+     *
+     * @return The parsed event
+     */
+    static UsbmonRecord read(ByteBuffer buffer, int offset, int headerSize){
+        buffer.order(ByteOrder.nativeOrder());
+        boolean hasSetup = buffer.get(offset + 14) == 0;
+        boolean full = headerSize >= HEADER_SIZE;
+        byte transferType = buffer.get(offset + 9);
+        return new UsbmonRecord(
+            buffer.getLong(offset),
+            buffer.get(offset + 8),
+            transferType,
+            Byte.toUnsignedInt(buffer.get(offset + 10)),
+            Byte.toUnsignedInt(buffer.get(offset + 11)),
+            Short.toUnsignedInt(buffer.getShort(offset + 12)),
+            buffer.getLong(offset + 16) * 1_000_000_000L + buffer.getInt(offset + 24) * 1_000L,
+            buffer.getInt(offset + 28),
+            buffer.getInt(offset + 32),
+            transferType == TRANSFER_ISOCHRONOUS ? buffer.getInt(offset + 44) : 0,
+            full ? buffer.getInt(offset + 48) : 0,
+            full ? buffer.getInt(offset + 52) : 0,
+            hasSetup ? buffer.slice(offset + 40, 8) : null,
+            buffer.slice(offset + headerSize, capturedLength(buffer, offset))
+        );
+    }
+    
+    /**
+     * Writes this event with a full header, the data is not padded.
+     *
+     * @param buffer The buffer to write to, must have room for the header and the data
+     */
+    void write(ByteBuffer buffer){
+        var order = buffer.order();
+        buffer.order(ByteOrder.nativeOrder());
+        var data = this.data.duplicate();
+        buffer.putLong(id);
+        buffer.put(type);
+        buffer.put(transferType);
+        buffer.put((byte)endpoint);
+        buffer.put((byte)device);
+        buffer.putShort((short)bus);
+        buffer.put(setup != null ? 0 : (byte)'-');
+        buffer.put(data.hasRemaining() ? 0 : (byte)(isIn() ? '<' : '>'));
+        buffer.putLong(Math.floorDiv(timestamp, 1_000_000_000L));
+        buffer.putInt((int)(Math.floorMod(timestamp, 1_000_000_000L) / 1_000));
+        buffer.putInt(status);
+        buffer.putInt(length);
+        buffer.putInt(data.remaining());
+        if(setup != null){
+            buffer.put(setup.duplicate());
+        }else{
+            buffer.putInt(0);
+            buffer.putInt(isoCount);
+        }
+        buffer.putInt(interval);
+        buffer.putInt(startFrame);
+        buffer.putInt(0);
+        buffer.putInt(isoCount);
+        buffer.put(data);
+        buffer.order(order);
+    }
+}
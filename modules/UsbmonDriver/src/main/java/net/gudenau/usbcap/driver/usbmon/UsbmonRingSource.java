@@ -0,0 +1,87 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Reads events from a file in the layout of the usbmon mmap ring, see {@link UsbmonRingWriter}.
+ *
+ * The file is mapped in windows and events are handed out as slices of the mapping in batches, the same way the mmap
+ * API of the kernel works without needing root or real devices.
+ */
+final class UsbmonRingSource implements UsbmonSource{
+    private static final int BATCH_SIZE = 256;
+    private static final long WINDOW_SIZE = 64 * 1024 * 1024;
+    
+    private final FileChannel channel;
+    private final long size;
+    private MappedByteBuffer window;
+    private long windowStart;
+    private long position = 0;
+    
+    UsbmonRingSource(Path path) throws IOException{
+        channel = FileChannel.open(path, StandardOpenOption.READ);
+        size = channel.size();
+    }
+    
+    @Override
+    public boolean read(List<UsbmonRecord> records) throws IOException{
+        if(position >= size){
+            return false;
+        }
+        
+        for(int count = 0; count < BATCH_SIZE && position < size; count++){
+            int offset = map(UsbmonRecord.HEADER_SIZE);
+            int length = UsbmonRecord.HEADER_SIZE + UsbmonRecord.capturedLength(window, offset);
+            if(length < UsbmonRecord.HEADER_SIZE){
+                throw new IOException("Corrupted usbmon ring at " + position);
+            }
+            offset = map(length);
+            if(UsbmonRecord.type(window, offset) != UsbmonRecord.FILLER){
+                records.add(UsbmonRecord.read(window, offset, UsbmonRecord.HEADER_SIZE));
+            }
+            position += align(length);
+        }
+        return true;
+    }
+    
+    /**
+     * Makes sure the bytes at the current position are mapped.
+     *
+     * @param length The amount of bytes required
+     *
+     * @return The offset of the current position in the window
+     *
+     * @throws IOException If the file ends early or could not be mapped
+     */
+    private int map(int length) throws IOException{
+        if(position + length > size){
+            throw new IOException("Truncated usbmon ring at " + position);
+        }
+        if(window == null || position < windowStart || position + length > windowStart + window.capacity()){
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, Math.max(WINDOW_SIZE, length)));
+        }
+        return (int)(position - windowStart);
+    }
+    
+    /**
+     * Rounds the length of an event up to the alignment of the ring.
+     *
+     * @param length The length of the event
+     *
+     * @return The aligned length
+     */
+    static long align(long length){
+        return (length + UsbmonRecord.ALIGNMENT - 1) & -UsbmonRecord.ALIGNMENT;
+    }
+    
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
@@ -0,0 +1,83 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes usbmon events into a ring file that a {@link UsbmonDevice} can read in place of a usbmon character device.
+ *
+ * Ring files use the layout of the kernel's mmap ring: every event has the full 64 byte header, is followed by its
+ * captured data and is padded to 64 bytes. They are in the byte order of the machine that wrote them.
+ */
+public final class UsbmonRingWriter implements AutoCloseable{
+    private static final int BUFFER_SIZE = 1024 * 1024;
+    
+    private final FileChannel channel;
+    private ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    
+    /**
+     * Creates a new ring file, replacing any existing file.
+     *
+     * @param path The path of the ring file
+     *
+     * @throws IOException If the file could not be created
+     */
+    public UsbmonRingWriter(@NotNull Path path) throws IOException{
+        Objects.requireNonNull(path, "path was null");
+        channel = FileChannel.open(
+            path,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+    }
+    
+    /**
+     * Appends an event to the ring file.
+     *
+     * @param record The event to write
+     *
+     * @throws IOException If the event could not be written
+     */
+    public void write(@NotNull UsbmonRecord record) throws IOException{
+        Objects.requireNonNull(record, "record was null");
+        int length = (int)UsbmonRingSource.align(UsbmonRecord.HEADER_SIZE + record.data().remaining());
+        if(buffer.remaining() < length){
+            flush();
+            if(buffer.capacity() < length){
+                buffer = ByteBuffer.allocate(length);
+            }
+        }
+        int start = buffer.position();
+        record.write(buffer);
+        // Zero the padding, the buffer is reused.
+        while(buffer.position() < start + length){
+            buffer.put((byte)0);
+        }
+    }
+    
+    /**
+     * Writes all buffered events to the file.
+     *
+     * @throws IOException If the events could not be written
+     */
+    public void flush() throws IOException{
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    @Override
+    public void close() throws IOException{
+        try{
+            flush();
+        }finally{
+            channel.close();
+        }
+    }
+}
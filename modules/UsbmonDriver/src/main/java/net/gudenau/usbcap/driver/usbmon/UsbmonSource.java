@@ -0,0 +1,22 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * A source of raw usbmon events.
+ */
+interface UsbmonSource extends AutoCloseable{
+    /**
+     * Reads the next batch of events, their buffers are only valid until the next call.
+     *
+     * @param records The list to add the events to
+     *
+     * @return False if there are no more events
+     *
+     * @throws IOException If the events could not be read
+     */
+    boolean read(List<UsbmonRecord> records) throws IOException;
+    
+    @Override void close() throws IOException;
+}
@@ -0,0 +1,129 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.SetupDataEvent;
+
+/**
+ * Turns usbmon URB events into the transfer events that the rest of the library understands.
+ *
+ * usbmon only sees URBs and not packets, so there are no {@link net.gudenau.usbcap.event.PacketEvent}s. OUT data is
+ * reported when it is submitted and IN data when it completes. Control transfers are held back until they complete and
+ * are then reported as a SETUP, the data stage and a zero length status stage in a row, other transfers that complete
+ * in the meantime would otherwise end up in the middle of them. Isochronous URBs are split into one event per packet.
+ */
+final class UsbmonTranslator{
+    // Set by URBs with URB_SHORT_NOT_OK when a short packet ends them, the data is still valid.
+    private static final int EREMOTEIO = -121;
+    
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    
+    private final Map<Long, PendingControl> pendingControls = new HashMap<>();
+    
+    /**
+     * Translates a single usbmon event.
+     *
+     * @param record The usbmon event
+     * @param events The list to add the translated events to
+     */
+    void translate(UsbmonRecord record, List<Event> events){
+        if(record.type() == UsbmonRecord.ERROR){
+            pendingControls.remove(record.id());
+            return;
+        }
+        
+        boolean submission = record.type() == UsbmonRecord.SUBMISSION;
+        switch(record.transferType()){
+            case UsbmonRecord.TRANSFER_CONTROL -> {
+                if(submission){
+                    submitControl(record);
+                }else{
+                    completeControl(record, events);
+                }
+            }
+            case UsbmonRecord.TRANSFER_ISOCHRONOUS -> {
+                if(submission != record.isIn()){
+                    isochronous(record, events);
+                }
+            }
+            default -> {
+                if(submission != record.isIn() && (submission || succeeded(record))){
+                    events.add(new DataEvent(direction(record), record.device(), record.endpoint() & 0x0F, record.data()));
+                }
+            }
+        }
+    }
+    
+    private void submitControl(UsbmonRecord record){
+        var setup = record.setup();
+        if(setup == null){
+            return;
+        }
+        
+        // The buffers are reused once this batch is done, the transfer may complete in a later one.
+        var data = EMPTY;
+        if((setup.get(0) & 0x80) == 0 && record.data().hasRemaining()){
+            data = copy(record.data());
+        }
+        pendingControls.put(record.id(), new PendingControl(copy(setup), data));
+    }
+    
+    private void completeControl(UsbmonRecord record, List<Event> events){
+        var pending = pendingControls.remove(record.id());
+        if(pending == null || !succeeded(record)){
+            return;
+        }
+        
+        int address = record.device();
+        int endpoint = record.endpoint() & 0x0F;
+        boolean in = (pending.setup().get(0) & 0x80) != 0;
+        var data = in ? record.data() : pending.data();
+        var status = in ? DataEvent.Direction.OUT : DataEvent.Direction.IN;
+        events.add(new SetupDataEvent(address, endpoint, pending.setup()));
+        if(data.hasRemaining()){
+            events.add(new DataEvent(in ? DataEvent.Direction.IN : DataEvent.Direction.OUT, address, endpoint, data));
+        }
+        events.add(new DataEvent(status, address, endpoint, EMPTY.duplicate()));
+    }
+    
+    private void isochronous(UsbmonRecord record, List<Event> events){
+        var data = record.data().duplicate().order(ByteOrder.nativeOrder());
+        int descriptors = record.isoCount() * UsbmonRecord.ISO_DESCRIPTOR_SIZE;
+        if(descriptors > data.remaining()){
+            return;
+        }
+        var payload = data.slice(descriptors, data.remaining() - descriptors);
+        var direction = direction(record);
+        boolean submission = record.type() == UsbmonRecord.SUBMISSION;
+        for(int offset = 0; offset < descriptors; offset += UsbmonRecord.ISO_DESCRIPTOR_SIZE){
+            int status = data.getInt(offset);
+            int start = data.getInt(offset + 4);
+            int length = data.getInt(offset + 8);
+            // Packets can be cut off when the data was too large to capture.
+            if((submission || status == 0) && start >= 0 && length >= 0 && start + length <= payload.capacity()){
+                events.add(new DataEvent(direction, record.device(), record.endpoint() & 0x0F, payload.slice(start, length)));
+            }
+        }
+    }
+    
+    private static boolean succeeded(UsbmonRecord record){
+        return record.status() == 0 || record.status() == EREMOTEIO;
+    }
+    
+    private static DataEvent.Direction direction(UsbmonRecord record){
+        return record.isIn() ? DataEvent.Direction.IN : DataEvent.Direction.OUT;
+    }
+    
+    private static ByteBuffer copy(ByteBuffer buffer){
+        var copy = ByteBuffer.allocate(buffer.remaining());
+        copy.put(buffer.duplicate());
+        return copy.flip();
+    }
+    
+    private record PendingControl(ByteBuffer setup, ByteBuffer data){}
+}
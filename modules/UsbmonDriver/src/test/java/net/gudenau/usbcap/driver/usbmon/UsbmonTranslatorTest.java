@@ -0,0 +1,189 @@
+package net.gudenau.usbcap.driver.usbmon;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.SetupDataEvent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static net.gudenau.usbcap.driver.usbmon.UsbmonRecord.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+
+/**
+ * Checks that usbmon events are turned into the right transfer events, both directly and after a trip through a ring
+ * file.
+ */
+class UsbmonTranslatorTest{
+    private static final int ADDRESS = 5;
+    // -EINPROGRESS, the status of every submission
+    private static final int PENDING = -115;
+    private static final ByteBuffer GET_DESCRIPTOR = bytes(0x80, 0x06, 0x00, 0x01, 0x00, 0x00, 0x12, 0x00);
+    private static final ByteBuffer SET_CONFIGURATION = bytes(0x00, 0x09, 0x01, 0x00, 0x00, 0x00, 0x00, 0x00);
+    
+    @Test
+    void bulkOutIsReportedWhenSubmitted(){
+        var events = translate(
+            record(1, SUBMISSION, TRANSFER_BULK, 0x02, PENDING, null, bytes(1, 2, 3)),
+            record(1, COMPLETION, TRANSFER_BULK, 0x02, 0, null, bytes())
+        );
+        
+        assertEquals(1, events.size());
+        assertData(events.get(0), DataEvent.Direction.OUT, 2, bytes(1, 2, 3));
+    }
+    
+    @Test
+    void bulkInIsReportedWhenCompletedSuccessfully(){
+        var events = translate(
+            record(1, SUBMISSION, TRANSFER_BULK, 0x81, PENDING, null, bytes()),
+            record(1, COMPLETION, TRANSFER_BULK, 0x81, 0, null, bytes(4, 5)),
+            // -ENOENT, the URB was unlinked
+            record(2, COMPLETION, TRANSFER_BULK, 0x81, -2, null, bytes(6)),
+            // -EREMOTEIO, a short packet ended an URB_SHORT_NOT_OK transfer
+            record(3, COMPLETION, TRANSFER_INTERRUPT, 0x81, -121, null, bytes(7))
+        );
+        
+        assertEquals(2, events.size());
+        assertData(events.get(0), DataEvent.Direction.IN, 1, bytes(4, 5));
+        assertData(events.get(1), DataEvent.Direction.IN, 1, bytes(7));
+    }
+    
+    @Test
+    void controlTransfersAreReportedWhenCompleted(){
+        var descriptor = bytes(18, 1, 0x00, 0x02, 0, 0, 0, 64, 0x34, 0x12, 0x78, 0x56, 0, 1, 1, 2, 3, 1);
+        var events = translate(
+            record(1, SUBMISSION, TRANSFER_CONTROL, 0x80, PENDING, GET_DESCRIPTOR, bytes()),
+            // Reported before the control transfer that is still in progress
+            record(2, SUBMISSION, TRANSFER_BULK, 0x02, PENDING, null, bytes(9)),
+            record(1, COMPLETION, TRANSFER_CONTROL, 0x80, 0, null, descriptor),
+            record(3, SUBMISSION, TRANSFER_CONTROL, 0x00, PENDING, SET_CONFIGURATION, bytes()),
+            record(3, COMPLETION, TRANSFER_CONTROL, 0x00, 0, null, bytes())
+        );
+        
+        assertEquals(6, events.size());
+        assertData(events.get(0), DataEvent.Direction.OUT, 2, bytes(9));
+        assertSetup(events.get(1), GET_DESCRIPTOR);
+        assertData(events.get(2), DataEvent.Direction.IN, 0, descriptor);
+        assertData(events.get(3), DataEvent.Direction.OUT, 0, bytes());
+        assertSetup(events.get(4), SET_CONFIGURATION);
+        assertData(events.get(5), DataEvent.Direction.IN, 0, bytes());
+    }
+    
+    @Test
+    void failedControlTransfersAreDropped(){
+        var events = translate(
+            record(1, SUBMISSION, TRANSFER_CONTROL, 0x80, PENDING, GET_DESCRIPTOR, bytes()),
+            // -ENODEV, the submission failed
+            record(1, ERROR, TRANSFER_CONTROL, 0x80, -19, null, bytes()),
+            record(1, COMPLETION, TRANSFER_CONTROL, 0x80, 0, null, bytes(1)),
+            record(2, SUBMISSION, TRANSFER_CONTROL, 0x80, PENDING, GET_DESCRIPTOR, bytes()),
+            // -EPIPE, the device stalled
+            record(2, COMPLETION, TRANSFER_CONTROL, 0x80, -32, null, bytes())
+        );
+        
+        assertEquals(0, events.size());
+    }
+    
+    @Test
+    void isochronousUrbsAreSplitIntoPackets(){
+        var data = ByteBuffer.allocate(3 * ISO_DESCRIPTOR_SIZE + 5).order(ByteOrder.nativeOrder());
+        data.putInt(0).putInt(0).putInt(2).putInt(0);
+        // -EXDEV, the packet was not transferred
+        data.putInt(-18).putInt(2).putInt(2).putInt(0);
+        data.putInt(0).putInt(4).putInt(1).putInt(0);
+        data.put(new byte[]{1, 2, 3, 4, 5});
+        var events = translate(
+            new UsbmonRecord(1, COMPLETION, TRANSFER_ISOCHRONOUS, 0x83, ADDRESS, 1, 0, 0, 5, 3, 1, 100, null, data.flip())
+        );
+        
+        assertEquals(2, events.size());
+        assertData(events.get(0), DataEvent.Direction.IN, 3, bytes(1, 2));
+        assertData(events.get(1), DataEvent.Direction.IN, 3, bytes(5));
+    }
+    
+    @Test
+    void ringFilesTranslateLikeTheirRecords(@TempDir Path directory) throws IOException{
+        List<UsbmonRecord> records = new ArrayList<>();
+        for(int i = 0; i < 1000; i++){
+            // Every length up to two alignments, so every amount of padding is used
+            var payload = ByteBuffer.allocate(i % (ALIGNMENT * 2));
+            while(payload.hasRemaining()){
+                payload.put((byte)(i + payload.position()));
+            }
+            payload.flip();
+            records.add(record(i * 2, SUBMISSION, TRANSFER_BULK, 0x02, PENDING, null, payload));
+            records.add(record(i * 2 + 1, COMPLETION, TRANSFER_BULK, 0x81, 0, null, payload));
+        }
+        records.add(record(-1, SUBMISSION, TRANSFER_CONTROL, 0x80, PENDING, GET_DESCRIPTOR, bytes()));
+        records.add(record(-1, COMPLETION, TRANSFER_CONTROL, 0x80, 0, null, bytes(18, 1)));
+        var expected = translate(records.toArray(UsbmonRecord[]::new));
+        
+        var ring = directory.resolve("usbmon.ring");
+        try(var writer = new UsbmonRingWriter(ring)){
+            for(var record : records){
+                writer.write(record);
+            }
+        }
+        
+        try(var device = new UsbmonDevice(ring)){
+            device.open();
+            device.beginCapture(UsbSpeed.HIGH_SPEED);
+            for(var event : expected){
+                if(event instanceof SetupDataEvent setup){
+                    assertSetup(device.captureEvent(), setup.data());
+                }else{
+                    var data = (DataEvent)event;
+                    assertData(device.captureEvent(), data.direction(), data.endpoint(), data.data());
+                }
+            }
+        }
+    }
+    
+    private static List<Event> translate(UsbmonRecord... records){
+        var translator = new UsbmonTranslator();
+        List<Event> events = new ArrayList<>();
+        for(var record : records){
+            translator.translate(record, events);
+        }
+        return events;
+    }
+    
+    private static UsbmonRecord record(
+        long id, byte type, byte transferType, int endpoint, int status, ByteBuffer setup, ByteBuffer data
+    ){
+        return new UsbmonRecord(
+            id, type, transferType, endpoint, ADDRESS, 1, 0, status, data.remaining(), 0, 0, 0,
+            setup == null ? null : setup.duplicate(), data.duplicate()
+        );
+    }
+    
+    private static ByteBuffer bytes(int... bytes){
+        var buffer = ByteBuffer.allocate(bytes.length);
+        for(int value : bytes){
+            buffer.put((byte)value);
+        }
+        return buffer.flip();
+    }
+    
+    private static void assertData(Event event, DataEvent.Direction direction, int endpoint, ByteBuffer data){
+        var transfer = assertInstanceOf(DataEvent.class, event);
+        assertEquals(direction, transfer.direction());
+        assertEquals(ADDRESS, transfer.address());
+        assertEquals(endpoint, transfer.endpoint());
+        assertEquals(data, transfer.data());
+    }
+    
+    private static void assertSetup(Event event, ByteBuffer setup){
+        var transfer = assertInstanceOf(SetupDataEvent.class, event);
+        assertEquals(ADDRESS, transfer.address());
+        assertEquals(0, transfer.endpoint());
+        assertEquals(setup, transfer.data());
+    }
+}
@@ -1,12 +1,24 @@
 module net.gudenau.UsbCapture {
     exports net.gudenau.usbcap;
+    exports net.gudenau.usbcap.analysis;
     exports net.gudenau.usbcap.capture;
+    exports net.gudenau.usbcap.decoder;
     exports net.gudenau.usbcap.driver;
     exports net.gudenau.usbcap.event;
+    exports net.gudenau.usbcap.event.classes;
     exports net.gudenau.usbcap.event.enumeration;
     exports net.gudenau.usbcap.filter;
+    exports net.gudenau.usbcap.metrics;
     
+    uses net.gudenau.usbcap.decoder.ClassDecoder;
     uses net.gudenau.usbcap.driver.CaptureDriver;
     
+    provides net.gudenau.usbcap.decoder.ClassDecoder with
+        net.gudenau.usbcap.decoder.HidDecoder,
+        net.gudenau.usbcap.decoder.MassStorageDecoder,
+        net.gudenau.usbcap.decoder.CdcAcmDecoder;
+    
+    requires java.management;
+    requires jdk.jfr;
     requires org.jetbrains.annotations;
 }
\ No newline at end of file
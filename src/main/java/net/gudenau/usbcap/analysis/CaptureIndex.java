@@ -0,0 +1,643 @@
+package net.gudenau.usbcap.analysis;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import net.gudenau.usbcap.event.ControlTransferEvent;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.SetupDataEvent;
+import net.gudenau.usbcap.filter.ControlTransferFilter;
+import net.gudenau.usbcap.filter.Filter;
+import net.gudenau.usbcap.filter.PacketFilter;
+import net.gudenau.usbcap.internal.CaptureBlocks;
+import net.gudenau.usbcap.internal.FilterChain;
+import net.gudenau.usbcap.internal.TimeHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * An index of a block based capture file that allows queries to skip the blocks that can not contain matching events.
+ *
+ * For every block the index keeps the range of timestamps and a bitmap of the (address, endpoint) pairs of the token
+ * packets in it. A transaction can start at the end of one block and finish in the next, so the last pair of a block
+ * is also marked in the block after it. Only the non-zero words of the bitmaps are kept.
+ *
+ * The index is stored next to the capture file with an ".idx" extension and is rebuilt when the capture file
+ * changes.
+ */
+public final class CaptureIndex{
+    /**
+     * Matches any address or endpoint in a query.
+     */
+    public static final int ANY = -1;
+    
+    private static final long MAGIC = 0x5553424358494458L;
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".idx";
+    private static final int READ_AHEAD = 8;
+    
+    private static final byte PID_OUT = (byte)0xE1;
+    private static final byte PID_IN = (byte)0x69;
+    private static final byte PID_SETUP = (byte)0x2D;
+    private static final byte PID_PING = (byte)0xB4;
+    
+    private final Path path;
+    private final boolean timed;
+    private final CaptureBlocks.Block[] blocks;
+    private final long[] minTimes;
+    private final long[] maxTimes;
+    private final int[] bitmapMasks;
+    private final int[] bitmapOffsets;
+    private final long[] bitmapWords;
+    
+    private CaptureIndex(
+        Path path, boolean timed, CaptureBlocks.Block[] blocks,
+        long[] minTimes, long[] maxTimes, int[] bitmapMasks, long[] bitmapWords
+    ){
+        this.path = path;
+        this.timed = timed;
+        this.blocks = blocks;
+        this.minTimes = minTimes;
+        this.maxTimes = maxTimes;
+        this.bitmapMasks = bitmapMasks;
+        this.bitmapWords = bitmapWords;
+        
+        bitmapOffsets = new int[blocks.length];
+        int offset = 0;
+        for(int i = 0; i < blocks.length; i++){
+            bitmapOffsets[i] = offset;
+            offset += Integer.bitCount(bitmapMasks[i]);
+        }
+    }
+    
+    /**
+     * Loads the index of a capture file, building and saving it if it is missing or out of date.
+     *
+     * @param path The path of the capture file
+     *
+     * @return The index of the capture file
+     *
+     * @throws IOException If the capture file could not be read
+     */
+    public static @NotNull CaptureIndex open(@NotNull Path path) throws IOException{
+        Objects.requireNonNull(path, "path was null");
+        path = path.toAbsolutePath();
+        var indexPath = path.resolveSibling(path.getFileName() + EXTENSION);
+        
+        if(Files.isRegularFile(indexPath)){
+            var index = load(path, indexPath);
+            if(index != null){
+                return index;
+            }
+        }
+        
+        var index = build(path);
+        try{
+            index.save(indexPath);
+        }catch(IOException ignored){
+            // The index works just as well without the file, it only has to be built again next time.
+        }
+        return index;
+    }
+    
+    /**
+     * Builds the index of a capture file on the common pool.
+     *
+     * @param path The path of the capture file
+     *
+     * @return The index of the capture file
+     *
+     * @throws IOException If the capture file could not be read
+     */
+    public static @NotNull CaptureIndex build(@NotNull Path path) throws IOException{
+        return build(path, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Builds the index of a capture file, blocks are read and summarized in parallel.
+     *
+     * @param path The path of the capture file
+     * @param pool The pool to build the index on
+     *
+     * @return The index of the capture file
+     *
+     * @throws IOException If the capture file could not be read
+     */
+    public static @NotNull CaptureIndex build(@NotNull Path path, @NotNull ForkJoinPool pool) throws IOException{
+        Objects.requireNonNull(path, "path was null");
+        Objects.requireNonNull(pool, "pool was null");
+        path = path.toAbsolutePath();
+        
+        try(var file = CaptureBlocks.open(path)){
+            var blocks = file.scan().toArray(CaptureBlocks.Block[]::new);
+            List<Summary> summaries;
+            try{
+                summaries = pool.submit(()->Stream.of(blocks).parallel().map((block)->{
+                    try{
+                        return summarize(file.read(block), file.timed());
+                    }catch(IOException e){
+                        throw new UncheckedIOException(e);
+                    }
+                }).toList()).join();
+            }catch(UncheckedIOException e){
+                throw e.getCause();
+            }
+            
+            var minTimes = new long[blocks.length];
+            var maxTimes = new long[blocks.length];
+            var bitmapMasks = new int[blocks.length];
+            var words = new long[blocks.length * 2];
+            int wordCount = 0;
+            int lastPair = -1;
+            for(int i = 0; i < blocks.length; i++){
+                var summary = summaries.get(i);
+                minTimes[i] = summary.minTime();
+                maxTimes[i] = summary.maxTime();
+                var bitmap = summary.bitmap();
+                if(lastPair != -1){
+                    bitmap[lastPair >>> 6] |= 1L << lastPair;
+                }
+                if(summary.lastPair() != -1){
+                    lastPair = summary.lastPair();
+                }
+                
+                for(int word = 0; word < bitmap.length; word++){
+                    if(bitmap[word] != 0){
+                        bitmapMasks[i] |= 1 << word;
+                        if(wordCount == words.length){
+                            words = Arrays.copyOf(words, words.length << 1);
+                        }
+                        words[wordCount++] = bitmap[word];
+                    }
+                }
+            }
+            return new CaptureIndex(
+                path, file.timed(), blocks,
+                minTimes, maxTimes, bitmapMasks, Arrays.copyOf(words, wordCount)
+            );
+        }
+    }
+    
+    /**
+     * Summarizes the records of a single block.
+     *
+     * @param records The records of the block
+     * @param timed True if the records have timestamps
+     *
+     * @return The summary of the block
+     */
+    private static Summary summarize(ByteBuffer records, boolean timed){
+        var bitmap = new long[32];
+        long minTime = Long.MAX_VALUE;
+        long maxTime = Long.MIN_VALUE;
+        int lastPair = -1;
+        while(records.hasRemaining()){
+            var event = CaptureBlocks.readRecord(records, timed);
+            long timestamp = TimeHelper.timestamp(event);
+            minTime = Math.min(minTime, timestamp);
+            maxTime = Math.max(maxTime, timestamp);
+            
+            if(event instanceof PacketEvent packet){
+                int pair = tokenPair(packet.buffer());
+                if(pair != -1){
+                    bitmap[pair >>> 6] |= 1L << pair;
+                    lastPair = pair;
+                }
+            }
+        }
+        return new Summary(minTime, maxTime, bitmap, lastPair);
+    }
+    
+    /**
+     * Gets the (address, endpoint) pair of a token packet.
+     *
+     * @param payload The raw packet
+     *
+     * @return The address times 16 plus the endpoint or -1 if the packet is not a token
+     */
+    private static int tokenPair(ByteBuffer payload){
+        if(payload.capacity() < 3){
+            return -1;
+        }
+        var pid = payload.get(0);
+        if(pid != PID_OUT && pid != PID_IN && pid != PID_SETUP && pid != PID_PING){
+            return -1;
+        }
+        // 7 bits of address followed by 4 bits of endpoint.
+        int data = (payload.get(1) & 0xFF) | ((payload.get(2) & 0xFF) << 8);
+        int address = data & 0b00000000_01111111;
+        int endpoint = (data >>> 7) & 0b00000000_00001111;
+        return (address << 4) | endpoint;
+    }
+    
+    /**
+     * Loads an index file, checking that it still matches the capture file.
+     *
+     * @param path The path of the capture file
+     * @param indexPath The path of the index file
+     *
+     * @return The index or null if it is out of date or not valid
+     */
+    private static CaptureIndex load(Path path, Path indexPath){
+        try(var input = new DataInputStream(new BufferedInputStream(Files.newInputStream(indexPath), 1 << 16))){
+            if(
+                input.readLong() != MAGIC || input.readInt() != VERSION ||
+                input.readLong() != Files.size(path) ||
+                input.readLong() != Files.getLastModifiedTime(path).toMillis()
+            ){
+                return null;
+            }
+            boolean timed = input.readBoolean();
+            int count = input.readInt();
+            var blocks = new CaptureBlocks.Block[count];
+            var minTimes = new long[count];
+            var maxTimes = new long[count];
+            var bitmapMasks = new int[count];
+            var words = new long[input.readInt()];
+            int wordCount = 0;
+            for(int i = 0; i < count; i++){
+                blocks[i] = new CaptureBlocks.Block(
+                    input.readLong(), input.readLong(), input.readInt(),
+                    input.readByte(), input.readInt(), input.readInt()
+                );
+                minTimes[i] = input.readLong();
+                maxTimes[i] = input.readLong();
+                bitmapMasks[i] = input.readInt();
+                for(int word = Integer.bitCount(bitmapMasks[i]); word > 0; word--){
+                    words[wordCount++] = input.readLong();
+                }
+            }
+            if(wordCount != words.length){
+                return null;
+            }
+            return new CaptureIndex(path, timed, blocks, minTimes, maxTimes, bitmapMasks, words);
+        }catch(IOException | RuntimeException e){
+            // A broken index is just rebuilt.
+            return null;
+        }
+    }
+    
+    /**
+     * Saves this index to a file.
+     *
+     * @param indexPath The path of the index file
+     *
+     * @throws IOException If the file could not be written
+     */
+    private void save(Path indexPath) throws IOException{
+        try(var output = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(indexPath), 1 << 16))){
+            output.writeLong(MAGIC);
+            output.writeInt(VERSION);
+            output.writeLong(Files.size(path));
+            output.writeLong(Files.getLastModifiedTime(path).toMillis());
+            output.writeBoolean(timed);
+            output.writeInt(blocks.length);
+            output.writeInt(bitmapWords.length);
+            for(int i = 0; i < blocks.length; i++){
+                var block = blocks[i];
+                output.writeLong(block.position());
+                output.writeLong(block.firstEvent());
+                output.writeInt(block.events());
+                output.writeByte(block.compression());
+                output.writeInt(block.rawLength());
+                output.writeInt(block.storedLength());
+                output.writeLong(minTimes[i]);
+                output.writeLong(maxTimes[i]);
+                output.writeInt(bitmapMasks[i]);
+                int offset = bitmapOffsets[i];
+                for(int word = Integer.bitCount(bitmapMasks[i]); word > 0; word--){
+                    output.writeLong(bitmapWords[offset++]);
+                }
+            }
+        }
+    }
+    
+    /**
+     * Gets the amount of data blocks in the capture file.
+     *
+     * @return The amount of blocks
+     */
+    public int blockCount(){
+        return blocks.length;
+    }
+    
+    /**
+     * Gets the timestamp of the earliest event in the capture file.
+     *
+     * @return The earliest timestamp in nanoseconds since the Unix epoch or 0 if the file is empty
+     */
+    public long startTime(){
+        long time = Long.MAX_VALUE;
+        for(int i = 0; i < blocks.length; i++){
+            time = Math.min(time, minTimes[i]);
+        }
+        return time == Long.MAX_VALUE ? 0 : time;
+    }
+    
+    /**
+     * Gets the timestamp of the latest event in the capture file.
+     *
+     * @return The latest timestamp in nanoseconds since the Unix epoch or 0 if the file is empty
+     */
+    public long endTime(){
+        long time = Long.MIN_VALUE;
+        for(int i = 0; i < blocks.length; i++){
+            time = Math.max(time, maxTimes[i]);
+        }
+        return time == Long.MIN_VALUE ? 0 : time;
+    }
+    
+    /**
+     * Finds the transfers to an endpoint in a time range, decoded with a {@link PacketFilter} and a
+     * {@link ControlTransferFilter}.
+     *
+     * @param address The address of the device or {@link #ANY}
+     * @param endpoint The endpoint or {@link #ANY}
+     * @param from The earliest timestamp to include in nanoseconds since the Unix epoch
+     * @param to The latest timestamp to include in nanoseconds since the Unix epoch
+     *
+     * @return A stream of matching events that has to be closed
+     *
+     * @throws IOException If the capture file could not be opened
+     */
+    public @NotNull Stream<@NotNull Event> query(int address, int endpoint, long from, long to) throws IOException{
+        return query(address, endpoint, from, to, ()->List.of(new PacketFilter(), new ControlTransferFilter()));
+    }
+    
+    /**
+     * Finds the events for an endpoint in a time range.
+     *
+     * Only the blocks that may contain matching events are read. Every run of matching blocks is decoded with a new
+     * set of filters, starting one block early so transfers that started in the previous block are complete. Events
+     * that do not have an address and endpoint only match queries for {@link #ANY} address and endpoint, the time of an
+     * event is the timestamp of the packet that completed it.
+     *
+     * @param address The address of the device or {@link #ANY}
+     * @param endpoint The endpoint or {@link #ANY}
+     * @param from The earliest timestamp to include in nanoseconds since the Unix epoch
+     * @param to The latest timestamp to include in nanoseconds since the Unix epoch
+     * @param filters Creates a new set of filters for every run of blocks
+     *
+     * @return A stream of matching events that has to be closed
+     *
+     * @throws IOException If the capture file could not be opened
+     */
+    public @NotNull Stream<@NotNull Event> query(
+        int address, int endpoint, long from, long to,
+        @NotNull Supplier<@NotNull List<@NotNull Filter>> filters
+    ) throws IOException{
+        if(address != ANY && (address & ~0x7F) != 0){
+            throw new IllegalArgumentException("Address was out of range, range is \"128 < address <= 0\" and got " + address);
+        }
+        if(endpoint != ANY && (endpoint & ~0x0F) != 0){
+            throw new IllegalArgumentException("Endpoint was out of range, range is \"16 < endpoint <= 0\" and got " + endpoint);
+        }
+        Objects.requireNonNull(filters, "filters was null");
+        
+        // Plan which blocks to read, a block before every run is decoded to catch transfers that started in it.
+        List<Step> steps = new ArrayList<>();
+        boolean previous = false;
+        for(int i = 0; i < blocks.length; i++){
+            boolean matches = blocks[i].events() != 0 &&
+                maxTimes[i] >= from && minTimes[i] <= to &&
+                hasPair(i, address, endpoint);
+            if(matches && !previous){
+                if(i > 0){
+                    steps.add(new Step(i - 1, true, false));
+                    steps.add(new Step(i, false, true));
+                }else{
+                    steps.add(new Step(i, true, true));
+                }
+            }else if(matches){
+                steps.add(new Step(i, false, true));
+            }
+            previous = matches;
+        }
+        
+        var file = CaptureBlocks.open(path);
+        var iterator = new QueryIterator(file, steps, filters, address, endpoint, from, to);
+        return StreamSupport.stream(
+            Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL),
+            false
+        ).onClose(iterator::close);
+    }
+    
+    /**
+     * Checks if the bitmap of a block has a matching pair.
+     *
+     * @param block The index of the block
+     * @param address The address or {@link #ANY}
+     * @param endpoint The endpoint or {@link #ANY}
+     *
+     * @return True if the block might have events for the pair
+     */
+    private boolean hasPair(int block, int address, int endpoint){
+        int mask = bitmapMasks[block];
+        if(address == ANY && endpoint == ANY){
+            return mask != 0;
+        }else if(address != ANY){
+            // Every word has the endpoints of 4 addresses.
+            int word = address >>> 2;
+            if((mask & (1 << word)) == 0){
+                return false;
+            }
+            long bits = bitmapWords[bitmapOffsets[block] + Integer.bitCount(mask & ((1 << word) - 1))];
+            bits >>>= (address & 3) << 4;
+            return endpoint == ANY ? (bits & 0xFFFF) != 0 : (bits & (1L << endpoint)) != 0;
+        }else{
+            long bits = 0x0001_0001_0001_0001L << endpoint;
+            int offset = bitmapOffsets[block];
+            for(int word = Integer.bitCount(mask); word > 0; word--){
+                if((bitmapWords[offset++] & bits) != 0){
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+    
+    /**
+     * Gets the address and endpoint of an event.
+     *
+     * @param event The event
+     *
+     * @return The address times 16 plus the endpoint or -1 if the event does not have them
+     */
+    private static int eventPair(Event event){
+        if(event instanceof DataEvent data){
+            return (data.address() << 4) | data.endpoint();
+        }else if(event instanceof SetupDataEvent setup){
+            return (setup.address() << 4) | setup.endpoint();
+        }else if(event instanceof ControlTransferEvent control){
+            return (control.address() << 4) | control.endpoint();
+        }
+        return -1;
+    }
+    
+    /**
+     * The summary of a single block while the index is built.
+     *
+     * @param minTime The earliest timestamp
+     * @param maxTime The latest timestamp
+     * @param bitmap The pairs of the token packets
+     * @param lastPair The pair of the last token packet or -1
+     */
+    private record Summary(long minTime, long maxTime, long[] bitmap, int lastPair){}
+    
+    /**
+     * A block that a query needs to read.
+     *
+     * @param block The index of the block
+     * @param fresh True to start with a new set of filters
+     * @param output True to return the events of the block, false to only use it to set up the filters
+     */
+    private record Step(int block, boolean fresh, boolean output){}
+    
+    /**
+     * Decodes the planned blocks one at a time, blocks are read and decompressed ahead of time on the common pool.
+     */
+    private final class QueryIterator implements Iterator<Event>, AutoCloseable{
+        private final CaptureBlocks file;
+        private final List<Step> steps;
+        private final Supplier<List<Filter>> filters;
+        private final int address;
+        private final int endpoint;
+        private final long from;
+        private final long to;
+        
+        private final Queue<CompletableFuture<ByteBuffer>> pendingBlocks = new ArrayDeque<>();
+        private final Queue<Event> events = new ArrayDeque<>();
+        private int nextRead = 0;
+        private int nextStep = 0;
+        private FilterChain chain;
+        
+        private QueryIterator(
+            CaptureBlocks file, List<Step> steps, Supplier<List<Filter>> filters,
+            int address, int endpoint, long from, long to
+        ){
+            this.file = file;
+            this.steps = steps;
+            this.filters = filters;
+            this.address = address;
+            this.endpoint = endpoint;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        public boolean hasNext(){
+            while(events.isEmpty() && nextStep < steps.size()){
+                decodeStep(steps.get(nextStep++));
+            }
+            return !events.isEmpty();
+        }
+        
+        @Override
+        public Event next(){
+            if(!hasNext()){
+                throw new NoSuchElementException();
+            }
+            return events.remove();
+        }
+        
+        /**
+         * Decodes the block of a step and collects the matching events.
+         *
+         * @param step The step to decode
+         */
+        private void decodeStep(Step step){
+            while(nextRead < steps.size() && nextRead - nextStep < READ_AHEAD){
+                var block = blocks[steps.get(nextRead++).block()];
+                pendingBlocks.add(CompletableFuture.supplyAsync(()->{
+                    try{
+                        return file.read(block);
+                    }catch(IOException e){
+                        throw new CompletionException(e);
+                    }
+                }));
+            }
+            
+            ByteBuffer records;
+            try{
+                records = pendingBlocks.remove().join();
+            }catch(CompletionException e){
+                var cause = e.getCause();
+                throw cause instanceof IOException io ? new UncheckedIOException(io) : e;
+            }
+            
+            if(step.fresh()){
+                chain = new FilterChain();
+                filters.get().forEach(chain::add);
+            }
+            
+            List<Event> pendingEvents = new ArrayList<>();
+            List<Event> output = new ArrayList<>();
+            while(records.hasRemaining()){
+                var event = CaptureBlocks.readRecord(records, timed);
+                long timestamp = TimeHelper.timestamp(event);
+                pendingEvents.add(event);
+                chain.process(pendingEvents, output);
+                pendingEvents.clear();
+                
+                if(step.output() && timestamp >= from && timestamp <= to){
+                    for(var decoded : output){
+                        if(matches(decoded)){
+                            events.add(decoded);
+                        }
+                    }
+                }
+                output.clear();
+            }
+        }
+        
+        /**
+         * Checks if an event matches the address and endpoint of the query.
+         *
+         * @param event The event to check
+         *
+         * @return True if the event matches
+         */
+        private boolean matches(Event event){
+            if(address == ANY && endpoint == ANY){
+                return true;
+            }
+            int pair = eventPair(event);
+            return pair != -1 &&
+                (address == ANY || pair >>> 4 == address) &&
+                (endpoint == ANY || (pair & 0x0F) == endpoint);
+        }
+        
+        @Override
+        public void close(){
+            pendingBlocks.forEach((future)->future.cancel(false));
+            try{
+                file.close();
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
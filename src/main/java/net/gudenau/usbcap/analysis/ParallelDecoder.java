@@ -0,0 +1,222 @@
+package net.gudenau.usbcap.analysis;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.filter.Filter;
+import net.gudenau.usbcap.internal.CaptureReader;
+import net.gudenau.usbcap.internal.FilterChain;
+import net.gudenau.usbcap.internal.TimeHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decodes capture files on multiple threads.
+ *
+ * The file is split into chunks at points where the filters can safely start from scratch, every chunk is passed
+ * though its own set of filters on a fork-join pool and the results are handed back in the original order.
+ *
+ * Chunks start at a {@link ResetEvent} where possible. A chunk that grows too large without one is split at the next
+ * block boundary instead, the next chunk then decodes the block before it first without emitting anything so the
+ * transfers that cross into it are complete. Splitting at idle gaps can be enabled as well. Filters that track devices
+ * will not know about devices that were enumerated before a chunk or its warm up block, pass 0 as the maximum chunk
+ * size to only split at resets if that matters more than bounded memory use.
+ */
+public final class ParallelDecoder{
+    private final Supplier<List<Filter>> filters;
+    private final ForkJoinPool pool;
+    private final int minChunkSize;
+    private final int maxChunkSize;
+    private final long idleGap;
+    
+    /**
+     * Creates a new decoder that splits at resets and block boundaries and uses the common pool.
+     *
+     * @param filters Creates a new set of filters for every chunk
+     */
+    public ParallelDecoder(@NotNull Supplier<@NotNull List<@NotNull Filter>> filters){
+        this(filters, ForkJoinPool.commonPool(), 65536, 262144, 0);
+    }
+    
+    /**
+     * Creates a new decoder that splits chunks at block boundaries once they have 4 times the minimum amount of events.
+     *
+     * @param filters Creates a new set of filters for every chunk
+     * @param pool The pool to decode on
+     * @param minChunkSize The minimum amount of events in a chunk, avoids tiny chunks when resets are frequent
+     * @param idleGap The time in nanoseconds without any events after which a chunk can be split, 0 to disable
+     */
+    public ParallelDecoder(
+        @NotNull Supplier<@NotNull List<@NotNull Filter>> filters, @NotNull ForkJoinPool pool,
+        int minChunkSize, long idleGap
+    ){
+        this(filters, pool, minChunkSize, minChunkSize * 4, idleGap);
+    }
+    
+    /**
+     * Creates a new decoder.
+     *
+     * @param filters Creates a new set of filters for every chunk
+     * @param pool The pool to decode on
+     * @param minChunkSize The minimum amount of events in a chunk, avoids tiny chunks when resets are frequent
+     * @param maxChunkSize The amount of events after which a chunk is split at the next block boundary, 0 to disable
+     * @param idleGap The time in nanoseconds without any events after which a chunk can be split, 0 to disable
+     */
+    public ParallelDecoder(
+        @NotNull Supplier<@NotNull List<@NotNull Filter>> filters, @NotNull ForkJoinPool pool,
+        int minChunkSize, int maxChunkSize, long idleGap
+    ){
+        this.filters = Objects.requireNonNull(filters, "filters was null");
+        this.pool = Objects.requireNonNull(pool, "pool was null");
+        if(minChunkSize < 1){
+            throw new IllegalArgumentException("minChunkSize must be positive, got " + minChunkSize);
+        }
+        if(maxChunkSize != 0 && maxChunkSize < minChunkSize){
+            throw new IllegalArgumentException("maxChunkSize must be 0 or at least minChunkSize, got " + maxChunkSize);
+        }
+        if(idleGap < 0){
+            throw new IllegalArgumentException("idleGap was negative: " + idleGap);
+        }
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.idleGap = idleGap;
+    }
+    
+    /**
+     * Decodes a capture file and collects all of the decoded events.
+     *
+     * @param path The capture file
+     *
+     * @return The decoded events in order
+     *
+     * @throws IOException If the file could not be read
+     */
+    public @NotNull List<@NotNull Event> decode(@NotNull Path path) throws IOException{
+        List<Event> events = new ArrayList<>();
+        decode(path, events::add);
+        return events;
+    }
+    
+    /**
+     * Decodes a capture file and passes the decoded events to a consumer in order. The consumer is only invoked from
+     * the calling thread.
+     *
+     * @param path The capture file
+     * @param consumer The consumer for the decoded events
+     *
+     * @throws IOException If the file could not be read
+     */
+    public void decode(@NotNull Path path, @NotNull Consumer<@NotNull Event> consumer) throws IOException{
+        Objects.requireNonNull(path, "path was null");
+        Objects.requireNonNull(consumer, "consumer was null");
+        
+        // Keep enough chunks in flight to keep the pool busy without reading the entire file into memory.
+        int maxPending = pool.getParallelism() * 2;
+        Queue<ForkJoinTask<List<Event>>> pending = new ArrayDeque<>();
+        
+        try(var reader = new CaptureReader(Files.newByteChannel(path, StandardOpenOption.READ), pool)){
+            List<Event> warmUp = List.of();
+            List<Event> chunk = new ArrayList<>(minChunkSize);
+            // Where the block the last event belongs to starts in the chunk.
+            int blockStart = 0;
+            long lastTimestamp = 0;
+            Event event;
+            while((event = reader.next()) != null){
+                long timestamp = TimeHelper.timestamp(event);
+                boolean startsBlock = reader.startsBlock();
+                boolean clean = chunk.size() >= minChunkSize && (
+                    event instanceof ResetEvent ||
+                    (idleGap != 0 && lastTimestamp != 0 && timestamp - lastTimestamp >= idleGap)
+                );
+                boolean forced = !clean && maxChunkSize != 0 && chunk.size() >= maxChunkSize && startsBlock;
+                if(clean || forced){
+                    // The chunks are decoded at the same time, so the warm up gets its own buffer positions.
+                    List<Event> nextWarmUp = forced ? copy(chunk.subList(blockStart, chunk.size())) : List.of();
+                    var finishedWarmUp = warmUp;
+                    var finished = chunk;
+                    pending.add(pool.submit(()->decodeChunk(finishedWarmUp, finished)));
+                    warmUp = nextWarmUp;
+                    chunk = new ArrayList<>(minChunkSize);
+                    blockStart = 0;
+                    
+                    while(pending.size() >= maxPending){
+                        pending.remove().join().forEach(consumer);
+                    }
+                }
+                if(startsBlock){
+                    blockStart = chunk.size();
+                }
+                chunk.add(event);
+                lastTimestamp = timestamp;
+            }
+            
+            if(!chunk.isEmpty()){
+                var finishedWarmUp = warmUp;
+                var finished = chunk;
+                pending.add(pool.submit(()->decodeChunk(finishedWarmUp, finished)));
+            }
+            while(!pending.isEmpty()){
+                pending.remove().join().forEach(consumer);
+            }
+        }finally{
+            // Make sure nothing is left running if something went wrong.
+            pending.forEach((task)->task.cancel(false));
+        }
+    }
+    
+    /**
+     * Copies the packets of a warm up block so another chunk can decode them at the same time.
+     *
+     * @param events The raw events of the block
+     *
+     * @return The copied events
+     */
+    private static List<Event> copy(List<Event> events){
+        List<Event> copies = new ArrayList<>(events.size());
+        for(var event : events){
+            copies.add(event instanceof PacketEvent packet ? new PacketEvent(packet.buffer().duplicate(), packet.timestamp()) : event);
+        }
+        return copies;
+    }
+    
+    /**
+     * Passes a chunk though a new set of filters.
+     *
+     * @param warmUp The raw events before the chunk that only get the filters up to speed
+     * @param chunk The raw events of the chunk
+     *
+     * @return The decoded events
+     */
+    private List<Event> decodeChunk(List<Event> warmUp, List<Event> chunk){
+        var chain = new FilterChain();
+        filters.get().forEach(chain::add);
+        
+        List<Event> output = new ArrayList<>(chunk.size());
+        List<Event> pendingEvents = new ArrayList<>();
+        for(var event : warmUp){
+            pendingEvents.add(event);
+            chain.process(pendingEvents, output);
+            pendingEvents.clear();
+        }
+        // Everything the warm up completed was already emitted by the chunk before this one.
+        output.clear();
+        for(var event : chunk){
+            pendingEvents.add(event);
+            chain.process(pendingEvents, output);
+            pendingEvents.clear();
+        }
+        return output;
+    }
+}
@@ -0,0 +1,269 @@
+package net.gudenau.usbcap.analysis;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.event.SetupDataEvent;
+import net.gudenau.usbcap.filter.PacketFilter;
+import net.gudenau.usbcap.internal.AhoCorasick;
+import net.gudenau.usbcap.internal.CaptureBlocks;
+import net.gudenau.usbcap.internal.FilterChain;
+import net.gudenau.usbcap.internal.TimeHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Searches the payloads of a block based capture file for byte patterns on multiple threads.
+ *
+ * Every pattern is found in a single pass with an Aho-Corasick automaton. The file is split into ranges of blocks that
+ * are decoded with their own {@link PacketFilter} on a fork-join pool, each range starts decoding one block early so
+ * transactions that cross into it are complete.
+ *
+ * Payloads can either be searched one packet at a time or as transfers, where a pattern can span all of the packets of
+ * a transfer on the same endpoint and direction. A transfer ends with a packet that is shorter than the largest packet
+ * seen on the endpoint, a SETUP packet or a reset.
+ */
+public final class PayloadSearch{
+    private static final int RANGES_PER_THREAD = 4;
+    
+    private final List<byte[]> patterns;
+    private final AhoCorasick automaton;
+    private final boolean transfers;
+    private final ForkJoinPool pool;
+    
+    /**
+     * Creates a new search for transfer payloads that uses the common pool.
+     *
+     * @param patterns The patterns to find
+     */
+    public PayloadSearch(byte @NotNull [] @NotNull ... patterns){
+        this(List.of(patterns), true, ForkJoinPool.commonPool());
+    }
+    
+    /**
+     * Creates a new search.
+     *
+     * @param patterns The patterns to find
+     * @param transfers True to let patterns span the packets of a transfer, false to search every packet on its own
+     * @param pool The pool to search on
+     */
+    public PayloadSearch(@NotNull List<byte @NotNull []> patterns, boolean transfers, @NotNull ForkJoinPool pool){
+        Objects.requireNonNull(patterns, "patterns was null");
+        this.patterns = patterns.stream().map((pattern)->pattern.clone()).toList();
+        automaton = new AhoCorasick(this.patterns);
+        this.transfers = transfers;
+        this.pool = Objects.requireNonNull(pool, "pool was null");
+    }
+    
+    /**
+     * Searches a capture file and collects every match.
+     *
+     * @param path The capture file
+     *
+     * @return The matches in file order
+     *
+     * @throws IOException If the file could not be read
+     */
+    public @NotNull List<@NotNull Match> search(@NotNull Path path) throws IOException{
+        List<Match> matches = new ArrayList<>();
+        search(path, matches::add);
+        return matches;
+    }
+    
+    /**
+     * Searches a capture file and passes the matches to a consumer in file order. The consumer is only invoked from the
+     * calling thread.
+     *
+     * @param path The capture file
+     * @param consumer The consumer for the matches
+     *
+     * @throws IOException If the file could not be read
+     */
+    public void search(@NotNull Path path, @NotNull Consumer<@NotNull Match> consumer) throws IOException{
+        Objects.requireNonNull(path, "path was null");
+        Objects.requireNonNull(consumer, "consumer was null");
+        
+        List<ForkJoinTask<List<Match>>> tasks = new ArrayList<>();
+        try(var file = CaptureBlocks.open(path)){
+            var blocks = file.scan();
+            int ranges = Math.min(blocks.size(), pool.getParallelism() * RANGES_PER_THREAD);
+            for(int range = 0; range < ranges; range++){
+                int start = (int)((long)blocks.size() * range / ranges);
+                int end = (int)((long)blocks.size() * (range + 1) / ranges);
+                tasks.add(pool.submit(()->searchRange(file, blocks, start, end)));
+            }
+            
+            for(var task : tasks){
+                try{
+                    task.join().forEach(consumer);
+                }catch(UncheckedIOException e){
+                    throw e.getCause();
+                }
+            }
+        }finally{
+            // Make sure nothing is left running if something went wrong.
+            tasks.forEach((task)->task.cancel(false));
+        }
+    }
+    
+    /**
+     * Searches a range of blocks.
+     *
+     * @param file The capture file
+     * @param blocks The data blocks of the file
+     * @param start The first block of the range
+     * @param end The block after the last block of the range
+     *
+     * @return The matches in the range
+     */
+    private List<Match> searchRange(CaptureBlocks file, List<CaptureBlocks.Block> blocks, int start, int end){
+        var chain = new FilterChain();
+        chain.add(new PacketFilter());
+        var state = new SearchState();
+        List<Event> pendingEvents = new ArrayList<>();
+        List<Event> output = new ArrayList<>();
+        
+        for(int index = Math.max(0, start - 1); index < end; index++){
+            var block = blocks.get(index);
+            ByteBuffer records;
+            try{
+                records = file.read(block);
+            }catch(IOException e){
+                throw new UncheckedIOException(e);
+            }
+            
+            // The block before the range is only used to get the filters and transfers up to speed.
+            List<Match> matches = index < start ? null : state.matches;
+            long event = block.firstEvent();
+            while(records.hasRemaining()){
+                var raw = CaptureBlocks.readRecord(records, file.timed());
+                long timestamp = TimeHelper.timestamp(raw);
+                if(raw instanceof ResetEvent){
+                    state.reset();
+                }
+                
+                pendingEvents.add(raw);
+                chain.process(pendingEvents, output);
+                pendingEvents.clear();
+                for(var decoded : output){
+                    if(decoded instanceof SetupDataEvent setup){
+                        state.setup(setup.address());
+                        search(state, matches, event, timestamp, setup.address(), setup.endpoint(), DataEvent.Direction.OUT, true, setup.data());
+                    }else if(decoded instanceof DataEvent data){
+                        search(state, matches, event, timestamp, data.address(), data.endpoint(), data.direction(), false, data.data());
+                    }
+                }
+                output.clear();
+                event++;
+            }
+        }
+        return state.matches;
+    }
+    
+    /**
+     * Runs the automaton over the payload of a single packet.
+     *
+     * @param state The state of the range
+     * @param matches Where to add the matches or null to only advance the transfer state
+     * @param event The index of the raw event that completed the packet
+     * @param timestamp The timestamp of the raw event
+     * @param address The address of the device
+     * @param endpoint The endpoint
+     * @param direction The direction of the packet
+     * @param setup True if this is the payload of a SETUP packet
+     * @param payload The payload of the packet
+     */
+    private void search(
+        SearchState state, List<Match> matches, long event, long timestamp,
+        int address, int endpoint, DataEvent.Direction direction, boolean setup, ByteBuffer payload
+    ){
+        int pipe = (((address << 4) | (endpoint & 0x0F)) << 1) | (direction == DataEvent.Direction.IN ? 1 : 0);
+        int length = payload.capacity();
+        int current = transfers && !setup ? state.pipes[pipe] : automaton.start();
+        
+        for(int offset = 0; offset < length; offset++){
+            current = automaton.next(current, payload.get(offset));
+            if(matches != null){
+                for(int pattern : automaton.matches(current)){
+                    matches.add(new Match(
+                        pattern, event, offset + 1 - automaton.length(pattern), timestamp,
+                        address, endpoint, direction, setup
+                    ));
+                }
+            }
+        }
+        
+        if(transfers && !setup){
+            // A short packet ends the transfer.
+            if(length == 0 || length < state.maxPacketSizes[pipe]){
+                current = automaton.start();
+            }
+            state.maxPacketSizes[pipe] = Math.max(state.maxPacketSizes[pipe], length);
+            state.pipes[pipe] = current;
+        }
+    }
+    
+    /**
+     * Gets the patterns this search is looking for.
+     *
+     * @return The patterns, indexed the same way as {@link Match#pattern()}
+     */
+    public @NotNull List<byte @NotNull []> patterns(){
+        return patterns.stream().map((pattern)->pattern.clone()).toList();
+    }
+    
+    /**
+     * The automaton state of every pipe in a range and the matches found so far.
+     */
+    private static final class SearchState{
+        private final int[] pipes = new int[128 * 16 * 2];
+        private final int[] maxPacketSizes = new int[128 * 16 * 2];
+        private final List<Match> matches = new ArrayList<>();
+        
+        /**
+         * Ends every transfer, used after a bus reset.
+         */
+        private void reset(){
+            Arrays.fill(pipes, 0);
+            Arrays.fill(maxPacketSizes, 0);
+        }
+        
+        /**
+         * Ends the transfers of the control endpoint of a device, a SETUP packet starts a new control transfer.
+         *
+         * @param address The address of the device
+         */
+        private void setup(int address){
+            pipes[address << 5] = 0;
+            pipes[(address << 5) | 1] = 0;
+        }
+    }
+    
+    /**
+     * A single occurrence of a pattern.
+     *
+     * @param pattern The index of the pattern that was found
+     * @param event The index of the raw event in the capture file that completed the packet the match ends in
+     * @param offset Where the match starts in the payload of that packet, negative if it started in an earlier packet of
+     *               the same transfer
+     * @param timestamp The timestamp of the event in nanoseconds since the Unix epoch
+     * @param address The address of the device
+     * @param endpoint The endpoint of the device
+     * @param direction The direction of the transfer
+     * @param setup True if the match is in the payload of a SETUP packet
+     */
+    public record Match(
+        int pattern, long event, int offset, long timestamp,
+        int address, int endpoint, @NotNull DataEvent.Direction direction, boolean setup
+    ){}
+}
@@ -5,7 +5,13 @@ import java.util.*;
 import net.gudenau.usbcap.UsbSpeed;
 import net.gudenau.usbcap.event.Event;
 import net.gudenau.usbcap.filter.Filter;
+import net.gudenau.usbcap.internal.FilterChain;
+import net.gudenau.usbcap.internal.jfr.CaptureReadEvent;
+import net.gudenau.usbcap.internal.jfr.DecodedTransfersEvent;
+import net.gudenau.usbcap.internal.jfr.FilterDispatchEvent;
+import net.gudenau.usbcap.metrics.CaptureMetrics;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A simple abstract capture device to ease driver development.
@@ -13,8 +19,9 @@ import org.jetbrains.annotations.NotNull;
  * Warning, if you need thread safety this is not for you.
  */
 public abstract class AbstractCaptureDevice implements CaptureDevice{
-    private final List<Filter> filters = new ArrayList<>();
+    private final FilterChain filters = new FilterChain();
     private volatile boolean opened = false;
+    private CaptureMetrics metrics = null;
     
     @Override
     public final void open() throws IOException{
@@ -69,7 +76,12 @@ public abstract class AbstractCaptureDevice implements CaptureDevice{
     /**
      * All of the pending events we have.
      */
-    private final Queue<Event> eventBuffer = new LinkedList<>();
+    private final Queue<Event> eventBuffer = new ArrayDeque<>();
+    
+    /**
+     * The events of the batch that is being passed through the filters, reused for every batch.
+     */
+    private final List<Event> pendingEvents = new ArrayList<>();
     
     @Override
     public final Event captureEvent() throws IOException{
@@ -83,42 +95,43 @@ public abstract class AbstractCaptureDevice implements CaptureDevice{
         // We want to return an event, if one isn't generated we need to keep checking...
         // TODO Make some sort of timeout or cancel method
         while(eventBuffer.isEmpty()){
-            List<Event> pendingEvents = new LinkedList<>();
+            pendingEvents.clear();
+            var metrics = this.metrics;
+            long start = metrics == null ? 0 : System.nanoTime();
+            var read = new CaptureReadEvent();
+            read.begin();
             while(pendingEvents.isEmpty()){
                 // Get events from the device implementation
                 doCaptureEvent(pendingEvents);
             }
+            read.end();
+            int captured = pendingEvents.size();
+            if(metrics != null){
+                metrics.recordBatch(captured, System.nanoTime() - start);
+            }
+            if(read.shouldCommit()){
+                read.device = getClass().getName();
+                read.events = captured;
+                read.commit();
+            }
         
-            // The jank filter code, there is likely a much better way to handle this
-            
-            int index = 0;
-            outer:
-            while(index < pendingEvents.size()){
-                // Get the oldest pending event
-                var event = pendingEvents.get(index);
-                // Just in case
-                assert (event != null) : new IllegalStateException("null event");
-                
-                // Pass the event though the filters.
-                for(var filter : filters){
-                    // Tell the event to reset, cleans up reads and writes to Buffers.
-                    event.reset();
-                    // Pass the event to a filter
-                    var shouldRemove = filter.handleEvent(event);
-                    // Insert all of the events the filter generated after the current event.
-                    pendingEvents.addAll(index + 1, filter.getPendingEvents());
-                    
-                    // If the filter wants the event to be removed we don't have to keep passing it to other filters.
-                    if(shouldRemove){
-                        index++;
-                        continue outer;
-                    }
-                }
-                
-                // The event made it all the way through the filter chain, pass it along to the consumer.
-                index++;
-                eventBuffer.add(event);
+            // Pass the events though the filters
+            var dispatch = new FilterDispatchEvent();
+            dispatch.begin();
+            filters.process(pendingEvents, eventBuffer);
+            dispatch.end();
+            if(metrics != null){
+                metrics.recordOccupancy(eventBuffer.size());
             }
+            if(dispatch.shouldCommit()){
+                dispatch.filters = filters.filters().size();
+                dispatch.eventsIn = captured;
+                dispatch.eventsProcessed = pendingEvents.size();
+                dispatch.eventsOut = eventBuffer.size();
+                dispatch.commit();
+            }
+            // The buffer was empty before this batch, everything in it came out of the filters just now.
+            DecodedTransfersEvent.record(eventBuffer);
         }
     
         return eventBuffer.remove();
@@ -133,6 +146,71 @@ public abstract class AbstractCaptureDevice implements CaptureDevice{
      */
     protected abstract void doCaptureEvent(List<Event> eventBuffer) throws IOException;
     
+    /**
+     * Gets the filters that events are passed through, in order.
+     *
+     * @return An unmodifiable view of the filters
+     */
+    protected final List<Filter> getFilters(){
+        return filters.filters();
+    }
+    
+    /**
+     * Passes events through the filters to update their state and throws away whatever comes out, along with any events
+     * that have not been consumed yet. Used when jumping to a different position in a capture.
+     *
+     * @param events The events to pass through the filters
+     */
+    protected final void discardEvents(List<Event> events){
+        eventBuffer.clear();
+        List<Event> pendingEvents = new ArrayList<>();
+        List<Event> output = new ArrayList<>();
+        for(var event : events){
+            pendingEvents.add(event);
+            filters.process(pendingEvents, output);
+            pendingEvents.clear();
+            output.clear();
+        }
+    }
+    
+    @Override
+    public final @NotNull CaptureMetrics enableMetrics(@NotNull String name){
+        var metrics = new CaptureMetrics(name);
+        var old = this.metrics;
+        // The old beans may use the same name, they are put back if the new ones can not be registered.
+        if(old != null){
+            old.unregister();
+        }
+        try{
+            filters.metrics(metrics);
+        }catch(IllegalStateException e){
+            if(old != null){
+                try{
+                    old.register();
+                }catch(IllegalStateException suppressed){
+                    e.addSuppressed(suppressed);
+                }
+            }
+            throw e;
+        }
+        this.metrics = metrics;
+        return metrics;
+    }
+    
+    @Override
+    public final void disableMetrics(){
+        if(metrics != null){
+            filters.metrics(null);
+            metrics.unregister();
+            metrics = null;
+        }
+    }
+    
+    @Override
+    public final @Nullable CaptureMetrics getMetrics(){
+        return metrics;
+    }
+    
     @Override
     public final void close() throws IOException{
         // Do nothing if not open
@@ -140,6 +218,7 @@ public abstract class AbstractCaptureDevice implements CaptureDevice{
             return;
         }
     
+        disableMetrics();
         doClose();
     }
     
@@ -6,7 +6,9 @@ import java.util.Objects;
 import net.gudenau.usbcap.UsbSpeed;
 import net.gudenau.usbcap.event.Event;
 import net.gudenau.usbcap.filter.Filter;
+import net.gudenau.usbcap.metrics.CaptureMetrics;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 /**
  * A device that is capable of capturing USB packets.
@@ -98,5 +100,36 @@ public interface CaptureDevice extends AutoCloseable{
      */
     Event captureEvent() throws IOException;
     
+    /**
+     * Starts recording metrics for this device and its filters and registers them as JMX beans.
+     *
+     * Metrics are off by default, while they are off the filter chain does not measure anything. If metrics are already
+     * enabled they are replaced, the current metrics are kept if the new ones could not be registered.
+     *
+     * @param name The name of the device in the JMX bean names
+     *
+     * @return The metrics of this device
+     *
+     * @throws IllegalStateException If the JMX beans could not be registered
+     * @throws UnsupportedOperationException If this device does not record metrics
+     */
+    default @NotNull CaptureMetrics enableMetrics(@NotNull String name){
+        throw new UnsupportedOperationException(getClass().getName() + " does not record metrics");
+    }
+    
+    /**
+     * Stops recording metrics and unregisters the JMX beans, does nothing if metrics are not enabled.
+     */
+    default void disableMetrics(){}
+    
+    /**
+     * Gets the metrics of this device.
+     *
+     * @return The metrics or null if they are not enabled
+     */
+    default @Nullable CaptureMetrics getMetrics(){
+        return null;
+    }
+    
     @Override void close() throws IOException;
 }
@@ -1,30 +1,42 @@
 package net.gudenau.usbcap.capture;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ForkJoinPool;
 import net.gudenau.usbcap.UsbSpeed;
 import net.gudenau.usbcap.event.Event;
-import net.gudenau.usbcap.event.PacketEvent;
-import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.filter.Checkpointable;
+import net.gudenau.usbcap.internal.CaptureCheckpoint;
+import net.gudenau.usbcap.internal.CaptureReader;
+import net.gudenau.usbcap.internal.CaptureSegments;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Reads USB packets that where previously captured from a file.
  *
- * The format is [signed int length][payload length bytes long]
+ * The original format is [signed int length][payload length bytes long], a length of -1 is for a reset event.
  *
- * A length of -1 is for a reset event.
+ * Files written by {@link net.gudenau.usbcap.filter.CaptureFilter} group these records into blocks that may be
+ * compressed, those blocks are decompressed ahead of time in the background.
+ *
+ * If the path is a directory of segments written by {@link net.gudenau.usbcap.filter.RollingCaptureFilter} the
+ * segments are read one after the other as a single capture, segments that are finished while reading are picked up
+ * as well.
+ *
+ * Files with filter checkpoints can be seeked with {@link #seek(long)}.
  */
 public final class FileCaptureDevice extends AbstractCaptureDevice{
     private final Path path;
-    private final ByteBuffer lengthBuffer = ByteBuffer.allocateDirect(Integer.BYTES);
-    private SeekableByteChannel channel;
+    private final Queue<Path> segments = new ArrayDeque<>();
+    private long lastSegment = -1;
+    private CaptureReader reader;
     
     /**
      * Creates a new capture device from the provided path.
@@ -38,7 +50,114 @@ public final class FileCaptureDevice extends AbstractCaptureDevice{
     
     @Override
     public void doOpen() throws IOException{
-        channel = Files.newByteChannel(path, StandardOpenOption.READ);
+        if(Files.isDirectory(path)){
+            if(!nextSegment()){
+                throw new IOException("No capture segments in " + path);
+            }
+        }else{
+            reader = openReader(path);
+        }
+    }
+    
+    /**
+     * Opens a capture file.
+     *
+     * @param path The path of the file
+     *
+     * @return The reader for the file
+     *
+     * @throws IOException If the file could not be opened
+     */
+    private static CaptureReader openReader(Path path) throws IOException{
+        var channel = Files.newByteChannel(path, StandardOpenOption.READ);
+        try{
+            return new CaptureReader(channel, ForkJoinPool.commonPool());
+        }catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Moves on to the next segment of a segment directory.
+     *
+     * @return False if there are no more segments
+     *
+     * @throws IOException If the segment could not be opened
+     */
+    private boolean nextSegment() throws IOException{
+        if(segments.isEmpty()){
+            for(var segment : CaptureSegments.list(path)){
+                if(CaptureSegments.index(segment) > lastSegment){
+                    segments.add(segment);
+                }
+            }
+            if(segments.isEmpty()){
+                return false;
+            }
+        }
+        
+        var segment = segments.remove();
+        lastSegment = CaptureSegments.index(segment);
+        if(reader != null){
+            reader.close();
+        }
+        reader = openReader(segment);
+        return true;
+    }
+    
+    /**
+     * Jumps to an event in a capture file that contains checkpoints. The state of every {@link Checkpointable} filter
+     * of this device is restored from the closest checkpoint before the event, the events between the checkpoint and
+     * the requested event are passed through the filters and thrown away.
+     *
+     * @param event The index of the event to jump to
+     *
+     * @throws IOException If the device is not open, the file has no usable checkpoint or the file could not be read
+     */
+    public void seek(long event) throws IOException{
+        if(event < 0){
+            throw new IllegalArgumentException("event was negative: " + event);
+        }
+        if(reader == null){
+            throw new IOException("USB capture device was not open");
+        }
+        if(lastSegment != -1){
+            throw new IOException("Segment directories can not be seeked");
+        }
+        
+        var filters = new ArrayList<Checkpointable>();
+        for(var filter : getFilters()){
+            if(filter instanceof Checkpointable checkpointable){
+                filters.add(checkpointable);
+            }
+        }
+        
+        // Nothing is touched until it is known that the seek can work.
+        var checkpoint = reader.findCheckpoint(event);
+        if(checkpoint == null && !filters.isEmpty()){
+            throw new IOException("No checkpoint at or before event " + event);
+        }
+        if(checkpoint != null){
+            var current = CaptureCheckpoint.save(reader.nextEvent(), filters);
+            try{
+                checkpoint.restore(filters);
+            }catch(IllegalArgumentException e){
+                current.restore(filters);
+                throw new IOException("Failed to restore checkpoint", e);
+            }
+        }
+        reader.seek(checkpoint);
+        
+        var skipped = new ArrayList<Event>();
+        while(reader.nextEvent() < event){
+            var skippedEvent = reader.next();
+            if(skippedEvent == null){
+                throw new IOException("End of recorded data");
+            }
+            skipped.add(skippedEvent);
+        }
+        discardEvents(skipped);
     }
     
     // NOP
@@ -47,30 +166,18 @@ public final class FileCaptureDevice extends AbstractCaptureDevice{
     
     @Override
     protected void doCaptureEvent(List<Event> eventBuffer) throws IOException{
-        if(channel.position() == channel.size()){
-            throw new IOException("End of recorded data");
+        var event = reader.next();
+        while(event == null && lastSegment != -1 && nextSegment()){
+            event = reader.next();
         }
-        
-        lengthBuffer.clear();
-        read(lengthBuffer);
-        int eventSize = lengthBuffer.getInt(0);
-        if(eventSize == -1){
-            eventBuffer.add(new ResetEvent());
-        }else{
-            var payload = ByteBuffer.allocate(eventSize);
-            read(payload);
-            eventBuffer.add(new PacketEvent(payload));
-        }
-    }
-    
-    private void read(ByteBuffer buffer) throws IOException{
-        while(buffer.hasRemaining()){
-            channel.read(buffer);
+        if(event == null){
+            throw new IOException("End of recorded data");
         }
+        eventBuffer.add(event);
     }
     
     @Override
     protected void doClose() throws IOException{
-        channel.close();
+        reader.close();
     }
 }
@@ -3,27 +3,41 @@ package net.gudenau.usbcap.capture;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.ProtocolException;
 import java.net.ServerSocket;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 import net.gudenau.usbcap.UsbSpeed;
 import net.gudenau.usbcap.event.Event;
 import net.gudenau.usbcap.event.PacketEvent;
 import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.jfr.NetworkReceiveEvent;
 
 /**
  * Creates a server for a client to connect to, allowing for remote packet capture over a network.
+ *
+ * If the connection drops the server waits for the client to reconnect, the client then resends every event after the
+ * last one this device received. Connections that do not complete the handshake are dropped and the server keeps
+ * waiting for the real client.
  */
 public final class NetworkCaptureDevice extends AbstractCaptureDevice{
-    private static final long MAGIC_A = 0x7653B03E21444C9AL;
-    private static final long MAGIC_B = 0xC35457DD810F2342L;
+    // Changed whenever the frame format changes, so mismatched peers fail the handshake instead of misparsing frames.
+    private static final long MAGIC_A = 0x1F6A93C25D0E47B8L;
+    private static final long MAGIC_B = 0xA4D03B7E6C1958F2L;
+    private static final int HANDSHAKE_TIMEOUT = 10000;
     
-    private Socket socket = null;
     private final int port;
+    private final int reconnectTimeout;
+    private ServerSocket server = null;
+    private Socket socket = null;
     private InputStream input;
     private OutputStream output;
+    private long sequence = -1;
+    private NetworkReceiveEvent receiveEvent = null;
     
     /**
      * Creates a new capture device that listens on the default port, 8765.
@@ -38,35 +52,126 @@ public final class NetworkCaptureDevice extends AbstractCaptureDevice{
      * @param port The port to listen on
      */
     public NetworkCaptureDevice(int port){
+        this(port, 60000);
+    }
+    
+    /**
+     * Creates a new capture device that listens on the provided port.
+     *
+     * @param port The port to listen on
+     * @param reconnectTimeout How long to wait for the client to reconnect in milliseconds, 0 to wait forever
+     */
+    public NetworkCaptureDevice(int port, int reconnectTimeout){
+        if(reconnectTimeout < 0){
+            throw new IllegalArgumentException("reconnectTimeout was negative: " + reconnectTimeout);
+        }
         this.port = port;
+        this.reconnectTimeout = reconnectTimeout;
     }
     
     @Override
     public void doOpen() throws IOException{
-        // We only want a single connection.
-        try(var server = new ServerSocket(port)){
-            socket = server.accept();
-        }
+        server = new ServerSocket(port);
         try{
-            input = socket.getInputStream();
-            output = socket.getOutputStream();
-            byte[] data = new byte[8];
-            // Small handshake to ensure some sanity.
-            ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
-            buffer.putLong(0, MAGIC_A);
-            write(data);
-            read(data);
-            if(buffer.getLong(0) != MAGIC_B){
-                throw new IOException("Bad magic received");
-            }
+            accept(0);
         }catch(IOException e){
             try{
-                close();
+                doClose();
             }catch(IOException ignored){}
             throw e;
         }
     }
     
+    /**
+     * Accepts connections until a client completes the handshake, connections that fail it are dropped.
+     *
+     * @param timeout How long to wait for a client in milliseconds, 0 to wait forever
+     *
+     * @throws SocketTimeoutException If no client completed the handshake in time
+     * @throws IOException If the server socket failed
+     */
+    private void accept(int timeout) throws IOException{
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while(true){
+            if(timeout == 0){
+                server.setSoTimeout(0);
+            }else{
+                long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if(remaining <= 0){
+                    throw new SocketTimeoutException("No client completed the handshake in time");
+                }
+                server.setSoTimeout((int)remaining);
+            }
+            
+            var socket = server.accept();
+            try{
+                handshake(socket);
+                this.socket = socket;
+                return;
+            }catch(IOException e){
+                // Not our client or it went away during the handshake, keep waiting for the real one.
+                try{
+                    socket.close();
+                }catch(IOException ignored){}
+            }
+        }
+    }
+    
+    /**
+     * Checks that the client speaks the same protocol and tells it where to resume from.
+     *
+     * @param socket The newly accepted connection
+     *
+     * @throws IOException If the handshake failed or timed out
+     */
+    private void handshake(Socket socket) throws IOException{
+        socket.setKeepAlive(true);
+        socket.setSoTimeout(HANDSHAKE_TIMEOUT);
+        input = socket.getInputStream();
+        output = socket.getOutputStream();
+        byte[] data = new byte[8];
+        // Small handshake to ensure some sanity.
+        ByteBuffer buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.putLong(0, MAGIC_A);
+        write(data);
+        read(data);
+        if(buffer.getLong(0) != MAGIC_B){
+            throw new ProtocolException("Bad magic received");
+        }
+        // Let the client know what the last event we got was.
+        buffer.putLong(0, sequence);
+        write(data);
+        // Events can be far apart, only the handshake is expected to be quick.
+        socket.setSoTimeout(0);
+    }
+    
+    /**
+     * Drops the current connection and waits for the client to connect again.
+     *
+     * @param cause The reason the connection was dropped
+     *
+     * @throws IOException If the client did not reconnect in time
+     */
+    private void reconnect(IOException cause) throws IOException{
+        var jfr = receiveEvent();
+        if(jfr != null){
+            jfr.reconnects++;
+        }
+        try{
+            socket.close();
+        }catch(IOException e){
+            cause.addSuppressed(e);
+        }
+        socket = null;
+        
+        try{
+            accept(reconnectTimeout);
+        }catch(SocketTimeoutException e){
+            cause.addSuppressed(e);
+            throw cause;
+        }
+    }
+    
     /**
      * Small helper to read a byte array from the socket.
      *
@@ -97,13 +202,40 @@ public final class NetworkCaptureDevice extends AbstractCaptureDevice{
     
     @Override
     protected void doCaptureEvent(List<Event> eventBuffer) throws IOException{
+        while(true){
+            try{
+                if(readEvent(eventBuffer)){
+                    return;
+                }
+            }catch(ProtocolException e){
+                throw e;
+            }catch(IOException e){
+                reconnect(e);
+            }
+        }
+    }
+    
+    /**
+     * Reads a single event from the socket.
+     *
+     * @param eventBuffer The list to add the event to
+     *
+     * @return False if the event was a duplicate that was resent after a reconnect
+     *
+     * @throws IOException If the event could not be read
+     */
+    private boolean readEvent(List<Event> eventBuffer) throws IOException{
         int length;
         byte type;
+        long sequence;
+        long timestamp;
         {
-            byte[] data = new byte[5];
+            byte[] data = new byte[21];
             read(data);
             var buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
             type = buffer.get();
+            sequence = buffer.getLong();
+            timestamp = buffer.getLong();
             length = buffer.getInt();
         }
         
@@ -114,17 +246,74 @@ public final class NetworkCaptureDevice extends AbstractCaptureDevice{
             buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
         }
         
+        var jfr = receiveEvent();
+        if(jfr != null){
+            jfr.frames++;
+            jfr.bytes += 21 + Math.max(length, 0);
+            if(sequence <= this.sequence){
+                jfr.duplicates++;
+            }
+            if(jfr.frames >= NetworkReceiveEvent.BATCH_SIZE){
+                commitReceiveEvent();
+            }
+        }
+        
+        if(sequence <= this.sequence){
+            return false;
+        }else if(sequence != this.sequence + 1){
+            throw new ProtocolException("Missed events, expected " + (this.sequence + 1) + " and got " + sequence);
+        }
+        
         eventBuffer.add(switch(type){
-            case 0 -> new ResetEvent();
-            case 1 -> new PacketEvent(buffer);
-            default -> throw new IOException("Unknown event type: " + type);
+            case 0 -> new ResetEvent(timestamp);
+            case 1 -> new PacketEvent(buffer, timestamp);
+            default -> throw new ProtocolException("Unknown event type: " + type);
         });
+        this.sequence = sequence;
+        return true;
+    }
+    
+    /**
+     * Gets the JFR event that received frames are currently aggregated into, starting a new one if needed.
+     *
+     * @return The event or null if it is disabled
+     */
+    private NetworkReceiveEvent receiveEvent(){
+        if(receiveEvent == null){
+            var event = new NetworkReceiveEvent();
+            if(!event.isEnabled()){
+                return null;
+            }
+            event.begin();
+            receiveEvent = event;
+        }
+        return receiveEvent;
+    }
+    
+    /**
+     * Commits the current JFR event if there is one.
+     */
+    private void commitReceiveEvent(){
+        if(receiveEvent != null){
+            receiveEvent.end();
+            if(receiveEvent.shouldCommit()){
+                receiveEvent.commit();
+            }
+            receiveEvent = null;
+        }
     }
     
     @Override
     public void doClose() throws IOException{
-        if(socket != null){
-            socket.close();
+        commitReceiveEvent();
+        try{
+            if(socket != null){
+                socket.close();
+            }
+        }finally{
+            if(server != null){
+                server.close();
+            }
         }
     }
 }
@@ -0,0 +1,262 @@
+package net.gudenau.usbcap.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.ChannelInput;
+import org.jetbrains.annotations.NotNull;
+
+import static net.gudenau.usbcap.internal.PcapngFormat.*;
+
+/**
+ * Reads USB packets from a pcapng file with one of the USB 2.0 link types, like the ones written by
+ * {@link net.gudenau.usbcap.filter.PcapngFilter} or Wireshark.
+ *
+ * Packets from interfaces with other link types are skipped. Empty packets are turned into reset events.
+ */
+public final class PcapngCaptureDevice extends AbstractCaptureDevice{
+    private final Path path;
+    private final List<Interface> interfaces = new ArrayList<>();
+    private ChannelInput input;
+    private ByteBuffer buffer;
+    
+    /**
+     * Creates a new capture device from the provided path.
+     *
+     * @param path The path of the file to read
+     */
+    public PcapngCaptureDevice(@NotNull Path path){
+        Objects.requireNonNull(path, "path was null");
+        this.path = path.toAbsolutePath();
+    }
+    
+    @Override
+    public void doOpen() throws IOException{
+        input = new ChannelInput(Files.newByteChannel(path, StandardOpenOption.READ));
+        buffer = input.buffer();
+        if(!input.fill(12) || buffer.getInt(buffer.position()) != BLOCK_SECTION_HEADER){
+            input.close();
+            throw new IOException("Not a pcapng file: " + path);
+        }
+    }
+    
+    // NOP
+    @Override
+    protected void doBeginCapture(UsbSpeed speed){}
+    
+    @Override
+    protected void doCaptureEvent(List<Event> eventBuffer) throws IOException{
+        while(eventBuffer.isEmpty()){
+            if(!input.fill(8)){
+                throw new IOException("End of recorded data");
+            }
+            
+            int start = buffer.position();
+            int type = buffer.getInt(start);
+            if(type == BLOCK_SECTION_HEADER){
+                readSectionHeader();
+                continue;
+            }
+            
+            int length = buffer.getInt(start + 4);
+            if(length < 12 || (length & 3) != 0){
+                throw new IOException("Bad pcapng block length: " + length);
+            }
+            switch(type){
+                case BLOCK_INTERFACE_DESCRIPTION -> readInterface(length);
+                case BLOCK_ENHANCED_PACKET -> readEnhancedPacket(length, eventBuffer);
+                case BLOCK_SIMPLE_PACKET -> readSimplePacket(length, eventBuffer);
+                default -> input.skip(length);
+            }
+        }
+    }
+    
+    /**
+     * Starts a new section, which can change the byte order and drops all known interfaces.
+     *
+     * @throws IOException If the block could not be read
+     */
+    private void readSectionHeader() throws IOException{
+        if(!input.fill(12)){
+            throw new IOException("Truncated pcapng section header");
+        }
+        
+        int start = buffer.position();
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        int magic = buffer.getInt(start + 8);
+        if(magic == Integer.reverseBytes(BYTE_ORDER_MAGIC)){
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+        }else if(magic != BYTE_ORDER_MAGIC){
+            throw new IOException("Bad pcapng byte order magic");
+        }
+        
+        interfaces.clear();
+        input.skip(buffer.getInt(start + 4));
+    }
+    
+    /**
+     * Reads an interface description, only the link type and timestamp resolution matter.
+     *
+     * @param length The length of the block
+     *
+     * @throws IOException If the block could not be read
+     */
+    private void readInterface(int length) throws IOException{
+        if(!input.fill(length)){
+            throw new IOException("Truncated pcapng interface description");
+        }
+        
+        int start = buffer.position();
+        int linkType = Short.toUnsignedInt(buffer.getShort(start + 8));
+        int resolution = 6;
+        // Walk the options looking for the timestamp resolution
+        int offset = start + 16;
+        int end = start + length - 4;
+        while(offset + 4 <= end){
+            int code = Short.toUnsignedInt(buffer.getShort(offset));
+            int optionLength = Short.toUnsignedInt(buffer.getShort(offset + 2));
+            if(code == OPTION_END){
+                break;
+            }else if(code == OPTION_IF_TSRESOL && optionLength >= 1){
+                resolution = Byte.toUnsignedInt(buffer.get(offset + 4));
+                // A tick of 2^-64 seconds or less does not fit the 64 bit timestamps
+                if((resolution & 0x80) != 0 && (resolution & 0x7F) >= 64){
+                    throw new IOException("Unsupported pcapng timestamp resolution: 2^-" + (resolution & 0x7F));
+                }
+            }
+            offset += 4 + ((optionLength + 3) & ~3);
+        }
+        
+        interfaces.add(new Interface(
+            linkType == LINKTYPE_USB_2_0 || linkType == LINKTYPE_USB_2_0_LOW_SPEED ||
+                linkType == LINKTYPE_USB_2_0_FULL_SPEED || linkType == LINKTYPE_USB_2_0_HIGH_SPEED,
+            resolution
+        ));
+        input.skip(length);
+    }
+    
+    /**
+     * Reads an enhanced packet block.
+     *
+     * @param length The length of the block
+     * @param eventBuffer The list to add the event to
+     *
+     * @throws IOException If the block could not be read
+     */
+    private void readEnhancedPacket(int length, List<Event> eventBuffer) throws IOException{
+        if(!input.fill(28)){
+            throw new IOException("Truncated pcapng packet");
+        }
+        
+        int start = buffer.position();
+        int interfaceId = buffer.getInt(start + 8);
+        long timestamp = ((long)buffer.getInt(start + 12) << 32) | Integer.toUnsignedLong(buffer.getInt(start + 16));
+        int capturedLength = buffer.getInt(start + 20);
+        // The packet data sits between the 28 byte header and the 4 byte trailing length
+        if(capturedLength < 0 || capturedLength > length - 32){
+            throw new IOException("Bad pcapng captured length: " + capturedLength);
+        }
+        if(interfaceId < 0 || interfaceId >= interfaces.size()){
+            throw new IOException("Packet for unknown pcapng interface " + interfaceId);
+        }
+        var iface = interfaces.get(interfaceId);
+        if(!iface.usb()){
+            input.skip(length);
+            return;
+        }
+        
+        input.skip(28);
+        timestamp = iface.toNanoseconds(timestamp);
+        if(capturedLength == 0){
+            eventBuffer.add(new ResetEvent(timestamp));
+        }else{
+            eventBuffer.add(new PacketEvent(ByteBuffer.wrap(input.readBytes(capturedLength)), timestamp));
+        }
+        input.skip(length - 28 - capturedLength);
+    }
+    
+    /**
+     * Reads a simple packet block, these belong to the first interface and have no timestamp.
+     *
+     * @param length The length of the block
+     * @param eventBuffer The list to add the event to
+     *
+     * @throws IOException If the block could not be read
+     */
+    private void readSimplePacket(int length, List<Event> eventBuffer) throws IOException{
+        if(interfaces.isEmpty() || !interfaces.get(0).usb()){
+            input.skip(length);
+            return;
+        }
+        
+        if(!input.fill(12)){
+            throw new IOException("Truncated pcapng packet");
+        }
+        int capturedLength = Math.min(buffer.getInt(buffer.position() + 8), length - 16);
+        if(capturedLength < 0){
+            throw new IOException("Bad pcapng captured length: " + capturedLength);
+        }
+        input.skip(12);
+        if(capturedLength == 0){
+            eventBuffer.add(new ResetEvent(0));
+        }else{
+            eventBuffer.add(new PacketEvent(ByteBuffer.wrap(input.readBytes(capturedLength)), 0));
+        }
+        input.skip(length - 12 - capturedLength);
+    }
+    
+    @Override
+    protected void doClose() throws IOException{
+        input.close();
+    }
+    
+    /**
+     * The parts of an interface description we care about.
+     *
+     * @param usb True if the interface has a USB 2.0 link type
+     * @param resolution The raw if_tsresol value
+     */
+    private record Interface(boolean usb, int resolution){
+        /**
+         * Converts a timestamp of this interface into nanoseconds.
+         *
+         * @param timestamp The raw timestamp
+         *
+         * @return The timestamp in nanoseconds
+         */
+        long toNanoseconds(long timestamp){
+            int exponent = resolution & 0x7F;
+            if((resolution & 0x80) != 0){
+                // Ticks finer than 2^-32 seconds are a fraction of a nanosecond, dropping them keeps the fraction below
+                // from overflowing
+                if(exponent > 32){
+                    timestamp >>>= exponent - 32;
+                    exponent = 32;
+                }
+                // Negative power of two, split up to avoid overflowing
+                long mask = (1L << exponent) - 1;
+                return (timestamp >>> exponent) * 1_000_000_000L + (((timestamp & mask) * 1_000_000_000L) >>> exponent);
+            }else if(exponent <= 9){
+                for(int i = exponent; i < 9; i++){
+                    timestamp *= 10;
+                }
+                return timestamp;
+            }else{
+                for(int i = 9; i < exponent; i++){
+                    timestamp /= 10;
+                }
+                return timestamp;
+            }
+        }
+    }
+}
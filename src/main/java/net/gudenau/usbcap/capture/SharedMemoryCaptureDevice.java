@@ -0,0 +1,111 @@
+package net.gudenau.usbcap.capture;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.SharedRing;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Reads events from a memory mapped ring file written by a {@link net.gudenau.usbcap.filter.SharedMemoryFilter} in
+ * another process on the same machine.
+ *
+ * The payloads of a batch are copied out of the ring into a single array before the space is handed back to the
+ * writer, filters keep packets around between batches so they can not point into the mapping.
+ */
+public final class SharedMemoryCaptureDevice extends AbstractCaptureDevice{
+    private static final int BATCH_SIZE = 256;
+    
+    private final Path path;
+    private SharedRing ring;
+    private ByteBuffer data;
+    private int capacity;
+    private long tail;
+    
+    /**
+     * Creates a new capture device for an existing ring file.
+     *
+     * @param path The path of the ring file
+     */
+    public SharedMemoryCaptureDevice(@NotNull Path path){
+        Objects.requireNonNull(path, "path was null");
+        this.path = path.toAbsolutePath();
+    }
+    
+    @Override
+    public void doOpen() throws IOException{
+        ring = SharedRing.open(path);
+        data = ring.data();
+        capacity = ring.capacity();
+        tail = ring.tail();
+    }
+    
+    // NOP
+    @Override
+    protected void doBeginCapture(UsbSpeed speed){}
+    
+    @Override
+    protected void doCaptureEvent(List<Event> eventBuffer) throws IOException{
+        long head;
+        for(int i = 0; (head = ring.head()) == tail; i++){
+            if(ring.isClosed() && ring.head() == tail){
+                throw new IOException("End of shared memory stream");
+            }
+            SharedRing.await(i);
+        }
+        
+        // Find the end of the batch and how much payload it holds first, so one copy covers every packet in it.
+        long end = tail;
+        int payloadSize = 0;
+        for(int count = 0; end != head && count < BATCH_SIZE; count++){
+            int position = (int)(end % capacity);
+            int length = data.getInt(position);
+            if(length == SharedRing.PADDING){
+                end += capacity - position;
+                count--;
+            }else if(length == SharedRing.RESET){
+                end += SharedRing.RECORD_HEADER_SIZE;
+            }else if(length < 0 || length > capacity - position - SharedRing.RECORD_HEADER_SIZE){
+                throw new IOException("Corrupt record in shared ring, length was " + length);
+            }else{
+                end += SharedRing.RECORD_HEADER_SIZE + ((length + 3) & ~3);
+                payloadSize += length;
+            }
+        }
+        
+        var payloads = ByteBuffer.allocate(payloadSize);
+        while(tail != end){
+            int position = (int)(tail % capacity);
+            int length = data.getInt(position);
+            if(length == SharedRing.PADDING){
+                tail += capacity - position;
+            }else if(length == SharedRing.RESET){
+                tail += SharedRing.RECORD_HEADER_SIZE;
+                eventBuffer.add(new ResetEvent(data.getLong(position + Integer.BYTES)));
+            }else{
+                tail += SharedRing.RECORD_HEADER_SIZE + ((length + 3) & ~3);
+                int offset = payloads.position();
+                payloads.put(offset, data, position + SharedRing.RECORD_HEADER_SIZE, length);
+                payloads.position(offset + length);
+                eventBuffer.add(new PacketEvent(
+                    payloads.slice(offset, length),
+                    data.getLong(position + Integer.BYTES)
+                ));
+            }
+        }
+        
+        // Everything in this batch has been copied, let the writer reuse the space.
+        ring.tail(tail);
+    }
+    
+    @Override
+    protected void doClose() throws IOException{
+        ring.close();
+    }
+}
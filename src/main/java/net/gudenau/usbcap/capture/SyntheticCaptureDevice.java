@@ -0,0 +1,100 @@
+package net.gudenau.usbcap.capture;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.internal.SyntheticTraffic;
+
+/**
+ * Generates realistic USB 2.0 high speed traffic instead of capturing it, used to test and benchmark without capture
+ * hardware.
+ *
+ * The traffic contains enumeration, bulk, interrupt and isochronous transfers, NAK storms, SOFs and resets, see
+ * {@link SyntheticTraffic} for the details. The same seed always produces the same events, including their timestamps
+ * which follow the simulated bus and not the wall clock.
+ */
+public final class SyntheticCaptureDevice extends AbstractCaptureDevice{
+    private final long seed;
+    private final long rate;
+    private SyntheticTraffic traffic;
+    private long startTime;
+    private long generated;
+    
+    /**
+     * Creates a new synthetic device with a seed of 0 that generates events as fast as possible.
+     */
+    public SyntheticCaptureDevice(){
+        this(0, 0);
+    }
+    
+    /**
+     * Creates a new synthetic device that generates events as fast as possible.
+     *
+     * @param seed The seed of the generator
+     */
+    public SyntheticCaptureDevice(long seed){
+        this(seed, 0);
+    }
+    
+    /**
+     * Creates a new synthetic device.
+     *
+     * @param seed The seed of the generator
+     * @param rate How many bytes of bus traffic to generate per second, 0 for as fast as possible
+     */
+    public SyntheticCaptureDevice(long seed, long rate){
+        if(rate < 0){
+            throw new IllegalArgumentException("rate was negative: " + rate);
+        }
+        this.seed = seed;
+        this.rate = rate;
+    }
+    
+    // NOP
+    @Override
+    protected void doOpen(){}
+    
+    @Override
+    protected void doBeginCapture(UsbSpeed speed) throws IOException{
+        if(speed != UsbSpeed.HIGH_SPEED){
+            throw new IOException("Synthetic device only generates HIGH_SPEED traffic");
+        }
+        traffic = new SyntheticTraffic(seed);
+        startTime = System.nanoTime();
+        generated = 0;
+    }
+    
+    @Override
+    protected void doCaptureEvent(List<Event> eventBuffer) throws IOException{
+        if(traffic == null){
+            throw new IOException("Synthetic device was not started");
+        }
+        generated += traffic.nextMicroframe(eventBuffer);
+        
+        if(rate != 0){
+            // Wait until the wall clock catches up with the amount of generated traffic.
+            long target = startTime + (long)(generated * 1_000_000_000.0 / rate);
+            long remaining;
+            while((remaining = target - System.nanoTime()) > 0){
+                LockSupport.parkNanos(remaining);
+                if(Thread.interrupted()){
+                    throw new InterruptedIOException("Interrupted while pacing synthetic traffic");
+                }
+            }
+        }
+    }
+    
+    // NOP
+    @Override
+    protected void doClose(){}
+    
+    @Override
+    public String toString(){
+        return "SyntheticCaptureDevice[seed=" + seed +
+               ",rate=" + rate +
+               ']';
+    }
+}
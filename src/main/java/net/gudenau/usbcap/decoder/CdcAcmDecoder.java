@@ -0,0 +1,165 @@
+package net.gudenau.usbcap.decoder;
+
+import java.util.Collection;
+import net.gudenau.usbcap.event.ControlTransferEvent;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.classes.SerialControlEvent;
+import net.gudenau.usbcap.event.classes.SerialDataEvent;
+import net.gudenau.usbcap.event.classes.SerialLineCodingEvent;
+import net.gudenau.usbcap.event.classes.SerialStateEvent;
+import net.gudenau.usbcap.event.enumeration.ConfigurationDescriptorEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decodes CDC-ACM serial ports. The requests and notifications of the communication interface turn into
+ * {@link SerialLineCodingEvent}s, {@link SerialControlEvent}s and {@link SerialStateEvent}s, the transfers of the data
+ * interface into {@link SerialDataEvent}s.
+ */
+public final class CdcAcmDecoder implements ClassDecoder{
+    private static final int CLASS_COMMUNICATION = 0x02;
+    private static final int CLASS_DATA = 0x0A;
+    private static final int SUBCLASS_ACM = 0x02;
+    private static final int DESCRIPTOR_CS_INTERFACE = 0x24;
+    private static final int DESCRIPTOR_SUBTYPE_UNION = 0x06;
+    
+    @Override
+    public @NotNull String getDecoderName(){
+        return "cdc_acm";
+    }
+    
+    @Override
+    public boolean supports(
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    ){
+        if(isAcm(descriptor)){
+            return true;
+        }
+        if(descriptor.interfaceClass() != CLASS_DATA){
+            return false;
+        }
+        
+        // Data interfaces are used by other CDC subclasses as well, only take the ones an ACM interface owns
+        boolean unions = false;
+        for(var communication : configuration.interfaces()){
+            if(!isAcm(communication)){
+                continue;
+            }
+            for(var classDescriptor : communication.classDescriptors()){
+                if(
+                    classDescriptor.limit() < 4 ||
+                    (classDescriptor.get(1) & 0xFF) != DESCRIPTOR_CS_INTERFACE ||
+                    (classDescriptor.get(2) & 0xFF) != DESCRIPTOR_SUBTYPE_UNION
+                ){
+                    continue;
+                }
+                unions = true;
+                for(int i = 4; i < classDescriptor.limit(); i++){
+                    if((classDescriptor.get(i) & 0xFF) == descriptor.number()){
+                        return true;
+                    }
+                }
+            }
+        }
+        // Without union descriptors the data interface belongs to the only ACM interface there is
+        return !unions && configuration.interfaces().stream().anyMatch(CdcAcmDecoder::isAcm);
+    }
+    
+    private static boolean isAcm(ConfigurationDescriptorEvent.Interface descriptor){
+        return descriptor.interfaceClass() == CLASS_COMMUNICATION && descriptor.interfaceSubClass() == SUBCLASS_ACM;
+    }
+    
+    @Override
+    public @NotNull InterfaceDecoder bind(
+        @NotNull Device device,
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    ){
+        return isAcm(descriptor) ?
+            new CommunicationInterface(device, descriptor.number()) :
+            new DataInterface(device, descriptor.number());
+    }
+    
+    /**
+     * The communication interface that controls a serial port.
+     */
+    private static final class CommunicationInterface implements InterfaceDecoder{
+        private static final int REQUEST_TYPE_CLASS = 1;
+        private static final int REQUEST_SET_LINE_CODING = 0x20;
+        private static final int REQUEST_GET_LINE_CODING = 0x21;
+        private static final int REQUEST_SET_CONTROL_LINE_STATE = 0x22;
+        private static final int NOTIFICATION_REQUEST_TYPE = 0b10100001;
+        private static final int NOTIFICATION_SERIAL_STATE = 0x20;
+        
+        private final Device device;
+        private final int number;
+        
+        private CommunicationInterface(Device device, int number){
+            this.device = device;
+            this.number = number;
+        }
+        
+        @Override
+        public boolean handleControlTransfer(@NotNull ControlTransferEvent event, @NotNull Collection<? super Event> output){
+            if(event.requestType() != REQUEST_TYPE_CLASS){
+                return false;
+            }
+            switch(event.bRequest()){
+                case REQUEST_SET_LINE_CODING, REQUEST_GET_LINE_CODING -> {
+                    var data = event.data();
+                    if(data.remaining() < SerialLineCodingEvent.LENGTH){
+                        return false;
+                    }
+                    output.add(new SerialLineCodingEvent(device, number, data.slice()));
+                    return true;
+                }
+                case REQUEST_SET_CONTROL_LINE_STATE -> {
+                    output.add(new SerialControlEvent(device, number, event.wValue()));
+                    return true;
+                }
+                default -> {
+                    return false;
+                }
+            }
+        }
+        
+        @Override
+        public boolean handleData(@NotNull DeviceDataEvent event, @NotNull Collection<? super Event> output){
+            // [bmRequestType][bNotification][wValue][wIndex][wLength][state]
+            var data = event.data();
+            int start = data.position();
+            if(
+                event.direction() != DataEvent.Direction.IN || data.remaining() < 10 ||
+                (data.get(start) & 0xFF) != NOTIFICATION_REQUEST_TYPE ||
+                (data.get(start + 1) & 0xFF) != NOTIFICATION_SERIAL_STATE
+            ){
+                return false;
+            }
+            int state = (data.get(start + 8) & 0xFF) | ((data.get(start + 9) & 0xFF) << 8);
+            output.add(new SerialStateEvent(device, number, state));
+            return true;
+        }
+    }
+    
+    /**
+     * The data interface that carries the bytes of a serial port.
+     */
+    private static final class DataInterface implements InterfaceDecoder{
+        private final Device device;
+        private final int number;
+        
+        private DataInterface(Device device, int number){
+            this.device = device;
+            this.number = number;
+        }
+        
+        @Override
+        public boolean handleData(@NotNull DeviceDataEvent event, @NotNull Collection<? super Event> output){
+            output.add(new SerialDataEvent(device, number, event.direction(), event.data()));
+            return true;
+        }
+    }
+}
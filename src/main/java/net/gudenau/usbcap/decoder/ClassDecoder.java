@@ -0,0 +1,47 @@
+package net.gudenau.usbcap.decoder;
+
+import net.gudenau.usbcap.event.enumeration.ConfigurationDescriptorEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decodes the transfers of the interfaces of a USB class into events, found with a {@link java.util.ServiceLoader}
+ * and used by a {@link net.gudenau.usbcap.filter.ClassDecoderFilter}.
+ */
+public interface ClassDecoder{
+    /**
+     * Returns the name of this decoder, used to pick decoders.
+     *
+     * @return The name of the decoder
+     */
+    @NotNull String getDecoderName();
+    
+    /**
+     * Checks if this decoder understands an interface.
+     *
+     * @param configuration The configuration the interface is a part of
+     * @param descriptor The interface
+     *
+     * @return True if the interface should be bound to this decoder
+     */
+    boolean supports(
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    );
+    
+    /**
+     * Creates the decoder for a single interface of a device, called when the configuration or alternate setting with
+     * the interface is selected.
+     *
+     * @param device The device
+     * @param configuration The configuration the interface is a part of
+     * @param descriptor The interface
+     *
+     * @return The decoder for the interface
+     */
+    @NotNull InterfaceDecoder bind(
+        @NotNull Device device,
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    );
+}
@@ -0,0 +1,101 @@
+package net.gudenau.usbcap.decoder;
+
+import java.util.Collection;
+import net.gudenau.usbcap.event.ControlTransferEvent;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.classes.HidReportEvent;
+import net.gudenau.usbcap.event.enumeration.ConfigurationDescriptorEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decodes the reports of HID interfaces into {@link HidReportEvent}s. The report descriptor is read from the
+ * GET_DESCRIPTOR request of the host, reports from before it was captured can only be read as bytes.
+ */
+public final class HidDecoder implements ClassDecoder{
+    private static final int CLASS_HID = 0x03;
+    
+    @Override
+    public @NotNull String getDecoderName(){
+        return "hid";
+    }
+    
+    @Override
+    public boolean supports(
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    ){
+        return descriptor.interfaceClass() == CLASS_HID;
+    }
+    
+    @Override
+    public @NotNull InterfaceDecoder bind(
+        @NotNull Device device,
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    ){
+        return new Interface(device, descriptor.number());
+    }
+    
+    /**
+     * The state of a single HID interface.
+     */
+    private static final class Interface implements InterfaceDecoder{
+        private static final int REQUEST_TYPE_GET_INTERFACE_DESCRIPTOR = 0b10000001;
+        private static final int REQUEST_TYPE_CLASS = 1;
+        private static final int REQUEST_GET_DESCRIPTOR = 6;
+        private static final int REQUEST_GET_REPORT = 1;
+        private static final int REQUEST_SET_REPORT = 9;
+        private static final int DESCRIPTOR_REPORT = 0x22;
+        
+        private final Device device;
+        private final int number;
+        private HidReportDescriptor descriptor;
+        
+        private Interface(Device device, int number){
+            this.device = device;
+            this.number = number;
+        }
+        
+        @Override
+        public boolean handleControlTransfer(@NotNull ControlTransferEvent event, @NotNull Collection<? super Event> output){
+            if(
+                event.bmRequestType() == REQUEST_TYPE_GET_INTERFACE_DESCRIPTOR &&
+                event.bRequest() == REQUEST_GET_DESCRIPTOR &&
+                event.wValueHigh() == DESCRIPTOR_REPORT
+            ){
+                descriptor = HidReportDescriptor.parse(event.data().duplicate());
+                return false;
+            }
+            
+            if(event.requestType() != REQUEST_TYPE_CLASS){
+                return false;
+            }
+            if(event.bRequest() != REQUEST_GET_REPORT && event.bRequest() != REQUEST_SET_REPORT){
+                return false;
+            }
+            var type = switch(event.wValueHigh()){
+                case 1 -> HidReportDescriptor.ReportType.INPUT;
+                case 2 -> HidReportDescriptor.ReportType.OUTPUT;
+                case 3 -> HidReportDescriptor.ReportType.FEATURE;
+                default -> null;
+            };
+            if(type == null){
+                return false;
+            }
+            output.add(new HidReportEvent(device, number, type, event.data().duplicate(), descriptor));
+            return true;
+        }
+        
+        @Override
+        public boolean handleData(@NotNull DeviceDataEvent event, @NotNull Collection<? super Event> output){
+            var type = event.direction() == DataEvent.Direction.IN ?
+                HidReportDescriptor.ReportType.INPUT :
+                HidReportDescriptor.ReportType.OUTPUT;
+            output.add(new HidReportEvent(device, number, type, event.data(), descriptor));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,309 @@
+package net.gudenau.usbcap.decoder;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A parsed HID report descriptor, the layout of every field of every report of an interface.
+ */
+public final class HidReportDescriptor{
+    // Item tags with the type bits, the size bits are masked off
+    private static final int ITEM_INPUT = 0x80;
+    private static final int ITEM_OUTPUT = 0x90;
+    private static final int ITEM_FEATURE = 0xB0;
+    private static final int ITEM_COLLECTION = 0xA0;
+    private static final int ITEM_END_COLLECTION = 0xC0;
+    private static final int ITEM_USAGE_PAGE = 0x04;
+    private static final int ITEM_LOGICAL_MINIMUM = 0x14;
+    private static final int ITEM_LOGICAL_MAXIMUM = 0x24;
+    private static final int ITEM_REPORT_SIZE = 0x74;
+    private static final int ITEM_REPORT_ID = 0x84;
+    private static final int ITEM_REPORT_COUNT = 0x94;
+    private static final int ITEM_PUSH = 0xA4;
+    private static final int ITEM_POP = 0xB4;
+    private static final int ITEM_USAGE = 0x08;
+    private static final int ITEM_USAGE_MINIMUM = 0x18;
+    private static final int ITEM_USAGE_MAXIMUM = 0x28;
+    private static final int ITEM_LONG = 0xFE;
+    
+    private final List<Field> fields;
+    private final boolean reportIds;
+    
+    private HidReportDescriptor(List<Field> fields, boolean reportIds){
+        this.fields = List.copyOf(fields);
+        this.reportIds = reportIds;
+    }
+    
+    /**
+     * Parses a report descriptor, items that are cut off are ignored.
+     *
+     * @param data The report descriptor, from position to limit
+     *
+     * @return The parsed descriptor
+     */
+    public static @NotNull HidReportDescriptor parse(@NotNull ByteBuffer data){
+        Objects.requireNonNull(data, "data was null");
+        List<Field> fields = new ArrayList<>();
+        // [type][report ID], the next free bit of every report
+        int[][] offsets = new int[ReportType.values().length][256];
+        boolean reportIds = false;
+        
+        // [usage page][logical minimum][logical maximum][report size][report ID][report count][unsigned logical maximum]
+        int[] globals = new int[7];
+        ArrayDeque<int[]> stack = new ArrayDeque<>();
+        List<Integer> usages = new ArrayList<>();
+        int usageMinimum = -1;
+        int usageMaximum = -1;
+        
+        while(data.hasRemaining()){
+            int prefix = data.get() & 0xFF;
+            if(prefix == ITEM_LONG){
+                if(!data.hasRemaining()){
+                    break;
+                }
+                int length = data.get() & 0xFF;
+                // The long item tag
+                if(data.remaining() < length + 1){
+                    break;
+                }
+                data.position(data.position() + length + 1);
+                continue;
+            }
+            int size = (prefix & 0b11) == 3 ? 4 : prefix & 0b11;
+            if(data.remaining() < size){
+                break;
+            }
+            int value = 0;
+            for(int i = 0; i < size; i++){
+                value |= (data.get() & 0xFF) << (i * 8);
+            }
+            // Signed values are sign extended from their size
+            int signed = size == 0 || size == 4 ? value : (value << (32 - size * 8)) >> (32 - size * 8);
+            // Usages with 4 bytes include their usage page
+            int usage = size == 4 ? value : (globals[0] << 16) | value;
+            
+            switch(prefix & ~0b11){
+                case ITEM_INPUT, ITEM_OUTPUT, ITEM_FEATURE -> {
+                    var type = switch(prefix & ~0b11){
+                        case ITEM_INPUT -> ReportType.INPUT;
+                        case ITEM_OUTPUT -> ReportType.OUTPUT;
+                        default -> ReportType.FEATURE;
+                    };
+                    int reportId = globals[4] & 0xFF;
+                    int[] typeOffsets = offsets[type.ordinal()];
+                    // Reports that have an ID start with it
+                    int offset = typeOffsets[reportId] == 0 && reportId != 0 ? 8 : typeOffsets[reportId];
+                    // Unsigned maximums look negative when they use all of their bits
+                    int logicalMaximum = globals[1] >= 0 && globals[2] < globals[1] ? globals[6] : globals[2];
+                    fields.add(new Field(
+                        type, reportId, offset, globals[3], globals[5], value, globals[0],
+                        usages, usageMinimum, usageMaximum, globals[1], logicalMaximum
+                    ));
+                    typeOffsets[reportId] = offset + globals[3] * globals[5];
+                    usages.clear();
+                    usageMinimum = -1;
+                    usageMaximum = -1;
+                }
+                case ITEM_COLLECTION, ITEM_END_COLLECTION -> {
+                    usages.clear();
+                    usageMinimum = -1;
+                    usageMaximum = -1;
+                }
+                case ITEM_USAGE_PAGE -> globals[0] = value & 0xFFFF;
+                case ITEM_LOGICAL_MINIMUM -> globals[1] = signed;
+                case ITEM_LOGICAL_MAXIMUM -> {
+                    globals[2] = signed;
+                    globals[6] = value;
+                }
+                case ITEM_REPORT_SIZE -> globals[3] = value;
+                case ITEM_REPORT_ID -> {
+                    globals[4] = value;
+                    reportIds = true;
+                }
+                case ITEM_REPORT_COUNT -> globals[5] = value;
+                case ITEM_PUSH -> stack.push(globals.clone());
+                case ITEM_POP -> {
+                    if(!stack.isEmpty()){
+                        globals = stack.pop();
+                    }
+                }
+                case ITEM_USAGE -> usages.add(usage);
+                case ITEM_USAGE_MINIMUM -> usageMinimum = usage;
+                case ITEM_USAGE_MAXIMUM -> usageMaximum = usage;
+                // Designators, strings and delimiters are not needed to read reports
+                default -> {}
+            }
+        }
+        
+        return new HidReportDescriptor(fields, reportIds);
+    }
+    
+    /**
+     * Gets every field of every report, in the order they were described.
+     *
+     * @return The fields
+     */
+    public @NotNull List<@NotNull Field> fields(){
+        return fields;
+    }
+    
+    /**
+     * Gets the fields of a single report.
+     *
+     * @param type The type of the report
+     * @param reportId The ID of the report, 0 if the reports have no IDs
+     *
+     * @return The fields of the report, in the order they were described
+     */
+    public @NotNull List<@NotNull Field> fields(@NotNull ReportType type, int reportId){
+        List<Field> report = new ArrayList<>();
+        for(var field : fields){
+            if(field.type() == type && field.reportId() == reportId){
+                report.add(field);
+            }
+        }
+        return report;
+    }
+    
+    /**
+     * Checks if the reports start with a report ID.
+     *
+     * @return True if the reports have IDs
+     */
+    public boolean usesReportIds(){
+        return reportIds;
+    }
+    
+    /**
+     * The kinds of reports.
+     */
+    public enum ReportType{
+        /**
+         * Sent by the device.
+         */
+        INPUT,
+        /**
+         * Sent by the host.
+         */
+        OUTPUT,
+        /**
+         * Configuration that is read and written with control transfers.
+         */
+        FEATURE
+    }
+    
+    /**
+     * One main item of a report, a number of values of the same size.
+     *
+     * @param type The type of the report the field is in
+     * @param reportId The ID of the report the field is in, 0 if the reports have no IDs
+     * @param bitOffset The bit in the report the first value starts at, including the report ID
+     * @param size The size of a value in bits
+     * @param count The amount of values
+     * @param flags The flags of the main item
+     * @param usagePage The usage page that was active for the field
+     * @param usages The usages of the values including their usage page, the last one repeats for the rest
+     * @param usageMinimum The first usage of a usage range including the usage page, -1 if there was none
+     * @param usageMaximum The last usage of a usage range including the usage page, -1 if there was none
+     * @param logicalMinimum The smallest value
+     * @param logicalMaximum The largest value
+     */
+    public record Field(
+        @NotNull ReportType type,
+        int reportId,
+        int bitOffset,
+        int size,
+        int count,
+        int flags,
+        int usagePage,
+        @NotNull List<@NotNull Integer> usages,
+        int usageMinimum,
+        int usageMaximum,
+        int logicalMinimum,
+        int logicalMaximum
+    ){
+        public Field{
+            Objects.requireNonNull(type, "type was null");
+            usages = List.copyOf(Objects.requireNonNull(usages, "usages was null"));
+        }
+        
+        /**
+         * Checks if the field is padding.
+         *
+         * @return True if the values are constant
+         */
+        public boolean isConstant(){
+            return (flags & 0b001) != 0;
+        }
+        
+        /**
+         * Checks if every value has its own usage, otherwise the values are the indices of the usages that are active,
+         * like the keys of a keyboard.
+         *
+         * @return True if the field holds variables, false for an array
+         */
+        public boolean isVariable(){
+            return (flags & 0b010) != 0;
+        }
+        
+        /**
+         * Checks if the values are changes, like the movement of a mouse.
+         *
+         * @return True if the values are relative
+         */
+        public boolean isRelative(){
+            return (flags & 0b100) != 0;
+        }
+        
+        /**
+         * Gets the usage of a value of a variable field or of an index of an array field.
+         *
+         * @param index The index of the value or usage
+         *
+         * @return The usage including its usage page, 0 if there is none
+         */
+        public int usage(int index){
+            if(!usages.isEmpty()){
+                return usages.get(Math.min(index, usages.size() - 1));
+            }
+            if(usageMinimum != -1 && usageMaximum != -1){
+                return Math.min(usageMinimum + index, usageMaximum);
+            }
+            return 0;
+        }
+        
+        /**
+         * Reads a value of this field from a report, the bits after the end of the report read as 0.
+         *
+         * @param report The report, including the report ID if there is one
+         * @param index The index of the value
+         *
+         * @return The value, sign extended if the logical minimum is negative
+         */
+        public long read(@NotNull ByteBuffer report, int index){
+            if(index < 0 || index >= count){
+                throw new IndexOutOfBoundsException("Index " + index + " out of bounds for " + count + " values");
+            }
+            int bit = bitOffset + index * size;
+            int base = report.position();
+            long value = 0;
+            for(int i = 0; i < size && i < Long.SIZE; i++, bit++){
+                int position = base + (bit >>> 3);
+                if(position >= report.limit()){
+                    break;
+                }
+                if(((report.get(position) >>> (bit & 7)) & 1) != 0){
+                    value |= 1L << i;
+                }
+            }
+            if(logicalMinimum < 0 && size > 0 && size < Long.SIZE && ((value >>> (size - 1)) & 1) != 0){
+                value |= -1L << size;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package net.gudenau.usbcap.decoder;
+
+import java.util.Collection;
+import net.gudenau.usbcap.event.ControlTransferEvent;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decodes the transfers of a single interface of a device, only used by the capturing thread.
+ */
+public interface InterfaceDecoder{
+    /**
+     * Handles a control transfer that was addressed to the interface.
+     *
+     * @param event The control transfer
+     * @param output Where to add the decoded events
+     *
+     * @return True to remove the control transfer
+     */
+    default boolean handleControlTransfer(@NotNull ControlTransferEvent event, @NotNull Collection<? super Event> output){
+        return false;
+    }
+    
+    /**
+     * Handles a transfer on one of the endpoints of the interface.
+     *
+     * @param event The transfer
+     * @param output Where to add the decoded events
+     *
+     * @return True to remove the transfer
+     */
+    boolean handleData(@NotNull DeviceDataEvent event, @NotNull Collection<? super Event> output);
+}
@@ -0,0 +1,113 @@
+package net.gudenau.usbcap.decoder;
+
+import java.nio.ByteOrder;
+import java.util.Collection;
+import net.gudenau.usbcap.event.ControlTransferEvent;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.classes.MassStorageCommandEvent;
+import net.gudenau.usbcap.event.classes.MassStorageStatusEvent;
+import net.gudenau.usbcap.event.enumeration.ConfigurationDescriptorEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Decodes the command and status wrappers of Bulk-Only mass storage interfaces into
+ * {@link MassStorageCommandEvent}s and {@link MassStorageStatusEvent}s. The data in between is left alone.
+ */
+public final class MassStorageDecoder implements ClassDecoder{
+    private static final int CLASS_MASS_STORAGE = 0x08;
+    private static final int PROTOCOL_BULK_ONLY = 0x50;
+    
+    @Override
+    public @NotNull String getDecoderName(){
+        return "mass_storage";
+    }
+    
+    @Override
+    public boolean supports(
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    ){
+        return descriptor.interfaceClass() == CLASS_MASS_STORAGE && descriptor.interfaceProtocol() == PROTOCOL_BULK_ONLY;
+    }
+    
+    @Override
+    public @NotNull InterfaceDecoder bind(
+        @NotNull Device device,
+        @NotNull ConfigurationDescriptorEvent configuration,
+        @NotNull ConfigurationDescriptorEvent.Interface descriptor
+    ){
+        return new Interface(device, descriptor.number());
+    }
+    
+    /**
+     * The state of a single Bulk-Only interface.
+     */
+    private static final class Interface implements InterfaceDecoder{
+        private static final int REQUEST_TYPE_CLASS = 1;
+        private static final int REQUEST_RESET = 0xFF;
+        
+        private final Device device;
+        private final int number;
+        // The command that waits for its status
+        private boolean pending;
+        private int tag;
+        private long transferred;
+        
+        private Interface(Device device, int number){
+            this.device = device;
+            this.number = number;
+        }
+        
+        @Override
+        public boolean handleControlTransfer(@NotNull ControlTransferEvent event, @NotNull Collection<? super Event> output){
+            if(event.requestType() == REQUEST_TYPE_CLASS && event.bRequest() == REQUEST_RESET){
+                pending = false;
+            }
+            return false;
+        }
+        
+        @Override
+        public boolean handleData(@NotNull DeviceDataEvent event, @NotNull Collection<? super Event> output){
+            var data = event.data();
+            int length = data.remaining();
+            
+            if(
+                event.direction() == DataEvent.Direction.OUT && length == MassStorageCommandEvent.LENGTH &&
+                signature(event) == MassStorageCommandEvent.SIGNATURE
+            ){
+                var command = new MassStorageCommandEvent(device, number, data.slice());
+                pending = true;
+                tag = command.tag();
+                transferred = 0;
+                output.add(command);
+                return true;
+            }
+            
+            // Data that looks like a status with the wrong tag is still data
+            if(
+                event.direction() == DataEvent.Direction.IN && length == MassStorageStatusEvent.LENGTH &&
+                signature(event) == MassStorageStatusEvent.SIGNATURE
+            ){
+                var status = new MassStorageStatusEvent(device, number, data.slice(), transferred);
+                if(!pending || status.tag() == tag){
+                    pending = false;
+                    output.add(status);
+                    return true;
+                }
+            }
+            
+            if(pending){
+                transferred += length;
+            }
+            return false;
+        }
+        
+        private static int signature(DeviceDataEvent event){
+            var data = event.data();
+            return data.duplicate().order(ByteOrder.LITTLE_ENDIAN).getInt(data.position());
+        }
+    }
+}
@@ -3,6 +3,7 @@ package net.gudenau.usbcap.event;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Objects;
+import net.gudenau.usbcap.internal.BufferHelper;
 
 /**
  * An event for a control transfer.
@@ -96,6 +97,14 @@ public record ControlTransferEvent(
         data().clear();
     }
     
+    @Override
+    public ControlTransferEvent copy(){
+        return new ControlTransferEvent(
+            address, endpoint, bmRequestType, bRequest, wValue, wIndex, wLength,
+            BufferHelper.clone(data.duplicate().clear())
+        );
+    }
+    
     @Override
     public String getId(){
         return CONTROL_TRANSFER;
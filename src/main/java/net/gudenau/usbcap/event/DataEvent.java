@@ -39,6 +39,11 @@ public record DataEvent(
         data().clear();
     }
     
+    @Override
+    public DataEvent copy(){
+        return new DataEvent(direction, address, endpoint, BufferHelper.clone(data.duplicate().clear()));
+    }
+    
     @Override
     public String getId(){
         return DATA_EVENT;
@@ -23,6 +23,13 @@ public record DeviceDataEvent(
 ) implements Event{
     public static final String DEVICE_DATA = "device_data";
     
+    /**
+     * Creates a device data event for the payload of a data event, the buffer contents are shared but the position
+     * and limit are not.
+     *
+     * @param device The device for the transfer
+     * @param data The transfer
+     */
     public DeviceDataEvent(Device device, DataEvent data){
         this(
             Objects.requireNonNull(device, "device was null"),
@@ -42,6 +49,17 @@ public record DeviceDataEvent(
         data.order(ByteOrder.LITTLE_ENDIAN);
     }
     
+    @Override
+    public void reset(){
+        data().clear();
+    }
+    
+    @Override
+    public DeviceDataEvent copy(){
+        var copy = BufferHelper.clone(data.duplicate().clear());
+        return new DeviceDataEvent(device, direction, endpoint, copy);
+    }
+    
     @Override
     public String getId(){
         return DEVICE_DATA;
@@ -18,6 +18,16 @@ public interface Event{
      */
     default void reset(){}
     
+    /**
+     * Copies this event for another thread, the copy shares nothing with this event that {@link #reset()} or reading
+     * it would change. Events that have buffers have to override this.
+     *
+     * @return The copy or this event if there is nothing to copy
+     */
+    default Event copy(){
+        return this;
+    }
+    
     /**
      * @hidden An interface for the network filter and network device.
      */
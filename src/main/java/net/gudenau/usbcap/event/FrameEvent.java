@@ -0,0 +1,58 @@
+package net.gudenau.usbcap.event;
+
+import java.util.List;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Every transaction between two SOF packets, generated by a {@link net.gudenau.usbcap.filter.PacketFilter} created
+ * with {@link net.gudenau.usbcap.filter.PacketFilter.Option#FRAMES} once the next SOF or a reset is seen.
+ *
+ * High speed buses send eight SOFs with the same frame number, one for every microframe. The microframe is counted
+ * from the SOFs that were captured, so it is only meaningful if none of them were lost. Full and low speed buses only
+ * have a single SOF per frame.
+ *
+ * @param frame The frame number from the SOF
+ * @param microframe How many SOFs with the same frame number came before this one
+ * @param timestamp The time of the SOF in nanoseconds since the Unix epoch, 0 if unknown
+ * @param lost How many frame numbers were skipped between the previous SOF and this one, which means packets were lost
+ *             by the capture
+ * @param transactions The transactions in this frame in the order they happened
+ */
+public record FrameEvent(
+    int frame,
+    int microframe,
+    long timestamp,
+    int lost,
+    @NotNull List<@NotNull TransactionEvent> transactions
+) implements Event{
+    public static final String FRAME_EVENT = "frame_event";
+    
+    public FrameEvent{
+        if((frame & ~0x7FF) != 0){
+            throw new IllegalArgumentException("Frame was out of range, range is \"2048 < frame <= 0\" and got " + frame);
+        }
+        if(microframe < 0){
+            throw new IllegalArgumentException("microframe was negative: " + microframe);
+        }
+        if(lost < 0){
+            throw new IllegalArgumentException("lost was negative: " + lost);
+        }
+        transactions = List.copyOf(Objects.requireNonNull(transactions, "transactions was null"));
+    }
+    
+    /**
+     * Checks if this frame number was seen more often than a high speed bus sends it, which means SOFs were captured
+     * twice. Full speed buses never repeat a frame number, so any frame with a microframe is a duplicate there.
+     *
+     * @return True if this SOF is more than the eighth one with its frame number
+     */
+    public boolean duplicate(){
+        return microframe > 7;
+    }
+    
+    @Override
+    public String getId(){
+        return FRAME_EVENT;
+    }
+}
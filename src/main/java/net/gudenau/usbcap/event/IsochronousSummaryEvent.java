@@ -0,0 +1,76 @@
+package net.gudenau.usbcap.event;
+
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.metrics.Histogram;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * The cadence of every isochronous endpoint over a window of capture time, generated by a
+ * {@link net.gudenau.usbcap.filter.IsochronousFilter} once the window is over.
+ *
+ * @param start The start of the window in nanoseconds since the Unix epoch
+ * @param end The end of the window in nanoseconds since the Unix epoch
+ * @param streams Every isochronous endpoint that was serviced during the window
+ */
+public record IsochronousSummaryEvent(
+    long start,
+    long end,
+    @NotNull List<@NotNull Stream> streams
+) implements Event{
+    public static final String ISOCHRONOUS_SUMMARY = "isochronous_summary";
+    
+    public IsochronousSummaryEvent{
+        streams = List.copyOf(Objects.requireNonNull(streams, "streams was null"));
+    }
+    
+    @Override
+    public String getId(){
+        return ISOCHRONOUS_SUMMARY;
+    }
+    
+    /**
+     * The cadence of a single isochronous endpoint and direction. A service interval is the time the endpoint
+     * descriptor asks for between two transfers, all transactions of a high bandwidth endpoint in the same interval
+     * count as one.
+     *
+     * @param address The address of the device
+     * @param endpoint The endpoint
+     * @param direction The direction of the endpoint
+     * @param device The device that had the address
+     * @param interval The service interval in nanoseconds
+     * @param intervals The amount of intervals that had a transaction
+     * @param bytes The amount of payload bytes
+     * @param bitsPerSecond The payload bits per second over the window
+     * @param empty The amount of intervals that moved no data, an underrun of the sender
+     * @param missed The amount of intervals the host skipped between two serviced ones
+     * @param sizes The payload bytes of every serviced interval
+     * @param jitter How far in nanoseconds every serviced interval was from where the service interval put it
+     */
+    public record Stream(
+        int address,
+        int endpoint,
+        @NotNull DataEvent.Direction direction,
+        @Nullable Device device,
+        long interval,
+        long intervals,
+        long bytes,
+        double bitsPerSecond,
+        long empty,
+        long missed,
+        @NotNull Histogram.Snapshot sizes,
+        @NotNull Histogram.Snapshot jitter
+    ){
+        /**
+         * Gets the share of intervals that were skipped or moved no data.
+         *
+         * @return The underrun ratio, between 0 and 1
+         */
+        public double underrunRatio(){
+            long total = intervals + missed;
+            return total == 0 ? 0 : (double)(empty + missed) / total;
+        }
+    }
+}
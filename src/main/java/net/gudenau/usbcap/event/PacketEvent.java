@@ -4,14 +4,17 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Objects;
 import net.gudenau.usbcap.internal.BufferHelper;
+import net.gudenau.usbcap.internal.TimeHelper;
 
 /**
  * A generic USB packet event.
  *
  * @param buffer The contents of the packet, not including sync bits.
+ * @param timestamp The time the packet was captured in nanoseconds since the Unix epoch, 0 if unknown
  */
 public record PacketEvent(
-    ByteBuffer buffer
+    ByteBuffer buffer,
+    long timestamp
 ) implements Event.Networked<PacketEvent>{
     public static final String PACKET_EVENT = "packet_event";
     
@@ -20,11 +23,25 @@ public record PacketEvent(
         buffer.order(ByteOrder.LITTLE_ENDIAN);
     }
     
+    /**
+     * Creates a packet event that was captured just now.
+     *
+     * @param buffer The contents of the packet, not including sync bits.
+     */
+    public PacketEvent(ByteBuffer buffer){
+        this(buffer, TimeHelper.now());
+    }
+    
     @Override
     public void reset(){
         buffer.clear();
     }
     
+    @Override
+    public PacketEvent copy(){
+        return new PacketEvent(BufferHelper.clone(buffer.duplicate().clear()), timestamp);
+    }
+    
     @Override
     public String getId(){
         return PACKET_EVENT;
@@ -32,7 +49,9 @@ public record PacketEvent(
     
     @Override
     public String toString(){
-        var builder = new StringBuilder("PacketEvent[buffer=[");
+        var builder = new StringBuilder("PacketEvent[timestamp=")
+            .append(timestamp)
+            .append(",buffer=[");
         BufferHelper.toString(builder, buffer);
         return builder.append("]]").toString();
     }
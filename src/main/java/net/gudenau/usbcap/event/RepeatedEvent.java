@@ -0,0 +1,43 @@
+package net.gudenau.usbcap.event;
+
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Transactions or transfers that were the same as the one before them on the same endpoint and got collapsed by a
+ * {@link net.gudenau.usbcap.filter.CollapseFilter}, like the NAKs of an interrupt endpoint that is polled every
+ * microframe or a sensor that keeps reporting the same reading.
+ *
+ * @param event The {@link TransactionEvent}, {@link DataEvent} or {@link DeviceDataEvent} that was let through before
+ *              the repeats. Repeated transactions had the same token, address, endpoint, handshake and length, repeated
+ *              transfers the same direction, device, endpoint and payload
+ * @param count The amount of events that were collapsed
+ * @param first The time of the first collapsed event in nanoseconds since the Unix epoch
+ * @param last The time of the last collapsed event in nanoseconds since the Unix epoch
+ */
+public record RepeatedEvent(
+    @NotNull Event event,
+    int count,
+    long first,
+    long last
+) implements Event{
+    public static final String REPEATED_EVENT = "repeated_event";
+    
+    public RepeatedEvent{
+        Objects.requireNonNull(event, "event was null");
+        if(count <= 0){
+            throw new IllegalArgumentException("count was not positive: " + count);
+        }
+    }
+    
+    @Override
+    public RepeatedEvent copy(){
+        var copy = event.copy();
+        return copy == event ? this : new RepeatedEvent(copy, count, first, last);
+    }
+    
+    @Override
+    public String getId(){
+        return REPEATED_EVENT;
+    }
+}
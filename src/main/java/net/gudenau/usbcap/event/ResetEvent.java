@@ -1,6 +1,7 @@
 package net.gudenau.usbcap.event;
 
 import java.nio.ByteBuffer;
+import net.gudenau.usbcap.internal.TimeHelper;
 
 /**
  * An event for a USB reset.
@@ -8,6 +9,33 @@ import java.nio.ByteBuffer;
 public final class ResetEvent implements Event.Networked<ResetEvent>{
     public static final String RESET_EVENT = "reset_event";
     
+    private final long timestamp;
+    
+    /**
+     * Creates a reset event that happened just now.
+     */
+    public ResetEvent(){
+        this(TimeHelper.now());
+    }
+    
+    /**
+     * Creates a reset event.
+     *
+     * @param timestamp The time of the reset in nanoseconds since the Unix epoch, 0 if unknown
+     */
+    public ResetEvent(long timestamp){
+        this.timestamp = timestamp;
+    }
+    
+    /**
+     * Gets the time of this reset.
+     *
+     * @return The time of the reset in nanoseconds since the Unix epoch, 0 if unknown
+     */
+    public long timestamp(){
+        return timestamp;
+    }
+    
     @Override
     public String getId(){
         return RESET_EVENT;
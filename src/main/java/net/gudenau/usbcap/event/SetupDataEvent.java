@@ -31,6 +31,16 @@ public record SetupDataEvent(
         data.order(ByteOrder.LITTLE_ENDIAN);
     }
     
+    @Override
+    public void reset(){
+        data().clear();
+    }
+    
+    @Override
+    public SetupDataEvent copy(){
+        return new SetupDataEvent(address, endpoint, BufferHelper.clone(data.duplicate().clear()));
+    }
+    
     @Override
     public String getId(){
         return SETUP_DATA_EVENT;
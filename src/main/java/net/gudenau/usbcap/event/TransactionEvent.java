@@ -0,0 +1,95 @@
+package net.gudenau.usbcap.event;
+
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A single transaction on the bus, a token followed by a data packet and a handshake if there were any. Transactions
+ * that were NAKed or stalled are included, which makes these useful for statistics. Generated by a
+ * {@link net.gudenau.usbcap.filter.PacketFilter} created with
+ * {@link net.gudenau.usbcap.filter.PacketFilter.Option#TRANSACTIONS}.
+ *
+ * @param token The token that started the transaction
+ * @param address The address of the USB device
+ * @param endpoint The endpoint of the USB device
+ * @param handshake The handshake that ended the transaction
+ * @param length The length of the data packet, -1 if there was none
+ * @param timestamp The time of the token in nanoseconds since the Unix epoch, 0 if unknown
+ * @param turnaround The nanoseconds between the last packet of the host and the answer of the device, -1 if the device
+ *                   did not answer
+ */
+public record TransactionEvent(
+    @NotNull Token token,
+    int address,
+    int endpoint,
+    @NotNull Handshake handshake,
+    int length,
+    long timestamp,
+    long turnaround
+) implements Event{
+    public static final String TRANSACTION_EVENT = "transaction_event";
+    
+    public TransactionEvent{
+        Objects.requireNonNull(token, "token was null");
+        if((address & ~0b01111111) != 0){
+            throw new IllegalArgumentException("Address was out of range, range is \"128 < address <= 0\" and got " + address);
+        }
+        if((endpoint & ~0b00001111) != 0){
+            throw new IllegalArgumentException("Endpoint was out of range, range is \"16 < endpoint <= 0\" and got " + endpoint);
+        }
+        Objects.requireNonNull(handshake, "handshake was null");
+    }
+    
+    /**
+     * Gets the direction data moves in for this transaction, PING transactions count as OUT.
+     *
+     * @return The direction of the transaction
+     */
+    public @NotNull DataEvent.Direction direction(){
+        return token == Token.IN ? DataEvent.Direction.IN : DataEvent.Direction.OUT;
+    }
+    
+    @Override
+    public String getId(){
+        return TRANSACTION_EVENT;
+    }
+    
+    /**
+     * The tokens that start a transaction.
+     */
+    public enum Token{
+        SETUP,
+        IN,
+        OUT,
+        /**
+         * Asks a high speed device if it has room for more OUT data, there is never a data packet.
+         */
+        PING
+    }
+    
+    /**
+     * The ways a transaction can end.
+     */
+    public enum Handshake{
+        /**
+         * The data was received.
+         */
+        ACK,
+        /**
+         * The device was not ready, the host will try again later.
+         */
+        NAK,
+        /**
+         * The endpoint is halted or the request is not supported.
+         */
+        STALL,
+        /**
+         * The data was received but the device has no room for more yet.
+         */
+        NYET,
+        /**
+         * There was no handshake, either because the transaction is isochronous or because there was an error.
+         */
+        NONE
+    }
+}
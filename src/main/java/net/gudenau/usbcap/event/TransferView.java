@@ -0,0 +1,179 @@
+package net.gudenau.usbcap.event;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A reusable view of a {@link DataEvent} or {@link DeviceDataEvent} that reads the payload in place.
+ *
+ * Reads are little endian and relative to the position the payload had when the view was pointed at it, they never
+ * move the position of the payload. One view can be pointed at every transfer of a capture, so code that routes on
+ * the endpoint or peeks at a few bytes does not have to care which of the two events it got or copy anything.
+ */
+public final class TransferView{
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+    
+    private ByteBuffer data = EMPTY;
+    private int base = 0;
+    private int length = 0;
+    private DataEvent.Direction direction = DataEvent.Direction.IN;
+    private int address = -1;
+    private Device device = null;
+    private int endpoint = 0;
+    
+    /**
+     * Points this view at a transfer.
+     *
+     * @param event The transfer
+     *
+     * @return This view
+     */
+    public @NotNull TransferView wrap(@NotNull DataEvent event){
+        Objects.requireNonNull(event, "event was null");
+        direction = event.direction();
+        address = event.address();
+        device = null;
+        endpoint = event.endpoint();
+        return wrap(event.data());
+    }
+    
+    /**
+     * Points this view at a transfer of a device.
+     *
+     * @param event The transfer
+     *
+     * @return This view
+     */
+    public @NotNull TransferView wrap(@NotNull DeviceDataEvent event){
+        Objects.requireNonNull(event, "event was null");
+        direction = event.direction();
+        address = -1;
+        device = event.device();
+        endpoint = event.endpoint();
+        return wrap(event.data());
+    }
+    
+    private TransferView wrap(ByteBuffer data){
+        this.data = data;
+        base = data.position();
+        length = data.remaining();
+        return this;
+    }
+    
+    /**
+     * @return The direction of the transfer
+     */
+    public @NotNull DataEvent.Direction direction(){
+        return direction;
+    }
+    
+    /**
+     * @return The address of the device, -1 for transfers of a {@link DeviceDataEvent}
+     */
+    public int address(){
+        return address;
+    }
+    
+    /**
+     * @return The device, null for transfers of a {@link DataEvent}
+     */
+    public @Nullable Device device(){
+        return device;
+    }
+    
+    /**
+     * @return The endpoint of the transfer
+     */
+    public int endpoint(){
+        return endpoint;
+    }
+    
+    /**
+     * @return The length of the payload in bytes
+     */
+    public int length(){
+        return length;
+    }
+    
+    /**
+     * Reads a byte of the payload.
+     *
+     * @param index The index of the byte in the payload
+     *
+     * @return The unsigned byte
+     *
+     * @throws IndexOutOfBoundsException If the byte is not in the payload
+     */
+    public int getUnsignedByte(int index){
+        Objects.checkIndex(index, length);
+        return Byte.toUnsignedInt(data.get(base + index));
+    }
+    
+    /**
+     * Reads a little endian short of the payload.
+     *
+     * @param index The index of the first byte in the payload
+     *
+     * @return The unsigned short
+     *
+     * @throws IndexOutOfBoundsException If the short is not in the payload
+     */
+    public int getUnsignedShort(int index){
+        Objects.checkFromIndexSize(index, Short.BYTES, length);
+        short value = data.getShort(base + index);
+        return Short.toUnsignedInt(bigEndian() ? Short.reverseBytes(value) : value);
+    }
+    
+    /**
+     * Reads a little endian int of the payload.
+     *
+     * @param index The index of the first byte in the payload
+     *
+     * @return The int
+     *
+     * @throws IndexOutOfBoundsException If the int is not in the payload
+     */
+    public int getInt(int index){
+        Objects.checkFromIndexSize(index, Integer.BYTES, length);
+        int value = data.getInt(base + index);
+        return bigEndian() ? Integer.reverseBytes(value) : value;
+    }
+    
+    /**
+     * Reads a little endian long of the payload.
+     *
+     * @param index The index of the first byte in the payload
+     *
+     * @return The long
+     *
+     * @throws IndexOutOfBoundsException If the long is not in the payload
+     */
+    public long getLong(int index){
+        Objects.checkFromIndexSize(index, Long.BYTES, length);
+        long value = data.getLong(base + index);
+        return bigEndian() ? Long.reverseBytes(value) : value;
+    }
+    
+    /**
+     * Copies a part of the payload into an array.
+     *
+     * @param index The index of the first byte to copy
+     * @param destination The array to copy into
+     * @param offset The index in the array to copy to
+     * @param count The amount of bytes to copy
+     *
+     * @throws IndexOutOfBoundsException If the bytes are not in the payload or do not fit in the array
+     */
+    public void get(int index, byte @NotNull [] destination, int offset, int count){
+        Objects.checkFromIndexSize(index, count, length);
+        data.get(base + index, destination, offset, count);
+    }
+    
+    private boolean bigEndian(){
+        return data.order() == ByteOrder.BIG_ENDIAN;
+    }
+}
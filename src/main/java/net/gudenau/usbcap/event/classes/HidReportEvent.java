@@ -0,0 +1,126 @@
+package net.gudenau.usbcap.event.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.List;
+import java.util.Objects;
+import java.util.OptionalLong;
+import net.gudenau.usbcap.decoder.HidReportDescriptor;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A HID report, from an interrupt endpoint or a GET_REPORT or SET_REPORT request. The report is only parsed when its
+ * values are asked for.
+ *
+ * @param device The device
+ * @param interfaceNumber The HID interface
+ * @param type The type of the report
+ * @param data The report, including the report ID if there is one
+ * @param descriptor The report descriptor of the interface or null if it was not captured
+ */
+public record HidReportEvent(
+    @NotNull Device device,
+    int interfaceNumber,
+    @NotNull HidReportDescriptor.ReportType type,
+    @NotNull ByteBuffer data,
+    @Nullable HidReportDescriptor descriptor
+) implements Event{
+    public static final String HID_REPORT = "hid_report";
+    
+    public HidReportEvent{
+        Objects.requireNonNull(device, "device was null");
+        Objects.requireNonNull(type, "type was null");
+        Objects.requireNonNull(data, "data was null");
+        data.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Gets the ID of this report.
+     *
+     * @return The report ID, 0 if the reports have no IDs or the descriptor was not captured
+     */
+    public int reportId(){
+        if(descriptor == null || !descriptor.usesReportIds() || data.limit() == 0){
+            return 0;
+        }
+        return data.get(0) & 0xFF;
+    }
+    
+    /**
+     * Gets the fields of this report.
+     *
+     * @return The fields or an empty list if the descriptor was not captured
+     */
+    public @NotNull List<HidReportDescriptor.@NotNull Field> fields(){
+        return descriptor == null ? List.of() : descriptor.fields(type, reportId());
+    }
+    
+    /**
+     * Reads the value of a usage from this report. Variable fields return the value of the usage, array fields return
+     * 1 if the usage is active and 0 if it is not.
+     *
+     * @param usagePage The usage page
+     * @param usage The usage
+     *
+     * @return The value or an empty optional if the report does not have the usage
+     */
+    public @NotNull OptionalLong value(int usagePage, int usage){
+        int extended = (usagePage << 16) | (usage & 0xFFFF);
+        var report = data.duplicate().clear();
+        boolean found = false;
+        for(var field : fields()){
+            if(field.isConstant()){
+                continue;
+            }
+            if(field.isVariable()){
+                for(int i = 0; i < field.count(); i++){
+                    if(field.usage(i) == extended){
+                        return OptionalLong.of(field.read(report, i));
+                    }
+                }
+            }else{
+                for(int i = 0; i < field.count(); i++){
+                    long index = field.read(report, i) - field.logicalMinimum();
+                    if(index >= 0 && index <= Integer.MAX_VALUE && field.usage((int)index) == extended){
+                        return OptionalLong.of(1);
+                    }
+                }
+                int first = field.usage(0);
+                int last = field.usage(Math.max(0, field.logicalMaximum() - field.logicalMinimum()));
+                found |= extended >= first && extended <= last;
+            }
+        }
+        return found ? OptionalLong.of(0) : OptionalLong.empty();
+    }
+    
+    @Override
+    public void reset(){
+        data.clear();
+    }
+    
+    @Override
+    public HidReportEvent copy(){
+        var copy = BufferHelper.clone(data.duplicate().clear());
+        return new HidReportEvent(device, interfaceNumber, type, copy, descriptor);
+    }
+    
+    @Override
+    public String getId(){
+        return HID_REPORT;
+    }
+    
+    @Override
+    public String toString(){
+        var builder = new StringBuilder("HidReportEvent[device=")
+            .append(device)
+            .append(",interface=").append(interfaceNumber)
+            .append(",type=").append(type)
+            .append(",data=");
+        BufferHelper.toString(builder, data.duplicate().clear());
+        return builder.append(']').toString();
+    }
+}
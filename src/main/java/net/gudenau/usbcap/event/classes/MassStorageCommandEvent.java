@@ -0,0 +1,136 @@
+package net.gudenau.usbcap.event.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A command block wrapper of a Bulk-Only mass storage interface. The fields are read from the wrapper when they are
+ * asked for.
+ *
+ * @param device The device
+ * @param interfaceNumber The mass storage interface
+ * @param wrapper The 31 byte command block wrapper
+ */
+public record MassStorageCommandEvent(
+    @NotNull Device device,
+    int interfaceNumber,
+    @NotNull ByteBuffer wrapper
+) implements Event{
+    public static final String MASS_STORAGE_COMMAND = "mass_storage_command";
+    public static final int SIGNATURE = 0x43425355;
+    public static final int LENGTH = 31;
+    
+    public static final int SCSI_READ_10 = 0x28;
+    public static final int SCSI_WRITE_10 = 0x2A;
+    
+    public MassStorageCommandEvent{
+        Objects.requireNonNull(device, "device was null");
+        Objects.requireNonNull(wrapper, "wrapper was null");
+        if(wrapper.limit() < LENGTH){
+            throw new IllegalArgumentException("wrapper was too short: " + wrapper.limit());
+        }
+        wrapper.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Gets the tag that the status of this command will have.
+     *
+     * @return The tag
+     */
+    public int tag(){
+        return wrapper.getInt(4);
+    }
+    
+    /**
+     * Gets the amount of bytes the host expects to transfer.
+     *
+     * @return The data transfer length
+     */
+    public long dataLength(){
+        return Integer.toUnsignedLong(wrapper.getInt(8));
+    }
+    
+    /**
+     * Gets the direction of the data stage.
+     *
+     * @return The direction
+     */
+    public @NotNull DataEvent.Direction direction(){
+        return (wrapper.get(12) & 0x80) != 0 ? DataEvent.Direction.IN : DataEvent.Direction.OUT;
+    }
+    
+    /**
+     * Gets the logical unit the command is for.
+     *
+     * @return The LUN
+     */
+    public int lun(){
+        return wrapper.get(13) & 0x0F;
+    }
+    
+    /**
+     * Gets the command block.
+     *
+     * @return A view of the command block, usually a SCSI command
+     */
+    public @NotNull ByteBuffer command(){
+        return wrapper.slice(15, Math.min(wrapper.get(14) & 0x1F, 16));
+    }
+    
+    /**
+     * Gets the operation code of the command.
+     *
+     * @return The first byte of the command block
+     */
+    public int opcode(){
+        return wrapper.get(15) & 0xFF;
+    }
+    
+    /**
+     * Gets the first block of a READ(10) or WRITE(10) command.
+     *
+     * @return The logical block address or -1 for other commands
+     */
+    public long lba(){
+        int opcode = opcode();
+        if(opcode != SCSI_READ_10 && opcode != SCSI_WRITE_10){
+            return -1;
+        }
+        // SCSI is big endian
+        return Integer.toUnsignedLong(wrapper.duplicate().order(ByteOrder.BIG_ENDIAN).getInt(17));
+    }
+    
+    /**
+     * Gets the amount of blocks of a READ(10) or WRITE(10) command.
+     *
+     * @return The transfer length in blocks or -1 for other commands
+     */
+    public int blocks(){
+        int opcode = opcode();
+        if(opcode != SCSI_READ_10 && opcode != SCSI_WRITE_10){
+            return -1;
+        }
+        return ((wrapper.get(22) & 0xFF) << 8) | (wrapper.get(23) & 0xFF);
+    }
+    
+    @Override
+    public void reset(){
+        wrapper.clear();
+    }
+    
+    @Override
+    public MassStorageCommandEvent copy(){
+        return new MassStorageCommandEvent(device, interfaceNumber, BufferHelper.clone(wrapper.duplicate().clear()));
+    }
+    
+    @Override
+    public String getId(){
+        return MASS_STORAGE_COMMAND;
+    }
+}
@@ -0,0 +1,85 @@
+package net.gudenau.usbcap.event.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A command status wrapper of a Bulk-Only mass storage interface, it ends the command with the same tag. The fields are
+ * read from the wrapper when they are asked for.
+ *
+ * @param device The device
+ * @param interfaceNumber The mass storage interface
+ * @param wrapper The 13 byte command status wrapper
+ * @param transferred The amount of data bytes that were captured between the command and this status
+ */
+public record MassStorageStatusEvent(
+    @NotNull Device device,
+    int interfaceNumber,
+    @NotNull ByteBuffer wrapper,
+    long transferred
+) implements Event{
+    public static final String MASS_STORAGE_STATUS = "mass_storage_status";
+    public static final int SIGNATURE = 0x53425355;
+    public static final int LENGTH = 13;
+    
+    public static final int STATUS_PASSED = 0;
+    public static final int STATUS_FAILED = 1;
+    public static final int STATUS_PHASE_ERROR = 2;
+    
+    public MassStorageStatusEvent{
+        Objects.requireNonNull(device, "device was null");
+        Objects.requireNonNull(wrapper, "wrapper was null");
+        if(wrapper.limit() < LENGTH){
+            throw new IllegalArgumentException("wrapper was too short: " + wrapper.limit());
+        }
+        wrapper.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Gets the tag of the command this status is for.
+     *
+     * @return The tag
+     */
+    public int tag(){
+        return wrapper.getInt(4);
+    }
+    
+    /**
+     * Gets the difference between the expected and the processed amount of data.
+     *
+     * @return The data residue
+     */
+    public long residue(){
+        return Integer.toUnsignedLong(wrapper.getInt(8));
+    }
+    
+    /**
+     * Gets the status of the command.
+     *
+     * @return One of the STATUS constants
+     */
+    public int status(){
+        return wrapper.get(12) & 0xFF;
+    }
+    
+    @Override
+    public void reset(){
+        wrapper.clear();
+    }
+    
+    @Override
+    public MassStorageStatusEvent copy(){
+        var copy = BufferHelper.clone(wrapper.duplicate().clear());
+        return new MassStorageStatusEvent(device, interfaceNumber, copy, transferred);
+    }
+    
+    @Override
+    public String getId(){
+        return MASS_STORAGE_STATUS;
+    }
+}
@@ -0,0 +1,48 @@
+package net.gudenau.usbcap.event.classes;
+
+import java.util.Objects;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The host changed the control lines of a CDC-ACM serial port with a SET_CONTROL_LINE_STATE request.
+ *
+ * @param device The device
+ * @param interfaceNumber The communication interface
+ * @param lines The control line bitmap
+ */
+public record SerialControlEvent(
+    @NotNull Device device,
+    int interfaceNumber,
+    int lines
+) implements Event{
+    public static final String SERIAL_CONTROL = "serial_control";
+    
+    public SerialControlEvent{
+        Objects.requireNonNull(device, "device was null");
+    }
+    
+    /**
+     * Checks if the host is present.
+     *
+     * @return True if DTR is set
+     */
+    public boolean dtr(){
+        return (lines & 0b01) != 0;
+    }
+    
+    /**
+     * Checks if the host wants to receive data.
+     *
+     * @return True if RTS is set
+     */
+    public boolean rts(){
+        return (lines & 0b10) != 0;
+    }
+    
+    @Override
+    public String getId(){
+        return SERIAL_CONTROL;
+    }
+}
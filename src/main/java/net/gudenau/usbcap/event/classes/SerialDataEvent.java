@@ -0,0 +1,60 @@
+package net.gudenau.usbcap.event.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Bytes that went over a CDC-ACM serial port.
+ *
+ * @param device The device
+ * @param interfaceNumber The data interface
+ * @param direction IN for bytes the device received on its serial port, OUT for bytes the host sent
+ * @param data The bytes
+ */
+public record SerialDataEvent(
+    @NotNull Device device,
+    int interfaceNumber,
+    @NotNull DataEvent.Direction direction,
+    @NotNull ByteBuffer data
+) implements Event{
+    public static final String SERIAL_DATA = "serial_data";
+    
+    public SerialDataEvent{
+        Objects.requireNonNull(device, "device was null");
+        Objects.requireNonNull(direction, "direction was null");
+        Objects.requireNonNull(data, "data was null");
+        data.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    @Override
+    public void reset(){
+        data.clear();
+    }
+    
+    @Override
+    public SerialDataEvent copy(){
+        return new SerialDataEvent(device, interfaceNumber, direction, BufferHelper.clone(data.duplicate().clear()));
+    }
+    
+    @Override
+    public String getId(){
+        return SERIAL_DATA;
+    }
+    
+    @Override
+    public String toString(){
+        var builder = new StringBuilder("SerialDataEvent[device=")
+            .append(device)
+            .append(",interface=").append(interfaceNumber)
+            .append(",direction=").append(direction)
+            .append(",data=");
+        BufferHelper.toString(builder, data.duplicate().clear());
+        return builder.append(']').toString();
+    }
+}
@@ -0,0 +1,86 @@
+package net.gudenau.usbcap.event.classes;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Objects;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The line coding of a CDC-ACM serial port, from a SET_LINE_CODING or GET_LINE_CODING request. The fields are read
+ * from the line coding when they are asked for.
+ *
+ * @param device The device
+ * @param interfaceNumber The communication interface
+ * @param coding The 7 byte line coding structure
+ */
+public record SerialLineCodingEvent(
+    @NotNull Device device,
+    int interfaceNumber,
+    @NotNull ByteBuffer coding
+) implements Event{
+    public static final String SERIAL_LINE_CODING = "serial_line_coding";
+    public static final int LENGTH = 7;
+    
+    public SerialLineCodingEvent{
+        Objects.requireNonNull(device, "device was null");
+        Objects.requireNonNull(coding, "coding was null");
+        if(coding.limit() < LENGTH){
+            throw new IllegalArgumentException("coding was too short: " + coding.limit());
+        }
+        coding.order(ByteOrder.LITTLE_ENDIAN);
+    }
+    
+    /**
+     * Gets the baud rate.
+     *
+     * @return The bits per second
+     */
+    public long baudRate(){
+        return Integer.toUnsignedLong(coding.getInt(0));
+    }
+    
+    /**
+     * Gets the stop bits.
+     *
+     * @return 0 for 1 stop bit, 1 for 1.5 stop bits and 2 for 2 stop bits
+     */
+    public int stopBits(){
+        return coding.get(4) & 0xFF;
+    }
+    
+    /**
+     * Gets the parity.
+     *
+     * @return 0 for none, 1 for odd, 2 for even, 3 for mark and 4 for space
+     */
+    public int parity(){
+        return coding.get(5) & 0xFF;
+    }
+    
+    /**
+     * Gets the amount of data bits.
+     *
+     * @return 5, 6, 7, 8 or 16
+     */
+    public int dataBits(){
+        return coding.get(6) & 0xFF;
+    }
+    
+    @Override
+    public void reset(){
+        coding.clear();
+    }
+    
+    @Override
+    public SerialLineCodingEvent copy(){
+        return new SerialLineCodingEvent(device, interfaceNumber, BufferHelper.clone(coding.duplicate().clear()));
+    }
+    
+    @Override
+    public String getId(){
+        return SERIAL_LINE_CODING;
+    }
+}
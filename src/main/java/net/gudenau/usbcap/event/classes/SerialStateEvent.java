@@ -0,0 +1,49 @@
+package net.gudenau.usbcap.event.classes;
+
+import java.util.Objects;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A CDC-ACM serial port reported the state of its lines with a SERIAL_STATE notification.
+ *
+ * @param device The device
+ * @param interfaceNumber The communication interface
+ * @param state The UART state bitmap
+ */
+public record SerialStateEvent(
+    @NotNull Device device,
+    int interfaceNumber,
+    int state
+) implements Event{
+    public static final String SERIAL_STATE = "serial_state";
+    
+    public static final int DCD = 1;
+    public static final int DSR = 1 << 1;
+    public static final int BREAK = 1 << 2;
+    public static final int RING = 1 << 3;
+    public static final int FRAMING_ERROR = 1 << 4;
+    public static final int PARITY_ERROR = 1 << 5;
+    public static final int OVERRUN = 1 << 6;
+    
+    public SerialStateEvent{
+        Objects.requireNonNull(device, "device was null");
+    }
+    
+    /**
+     * Checks if a bit of the state is set.
+     *
+     * @param bit One of the bit constants
+     *
+     * @return True if the bit is set
+     */
+    public boolean isSet(int bit){
+        return (state & bit) != 0;
+    }
+    
+    @Override
+    public String getId(){
+        return SERIAL_STATE;
+    }
+}
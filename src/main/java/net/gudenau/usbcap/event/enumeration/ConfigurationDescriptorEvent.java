@@ -0,0 +1,157 @@
+package net.gudenau.usbcap.event.enumeration;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * An event for a complete USB configuration descriptor, with the interfaces and endpoints that follow it.
+ *
+ * @param device The USB device handle
+ * @param configurationValue The value used to select this configuration
+ * @param attributes The attributes of the configuration
+ * @param maxPower The maximum power the device draws in this configuration, in units of 2 mA
+ * @param interfaces Every alternate setting of every interface, in the order they were described
+ */
+public record ConfigurationDescriptorEvent(
+    @NotNull Device device,
+    int configurationValue,
+    int attributes,
+    int maxPower,
+    @NotNull List<@NotNull Interface> interfaces
+) implements EnumerationEvent{
+    public static final String CONFIGURATION_DESCRIPTOR = "configuration_descriptor";
+    
+    public ConfigurationDescriptorEvent{
+        Objects.requireNonNull(device, "device was null");
+        interfaces = List.copyOf(Objects.requireNonNull(interfaces, "interfaces was null"));
+    }
+    
+    /**
+     * Finds an alternate setting of an interface.
+     *
+     * @param number The number of the interface
+     * @param alternateSetting The alternate setting
+     *
+     * @return The interface or null if it was not described
+     */
+    public @Nullable Interface getInterface(int number, int alternateSetting){
+        for(var descriptor : interfaces){
+            if(descriptor.number() == number && descriptor.alternateSetting() == alternateSetting){
+                return descriptor;
+            }
+        }
+        return null;
+    }
+    
+    @Override
+    public ConfigurationDescriptorEvent copy(){
+        List<Interface> copies = new ArrayList<>(interfaces.size());
+        for(var descriptor : interfaces){
+            copies.add(descriptor.copy());
+        }
+        return new ConfigurationDescriptorEvent(device, configurationValue, attributes, maxPower, copies);
+    }
+    
+    @Override
+    public String getId(){
+        return CONFIGURATION_DESCRIPTOR;
+    }
+    
+    /**
+     * An alternate setting of an interface.
+     *
+     * @param number The number of the interface
+     * @param alternateSetting The alternate setting
+     * @param interfaceClass The USB class of the interface
+     * @param interfaceSubClass The USB subclass of the interface
+     * @param interfaceProtocol The USB protocol of the interface
+     * @param endpoints The endpoints of the interface
+     * @param classDescriptors The class specific descriptors that followed the interface, like the HID descriptor or CDC
+     *                         functional descriptors, including their length and type
+     */
+    public record Interface(
+        int number,
+        int alternateSetting,
+        int interfaceClass,
+        int interfaceSubClass,
+        int interfaceProtocol,
+        @NotNull List<@NotNull Endpoint> endpoints,
+        @NotNull List<@NotNull ByteBuffer> classDescriptors
+    ){
+        public Interface{
+            endpoints = List.copyOf(Objects.requireNonNull(endpoints, "endpoints was null"));
+            classDescriptors = List.copyOf(Objects.requireNonNull(classDescriptors, "classDescriptors was null"));
+        }
+        
+        /**
+         * Copies this interface with its own class specific descriptors.
+         *
+         * @return The copy
+         */
+        private Interface copy(){
+            if(classDescriptors.isEmpty()){
+                return this;
+            }
+            List<ByteBuffer> copies = new ArrayList<>(classDescriptors.size());
+            for(var descriptor : classDescriptors){
+                copies.add(BufferHelper.clone(descriptor.duplicate().clear()).asReadOnlyBuffer());
+            }
+            return new Interface(
+                number, alternateSetting, interfaceClass, interfaceSubClass, interfaceProtocol, endpoints, copies
+            );
+        }
+    }
+    
+    /**
+     * An endpoint of an interface.
+     *
+     * @param address The address of the endpoint, including the direction bit
+     * @param attributes The attributes of the endpoint, the lowest two bits are the transfer type
+     * @param maxPacketSize The maximum packet size, including the additional transactions per microframe bits
+     * @param interval The polling interval
+     */
+    public record Endpoint(
+        int address,
+        int attributes,
+        int maxPacketSize,
+        int interval
+    ){
+        public static final int TYPE_CONTROL = 0;
+        public static final int TYPE_ISOCHRONOUS = 1;
+        public static final int TYPE_BULK = 2;
+        public static final int TYPE_INTERRUPT = 3;
+        
+        /**
+         * Gets the endpoint number without the direction.
+         *
+         * @return The endpoint number
+         */
+        public int number(){
+            return address & 0x0F;
+        }
+        
+        /**
+         * Gets the direction of the endpoint.
+         *
+         * @return The direction
+         */
+        public @NotNull DataEvent.Direction direction(){
+            return (address & 0x80) != 0 ? DataEvent.Direction.IN : DataEvent.Direction.OUT;
+        }
+        
+        /**
+         * Gets the transfer type of the endpoint.
+         *
+         * @return One of the TYPE constants
+         */
+        public int type(){
+            return attributes & 0b11;
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package net.gudenau.usbcap.event.enumeration;
+
+import java.util.Objects;
+import net.gudenau.usbcap.UsbSpeed;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A new device showed up on the port of a hub that was just reset by the host.
+ *
+ * @param device The opaque handle for the new device
+ * @param hub The hub the device is connected to
+ * @param port The port of the hub, starting at 1
+ * @param speed The speed the hub reported for the port or null if the status of the port was not read
+ */
+public record DeviceAttachedEvent(
+    @NotNull Device device,
+    @NotNull Device hub,
+    int port,
+    @Nullable UsbSpeed speed
+) implements EnumerationEvent{
+    public static final String DEVICE_ATTACHED = "device_attached";
+    
+    public DeviceAttachedEvent{
+        Objects.requireNonNull(device, "device was null");
+        Objects.requireNonNull(hub, "hub was null");
+    }
+    
+    @Override
+    public String getId(){
+        return DEVICE_ATTACHED;
+    }
+}
@@ -1,36 +1,129 @@
 package net.gudenau.usbcap.event.enumeration;
 
+import java.nio.ByteBuffer;
+import java.util.Objects;
 import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
 
 /**
- * An event for a USB device descriptor.
+ * An event for a USB device descriptor. The fields are read from the descriptor when they are asked for, use a
+ * {@link DeviceDescriptorView} to read many descriptors with a single object.
  *
  * @param device The USB device handle
- * @param usbVersion The reported USB version
- * @param deviceClass The USB class of the device
- * @param deviceSubClass The USB subclass of the device
- * @param deviceProtocol The USB protocol of the device
- * @param maxPacketSize The max packet size for the device
- * @param vendor The vendor ID of the device
- * @param product The product ID of the device
- * @param deviceVersion The reported version of the device
- * @param manufacturerIndex The index of the manufacture string record
- * @param serialNumberIndex The index of the serial number string record
- * @param configurationCount The number of configurations supported by the device
+ * @param descriptor The descriptor, starting at index 0, fields past its limit read as 0
  */
 public record DeviceDescriptorEvent(
-    Device device,
-    int usbVersion,
-    int deviceClass, int deviceSubClass, int deviceProtocol,
-    int maxPacketSize,
-    int vendor, int product, int deviceVersion,
-    int manufacturerIndex, int serialNumberIndex,
-    int configurationCount
+    @NotNull Device device,
+    @NotNull ByteBuffer descriptor
 ) implements Event{
     public static final String DEVICE_DESCRIPTOR = "device_descriptor";
     
+    public DeviceDescriptorEvent{
+        Objects.requireNonNull(device, "device was null");
+        Objects.requireNonNull(descriptor, "descriptor was null");
+    }
+    
+    /**
+     * @return The reported USB version, in binary-coded decimal
+     */
+    public int usbVersion(){
+        return DeviceDescriptorView.usbVersion(descriptor, 0);
+    }
+    
+    /**
+     * @return The USB class of the device
+     */
+    public int deviceClass(){
+        return DeviceDescriptorView.deviceClass(descriptor, 0);
+    }
+    
+    /**
+     * @return The USB subclass of the device
+     */
+    public int deviceSubClass(){
+        return DeviceDescriptorView.deviceSubClass(descriptor, 0);
+    }
+    
+    /**
+     * @return The USB protocol of the device
+     */
+    public int deviceProtocol(){
+        return DeviceDescriptorView.deviceProtocol(descriptor, 0);
+    }
+    
+    /**
+     * @return The max packet size of the control endpoint
+     */
+    public int maxPacketSize(){
+        return DeviceDescriptorView.maxPacketSize(descriptor, 0);
+    }
+    
+    /**
+     * @return The vendor ID of the device
+     */
+    public int vendor(){
+        return DeviceDescriptorView.vendor(descriptor, 0);
+    }
+    
+    /**
+     * @return The product ID of the device
+     */
+    public int product(){
+        return DeviceDescriptorView.product(descriptor, 0);
+    }
+    
+    /**
+     * @return The reported version of the device, in binary-coded decimal
+     */
+    public int deviceVersion(){
+        return DeviceDescriptorView.deviceVersion(descriptor, 0);
+    }
+    
+    /**
+     * @return The index of the manufacturer string
+     */
+    public int manufacturerIndex(){
+        return DeviceDescriptorView.manufacturerIndex(descriptor, 0);
+    }
+    
+    /**
+     * @return The index of the product string
+     */
+    public int productIndex(){
+        return DeviceDescriptorView.productIndex(descriptor, 0);
+    }
+    
+    /**
+     * @return The index of the serial number string
+     */
+    public int serialNumberIndex(){
+        return DeviceDescriptorView.serialNumberIndex(descriptor, 0);
+    }
+    
+    /**
+     * @return The number of configurations supported by the device
+     */
+    public int configurationCount(){
+        return DeviceDescriptorView.configurationCount(descriptor, 0);
+    }
+    
+    @Override
+    public DeviceDescriptorEvent copy(){
+        var copy = BufferHelper.clone(descriptor.duplicate().clear());
+        return new DeviceDescriptorEvent(device, copy.asReadOnlyBuffer());
+    }
+    
     @Override
     public String getId(){
         return DEVICE_DESCRIPTOR;
     }
+    
+    @Override
+    public String toString(){
+        return String.format(
+            "DeviceDescriptorEvent[device=%s,vendor=%04X,product=%04X,class=%02X,usbVersion=%04X]",
+            device, vendor(), product(), deviceClass(), usbVersion()
+        );
+    }
 }
@@ -0,0 +1,216 @@
+package net.gudenau.usbcap.event.enumeration;
+
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A reusable view of a USB device descriptor that reads the fields from the descriptor bytes when they are asked for.
+ *
+ * The view starts at the position the buffer had when it was wrapped and never changes the buffer, so one view can be
+ * pointed at every descriptor of a capture. Fields past the end of a short descriptor read as 0, hosts read only the
+ * first 8 bytes of the descriptor before the device has an address.
+ */
+public final class DeviceDescriptorView{
+    /**
+     * The length of a complete device descriptor.
+     */
+    public static final int LENGTH = 18;
+    
+    private static final int USB_VERSION = 2;
+    private static final int DEVICE_CLASS = 4;
+    private static final int DEVICE_SUB_CLASS = 5;
+    private static final int DEVICE_PROTOCOL = 6;
+    private static final int MAX_PACKET_SIZE = 7;
+    private static final int VENDOR = 8;
+    private static final int PRODUCT = 10;
+    private static final int DEVICE_VERSION = 12;
+    private static final int MANUFACTURER_INDEX = 14;
+    private static final int PRODUCT_INDEX = 15;
+    private static final int SERIAL_NUMBER_INDEX = 16;
+    private static final int CONFIGURATION_COUNT = 17;
+    
+    private ByteBuffer descriptor = ByteBuffer.allocate(0);
+    private int base = 0;
+    
+    /**
+     * Points this view at a descriptor.
+     *
+     * @param descriptor The descriptor, from its position to its limit
+     *
+     * @return This view
+     */
+    public @NotNull DeviceDescriptorView wrap(@NotNull ByteBuffer descriptor){
+        this.descriptor = Objects.requireNonNull(descriptor, "descriptor was null");
+        base = descriptor.position();
+        return this;
+    }
+    
+    /**
+     * Points this view at the descriptor of an event.
+     *
+     * @param event The event
+     *
+     * @return This view
+     */
+    public @NotNull DeviceDescriptorView wrap(@NotNull DeviceDescriptorEvent event){
+        return wrap(Objects.requireNonNull(event, "event was null").descriptor());
+    }
+    
+    /**
+     * Checks if the descriptor has every field.
+     *
+     * @return True if the descriptor is at least {@link #LENGTH} bytes long
+     */
+    public boolean isComplete(){
+        return isComplete(descriptor, base);
+    }
+    
+    /**
+     * @return The reported USB version, in binary-coded decimal
+     */
+    public int usbVersion(){
+        return usbVersion(descriptor, base);
+    }
+    
+    /**
+     * @return The USB class of the device
+     */
+    public int deviceClass(){
+        return deviceClass(descriptor, base);
+    }
+    
+    /**
+     * @return The USB subclass of the device
+     */
+    public int deviceSubClass(){
+        return deviceSubClass(descriptor, base);
+    }
+    
+    /**
+     * @return The USB protocol of the device
+     */
+    public int deviceProtocol(){
+        return deviceProtocol(descriptor, base);
+    }
+    
+    /**
+     * @return The max packet size of the control endpoint
+     */
+    public int maxPacketSize(){
+        return maxPacketSize(descriptor, base);
+    }
+    
+    /**
+     * @return The vendor ID of the device
+     */
+    public int vendor(){
+        return vendor(descriptor, base);
+    }
+    
+    /**
+     * @return The product ID of the device
+     */
+    public int product(){
+        return product(descriptor, base);
+    }
+    
+    /**
+     * @return The reported version of the device, in binary-coded decimal
+     */
+    public int deviceVersion(){
+        return deviceVersion(descriptor, base);
+    }
+    
+    /**
+     * @return The index of the manufacturer string
+     */
+    public int manufacturerIndex(){
+        return manufacturerIndex(descriptor, base);
+    }
+    
+    /**
+     * @return The index of the product string
+     */
+    public int productIndex(){
+        return productIndex(descriptor, base);
+    }
+    
+    /**
+     * @return The index of the serial number string
+     */
+    public int serialNumberIndex(){
+        return serialNumberIndex(descriptor, base);
+    }
+    
+    /**
+     * @return The number of configurations supported by the device
+     */
+    public int configurationCount(){
+        return configurationCount(descriptor, base);
+    }
+    
+    // Shared with DeviceDescriptorEvent, which reads the same fields without a view
+    
+    static boolean isComplete(ByteBuffer descriptor, int base){
+        return descriptor.limit() - base >= LENGTH;
+    }
+    
+    static int usbVersion(ByteBuffer descriptor, int base){
+        return getUnsignedShort(descriptor, base + USB_VERSION);
+    }
+    
+    static int deviceClass(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + DEVICE_CLASS);
+    }
+    
+    static int deviceSubClass(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + DEVICE_SUB_CLASS);
+    }
+    
+    static int deviceProtocol(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + DEVICE_PROTOCOL);
+    }
+    
+    static int maxPacketSize(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + MAX_PACKET_SIZE);
+    }
+    
+    static int vendor(ByteBuffer descriptor, int base){
+        return getUnsignedShort(descriptor, base + VENDOR);
+    }
+    
+    static int product(ByteBuffer descriptor, int base){
+        return getUnsignedShort(descriptor, base + PRODUCT);
+    }
+    
+    static int deviceVersion(ByteBuffer descriptor, int base){
+        return getUnsignedShort(descriptor, base + DEVICE_VERSION);
+    }
+    
+    static int manufacturerIndex(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + MANUFACTURER_INDEX);
+    }
+    
+    static int productIndex(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + PRODUCT_INDEX);
+    }
+    
+    static int serialNumberIndex(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + SERIAL_NUMBER_INDEX);
+    }
+    
+    static int configurationCount(ByteBuffer descriptor, int base){
+        return getUnsignedByte(descriptor, base + CONFIGURATION_COUNT);
+    }
+    
+    private static int getUnsignedByte(ByteBuffer descriptor, int index){
+        return index < descriptor.limit() ? Byte.toUnsignedInt(descriptor.get(index)) : 0;
+    }
+    
+    private static int getUnsignedShort(ByteBuffer descriptor, int index){
+        return index + 1 < descriptor.limit() ?
+            Byte.toUnsignedInt(descriptor.get(index)) | (Byte.toUnsignedInt(descriptor.get(index + 1)) << 8) :
+            0;
+    }
+}
@@ -0,0 +1,23 @@
+package net.gudenau.usbcap.event.enumeration;
+
+import java.util.Objects;
+
+/**
+ * A device was disconnected from the port of a hub, or the hub it was behind was.
+ *
+ * @param device The opaque handle for the device
+ */
+public record DeviceDetachedEvent(
+    Device device
+) implements EnumerationEvent{
+    public static final String DEVICE_DETACHED = "device_detached";
+    
+    public DeviceDetachedEvent{
+        Objects.requireNonNull(device, "device was null");
+    }
+    
+    @Override
+    public String getId(){
+        return DEVICE_DETACHED;
+    }
+}
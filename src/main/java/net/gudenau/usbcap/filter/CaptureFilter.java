@@ -1,72 +1,103 @@
 package net.gudenau.usbcap.filter;
 
 import java.io.IOException;
-import java.nio.ByteBuffer;
-import java.nio.channels.SeekableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 import net.gudenau.usbcap.event.Event;
 import net.gudenau.usbcap.event.PacketEvent;
 import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.CaptureWriter;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * A filter that dumps events to a file to be handled later.
+ *
+ * Events are collected into blocks before they are written, call {@link #flush()} or {@link #close()} to make sure
+ * everything ends up in the file.
+ *
+ * The state of {@link Checkpointable} filters can be saved into the file every few blocks, allowing
+ * {@link net.gudenau.usbcap.capture.FileCaptureDevice#seek(long)} to start decoding anywhere in the file. This filter
+ * has to be added before those filters so the checkpoints line up with the events.
  */
 public final class CaptureFilter implements Filter, AutoCloseable{
-    private final SeekableByteChannel channel;
-    private final ByteBuffer lengthBuffer = ByteBuffer.allocateDirect(Integer.BYTES);
+    private final CaptureWriter writer;
     
     /**
-     * Creates a new capture filter that writes events to the provided path.
+     * Creates a new capture filter that writes compressed events to the provided path.
      *
      * @param path The path to write to
      *
      * @throws IOException If the file could not be created or opened for writing
      */
     public CaptureFilter(Path path) throws IOException{
+        this(path, true);
+    }
+    
+    /**
+     * Creates a new capture filter that writes events to the provided path.
+     *
+     * @param path The path to write to
+     * @param compress True to compress the events in the background
+     *
+     * @throws IOException If the file could not be created or opened for writing
+     */
+    public CaptureFilter(Path path, boolean compress) throws IOException{
+        this(path, compress, 0);
+    }
+    
+    /**
+     * Creates a new capture filter that writes events and filter checkpoints to the provided path.
+     *
+     * @param path The path to write to
+     * @param compress True to compress the events in the background
+     * @param checkpointInterval The amount of blocks between checkpoints, 0 to disable them
+     * @param filters The filters to save checkpoints of
+     *
+     * @throws IOException If the file could not be created or opened for writing
+     */
+    public CaptureFilter(Path path, boolean compress, int checkpointInterval, Checkpointable... filters) throws IOException{
         path = path.toAbsolutePath();
         Files.createDirectories(path.getParent());
         Files.deleteIfExists(path);
-        channel = Files.newByteChannel(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        var channel = Files.newByteChannel(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        try{
+            writer = new CaptureWriter(channel, compress, ForkJoinPool.commonPool(), Arrays.asList(filters), checkpointInterval);
+        }catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Writes all buffered events to the file.
+     *
+     * @throws IOException If the events could not be written
+     */
+    public void flush() throws IOException{
+        writer.flush();
     }
     
     @Override
     public void close() throws IOException{
-        channel.close();
+        writer.close();
     }
     
     @Override
     public boolean handleEvent(@NotNull Event rawEvent){
-        if(rawEvent instanceof PacketEvent event){
-            var buffer = event.buffer();
-            lengthBuffer.putInt(0, buffer.capacity());
-            lengthBuffer.clear();
-            write(lengthBuffer);
-            write(buffer);
-        }else if(rawEvent instanceof ResetEvent){
-            lengthBuffer.putInt(0, -1);
-            lengthBuffer.clear();
-            write(lengthBuffer);
-        }
-        return false;
-    }
-    
-    /**
-     * Simple helper to write the contents of a buffer to the file.
-     *
-     * @param buffer The buffer to write.
-     */
-    private void write(ByteBuffer buffer){
         try{
-            while(buffer.hasRemaining()){
-                channel.write(buffer);
+            if(rawEvent instanceof PacketEvent event){
+                writer.writePacket(event.buffer().clear(), event.timestamp());
+            }else if(rawEvent instanceof ResetEvent event){
+                writer.writeReset(event.timestamp());
             }
         }catch(IOException e){
             throw new RuntimeException("Failed to write to capture file", e);
         }
+        return false;
     }
     
     @Override
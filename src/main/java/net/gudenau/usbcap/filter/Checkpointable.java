@@ -0,0 +1,27 @@
+package net.gudenau.usbcap.filter;
+
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A filter with internal state that can be saved and restored later, allowing decoding to start in the middle of a
+ * capture without replaying everything before it.
+ *
+ * Checkpoints are only taken and restored between events, when the filter has no pending events.
+ */
+public interface Checkpointable extends Filter{
+    /**
+     * Saves the current state of this filter.
+     *
+     * @return The state of this filter
+     */
+    byte @NotNull [] saveCheckpoint();
+    
+    /**
+     * Replaces the state of this filter with one that was saved by {@link #saveCheckpoint()}.
+     *
+     * @param checkpoint The saved state
+     *
+     * @throws IllegalArgumentException If the checkpoint is malformed
+     */
+    void restoreCheckpoint(byte @NotNull [] checkpoint);
+}
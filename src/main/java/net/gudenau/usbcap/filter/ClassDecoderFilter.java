@@ -0,0 +1,253 @@
+package net.gudenau.usbcap.filter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import net.gudenau.usbcap.decoder.ClassDecoder;
+import net.gudenau.usbcap.decoder.InterfaceDecoder;
+import net.gudenau.usbcap.event.ControlTransferEvent;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.event.enumeration.ConfigurationDescriptorEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.event.enumeration.DeviceDetachedEvent;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Hands the transfers of the interfaces of a device to the {@link ClassDecoder}s that understand them.
+ *
+ * Decoders are found with a {@link ServiceLoader}, only the ones that were asked for are used. Interfaces are bound
+ * to a decoder when the configuration that has them is selected, the first configuration descriptor of a device counts
+ * as selected until the host sends a SET_CONFIGURATION so captures that miss it still get decoded. Control transfers
+ * addressed to an interface and the transfers on its endpoints are given to its decoder, which can replace them with
+ * the events it decodes. Everything else, including every transfer of an interface without a decoder, is left alone.
+ *
+ * Needs the {@link ConfigurationDescriptorEvent}s and {@link DeviceDataEvent}s of a {@link DeviceFilter} and the
+ * {@link ControlTransferEvent}s of a {@link ControlTransferFilter}, both have to come before this filter in the chain.
+ */
+public final class ClassDecoderFilter implements Filter{
+    private static final Map<String, ClassDecoder> DECODERS;
+    
+    static{
+        DECODERS = ServiceLoader.load(ClassDecoder.class).stream()
+            .map(ServiceLoader.Provider::get)
+            .collect(Collectors.toUnmodifiableMap(ClassDecoder::getDecoderName, Function.identity()));
+    }
+    
+    private static final int REQUEST_TYPE_SET_CONFIGURATION = 0b00000000;
+    private static final int REQUEST_TYPE_SET_INTERFACE = 0b00000001;
+    private static final int REQUEST_SET_CONFIGURATION = 9;
+    private static final int REQUEST_SET_INTERFACE = 11;
+    private static final int RECIPIENT_INTERFACE = 1;
+    
+    private final DeviceFilter devices;
+    private final List<ClassDecoder> decoders;
+    private final Map<Device, State> states = new HashMap<>();
+    
+    private final List<Event> pendingEvents = new ArrayList<>();
+    
+    /**
+     * Creates a new class decoder filter with decoders from the {@link ServiceLoader}.
+     *
+     * @param devices The device filter used to find the device of a control transfer
+     * @param names The names of the decoders to use, all of them if none are given
+     *
+     * @throws IllegalArgumentException If there is no decoder with one of the names
+     */
+    public ClassDecoderFilter(@NotNull DeviceFilter devices, @NotNull String @NotNull ... names){
+        this(devices, decoders(names));
+    }
+    
+    /**
+     * Creates a new class decoder filter.
+     *
+     * @param devices The device filter used to find the device of a control transfer
+     * @param decoders The decoders to use, the first one that supports an interface gets it
+     */
+    public ClassDecoderFilter(@NotNull DeviceFilter devices, @NotNull Collection<@NotNull ClassDecoder> decoders){
+        this.devices = Objects.requireNonNull(devices, "devices was null");
+        this.decoders = List.copyOf(Objects.requireNonNull(decoders, "decoders was null"));
+    }
+    
+    private static List<ClassDecoder> decoders(String[] names){
+        Objects.requireNonNull(names, "names was null");
+        if(names.length == 0){
+            return List.copyOf(DECODERS.values());
+        }
+        List<ClassDecoder> decoders = new ArrayList<>(names.length);
+        for(var name : names){
+            var decoder = DECODERS.get(Objects.requireNonNull(name, "name was null"));
+            if(decoder == null){
+                throw new IllegalArgumentException("Unknown class decoder: " + name);
+            }
+            decoders.add(decoder);
+        }
+        return decoders;
+    }
+    
+    /**
+     * Gets the names of all decoders the {@link ServiceLoader} found.
+     *
+     * @return The names of the available decoders
+     */
+    public static @NotNull Collection<@NotNull String> getDecoderNames(){
+        return DECODERS.keySet();
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        if(event instanceof DeviceDataEvent data){
+            var state = states.get(data.device());
+            if(state == null){
+                return false;
+            }
+            var decoder = state.endpoints[data.endpoint() | (data.direction().ordinal() << 4)];
+            return decoder != null && decoder.handleData(data, pendingEvents);
+        }else if(event instanceof ControlTransferEvent transfer){
+            return handleControlTransfer(transfer);
+        }else if(event instanceof ConfigurationDescriptorEvent configuration){
+            var state = states.computeIfAbsent(configuration.device(), State::new);
+            state.configurations.put(configuration.configurationValue(), configuration);
+            if(state.configuration == null){
+                select(state, configuration);
+            }
+        }else if(event instanceof DeviceDetachedEvent detached){
+            states.remove(detached.device());
+        }else if(event instanceof ResetEvent){
+            states.clear();
+        }
+        return false;
+    }
+    
+    private boolean handleControlTransfer(ControlTransferEvent transfer){
+        var device = devices.getDevice(transfer.address());
+        var state = device == null ? null : states.get(device);
+        if(state == null){
+            return false;
+        }
+        
+        int bmRequestType = transfer.bmRequestType();
+        int bRequest = transfer.bRequest();
+        if(bmRequestType == REQUEST_TYPE_SET_CONFIGURATION && bRequest == REQUEST_SET_CONFIGURATION){
+            var configuration = state.configurations.get(transfer.wValueLow());
+            if(configuration == null){
+                state.unbind();
+            }else{
+                select(state, configuration);
+            }
+            return false;
+        }else if(bmRequestType == REQUEST_TYPE_SET_INTERFACE && bRequest == REQUEST_SET_INTERFACE){
+            if(state.configuration != null){
+                bind(state, transfer.wIndexLow(), transfer.wValueLow());
+            }
+            return false;
+        }
+        
+        if(transfer.requestRecipient() != RECIPIENT_INTERFACE){
+            return false;
+        }
+        var decoder = state.interfaces.get(transfer.wIndexLow());
+        return decoder != null && decoder.handleControlTransfer(transfer, pendingEvents);
+    }
+    
+    /**
+     * Binds the first alternate setting of every interface of a configuration. Interfaces that already have it keep
+     * their decoder, so selecting the configuration again does not throw away what the decoders learned.
+     */
+    private void select(State state, ConfigurationDescriptorEvent configuration){
+        boolean selected = state.configuration == configuration;
+        if(!selected){
+            state.unbind();
+            state.configuration = configuration;
+        }
+        for(var descriptor : configuration.interfaces()){
+            int number = descriptor.number();
+            if(descriptor.alternateSetting() == 0 && (!selected || state.alternates[number] != 0)){
+                bind(state, number, 0);
+            }
+        }
+    }
+    
+    /**
+     * Binds an alternate setting of an interface of the selected configuration, replacing the setting before it.
+     */
+    private void bind(State state, int number, int alternateSetting){
+        var old = state.interfaces.remove(number);
+        if(old != null){
+            for(int i = 0; i < state.endpoints.length; i++){
+                if(state.endpoints[i] == old){
+                    state.endpoints[i] = null;
+                }
+            }
+        }
+        
+        state.alternates[number] = alternateSetting;
+        var configuration = state.configuration;
+        var descriptor = configuration.getInterface(number, alternateSetting);
+        if(descriptor == null){
+            return;
+        }
+        for(var decoder : decoders){
+            if(!decoder.supports(configuration, descriptor)){
+                continue;
+            }
+            var bound = decoder.bind(state.device, configuration, descriptor);
+            state.interfaces.put(number, bound);
+            for(var endpoint : descriptor.endpoints()){
+                state.endpoints[endpoint.number() | (endpoint.direction().ordinal() << 4)] = bound;
+            }
+            return;
+        }
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        if(pendingEvents.isEmpty()){
+            return List.of();
+        }else{
+            var list = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            return list;
+        }
+    }
+    
+    @Override
+    public void drainPendingEvents(@NotNull Collection<? super Event> destination){
+        for(int i = 0, size = pendingEvents.size(); i < size; i++){
+            destination.add(pendingEvents.get(i));
+        }
+        pendingEvents.clear();
+    }
+    
+    /**
+     * The configurations and bound interfaces of a single device.
+     */
+    private static final class State{
+        private final Device device;
+        private final Map<Integer, ConfigurationDescriptorEvent> configurations = new HashMap<>();
+        private final Map<Integer, InterfaceDecoder> interfaces = new HashMap<>();
+        // [direction][endpoint]
+        private final InterfaceDecoder[] endpoints = new InterfaceDecoder[32];
+        private final int[] alternates = new int[256];
+        private ConfigurationDescriptorEvent configuration;
+        
+        private State(Device device){
+            this.device = device;
+        }
+        
+        private void unbind(){
+            configuration = null;
+            interfaces.clear();
+            Arrays.fill(endpoints, null);
+            Arrays.fill(alternates, 0);
+        }
+    }
+}
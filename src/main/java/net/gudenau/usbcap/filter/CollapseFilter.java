@@ -0,0 +1,230 @@
+package net.gudenau.usbcap.filter;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.RepeatedEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.event.TransactionEvent;
+import net.gudenau.usbcap.internal.BufferHelper;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Collapses runs of identical transactions and transfers on the same endpoint, like the NAKs of an interrupt endpoint
+ * that is polled every microframe or a sensor that keeps reporting the same reading, into {@link RepeatedEvent}s.
+ *
+ * The first event of a run is let through, the events after it that are the same are removed and counted. Transactions
+ * are the same when they have the same token, address, endpoint, handshake and length. {@link DataEvent}s and
+ * {@link DeviceDataEvent}s are the same when they have the same direction, device, endpoint and payload, data on
+ * endpoint 0 is never collapsed because identical control requests are not repeats. The count is sent as a single
+ * repeated event once a different event happens on the endpoint, which places it right after that event, or once the
+ * run has been collapsing for longer than the flush window, so long NAK storms are still reported while they happen. A
+ * run that just stops is reported by the first event with a timestamp after the flush window, put this filter in front
+ * of the {@link PacketFilter} to use the timestamps of every packet for that instead of only the ones of transactions.
+ * Transfers have no timestamps of their own, they use the one of the last packet or transaction.
+ *
+ * Needs the {@link TransactionEvent}s of a {@link PacketFilter} created with {@link PacketFilter.Option#TRANSACTIONS} to
+ * collapse transactions, filters that are in front of this one in the chain still get every event.
+ */
+public final class CollapseFilter implements Filter{
+    // [kind][address][endpoint][direction], transactions, data events and device data events have runs of their own
+    private static final int SLOTS = 128 * 16 * 2;
+    private static final int DATA = SLOTS;
+    private static final int DEVICE_DATA = SLOTS * 2;
+    private static final int ALL_SLOTS = SLOTS * 3;
+    
+    private final long window;
+    
+    // The event that started the current run of every endpoint, null if there is none
+    private final Event[] runs = new Event[ALL_SLOTS];
+    // The payload length and hash of the run, the buffer of the event that started it may have been reused since
+    private final int[] lengths = new int[ALL_SLOTS];
+    private final long[] hashes = new long[ALL_SLOTS];
+    private final int[] counts = new int[ALL_SLOTS];
+    private final long[] firsts = new long[ALL_SLOTS];
+    private final long[] lasts = new long[ALL_SLOTS];
+    // The slots with collapsed events that were not reported yet
+    private final int[] collapsing = new int[ALL_SLOTS];
+    private int collapsingCount = 0;
+    // When the oldest collapsing run has to be reported
+    private long deadline = Long.MAX_VALUE;
+    // The timestamp of the last packet or transaction
+    private long now = 0;
+    
+    private final List<Event> pendingEvents = new ArrayList<>();
+    
+    /**
+     * Creates a new collapse filter.
+     *
+     * @param window How long events are collapsed before the count is reported
+     */
+    public CollapseFilter(@NotNull Duration window){
+        Objects.requireNonNull(window, "window was null");
+        if(window.isNegative() || window.isZero()){
+            throw new IllegalArgumentException("window was not positive: " + window);
+        }
+        this.window = window.toNanos();
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        if(event instanceof TransactionEvent transaction){
+            expire(transaction.timestamp());
+            int slot = (transaction.address() << 5) | (transaction.endpoint() << 1) | transaction.direction().ordinal();
+            return collapse(slot, transaction, transaction.length(), 0);
+        }else if(event instanceof DataEvent data){
+            if(data.endpoint() == 0){
+                return false;
+            }
+            int slot = DATA | (data.address() << 5) | ((data.endpoint() & 0x0F) << 1) | data.direction().ordinal();
+            return collapse(slot, data, data.data().remaining(), hash(data.data()));
+        }else if(event instanceof DeviceDataEvent data){
+            if(data.endpoint() == 0){
+                return false;
+            }
+            // Devices share slots by the low bits of their id, runs of devices in the same slot just break each other
+            int device = data.device().id() & 0x7F;
+            int slot = DEVICE_DATA | (device << 5) | ((data.endpoint() & 0x0F) << 1) | data.direction().ordinal();
+            return collapse(slot, data, data.data().remaining(), hash(data.data()));
+        }else if(event instanceof PacketEvent packet){
+            expire(packet.timestamp());
+        }else if(event instanceof ResetEvent){
+            // Nothing after a reset is a repeat of what happened before it.
+            for(int i = 0; i < collapsingCount; i++){
+                flush(collapsing[i]);
+            }
+            collapsingCount = 0;
+            deadline = Long.MAX_VALUE;
+            Arrays.fill(runs, null);
+        }
+        return false;
+    }
+    
+    private boolean collapse(int slot, Event event, int length, long hash){
+        var run = runs[slot];
+        if(run != null && lengths[slot] == length && hashes[slot] == hash && same(run, event)){
+            if(counts[slot] == 0){
+                firsts[slot] = now;
+                collapsing[collapsingCount++] = slot;
+                deadline = Math.min(deadline, now + window);
+                // The repeat has the same payload and a buffer that is still valid
+                runs[slot] = copy(event);
+            }
+            counts[slot]++;
+            lasts[slot] = now;
+            return true;
+        }
+        
+        if(run != null && counts[slot] != 0){
+            flush(slot);
+            for(int i = 0; i < collapsingCount; i++){
+                if(collapsing[i] == slot){
+                    stopCollapsing(i);
+                    break;
+                }
+            }
+        }
+        runs[slot] = event;
+        lengths[slot] = length;
+        hashes[slot] = hash;
+        return false;
+    }
+    
+    private static boolean same(Event a, Event b){
+        if(a instanceof TransactionEvent x && b instanceof TransactionEvent y){
+            return x.token() == y.token() && x.handshake() == y.handshake()
+                && x.address() == y.address() && x.endpoint() == y.endpoint();
+        }else if(a instanceof DataEvent x && b instanceof DataEvent y){
+            return x.direction() == y.direction() && x.address() == y.address() && x.endpoint() == y.endpoint();
+        }else if(a instanceof DeviceDataEvent x && b instanceof DeviceDataEvent y){
+            return x.direction() == y.direction() && x.device().equals(y.device()) && x.endpoint() == y.endpoint();
+        }
+        return false;
+    }
+    
+    /**
+     * Hashes a payload with 64 bit FNV-1a, two payloads with the same length and hash are treated as the same.
+     *
+     * @param data The payload, from position to limit
+     *
+     * @return The hash
+     */
+    private static long hash(ByteBuffer data){
+        long hash = 0xCBF29CE484222325L;
+        for(int i = data.position(), limit = data.limit(); i < limit; i++){
+            hash = (hash ^ (data.get(i) & 0xFF)) * 0x100000001B3L;
+        }
+        return hash;
+    }
+    
+    private static Event copy(Event event){
+        if(event instanceof DataEvent data){
+            var payload = BufferHelper.clone(data.data().duplicate());
+            return new DataEvent(data.direction(), data.address(), data.endpoint(), payload);
+        }else if(event instanceof DeviceDataEvent data){
+            var payload = BufferHelper.clone(data.data().duplicate());
+            return new DeviceDataEvent(data.device(), data.direction(), data.endpoint(), payload);
+        }
+        return event;
+    }
+    
+    /**
+     * Moves the time of this filter forward and reports every run that has been collapsing for longer than the window,
+     * the runs keep collapsing afterwards.
+     *
+     * @param timestamp The time of the current event
+     */
+    private void expire(long timestamp){
+        now = timestamp;
+        if(timestamp < deadline){
+            return;
+        }
+        deadline = Long.MAX_VALUE;
+        for(int i = collapsingCount - 1; i >= 0; i--){
+            int slot = collapsing[i];
+            if(timestamp - firsts[slot] >= window){
+                flush(slot);
+                stopCollapsing(i);
+            }else{
+                deadline = Math.min(deadline, firsts[slot] + window);
+            }
+        }
+    }
+    
+    private void stopCollapsing(int index){
+        // Order does not matter, the deadline is the minimum anyway
+        collapsing[index] = collapsing[--collapsingCount];
+    }
+    
+    private void flush(int slot){
+        pendingEvents.add(new RepeatedEvent(runs[slot], counts[slot], firsts[slot], lasts[slot]));
+        counts[slot] = 0;
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        if(pendingEvents.isEmpty()){
+            return List.of();
+        }else{
+            var list = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            return list;
+        }
+    }
+    
+    @Override
+    public void drainPendingEvents(@NotNull Collection<? super Event> destination){
+        for(int i = 0, size = pendingEvents.size(); i < size; i++){
+            destination.add(pendingEvents.get(i));
+        }
+        pendingEvents.clear();
+    }
+}
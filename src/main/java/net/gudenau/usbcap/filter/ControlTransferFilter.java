@@ -1,6 +1,8 @@
 package net.gudenau.usbcap.filter;
 
+import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
+import java.util.Collection;
 import java.util.List;
 import net.gudenau.usbcap.event.*;
 import net.gudenau.usbcap.internal.BufferHelper;
@@ -11,7 +13,7 @@ import static net.gudenau.usbcap.internal.BufferHelper.*;
 /**
  * A filter that handles USB control transfer packets, groups them together and creates a single event.
  */
-public final class ControlTransferFilter implements Filter{
+public final class ControlTransferFilter implements Filter, Checkpointable{
     private State state;
     private ByteBuffer buffer = ByteBuffer.allocate(4096);
     private Request request;
@@ -103,6 +105,64 @@ public final class ControlTransferFilter implements Filter{
         }
     }
     
+    @Override
+    public void drainPendingEvents(@NotNull Collection<? super Event> destination){
+        if(pendingEvent != null){
+            destination.add(pendingEvent);
+            pendingEvent = null;
+        }
+    }
+    
+    @Override
+    public byte @NotNull [] saveCheckpoint(){
+        // [state]([address][endpoint][bmRequestType][bRequest][wValue][wIndex][wLength][length][data])
+        if(request == null){
+            return new byte[]{(byte)state.ordinal()};
+        }
+        var data = buffer.duplicate().flip();
+        var checkpoint = ByteBuffer.allocate(15 + data.remaining());
+        checkpoint.put((byte)state.ordinal());
+        checkpoint.put((byte)request.address());
+        checkpoint.put((byte)request.endpoint());
+        checkpoint.put((byte)request.bmRequestType());
+        checkpoint.put((byte)request.bRequest());
+        checkpoint.putShort((short)request.wValue());
+        checkpoint.putShort((short)request.wIndex());
+        checkpoint.putShort((short)request.wLength());
+        checkpoint.putInt(data.remaining());
+        checkpoint.put(data);
+        return checkpoint.array();
+    }
+    
+    @Override
+    public void restoreCheckpoint(byte @NotNull [] checkpoint){
+        var data = ByteBuffer.wrap(checkpoint);
+        try{
+            var states = State.values();
+            int state = data.get();
+            if(state < 0 || state >= states.length){
+                throw new IllegalArgumentException("Unknown state in checkpoint: " + state);
+            }
+            reset();
+            buffer.clear();
+            this.state = states[state];
+            if(data.hasRemaining()){
+                request = new Request(
+                    getUnsignedByte(data), getUnsignedByte(data),
+                    getUnsignedByte(data), getUnsignedByte(data),
+                    getUnsignedShort(data), getUnsignedShort(data), getUnsignedShort(data)
+                );
+                int length = data.getInt();
+                if(buffer.capacity() < length){
+                    buffer = ByteBuffer.allocate(Integer.highestOneBit(length) << 1);
+                }
+                buffer.put(data.slice(data.position(), length));
+            }
+        }catch(BufferUnderflowException | IndexOutOfBoundsException e){
+            throw new IllegalArgumentException("Checkpoint was truncated", e);
+        }
+    }
+    
     /**
      * The state of the internal state machine.
      *
@@ -1,24 +1,39 @@
 package net.gudenau.usbcap.filter;
 
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import net.gudenau.usbcap.UsbSpeed;
 import net.gudenau.usbcap.event.*;
+import net.gudenau.usbcap.event.enumeration.ConfigurationDescriptorEvent;
 import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.event.enumeration.DeviceAttachedEvent;
 import net.gudenau.usbcap.event.enumeration.DeviceDescriptorEvent;
+import net.gudenau.usbcap.event.enumeration.DeviceDetachedEvent;
 import net.gudenau.usbcap.event.enumeration.NewDeviceEvent;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
-import static net.gudenau.usbcap.internal.BufferHelper.getBcdShort;
 import static net.gudenau.usbcap.internal.BufferHelper.getUnsignedByte;
 import static net.gudenau.usbcap.internal.BufferHelper.getUnsignedShort;
 
 /**
  * A filter that takes transfers and attempts to convert them into request events and transfer events tagged with an
  * instance of {@link Device}
+ *
+ * The port requests of hubs are used to build the device tree, a hub port that is reset is where the next device that
+ * shows up at the default address is connected. Devices on a port that lost its connection are removed together with
+ * everything behind them.
  */
 //TODO Most of the requests
-public final class DeviceFilter implements Filter{
+public final class DeviceFilter implements Filter, Checkpointable{
     private static final int REQUEST_GET_STATUS = 0;
     private static final int REQUEST_CLEAR_FEATURE = 1;
     private static final int REQUEST_SET_FEATURE = 3;
@@ -39,8 +54,23 @@ public final class DeviceFilter implements Filter{
     private static final int DESCRIPTOR_DEVICE_QUALIFIER = 6;
     private static final int DESCRIPTOR_OTHER_SPEED_CONFIGURATION = 7;
     private static final int DESCRIPTOR_INTERFACE_POWER = 8;
+    private static final int DESCRIPTOR_INTERFACE_ASSOCIATION = 11;
+    
+    // Class requests with a hub port as the recipient
+    private static final int HUB_PORT_REQUEST_OUT = 0b00100011;
+    private static final int HUB_PORT_REQUEST_IN = 0b10100011;
+    private static final int PORT_RESET = 4;
+    private static final int PORT_STATUS_CONNECTION = 1;
+    private static final int PORT_STATUS_LOW_SPEED = 1 << 9;
+    private static final int PORT_STATUS_HIGH_SPEED = 1 << 10;
     
     private final Device[] devices = new Device[128];
+    // Where the device at every address is connected, null if it is not known to be behind a hub
+    private final Port[] ports = new Port[128];
+    // [address] a bit for every [direction][endpoint] that is isochronous in a configuration descriptor of the device
+    private final int[] isochronous = new int[128];
+    // The hub port that was reset last, the next device at the default address is connected to it
+    private Port resetPort;
     private final List<Event> pendingEvents = new ArrayList<>();
     
     public DeviceFilter(){
@@ -52,6 +82,9 @@ public final class DeviceFilter implements Filter{
             System.out.flush();
         }
         Arrays.fill(devices, null);
+        Arrays.fill(ports, null);
+        Arrays.fill(isochronous, 0);
+        resetPort = null;
     }
     
     @Override
@@ -69,7 +102,7 @@ public final class DeviceFilter implements Filter{
     }
     
     private boolean handleDataEvent(DataEvent data){
-        var device = getDevice(data.address(), false);
+        var device = devices[data.address()];
         if(device != null){
             pendingEvents.add(new DeviceDataEvent(device, data));
             return true;
@@ -80,7 +113,12 @@ public final class DeviceFilter implements Filter{
     
     private boolean handleControlTransfer(ControlTransferEvent control){
         //Util.log("Control transfer: %d (%s)\n", control.address());
-        var device = getDevice(control.address());
+        var device = getOrCreateDevice(control.address());
+        
+        if(control.bmRequestType() == HUB_PORT_REQUEST_OUT || control.bmRequestType() == HUB_PORT_REQUEST_IN){
+            handlePortRequest(device, control);
+            return false;
+        }
         
         return switch(control.bRequest()){
             case REQUEST_GET_STATUS -> {
@@ -100,6 +138,10 @@ public final class DeviceFilter implements Filter{
                 assert(devices[newAddress] == null) : new RuntimeException("Device already existed at address " + newAddress);
                 devices[newAddress] = device;
                 devices[control.address()] = null;
+                ports[newAddress] = ports[control.address()];
+                ports[control.address()] = null;
+                isochronous[newAddress] = isochronous[control.address()];
+                isochronous[control.address()] = 0;
                 
                 //Util.log("REQUEST_SET_ADDRESS\n");
                 yield true;
@@ -123,34 +165,28 @@ public final class DeviceFilter implements Filter{
                     case DESCRIPTOR_DEVICE ->{
                         //Util.log("\tDESCRIPTOR_DEVICE\n");
                         
-                        data.limit(Math.min(data.limit(), getUnsignedByte(data)));
-                        var descriptorType = getUnsignedByte(data);
-                        assert(descriptorType == DESCRIPTOR_DEVICE) : new IllegalStateException("Got non-device descriptor");
-                        var usbVersion = getBcdShort(data);
-                        var deviceClass = getUnsignedByte(data);
-                        var deviceSubClass = getUnsignedByte(data);
-                        var deviceProtocol = getUnsignedByte(data);
-                        var maxPacketSize = getUnsignedByte(data);
-                        var vendor = getUnsignedShort(data);
-                        var product = getUnsignedShort(data);
-                        var deviceVersion = getBcdShort(data);
-                        var manufacturerIndex = getUnsignedByte(data);
-                        var serialNumberIndex = getUnsignedByte(data);
-                        var configurationCount = getUnsignedByte(data);
-                        
-                        pendingEvents.add(new DeviceDescriptorEvent(
-                            device,
-                            usbVersion,
-                            deviceClass, deviceSubClass, deviceProtocol,
-                            maxPacketSize,
-                            vendor, product, deviceVersion,
-                            manufacturerIndex, serialNumberIndex, configurationCount
-                        ));
+                        // The fields are only read when someone asks for them
+                        int descriptorLength = data.hasRemaining() ? Byte.toUnsignedInt(data.get(data.position())) : 0;
+                        data.limit(Math.min(data.limit(), data.position() + descriptorLength));
+                        pendingEvents.add(new DeviceDescriptorEvent(device, data.slice().asReadOnlyBuffer()));
                         
                         yield true;
                     }
                     case DESCRIPTOR_CONFIGURATION ->{
                         //Util.log("\tDESCRIPTOR_CONFIGURATION\n");
+                        var configuration = parseConfiguration(device, data);
+                        if(configuration != null){
+                            // PacketFilter uses these to tell isochronous data apart from data that lost its handshake
+                            for(var descriptor : configuration.interfaces()){
+                                for(var endpoint : descriptor.endpoints()){
+                                    if(endpoint.type() == ConfigurationDescriptorEvent.Endpoint.TYPE_ISOCHRONOUS){
+                                        int bit = endpointBit(endpoint.number(), endpoint.direction());
+                                        isochronous[control.address()] |= 1 << bit;
+                                    }
+                                }
+                            }
+                            pendingEvents.add(configuration);
+                        }
                         yield true;
                     }
                     case DESCRIPTOR_STRING ->{
@@ -208,20 +244,389 @@ public final class DeviceFilter implements Filter{
         };
     }
     
-    private Device getDevice(int address){
-        return getDevice(address, true);
+    /**
+     * Parses a configuration descriptor and the interface, endpoint and class descriptors that follow it.
+     *
+     * @param device The device the descriptor belongs to
+     * @param data The descriptor
+     *
+     * @return The configuration or null if the descriptor was not read completely
+     */
+    private static @Nullable ConfigurationDescriptorEvent parseConfiguration(Device device, ByteBuffer data){
+        int start = data.position();
+        var length = getUnsignedByte(data);
+        var descriptorType = getUnsignedByte(data);
+        var totalLength = getUnsignedShort(data);
+        // The host reads the first 9 bytes first to find out how long the whole thing is
+        if(descriptorType != DESCRIPTOR_CONFIGURATION || length < 9 || data.limit() - start < totalLength){
+            return null;
+        }
+        var interfaceCount = getUnsignedByte(data);
+        var configurationValue = getUnsignedByte(data);
+        var configurationIndex = getUnsignedByte(data);
+        var attributes = getUnsignedByte(data);
+        var maxPower = getUnsignedByte(data);
+        data.limit(start + totalLength);
+        data.position(start + length);
+        
+        List<ConfigurationDescriptorEvent.Interface> interfaces = new ArrayList<>(interfaceCount);
+        // The interface that is being read, -1 until the first one
+        int number = -1;
+        int alternateSetting = 0;
+        int interfaceClass = 0;
+        int interfaceSubClass = 0;
+        int interfaceProtocol = 0;
+        List<ConfigurationDescriptorEvent.Endpoint> endpoints = new ArrayList<>();
+        List<ByteBuffer> classDescriptors = new ArrayList<>();
+        while(data.remaining() >= 2){
+            int position = data.position();
+            var descriptorLength = getUnsignedByte(data);
+            var type = getUnsignedByte(data);
+            if(descriptorLength < 2 || descriptorLength > data.limit() - position){
+                break;
+            }
+            switch(type){
+                case DESCRIPTOR_INTERFACE -> {
+                    if(number != -1){
+                        interfaces.add(new ConfigurationDescriptorEvent.Interface(
+                            number, alternateSetting, interfaceClass, interfaceSubClass, interfaceProtocol,
+                            endpoints, classDescriptors
+                        ));
+                        endpoints.clear();
+                        classDescriptors.clear();
+                    }
+                    number = getUnsignedByte(data);
+                    alternateSetting = getUnsignedByte(data);
+                    var endpointCount = getUnsignedByte(data);
+                    interfaceClass = getUnsignedByte(data);
+                    interfaceSubClass = getUnsignedByte(data);
+                    interfaceProtocol = getUnsignedByte(data);
+                }
+                case DESCRIPTOR_ENDPOINT -> {
+                    if(number != -1){
+                        endpoints.add(new ConfigurationDescriptorEvent.Endpoint(
+                            getUnsignedByte(data), getUnsignedByte(data), getUnsignedShort(data), getUnsignedByte(data)
+                        ));
+                    }
+                }
+                // Groups the interfaces after it, it does not belong to the one before it
+                case DESCRIPTOR_INTERFACE_ASSOCIATION -> {}
+                default -> {
+                    if(number != -1){
+                        classDescriptors.add(data.slice(position, descriptorLength).asReadOnlyBuffer());
+                    }
+                }
+            }
+            data.position(position + descriptorLength);
+        }
+        if(number != -1){
+            interfaces.add(new ConfigurationDescriptorEvent.Interface(
+                number, alternateSetting, interfaceClass, interfaceSubClass, interfaceProtocol,
+                endpoints, classDescriptors
+            ));
+        }
+        
+        return new ConfigurationDescriptorEvent(device, configurationValue, attributes, maxPower, interfaces);
+    }
+    
+    /**
+     * Tracks where devices are connected from the port requests a hub gets.
+     *
+     * @param hub The hub
+     * @param control The request
+     */
+    private void handlePortRequest(Device hub, ControlTransferEvent control){
+        int port = control.wIndexLow();
+        if(control.bmRequestType() == HUB_PORT_REQUEST_OUT){
+            if(control.bRequest() != REQUEST_SET_FEATURE || control.wValue() != PORT_RESET){
+                return;
+            }
+            // Devices are reset more than once during enumeration sometimes
+            if(devices[0] != null && ports[0] != null && ports[0].isAt(hub, port)){
+                return;
+            }
+            // Only one device is enumerated at a time, whatever was left at the default address is gone
+            devices[0] = null;
+            ports[0] = null;
+            isochronous[0] = 0;
+            resetPort = new Port(hub, port, null);
+            return;
+        }
+        
+        if(control.bRequest() != REQUEST_GET_STATUS){
+            return;
+        }
+        var data = control.data();
+        if(data.remaining() < Short.BYTES){
+            return;
+        }
+        int status = getUnsignedShort(data);
+        if((status & PORT_STATUS_CONNECTION) == 0){
+            if(resetPort != null && resetPort.isAt(hub, port)){
+                resetPort = null;
+            }
+            for(int address = 0; address < ports.length; address++){
+                if(ports[address] != null && ports[address].isAt(hub, port)){
+                    detach(address);
+                }
+            }
+            return;
+        }
+        
+        UsbSpeed speed;
+        if((status & PORT_STATUS_LOW_SPEED) != 0){
+            speed = UsbSpeed.LOW_SPEED;
+        }else if((status & PORT_STATUS_HIGH_SPEED) != 0){
+            speed = UsbSpeed.HIGH_SPEED;
+        }else{
+            speed = UsbSpeed.FULL_SPEED;
+        }
+        if(resetPort != null && resetPort.isAt(hub, port)){
+            resetPort = new Port(hub, port, speed);
+        }
+        for(int address = 0; address < ports.length; address++){
+            if(ports[address] != null && ports[address].isAt(hub, port)){
+                ports[address] = new Port(hub, port, speed);
+            }
+        }
+    }
+    
+    /**
+     * Removes a device and every device behind it.
+     *
+     * @param address The address of the device
+     */
+    private void detach(int address){
+        var device = devices[address];
+        devices[address] = null;
+        ports[address] = null;
+        isochronous[address] = 0;
+        if(device == null){
+            return;
+        }
+        pendingEvents.add(new DeviceDetachedEvent(device));
+        for(int child = 0; child < ports.length; child++){
+            if(ports[child] != null && ports[child].hub().equals(device)){
+                detach(child);
+            }
+        }
     }
     
-    private Device getDevice(int address, boolean create){
+    /**
+     * Builds the tree of devices that are currently on the bus, it should not be called from other threads.
+     *
+     * @return The devices that are not known to be behind a hub with the devices behind them
+     */
+    public @NotNull List<@NotNull Node> getTopology(){
+        List<Node> roots = new ArrayList<>();
+        for(int address = 0; address < devices.length; address++){
+            var port = ports[address];
+            if(devices[address] != null && (port == null || addressOf(port.hub()) == -1)){
+                roots.add(node(address));
+            }
+        }
+        return List.copyOf(roots);
+    }
+    
+    private Node node(int address){
         var device = devices[address];
-        if(device == null && create){
+        List<Node> children = new ArrayList<>();
+        for(int child = 0; child < ports.length; child++){
+            if(devices[child] != null && ports[child] != null && ports[child].hub().equals(device)){
+                children.add(node(child));
+            }
+        }
+        children.sort(Comparator.comparingInt(Node::port));
+        var port = ports[address];
+        return new Node(
+            device, address,
+            port == null ? 0 : port.port(), port == null ? null : port.speed(),
+            List.copyOf(children)
+        );
+    }
+    
+    private int addressOf(Device device){
+        for(int address = 0; address < devices.length; address++){
+            if(device.equals(devices[address])){
+                return address;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Gets the device that currently has an address on the bus, the device changes when the bus is reset or the device
+     * is given a new address. Filters later in the chain can use this to find the device of raw transfers, it should
+     * not be called from other threads.
+     *
+     * @param address The address of the device
+     *
+     * @return The device or null if there is no known device at the address
+     */
+    public @Nullable Device getDevice(int address){
+        if((address & ~0b01111111) != 0){
+            throw new IllegalArgumentException("Address was out of range, range is \"128 < address <= 0\" and got " + address);
+        }
+        return devices[address];
+    }
+    
+    /**
+     * Gets the speed the hub of a device reported for its port, it should not be called from other threads.
+     *
+     * @param address The address of the device
+     *
+     * @return The speed or null if the device was not seen being attached to a hub
+     */
+    public @Nullable UsbSpeed getSpeed(int address){
+        if((address & ~0b01111111) != 0){
+            throw new IllegalArgumentException("Address was out of range, range is \"128 < address <= 0\" and got " + address);
+        }
+        var port = ports[address];
+        return devices[address] == null || port == null ? null : port.speed();
+    }
+    
+    /**
+     * Checks if an endpoint of the device at an address is isochronous in one of the configuration descriptors the
+     * device returned, it should not be called from other threads.
+     *
+     * @param address The address of the device
+     * @param endpoint The endpoint number
+     * @param direction The direction of the endpoint
+     *
+     * @return True if the endpoint is known to be isochronous
+     */
+    public boolean isIsochronous(int address, int endpoint, @NotNull DataEvent.Direction direction){
+        if((address & ~0b01111111) != 0){
+            throw new IllegalArgumentException("Address was out of range, range is \"128 < address <= 0\" and got " + address);
+        }
+        if((endpoint & ~0b00001111) != 0){
+            throw new IllegalArgumentException("Endpoint was out of range, range is \"16 < endpoint <= 0\" and got " + endpoint);
+        }
+        Objects.requireNonNull(direction, "direction was null");
+        return (isochronous[address] & (1 << endpointBit(endpoint, direction))) != 0;
+    }
+    
+    private static int endpointBit(int endpoint, DataEvent.Direction direction){
+        return (direction.ordinal() << 4) | endpoint;
+    }
+    
+    private Device getOrCreateDevice(int address){
+        var device = devices[address];
+        if(device == null){
             device = new Device();
             devices[address] = device;
+            isochronous[address] = 0;
             pendingEvents.add(new NewDeviceEvent(device));
+            if(address == 0 && resetPort != null){
+                ports[0] = resetPort;
+                resetPort = null;
+                pendingEvents.add(new DeviceAttachedEvent(device, ports[0].hub(), ports[0].port(), ports[0].speed()));
+            }
         }
         return device;
     }
     
+    @Override
+    public byte @NotNull [] saveCheckpoint(){
+        // [count]([address][device id])...([hub id][port][speed])...[reset port]([hub id][port][speed])
+        // ([isochronous endpoints])...
+        int count = 0;
+        for(var device : devices){
+            if(device != null){
+                count++;
+            }
+        }
+        var checkpoint = ByteBuffer.allocate(1 + count * 15 + 1 + (resetPort == null ? 0 : 6));
+        checkpoint.put((byte)count);
+        for(int address = 0; address < devices.length; address++){
+            var device = devices[address];
+            if(device != null){
+                checkpoint.put((byte)address);
+                checkpoint.putInt(device.id());
+            }
+        }
+        for(int address = 0; address < devices.length; address++){
+            if(devices[address] != null){
+                putPort(checkpoint, ports[address]);
+            }
+        }
+        checkpoint.put((byte)(resetPort == null ? 0 : 1));
+        if(resetPort != null){
+            putPort(checkpoint, resetPort);
+        }
+        for(int address = 0; address < devices.length; address++){
+            if(devices[address] != null){
+                checkpoint.putInt(isochronous[address]);
+            }
+        }
+        return checkpoint.array();
+    }
+    
+    private static void putPort(ByteBuffer checkpoint, Port port){
+        // Device IDs start at 1
+        checkpoint.putInt(port == null ? 0 : port.hub().id());
+        checkpoint.put((byte)(port == null ? 0 : port.port()));
+        checkpoint.put((byte)(port == null || port.speed() == null ? 0 : port.speed().ordinal() + 1));
+    }
+    
+    private static Port getPort(ByteBuffer checkpoint, Map<Integer, Device> restored){
+        int hub = checkpoint.getInt();
+        int port = checkpoint.get() & 0xFF;
+        int speed = checkpoint.get();
+        var speeds = UsbSpeed.values();
+        if(speed < 0 || speed > speeds.length){
+            throw new IllegalArgumentException("Unknown speed in checkpoint: " + speed);
+        }
+        // A hub that is not in the checkpoint is gone, so is the port
+        var device = hub == 0 ? null : restored.get(hub);
+        return device == null ? null : new Port(device, port, speed == 0 ? null : speeds[speed - 1]);
+    }
+    
+    @Override
+    public void restoreCheckpoint(byte @NotNull [] checkpoint){
+        var restored = new Device[devices.length];
+        var restoredPorts = new Port[ports.length];
+        var restoredIsochronous = new int[isochronous.length];
+        Port restoredReset = null;
+        // The IDs in the checkpoint are from the session that wrote it, the devices get new ones from this session
+        Map<Integer, Device> remapped = new HashMap<>();
+        try{
+            var buffer = ByteBuffer.wrap(checkpoint);
+            int count = buffer.get() & 0xFF;
+            int[] addresses = new int[count];
+            for(int i = 0; i < count; i++){
+                int address = buffer.get();
+                if(address < 0){
+                    throw new IllegalArgumentException("Bad device address in checkpoint: " + address);
+                }
+                restored[address] = remapped.computeIfAbsent(buffer.getInt(), (id)->new Device());
+                addresses[i] = address;
+            }
+            // Checkpoints from before the device tree was tracked end here
+            if(buffer.hasRemaining()){
+                for(int address : addresses){
+                    restoredPorts[address] = getPort(buffer, remapped);
+                }
+                if(buffer.get() != 0){
+                    restoredReset = getPort(buffer, remapped);
+                }
+            }
+            // And here before the isochronous endpoints were
+            if(buffer.hasRemaining()){
+                for(int address : addresses){
+                    restoredIsochronous[address] = buffer.getInt();
+                }
+            }
+        }catch(BufferUnderflowException e){
+            throw new IllegalArgumentException("Checkpoint was truncated", e);
+        }
+        System.arraycopy(restored, 0, devices, 0, devices.length);
+        System.arraycopy(restoredPorts, 0, ports, 0, ports.length);
+        System.arraycopy(restoredIsochronous, 0, isochronous, 0, isochronous.length);
+        resetPort = restoredReset;
+        pendingEvents.clear();
+    }
+    
     @Override
     public @NotNull List<@NotNull Event> getPendingEvents(){
         if(pendingEvents.isEmpty()){
@@ -232,4 +637,43 @@ public final class DeviceFilter implements Filter{
             return list;
         }
     }
+    
+    @Override
+    public void drainPendingEvents(@NotNull Collection<? super Event> destination){
+        // Indexed so we don't need an iterator or the array addAll would make
+        for(int i = 0, size = pendingEvents.size(); i < size; i++){
+            destination.add(pendingEvents.get(i));
+        }
+        pendingEvents.clear();
+    }
+    
+    /**
+     * A device in the device tree.
+     *
+     * @param device The device
+     * @param address The address of the device
+     * @param port The port of the hub the device is connected to, 0 if it is not known to be behind a hub
+     * @param speed The speed the hub reported for the port or null if it is not known
+     * @param children The devices connected to this one if it is a hub, ordered by port
+     */
+    public record Node(
+        @NotNull Device device,
+        int address,
+        int port,
+        @Nullable UsbSpeed speed,
+        @NotNull List<@NotNull Node> children
+    ){}
+    
+    /**
+     * A port of a hub.
+     *
+     * @param hub The hub
+     * @param port The port, starting at 1
+     * @param speed The speed the hub reported or null if it is not known yet
+     */
+    private record Port(Device hub, int port, UsbSpeed speed){
+        private boolean isAt(Device hub, int port){
+            return this.port == port && this.hub.equals(hub);
+        }
+    }
 }
@@ -1,5 +1,6 @@
 package net.gudenau.usbcap.filter;
 
+import java.util.Collection;
 import java.util.List;
 import net.gudenau.usbcap.event.Event;
 import org.jetbrains.annotations.NotNull;
@@ -23,4 +24,18 @@ public interface Filter{
      * @return A list of generated events
      */
     @NotNull List<@NotNull Event> getPendingEvents();
+    
+    /**
+     * Moves the events generated by this filter into a collection, in the order {@link #getPendingEvents()} would
+     * return them. The filter chain uses this after every event, filters that generate a lot of events should override
+     * it so they don't have to create a list every time.
+     *
+     * @param destination The collection to add the events to
+     */
+    default void drainPendingEvents(@NotNull Collection<? super Event> destination){
+        var events = getPendingEvents();
+        if(!events.isEmpty()){
+            destination.addAll(events);
+        }
+    }
 }
@@ -0,0 +1,291 @@
+package net.gudenau.usbcap.filter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.IsochronousSummaryEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.event.TransactionEvent;
+import net.gudenau.usbcap.event.enumeration.ConfigurationDescriptorEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.event.enumeration.DeviceDetachedEvent;
+import net.gudenau.usbcap.metrics.Histogram;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Follows the cadence of isochronous endpoints, like the ones of audio interfaces and cameras, and sends an
+ * {@link IsochronousSummaryEvent} with the payload sizes, skipped intervals, jitter and bitrate of every endpoint once
+ * per window of capture time.
+ *
+ * Endpoints are known to be isochronous from the configuration descriptors of their device, the service interval comes
+ * from bInterval and the speed of the device. Transactions of an endpoint that are less than half a service interval
+ * apart are counted as one interval, so the up to three transactions a high bandwidth endpoint gets per microframe add
+ * up. The jitter of an interval is how far its first transaction is from the closest point the service interval
+ * expects, counted from the interval before it.
+ *
+ * Needs the {@link TransactionEvent}s of a {@link PacketFilter} created with {@link PacketFilter.Option#TRANSACTIONS}
+ * and the configuration descriptors of a {@link DeviceFilter}, both have to come before this filter in the chain.
+ * Every endpoint keeps a fixed amount of counters, the memory this takes does not grow with the capture.
+ */
+public final class IsochronousFilter implements Filter{
+    // [address][endpoint][direction]
+    private static final int SLOTS = 128 * 16 * 2;
+    private static final long MICROFRAME = 125_000;
+    private static final long FRAME = 1_000_000;
+    
+    private final DeviceFilter devices;
+    private final UsbSpeed speed;
+    private final long window;
+    
+    // [endpoint][direction] bInterval of every isochronous endpoint of a device, 0 if it is not isochronous
+    private final Map<Device, int[]> endpoints = new HashMap<>();
+    // The device that has the intervals of an address in endpoints, at most one per address is kept
+    private final Device[] owners = new Device[128];
+    private final Stream[] streams = new Stream[SLOTS];
+    // Streams of devices that went away during the window
+    private final List<IsochronousSummaryEvent.Stream> retired = new ArrayList<>();
+    private long windowStart = -1;
+    
+    private final List<Event> pendingEvents = new ArrayList<>();
+    
+    /**
+     * Creates a new isochronous filter.
+     *
+     * @param devices The device filter used to find the device and speed of a transaction
+     * @param speed The speed of the captured bus, used for devices that were not seen being attached to a hub
+     * @param window How long a window is
+     */
+    public IsochronousFilter(@NotNull DeviceFilter devices, @NotNull UsbSpeed speed, @NotNull Duration window){
+        this.devices = Objects.requireNonNull(devices, "devices was null");
+        this.speed = Objects.requireNonNull(speed, "speed was null");
+        Objects.requireNonNull(window, "window was null");
+        if(window.isNegative() || window.isZero()){
+            throw new IllegalArgumentException("window was not positive: " + window);
+        }
+        this.window = window.toNanos();
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        if(event instanceof TransactionEvent transaction){
+            record(transaction);
+        }else if(event instanceof ConfigurationDescriptorEvent configuration){
+            claim(configuration.device());
+            var intervals = endpoints.computeIfAbsent(configuration.device(), (device)->new int[32]);
+            for(var descriptor : configuration.interfaces()){
+                for(var endpoint : descriptor.endpoints()){
+                    if(endpoint.type() == ConfigurationDescriptorEvent.Endpoint.TYPE_ISOCHRONOUS){
+                        intervals[endpoint.number() | (endpoint.direction().ordinal() << 4)] = endpoint.interval();
+                    }
+                }
+            }
+        }else if(event instanceof DeviceDetachedEvent detached){
+            endpoints.remove(detached.device());
+            for(int address = 0; address < owners.length; address++){
+                if(detached.device().equals(owners[address])){
+                    owners[address] = null;
+                }
+            }
+        }else if(event instanceof ResetEvent){
+            // The time across a reset is not a gap in the stream
+            for(var stream : streams){
+                if(stream != null){
+                    stream.last = -1;
+                }
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Forgets the intervals of the device that had the address of a device before it, in case it re-enumerated without
+     * being detached.
+     */
+    private void claim(Device device){
+        for(int address = 0; address < owners.length; address++){
+            if(device.equals(devices.getDevice(address))){
+                var owner = owners[address];
+                if(owner != null && !owner.equals(device)){
+                    endpoints.remove(owner);
+                }
+                owners[address] = device;
+                return;
+            }
+        }
+    }
+    
+    private void record(TransactionEvent transaction){
+        var token = transaction.token();
+        if(token != TransactionEvent.Token.IN && token != TransactionEvent.Token.OUT){
+            return;
+        }
+        long timestamp = transaction.timestamp();
+        if(windowStart == -1){
+            windowStart = timestamp - Math.floorMod(timestamp, window);
+        }else if(timestamp - windowStart >= window){
+            pendingEvents.add(summary(windowStart, windowStart + window));
+            windowStart = timestamp - Math.floorMod(timestamp, window);
+        }
+        
+        int address = transaction.address();
+        var device = devices.getDevice(address);
+        var intervals = device == null ? null : endpoints.get(device);
+        if(intervals == null){
+            return;
+        }
+        var direction = transaction.direction();
+        int bInterval = intervals[transaction.endpoint() | (direction.ordinal() << 4)];
+        if(bInterval == 0){
+            return;
+        }
+        
+        int slot = (address << 5) | (transaction.endpoint() << 1) | direction.ordinal();
+        var stream = streams[slot];
+        if(stream == null){
+            stream = new Stream(address, transaction.endpoint(), direction);
+            streams[slot] = stream;
+        }
+        if(!device.equals(stream.device)){
+            // The address belongs to a different device after a reset, keep the counters of the old one apart.
+            stream.close();
+            if(stream.intervals != 0){
+                retired.add(stream.snapshot(window));
+            }
+            stream.clear();
+            stream.last = -1;
+            stream.device = device;
+        }
+        stream.interval = interval(address, bInterval);
+        stream.record(timestamp, Math.max(transaction.length(), 0));
+    }
+    
+    /**
+     * Converts the bInterval of an isochronous endpoint into nanoseconds, it is an exponent of microframes at high speed
+     * and of frames at full speed.
+     */
+    private long interval(int address, int bInterval){
+        var speed = devices.getSpeed(address);
+        if(speed == null){
+            speed = this.speed;
+        }
+        int exponent = Math.min(Math.max(bInterval, 1), 16) - 1;
+        return (speed == UsbSpeed.HIGH_SPEED || speed == UsbSpeed.SUPER_SPEED ? MICROFRAME : FRAME) << exponent;
+    }
+    
+    private IsochronousSummaryEvent summary(long start, long end){
+        List<IsochronousSummaryEvent.Stream> entries = new ArrayList<>(retired);
+        retired.clear();
+        for(var stream : streams){
+            // The interval that is being serviced is counted in the window it ends in
+            if(stream != null && stream.intervals != 0){
+                entries.add(stream.snapshot(end - start));
+                stream.clear();
+            }
+        }
+        return new IsochronousSummaryEvent(start, end, entries);
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        if(pendingEvents.isEmpty()){
+            return List.of();
+        }else{
+            var list = new ArrayList<>(pendingEvents);
+            pendingEvents.clear();
+            return list;
+        }
+    }
+    
+    @Override
+    public void drainPendingEvents(@NotNull Collection<? super Event> destination){
+        for(int i = 0, size = pendingEvents.size(); i < size; i++){
+            destination.add(pendingEvents.get(i));
+        }
+        pendingEvents.clear();
+    }
+    
+    /**
+     * The counters of a single isochronous endpoint and direction.
+     */
+    private static final class Stream{
+        private final int address;
+        private final int endpoint;
+        private final DataEvent.Direction direction;
+        private final Histogram sizes = new Histogram();
+        private final Histogram jitter = new Histogram();
+        private Device device;
+        private long interval;
+        
+        // The interval that is being serviced right now, last is -1 if there is none
+        private long last = -1;
+        private long size;
+        private boolean open;
+        
+        private long intervals;
+        private long bytes;
+        private long empty;
+        private long missed;
+        
+        private Stream(int address, int endpoint, DataEvent.Direction direction){
+            this.address = address;
+            this.endpoint = endpoint;
+            this.direction = direction;
+        }
+        
+        private void record(long timestamp, int length){
+            if(last != -1 && timestamp - last < interval / 2){
+                size += length;
+                return;
+            }
+            close();
+            if(last != -1){
+                long gap = timestamp - last;
+                long periods = Math.max((gap + interval / 2) / interval, 1);
+                missed += periods - 1;
+                jitter.record(Math.abs(gap - periods * interval));
+            }
+            last = timestamp;
+            size = length;
+            open = true;
+        }
+        
+        /**
+         * Counts the interval that was being serviced, the next transaction still knows when it started.
+         */
+        private void close(){
+            if(!open){
+                return;
+            }
+            open = false;
+            intervals++;
+            bytes += size;
+            sizes.record(size);
+            if(size == 0){
+                empty++;
+            }
+        }
+        
+        private IsochronousSummaryEvent.Stream snapshot(long duration){
+            return new IsochronousSummaryEvent.Stream(
+                address, endpoint, direction, device, interval, intervals, bytes, bytes * 8 / (duration / 1e9),
+                empty, missed, sizes.snapshot(), jitter.snapshot()
+            );
+        }
+        
+        private void clear(){
+            intervals = 0;
+            bytes = 0;
+            empty = 0;
+            missed = 0;
+            sizes.clear();
+            jitter.clear();
+        }
+    }
+}
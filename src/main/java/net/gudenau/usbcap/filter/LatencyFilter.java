@@ -0,0 +1,319 @@
+package net.gudenau.usbcap.filter;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.event.TransactionEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import net.gudenau.usbcap.event.enumeration.DeviceDetachedEvent;
+import net.gudenau.usbcap.metrics.Histogram;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Measures how long devices take to answer, per endpoint and direction:
+ * <ul>
+ *     <li>turnaround, the time between the last packet of the host and the answer of the device in a transaction</li>
+ *     <li>retry, the time from the first NAK of a transaction until the endpoint acknowledges one</li>
+ *     <li>control, the time from an acknowledged SETUP until the first acknowledged transaction of the data or status
+ *     stage, recorded on the OUT side of the control endpoint</li>
+ * </ul>
+ *
+ * Needs the {@link TransactionEvent}s of a {@link PacketFilter} created with {@link PacketFilter.Option#TRANSACTIONS}
+ * and a {@link DeviceFilter} to label the endpoints, both have to come before this filter in the chain.
+ *
+ * Every endpoint gets {@link Histogram}s of a fixed size. Endpoints are tracked per device, when a device is detached
+ * or another device is enumerated at its address the histograms of its endpoints are copied and cleared for the next
+ * device. Only the copies of the last {@value #MAX_RETIRED} endpoints are kept, so the memory this takes is fixed. The
+ * histograms can be read from any thread with {@link #snapshot()} while capturing and are printed when this filter is
+ * closed.
+ */
+public final class LatencyFilter implements Filter, AutoCloseable{
+    // [address][endpoint][direction]
+    private static final int SLOTS = 128 * 16 * 2;
+    private static final int OUT = DataEvent.Direction.OUT.ordinal();
+    private static final int MAX_RETIRED = 128;
+    
+    private final DeviceFilter devices;
+    private final PrintStream dump;
+    
+    private final Pipe[] slots = new Pipe[SLOTS];
+    // [address] the device the slots of an address belong to, null until it is enumerated
+    private final Device[] owners = new Device[128];
+    // Endpoints are rarely added, this lets other threads read them without locking. There is at most one per slot.
+    private final List<Pipe> pipes = new CopyOnWriteArrayList<>();
+    // The latencies of the endpoints of devices that are gone, oldest first, replaced as a whole when one is added
+    private volatile List<Latency> retired = List.of();
+    // When the first NAK of the current streak happened, -1 if there is none
+    private final long[] firstNak = new long[SLOTS];
+    // [address][endpoint], when the acknowledged SETUP that waits for its data or status stage happened, -1 if none
+    private final long[] setups = new long[SLOTS / 2];
+    
+    /**
+     * Creates a new latency filter that does not print anything when closed.
+     *
+     * @param devices The device filter used to label endpoints
+     */
+    public LatencyFilter(@NotNull DeviceFilter devices){
+        this(devices, null);
+    }
+    
+    /**
+     * Creates a new latency filter.
+     *
+     * @param devices The device filter used to label endpoints
+     * @param dump Where to print the percentiles when this filter is closed, null to not print them
+     */
+    public LatencyFilter(@NotNull DeviceFilter devices, @Nullable PrintStream dump){
+        this.devices = Objects.requireNonNull(devices, "devices was null");
+        this.dump = dump;
+        Arrays.fill(firstNak, -1);
+        Arrays.fill(setups, -1);
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        if(event instanceof TransactionEvent transaction){
+            record(transaction);
+        }else if(event instanceof ResetEvent){
+            Arrays.fill(firstNak, -1);
+            Arrays.fill(setups, -1);
+        }else if(event instanceof DeviceDetachedEvent detached){
+            for(int address = 0; address < owners.length; address++){
+                if(detached.device().equals(owners[address])){
+                    release(address, null);
+                    owners[address] = null;
+                }
+            }
+        }
+        return false;
+    }
+    
+    private void record(TransactionEvent transaction){
+        int address = transaction.address();
+        claim(address);
+        int control = (address << 4) | transaction.endpoint();
+        int slot = (control << 1) | transaction.direction().ordinal();
+        var pipe = pipe(slot);
+        long timestamp = transaction.timestamp();
+        pipe.used = true;
+        
+        if(transaction.turnaround() >= 0){
+            pipe.turnaround.record(transaction.turnaround());
+        }
+        
+        switch(transaction.handshake()){
+            case NAK -> {
+                if(firstNak[slot] == -1){
+                    firstNak[slot] = timestamp;
+                }
+            }
+            case ACK, NYET -> {
+                if(firstNak[slot] != -1){
+                    pipe.retry.record(timestamp - firstNak[slot]);
+                    firstNak[slot] = -1;
+                }
+                if(transaction.token() == TransactionEvent.Token.SETUP){
+                    setups[control] = timestamp;
+                }else if(setups[control] != -1){
+                    pipe((control << 1) | OUT).control.record(timestamp - setups[control]);
+                    setups[control] = -1;
+                }
+            }
+            case STALL -> {
+                firstNak[slot] = -1;
+                setups[control] = -1;
+            }
+            // Isochronous transactions never have a handshake, errors get retried.
+            case NONE -> {}
+        }
+    }
+    
+    /**
+     * Makes sure the slots of an address belong to the device that has it now. A different device than before starts
+     * with cleared pipes and no pending NAKs or SETUPs, pipes from before the first device was enumerated are given to
+     * it.
+     */
+    private void claim(int address){
+        var device = devices.getDevice(address);
+        var owner = owners[address];
+        if(device == null || device.equals(owner)){
+            return;
+        }
+        
+        if(owner == null){
+            for(int slot = address << 5, end = slot + 32; slot < end; slot++){
+                if(slots[slot] != null){
+                    slots[slot].device = device;
+                }
+            }
+        }else{
+            release(address, device);
+        }
+        owners[address] = device;
+    }
+    
+    /**
+     * Retires the pipes of the device at an address and hands them to the next one.
+     *
+     * @param address The address of the device
+     * @param device The next device at the address or null if it is not known yet
+     */
+    private void release(int address, Device device){
+        int start = address << 5;
+        int end = start + 32;
+        List<Latency> retired = null;
+        for(int slot = start; slot < end; slot++){
+            var pipe = slots[slot];
+            if(pipe == null){
+                continue;
+            }
+            if(pipe.used){
+                if(retired == null){
+                    retired = new ArrayList<>(this.retired);
+                }
+                retired.add(pipe.latency());
+            }
+            pipe.clear(device);
+        }
+        if(retired != null){
+            this.retired = List.copyOf(retired.subList(Math.max(0, retired.size() - MAX_RETIRED), retired.size()));
+        }
+        Arrays.fill(firstNak, start, end, -1);
+        Arrays.fill(setups, start >>> 1, end >>> 1, -1);
+    }
+    
+    private Pipe pipe(int slot){
+        var pipe = slots[slot];
+        if(pipe == null){
+            int address = slot >>> 5;
+            pipe = new Pipe(address, (slot >>> 1) & 0x0F, DataEvent.Direction.values()[slot & 1], owners[address]);
+            slots[slot] = pipe;
+            pipes.add(pipe);
+        }
+        return pipe;
+    }
+    
+    /**
+     * Copies the current histograms of every endpoint, can be called from any thread.
+     *
+     * @return The latencies of the last retired endpoints followed by every current endpoint that had a transaction
+     */
+    public @NotNull List<@NotNull Latency> snapshot(){
+        var retired = this.retired;
+        List<Latency> latencies = new ArrayList<>(retired.size() + pipes.size());
+        latencies.addAll(retired);
+        for(var pipe : pipes){
+            if(pipe.used){
+                latencies.add(pipe.latency());
+            }
+        }
+        return latencies;
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        return List.of();
+    }
+    
+    /**
+     * Prints the percentiles of every endpoint if a stream was provided.
+     */
+    @Override
+    public void close(){
+        if(dump == null){
+            return;
+        }
+        dump.println("Latency in microseconds");
+        for(var latency : snapshot()){
+            var name = String.format(
+                "%s %d.%d %s", latency.device() == null ? "-" : latency.device(),
+                latency.address(), latency.endpoint(), latency.direction()
+            );
+            print(name, "turnaround", latency.turnaround());
+            print(name, "retry", latency.retry());
+            print(name, "control", latency.control());
+        }
+        dump.flush();
+    }
+    
+    private void print(String name, String kind, Histogram.Snapshot histogram){
+        if(histogram.count() == 0){
+            return;
+        }
+        dump.printf(
+            "%-24s %-10s count=%d p50=%.3f p90=%.3f p99=%.3f p99.9=%.3f max=%.3f%n",
+            name, kind, histogram.count(),
+            histogram.percentile(50) / 1e3, histogram.percentile(90) / 1e3, histogram.percentile(99) / 1e3,
+            histogram.percentile(99.9) / 1e3, histogram.max() / 1e3
+        );
+    }
+    
+    /**
+     * The latencies of a single endpoint and direction, all in nanoseconds.
+     *
+     * @param address The address of the device
+     * @param endpoint The endpoint
+     * @param direction The direction of the transactions, PING transactions count as OUT
+     * @param device The device of the endpoint or null if it was never enumerated
+     * @param turnaround The time between the last packet of the host and the answer of the device
+     * @param retry The time from the first NAK until a transaction was acknowledged
+     * @param control The time from a SETUP until the first transaction after it was acknowledged
+     */
+    public record Latency(
+        int address,
+        int endpoint,
+        @NotNull DataEvent.Direction direction,
+        @Nullable Device device,
+        @NotNull Histogram.Snapshot turnaround,
+        @NotNull Histogram.Snapshot retry,
+        @NotNull Histogram.Snapshot control
+    ){}
+    
+    /**
+     * The histograms of a single endpoint and direction.
+     */
+    private static final class Pipe{
+        private final int address;
+        private final int endpoint;
+        private final DataEvent.Direction direction;
+        private final Histogram turnaround = new Histogram();
+        private final Histogram retry = new Histogram();
+        private final Histogram control = new Histogram();
+        private volatile Device device;
+        // False until the device has a transaction on this endpoint
+        private volatile boolean used = false;
+        
+        private Pipe(int address, int endpoint, DataEvent.Direction direction, Device device){
+            this.address = address;
+            this.endpoint = endpoint;
+            this.direction = direction;
+            this.device = device;
+        }
+        
+        private Latency latency(){
+            return new Latency(
+                address, endpoint, direction, device, turnaround.snapshot(), retry.snapshot(), control.snapshot()
+            );
+        }
+        
+        /**
+         * Forgets everything that was recorded, only call this from the capturing thread.
+         *
+         * @param device The device the endpoint belongs to now
+         */
+        private void clear(Device device){
+            used = false;
+            turnaround.clear();
+            retry.clear();
+            control.clear();
+            this.device = device;
+        }
+    }
+}
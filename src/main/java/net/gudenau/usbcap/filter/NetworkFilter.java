@@ -3,25 +3,40 @@ package net.gudenau.usbcap.filter;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.net.ProtocolException;
 import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 import net.gudenau.usbcap.event.Event;
 import net.gudenau.usbcap.event.PacketEvent;
 import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.ReplayBuffer;
+import net.gudenau.usbcap.internal.jfr.NetworkSendEvent;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Connects to a {@link net.gudenau.usbcap.capture.NetworkCaptureDevice} and sends events to it.
+ *
+ * Sent events are kept in a bounded replay buffer, if the connection drops the filter reconnects and resends every event
+ * the capture device has not received yet.
  */
 public final class NetworkFilter implements Filter, AutoCloseable{
-    private static final long MAGIC_A = 0x7653B03E21444C9AL;
-    private static final long MAGIC_B = 0xC35457DD810F2342L;
+    // Has to match the capture device, see the comment there.
+    private static final long MAGIC_A = 0x1F6A93C25D0E47B8L;
+    private static final long MAGIC_B = 0xA4D03B7E6C1958F2L;
+    private static final int HANDSHAKE_TIMEOUT = 10000;
     
-    private final Socket socket;
-    private final InputStream input;
-    private final OutputStream output;
+    private final String address;
+    private final int port;
+    private final int reconnectTimeout;
+    private final ReplayBuffer replayBuffer;
+    private Socket socket;
+    private InputStream input;
+    private OutputStream output;
+    private NetworkSendEvent sendEvent = null;
     
     /**
      * Connects to the capture device at the provided address listening on port 8765.
@@ -43,19 +58,63 @@ public final class NetworkFilter implements Filter, AutoCloseable{
      * @throws IOException If the connection could not be established
      */
     public NetworkFilter(String address, int port) throws IOException{
+        this(address, port, 16 * 1024 * 1024, 60000);
+    }
+    
+    /**
+     * Connects to the capture device at the provided address listening on provided port.
+     *
+     * @param address The address of the server
+     * @param port The port to connect to
+     * @param replayBufferSize How many bytes of sent events to keep around in case the connection drops
+     * @param reconnectTimeout How long to keep trying to reconnect in milliseconds
+     *
+     * @throws IOException If the connection could not be established
+     */
+    public NetworkFilter(String address, int port, long replayBufferSize, int reconnectTimeout) throws IOException{
+        if(reconnectTimeout < 0){
+            throw new IllegalArgumentException("reconnectTimeout was negative: " + reconnectTimeout);
+        }
+        this.address = Objects.requireNonNull(address, "address was null");
+        this.port = port;
+        this.reconnectTimeout = reconnectTimeout;
+        replayBuffer = new ReplayBuffer(replayBufferSize);
+        connect();
+    }
+    
+    /**
+     * Connects to the server and resends any events it missed.
+     *
+     * @throws IOException If the connection could not be established
+     */
+    private void connect() throws IOException{
         Socket socket = null;
         try{
             socket = new Socket(address, port);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(HANDSHAKE_TIMEOUT);
             input = socket.getInputStream();
             output = socket.getOutputStream();
             var data = new byte[8];
             var buffer = ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN);
             read(data);
             if(buffer.getLong(0) != MAGIC_A){
-                throw new IOException("Received the wrong magic");
+                throw new ProtocolException("Received the wrong magic");
             }
             buffer.putLong(0, MAGIC_B);
             write(data);
+            
+            // The server tells us the last event it got, resume from there.
+            read(data);
+            var frames = replayBuffer.replay(buffer.getLong(0));
+            if(frames == null){
+                throw new ProtocolException("Server is missing events that are no longer in the replay buffer");
+            }
+            for(var frame : frames){
+                output.write(frame);
+            }
+            output.flush();
+            socket.setSoTimeout(0);
         }catch(IOException e){
             if(socket != null){
                 try{
@@ -67,6 +126,50 @@ public final class NetworkFilter implements Filter, AutoCloseable{
         this.socket = socket;
     }
     
+    /**
+     * Drops the current connection and keeps trying to connect again until the reconnect timeout expires.
+     *
+     * @param cause The reason the connection was dropped
+     *
+     * @throws IOException If the connection could not be reestablished
+     */
+    private void reconnect(IOException cause) throws IOException{
+        var jfr = sendEvent();
+        if(jfr != null){
+            jfr.reconnects++;
+        }
+        try{
+            socket.close();
+        }catch(IOException e){
+            cause.addSuppressed(e);
+        }
+        
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(reconnectTimeout);
+        long delay = 10;
+        while(true){
+            try{
+                connect();
+                return;
+            }catch(ProtocolException e){
+                cause.addSuppressed(e);
+                throw cause;
+            }catch(IOException e){
+                if(System.nanoTime() - deadline >= 0){
+                    cause.addSuppressed(e);
+                    throw cause;
+                }
+            }
+            
+            try{
+                Thread.sleep(delay);
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw cause;
+            }
+            delay = Math.min(delay << 1, 1000);
+        }
+    }
+    
     private void read(byte[] buffer) throws IOException{
         if(input.readNBytes(buffer, 0, buffer.length) != buffer.length){
             throw new IOException("Unexpected end of stream");
@@ -85,35 +188,87 @@ public final class NetworkFilter implements Filter, AutoCloseable{
             throw new IllegalStateException("Unsupported event: %s/%s".formatted(type.getModule().getName(), type.getName()));
         }
         byte eventType = -1;
-        if(event instanceof ResetEvent){
+        long timestamp = 0;
+        if(event instanceof ResetEvent reset){
             eventType = 0;
-        }else if(event instanceof PacketEvent){
+            timestamp = reset.timestamp();
+        }else if(event instanceof PacketEvent packet){
             eventType = 1;
+            timestamp = packet.timestamp();
         }
         if(eventType == -1){
             throw new RuntimeException("Illegal event type: " + event.getId());
         }
         
         var payload = networked.write();
-        var data = new byte[5 + (payload == null ? 0 : payload.remaining())];
+        var data = new byte[21 + (payload == null ? 0 : payload.remaining())];
         var buffer = ByteBuffer.wrap(data)
             .order(ByteOrder.LITTLE_ENDIAN);
         buffer.put(eventType);
+        buffer.putLong(replayBuffer.nextSequence());
+        buffer.putLong(timestamp);
         if(payload != null){
             buffer.putInt(payload.remaining());
             buffer.put(payload);
         }else{
             buffer.putInt(-1);
         }
+        replayBuffer.add(data);
         try{
-            write(data);
+            try{
+                write(data);
+            }catch(ProtocolException e){
+                throw e;
+            }catch(IOException e){
+                // The replay buffer already has this event, it gets resent once we are connected again.
+                reconnect(e);
+            }
         }catch(IOException e){
             throw new RuntimeException("Failed to write event", e);
         }
+        
+        var jfr = sendEvent();
+        if(jfr != null){
+            jfr.frames++;
+            jfr.bytes += data.length;
+            if(jfr.frames >= NetworkSendEvent.BATCH_SIZE){
+                commitSendEvent();
+            }
+        }
     
         return true;
     }
     
+    /**
+     * Gets the JFR event that sent frames are currently aggregated into, starting a new one if needed.
+     *
+     * @return The event or null if it is disabled
+     */
+    private NetworkSendEvent sendEvent(){
+        if(sendEvent == null){
+            var event = new NetworkSendEvent();
+            if(!event.isEnabled()){
+                return null;
+            }
+            event.begin();
+            sendEvent = event;
+        }
+        return sendEvent;
+    }
+    
+    /**
+     * Commits the current JFR event if there is one.
+     */
+    private void commitSendEvent(){
+        if(sendEvent != null){
+            sendEvent.end();
+            if(sendEvent.shouldCommit()){
+                sendEvent.commit();
+            }
+            sendEvent = null;
+        }
+    }
+    
     @Override
     public @NotNull List<@NotNull Event> getPendingEvents(){
         return List.of();
@@ -121,6 +276,7 @@ public final class NetworkFilter implements Filter, AutoCloseable{
     
     @Override
     public void close() throws IOException{
+        commitSendEvent();
         socket.close();
     }
 }
@@ -4,12 +4,28 @@ import java.nio.BufferUnderflowException;
 import java.nio.ByteBuffer;
 import java.util.*;
 import net.gudenau.usbcap.event.*;
+import net.gudenau.usbcap.internal.BufferHelper;
+import net.gudenau.usbcap.internal.CRC;
 import org.jetbrains.annotations.NotNull;
 
 /**
  * Takes raw USB packet events and condenses them into transfers.
+ *
+ * Optionally a {@link TransactionEvent} is generated for every transaction, including the ones that were NAKed or
+ * stalled and never turn into a transfer, and a {@link FrameEvent} with the transactions between every pair of SOFs.
+ *
+ * Full and low speed devices behind a high speed hub are reached with split transactions, the host sends the
+ * transaction to the hub in a start split and collects the answer of the device in one or more complete splits. Those
+ * are tracked per device endpoint together with the hub and port they go through and only turn into transfers and
+ * transactions once the complete split has the answer of the device, the start split and NYETs of the hub do not count
+ * as transactions. Every endpoint only ever needs a single tracked split, so the memory this takes is fixed.
+ *
+ * Isochronous transactions have no handshake. High bandwidth isochronous endpoints send DATA2 and MDATA packets, those
+ * are passed on right away. DATA0 and DATA1 packets without a handshake are only passed on once the next token or SOF
+ * shows up and only if the endpoint is known to be isochronous from the configuration descriptors a
+ * {@link DeviceFilter} saw, on every other endpoint the data was lost and the host sends it again.
  */
-public final class PacketFilter implements Filter{
+public final class PacketFilter implements Filter, Checkpointable{
     private static final byte BG_USB_PID_OUT = (byte)0xE1;
     private static final byte BG_USB_PID_IN = (byte)0x69;
     private static final byte BG_USB_PID_SOF = (byte)0xA5;
@@ -29,7 +45,20 @@ public final class PacketFilter implements Filter{
     private static final byte BG_USB_PID_EXT = (byte)0xF0;
     private static final byte BG_USB_PID_CORRUPTED = (byte)0xFF;
     
-    private final Queue<Event> pendingEvents = new LinkedList<>();
+    // The endpoint types of a split token
+    private static final int SPLIT_CONTROL = 0;
+    private static final int SPLIT_ISOCHRONOUS = 1;
+    private static final int SPLIT_BULK = 2;
+    private static final int SPLIT_INTERRUPT = 3;
+    
+    // [address][endpoint][direction]
+    private static final int SPLIT_SLOTS = 128 * 16 * 2;
+    
+    private final List<Event> pendingEvents = new ArrayList<>();
+    private final boolean transactions;
+    private final boolean frames;
+    // Knows which endpoints are isochronous, null if none are known to be
+    private final DeviceFilter devices;
     
     private State state;
     private int expectedData;
@@ -39,7 +68,68 @@ public final class PacketFilter implements Filter{
     private int endpoint;
     private Event pendingEvent;
     
+    // The transaction that is on the bus right now, null if there is none
+    private TransactionEvent.Token token;
+    private int transactionAddress;
+    private int transactionEndpoint;
+    private int transactionLength;
+    private long transactionTimestamp;
+    private long hostTimestamp;
+    private long turnaround;
+    
+    // The frame that is on the bus right now, frames are only tracked once the first SOF was seen
+    private boolean inFrame;
+    private int microframe;
+    private long frameTimestamp;
+    private int framesLost;
+    private final List<TransactionEvent> frameTransactions = new ArrayList<>();
+    
+    // The split token in front of the current token, only valid while splitToken is set
+    private boolean splitToken;
+    private boolean splitComplete;
+    private int splitHub;
+    private int splitPort;
+    private boolean splitStart;
+    private boolean splitEnd;
+    private int splitType;
+    // The split transaction that is on the bus right now and the ones that wait for a complete split
+    private Split split;
+    private final Split[] splits = new Split[SPLIT_SLOTS];
+    
+    /**
+     * Creates a new packet filter that only generates transfers.
+     */
     public PacketFilter(){
+        this(new Option[0]);
+    }
+    
+    /**
+     * Creates a new packet filter.
+     *
+     * @param options The extra events to generate
+     */
+    public PacketFilter(@NotNull Option @NotNull ... options){
+        this(options, null);
+    }
+    
+    /**
+     * Creates a new packet filter that passes on the data of isochronous endpoints, which never gets a handshake.
+     *
+     * @param devices The device filter that knows which endpoints are isochronous, it can come after this filter
+     * @param options The extra events to generate
+     */
+    public PacketFilter(@NotNull DeviceFilter devices, @NotNull Option @NotNull ... options){
+        this(options, Objects.requireNonNull(devices, "devices was null"));
+    }
+    
+    private PacketFilter(Option[] options, DeviceFilter devices){
+        this.devices = devices;
+        var set = EnumSet.noneOf(Option.class);
+        for(var option : options){
+            set.add(Objects.requireNonNull(option, "option was null"));
+        }
+        transactions = set.contains(Option.TRANSACTIONS);
+        frames = set.contains(Option.FRAMES);
         resetState();
     }
     
@@ -50,12 +140,106 @@ public final class PacketFilter implements Filter{
         address = 0;
         endpoint = 0;
         pendingEvent = null;
+        token = null;
+        inFrame = false;
+        frameTransactions.clear();
+        splitToken = false;
+        split = null;
+        Arrays.fill(splits, null);
+    }
+    
+    /**
+     * Starts tracking a transaction, a token was just seen.
+     *
+     * @param token The token
+     * @param address The address from the token
+     * @param endpoint The endpoint from the token
+     * @param timestamp The time of the token
+     */
+    private void beginTransaction(TransactionEvent.Token token, int address, int endpoint, long timestamp){
+        this.token = token;
+        transactionAddress = address;
+        transactionEndpoint = endpoint;
+        transactionLength = -1;
+        transactionTimestamp = timestamp;
+        hostTimestamp = timestamp;
+        turnaround = -1;
+    }
+    
+    /**
+     * Tracks the timing of a packet that belongs to the current transaction.
+     *
+     * @param fromHost True if the host sent the packet, false if the device did
+     * @param timestamp The time of the packet
+     */
+    private void transactionPacket(boolean fromHost, long timestamp){
+        if(fromHost){
+            hostTimestamp = timestamp;
+        }else if(turnaround == -1){
+            turnaround = timestamp - hostTimestamp;
+        }
+    }
+    
+    /**
+     * Finishes the current transaction, generating an event for it if requested.
+     *
+     * @param handshake How the transaction ended
+     */
+    private void endTransaction(TransactionEvent.Handshake handshake){
+        boolean batched = frames && inFrame;
+        if((transactions || batched) && token != null){
+            var transaction = new TransactionEvent(
+                token, transactionAddress, transactionEndpoint, handshake, transactionLength, transactionTimestamp,
+                turnaround
+            );
+            if(transactions){
+                pendingEvents.add(transaction);
+            }
+            if(batched){
+                frameTransactions.add(transaction);
+            }
+        }
+        token = null;
+    }
+    
+    /**
+     * Finishes the current frame if there is one and starts a new one, a SOF was just seen.
+     *
+     * @param frame The frame number from the SOF
+     * @param timestamp The time of the SOF
+     */
+    private void beginFrame(int frame, long timestamp){
+        int microframe = 0;
+        int lost = 0;
+        if(inFrame){
+            endFrame();
+            if(frame == frameNumber){
+                microframe = this.microframe + 1;
+            }else{
+                lost = (frame - frameNumber - 1) & 0x7FF;
+            }
+        }
+        inFrame = true;
+        this.microframe = microframe;
+        frameTimestamp = timestamp;
+        framesLost = lost;
+    }
+    
+    /**
+     * Generates the event of the current frame.
+     */
+    private void endFrame(){
+        pendingEvents.add(new FrameEvent(frameNumber, microframe, frameTimestamp, framesLost, frameTransactions));
+        frameTransactions.clear();
     }
     
     @Override
     public boolean handleEvent(@NotNull Event rawEvent){
         if(!(rawEvent instanceof PacketEvent event)){
             if(rawEvent instanceof ResetEvent){
+                if(frames && inFrame){
+                    endFrame();
+                }
                 resetState();
             }
             return false;
@@ -68,10 +252,13 @@ public final class PacketFilter implements Filter{
         while(true){
             switch(state){
                 case IDLE -> {
+                    // A split token only applies to the token right after it
+                    boolean afterSplit = splitToken;
+                    splitToken = false;
                     //TODO Validate this.
                     try{
                         switch(pid){
-                            // SOF packets are for USB frames. Should we do more with them?
+                            // SOF packets are for USB frames.
                             // +-----+-------+-----+
                             // | PID | frame | CRC |
                             // +-----+-------+-----+
@@ -80,10 +267,14 @@ public final class PacketFilter implements Filter{
                             case BG_USB_PID_SOF -> {
                                 var data = payload.getShort();
                                 var crc = (data >>> 11) & 0b11111;
-                                if(!verifyCrc5(payload, crc)){
+                                if(!verifyCrc5(data, 11, crc)){
                                     break;
                                 }
-                                frameNumber = data & 0b0000011111111111;
+                                int frame = data & 0b0000011111111111;
+                                if(frames){
+                                    beginFrame(frame, event.timestamp());
+                                }
+                                frameNumber = frame;
                                 // Doesn't change the state
                             }
         
@@ -106,7 +297,15 @@ public final class PacketFilter implements Filter{
                                 int address = data & 0b00000000_01111111;
                                 int endpoint = (data >>> 7) & 0b00000000_00001111;
                                 int crc = (data >>> 11) & 0b00000000_00011111;
-                                if(!verifyCrc5(payload, crc)){
+                                if(!verifyCrc5(data, 11, crc)){
+                                    break;
+                                }
+            
+                                if(afterSplit){
+                                    beginSplit(
+                                        isSetup ? TransactionEvent.Token.SETUP : TransactionEvent.Token.IN,
+                                        address, endpoint, event.timestamp()
+                                    );
                                     break;
                                 }
             
@@ -114,6 +313,10 @@ public final class PacketFilter implements Filter{
                                 this.address = address;
                                 this.endpoint = endpoint;
                                 state = State.IN;
+                                beginTransaction(
+                                    isSetup ? TransactionEvent.Token.SETUP : TransactionEvent.Token.IN,
+                                    address, endpoint, event.timestamp()
+                                );
                             }
         
                             // OUT packets start a data transfer from the host to the device.
@@ -128,13 +331,65 @@ public final class PacketFilter implements Filter{
                                 int address = data & 0b00000000_01111111;
                                 int endpoint = (data >>> 7) & 0b00000000_00001111;
                                 int crc = (data >>> 11) & 0b00000000_00011111;
-                                if(!verifyCrc5(payload, crc)){
+                                if(!verifyCrc5(data, 11, crc)){
+                                    break;
+                                }
+            
+                                if(afterSplit){
+                                    beginSplit(TransactionEvent.Token.OUT, address, endpoint, event.timestamp());
                                     break;
                                 }
             
                                 this.address = address;
                                 this.endpoint = endpoint;
                                 state = State.OUT;
+                                beginTransaction(TransactionEvent.Token.OUT, address, endpoint, event.timestamp());
+                            }
+        
+                            // PING packets ask a high speed device if it can take more OUT data, the answer is a
+                            // handshake.
+                            // +-----+---------+----------+-----+
+                            // | PID | address | endpoint | CRC |
+                            // +-----+---------+----------+-----+
+                            // |  8  |    7    |     4    |  5  |
+                            // +-----+---------+----------+-----+
+                            case BG_USB_PID_PING -> {
+                                var data = payload.getShort();
+            
+                                int address = data & 0b00000000_01111111;
+                                int endpoint = (data >>> 7) & 0b00000000_00001111;
+                                int crc = (data >>> 11) & 0b00000000_00011111;
+                                if(!verifyCrc5(data, 11, crc)){
+                                    break;
+                                }
+            
+                                state = State.ACK;
+                                beginTransaction(TransactionEvent.Token.PING, address, endpoint, event.timestamp());
+                            }
+        
+                            // SPLIT packets send the token after them to a full or low speed device behind a high speed
+                            // hub.
+                            // +-----+-----+----------+------+-------+-----+------+-----+
+                            // | PID | hub | complete | port | speed | end | type | CRC |
+                            // +-----+-----+----------+------+-------+-----+------+-----+
+                            // |  8  |  7  |     1    |  7   |   1   |  1  |   2  |  5  |
+                            // +-----+-----+----------+------+-------+-----+------+-----+
+                            case BG_USB_PID_SPLIT -> {
+                                int data = (payload.get() & 0xFF) | (payload.get() & 0xFF) << 8 |
+                                    (payload.get() & 0xFF) << 16;
+                                int crc = (data >>> 19) & 0b00000000_00011111;
+                                if(!verifyCrc5(data, 19, crc)){
+                                    break;
+                                }
+            
+                                splitToken = true;
+                                splitHub = data & 0b01111111;
+                                splitComplete = ((data >>> 7) & 1) != 0;
+                                splitPort = (data >>> 8) & 0b01111111;
+                                // The speed bit is the start bit for isochronous transactions
+                                splitStart = ((data >>> 15) & 1) != 0;
+                                splitEnd = ((data >>> 16) & 1) != 0;
+                                splitType = (data >>> 17) & 0b11;
                             }
                         }
                     }catch(BufferUnderflowException e){
@@ -152,22 +407,35 @@ public final class PacketFilter implements Filter{
                 case IN -> {
                     if(pid != expectedData){
                         //TODO Make this some sort of event or drop it
-                        if(pid != BG_USB_PID_DATA0 && pid != BG_USB_PID_DATA1){
+                        if(!isData(pid)){
                             address = 0;
                             endpoint = 0;
                             state = State.IDLE;
+                            // The device had nothing to send or the endpoint is halted
+                            if(pid == BG_USB_PID_NAK || pid == BG_USB_PID_STALL){
+                                transactionPacket(false, event.timestamp());
+                                endTransaction(handshake(pid));
+                                break;
+                            }
+                            endTransaction(TransactionEvent.Handshake.NONE);
                             continue;
                         }
                     }
-                    expectedData = expectedData == BG_USB_PID_DATA0 ? BG_USB_PID_DATA1 : BG_USB_PID_DATA0;
+                    // The host sends the data of a SETUP, the device the data of an IN
+                    transactionPacket(isSetup, event.timestamp());
+                    boolean highBandwidth = isHighBandwidth(pid);
+                    if(!highBandwidth){
+                        expectedData = expectedData == BG_USB_PID_DATA0 ? BG_USB_PID_DATA1 : BG_USB_PID_DATA0;
+                    }
         
-                    int crc = payload.getShort(payload.capacity() - 2);
-                    if(!verifyCrc16(payload, crc)){
+                    if(!verifyCrc16(payload)){
                         address = 0;
                         endpoint = 0;
                         state = State.IDLE;
+                        endTransaction(TransactionEvent.Handshake.NONE);
                         break;
                     }
+                    transactionLength = payload.capacity() - 3;
         
                     var data = payload.slice(1, payload.capacity() - 3);
                     pendingEvent = isSetup ?
@@ -177,6 +445,9 @@ public final class PacketFilter implements Filter{
                     address = 0;
                     endpoint = 0;
                     state = State.ACK;
+                    if(highBandwidth){
+                        finishIsochronous();
+                    }
                 }
                 
                 // Handles the DATA packet that follows an OUT packet
@@ -188,28 +459,37 @@ public final class PacketFilter implements Filter{
                 case OUT -> {
                     if(pid != expectedData){
                         //TODO Make this some sort of event or drop it
-                        if(pid != BG_USB_PID_DATA0 && pid != BG_USB_PID_DATA1){
+                        if(!isData(pid)){
                             address = 0;
                             endpoint = 0;
                             state = State.IDLE;
+                            endTransaction(TransactionEvent.Handshake.NONE);
                             continue;
                         }
                     }
-                    expectedData = expectedData == BG_USB_PID_DATA0 ? BG_USB_PID_DATA1 : BG_USB_PID_DATA0;
+                    transactionPacket(true, event.timestamp());
+                    boolean highBandwidth = isHighBandwidth(pid);
+                    if(!highBandwidth){
+                        expectedData = expectedData == BG_USB_PID_DATA0 ? BG_USB_PID_DATA1 : BG_USB_PID_DATA0;
+                    }
         
-                    int crc = payload.getShort(payload.capacity() - 2);
-                    if(!verifyCrc16(payload, crc)){
+                    if(!verifyCrc16(payload)){
                         address = 0;
                         endpoint = 0;
                         state = State.IDLE;
+                        endTransaction(TransactionEvent.Handshake.NONE);
                         break;
                     }
+                    transactionLength = payload.capacity() - 3;
         
                     pendingEvent = new DataEvent(DataEvent.Direction.OUT, address, endpoint, payload.slice(1, payload.capacity() - 3));
         
                     address = 0;
                     endpoint = 0;
                     state = State.ACK;
+                    if(highBandwidth){
+                        finishIsochronous();
+                    }
                 }
     
                 // Handles the ACK packet that follows a DATA packet
@@ -219,19 +499,135 @@ public final class PacketFilter implements Filter{
                 // |  8  |
                 // +-----+
                 case ACK -> {
-                    if(pid != BG_USB_PID_ACK){
-                        pendingEvent = null;
-                        state = State.IDLE;
+                    // The host acknowledges IN data, the device everything else
+                    if(handshake(pid) != TransactionEvent.Handshake.NONE){
+                        transactionPacket(token == TransactionEvent.Token.IN, event.timestamp());
+                    }
+                    // A NYET still means the data was received, the device just has no room for the next packet yet.
+                    if(pid != BG_USB_PID_ACK && pid != BG_USB_PID_NYET){
+                        if(pid == BG_USB_PID_NAK || pid == BG_USB_PID_STALL){
+                            pendingEvent = null;
+                            state = State.IDLE;
+                            endTransaction(handshake(pid));
+                            break;
+                        }
+                        // Isochronous data is never acknowledged, it counts once the next transaction or frame starts.
+                        // Every other endpoint gets a handshake, data without one was lost and will be sent again.
+                        if(!isToken(pid) || !isIsochronous(pendingEvent)){
+                            pendingEvent = null;
+                        }
+                        finishIsochronous();
                         continue;
                     }
                     
-                    assert (pendingEvent != null) : new IllegalStateException("ACK state without a pending event");
-            
-                    pendingEvents.add(pendingEvent);
+                    // PING transactions have no data
+                    if(pendingEvent != null){
+                        pendingEvents.add(pendingEvent);
+                    }
+                    endTransaction(handshake(pid));
             
                     state = State.IDLE;
                     pendingEvent = null;
                 }
+                
+                // Handles the DATA packet that follows the OUT or SETUP of a start split
+                // +-----+------+-----+
+                // | PID | data | CRC |
+                // +-----+------+-----+
+                // |  8  |  n   |  5  |
+                // +-----+------+-----+
+                case SPLIT_DATA -> {
+                    var split = this.split;
+                    this.split = null;
+                    state = State.IDLE;
+                    if(pid != BG_USB_PID_DATA0 && pid != BG_USB_PID_DATA1){
+                        split.clear();
+                        continue;
+                    }
+                    if(!verifyCrc16(payload)){
+                        split.clear();
+                        break;
+                    }
+                    split.append(payload.slice(1, payload.capacity() - 3));
+                    
+                    switch(split.type){
+                        // There is no complete split, the hub sends the data on its own. Large packets are sent in
+                        // parts over multiple microframes.
+                        case SPLIT_ISOCHRONOUS -> {
+                            if(split.end){
+                                finishSplit(split, TransactionEvent.Handshake.NONE, true);
+                            }
+                        }
+                        // The hub does not acknowledge periodic start splits
+                        case SPLIT_INTERRUPT -> split.pending = true;
+                        default -> {
+                            this.split = split;
+                            state = State.SPLIT_HANDSHAKE;
+                        }
+                    }
+                }
+                
+                // Handles the handshake of the hub that ends a control or bulk start split
+                // +-----+
+                // | PID |
+                // +-----+
+                // |  8  |
+                // +-----+
+                case SPLIT_HANDSHAKE -> {
+                    var split = this.split;
+                    this.split = null;
+                    state = State.IDLE;
+                    if(pid == BG_USB_PID_ACK){
+                        // The hub took the transaction, the answer of the device comes in a complete split
+                        split.pending = true;
+                    }else{
+                        // A NAK means the hub had no room and the host will start over
+                        split.clear();
+                        if(pid != BG_USB_PID_NAK){
+                            continue;
+                        }
+                    }
+                }
+                
+                // Handles the answer of the device in a complete split, the hub sends a NYET while it is waiting for
+                // it. Data from the device is not acknowledged by the host, an MDATA means there is more in the next
+                // complete split.
+                case SPLIT_COMPLETE -> {
+                    var split = this.split;
+                    this.split = null;
+                    state = State.IDLE;
+                    if(pid == BG_USB_PID_NYET){
+                        break;
+                    }
+                    if(
+                        split.token == TransactionEvent.Token.IN &&
+                        (pid == BG_USB_PID_DATA0 || pid == BG_USB_PID_DATA1 || pid == BG_USB_PID_MDATA)
+                    ){
+                        // The host asks again if the data was corrupted
+                        if(!verifyCrc16(payload)){
+                            break;
+                        }
+                        split.append(payload.slice(1, payload.capacity() - 3));
+                        if(pid != BG_USB_PID_MDATA){
+                            finishSplit(
+                                split,
+                                split.type == SPLIT_ISOCHRONOUS ? TransactionEvent.Handshake.NONE : TransactionEvent.Handshake.ACK,
+                                true
+                            );
+                        }
+                        break;
+                    }
+                    // The hub could not talk to the device
+                    if(pid == BG_USB_PID_ERR){
+                        finishSplit(split, TransactionEvent.Handshake.NONE, false);
+                        break;
+                    }
+                    var handshake = handshake(pid);
+                    if(handshake == TransactionEvent.Handshake.NONE){
+                        continue;
+                    }
+                    finishSplit(split, handshake, handshake == TransactionEvent.Handshake.ACK);
+                }
             }
             break;
         }
@@ -239,14 +635,370 @@ public final class PacketFilter implements Filter{
         return true;
     }
     
-    private boolean verifyCrc5(ByteBuffer data, int crc){
-        //TODO
-        return true;
+    /**
+     * Starts or continues the split transaction of a token that followed a split token.
+     *
+     * @param token The token
+     * @param address The address from the token
+     * @param endpoint The endpoint from the token
+     * @param timestamp The time of the token
+     */
+    private void beginSplit(TransactionEvent.Token token, int address, int endpoint, long timestamp){
+        int slot = (address << 5) | (endpoint << 1) | (token == TransactionEvent.Token.IN ? 1 : 0);
+        var split = splits[slot];
+        if(split == null){
+            split = new Split(address, endpoint);
+            splits[slot] = split;
+        }
+        
+        if(splitComplete){
+            // The start split was not captured, the data of an OUT transaction is lost
+            if(!split.pending || split.hub != splitHub || split.port != splitPort){
+                split.begin(splitHub, splitPort, splitType, token, timestamp);
+            }
+            this.split = split;
+            state = State.SPLIT_COMPLETE;
+            return;
+        }
+        
+        // The later parts of a split up isochronous packet add to the data of the first part
+        boolean continued = splitType == SPLIT_ISOCHRONOUS && token == TransactionEvent.Token.OUT && !splitStart &&
+            split.hasData && split.hub == splitHub && split.port == splitPort;
+        if(!continued){
+            split.begin(splitHub, splitPort, splitType, token, timestamp);
+        }
+        split.end = splitEnd;
+        
+        if(token != TransactionEvent.Token.IN){
+            this.split = split;
+            state = State.SPLIT_DATA;
+        }else if(splitType == SPLIT_CONTROL || splitType == SPLIT_BULK){
+            this.split = split;
+            state = State.SPLIT_HANDSHAKE;
+        }else{
+            // The hub does not acknowledge periodic start splits
+            split.pending = true;
+        }
     }
     
-    private boolean verifyCrc16(ByteBuffer data, int crc){
-        //TODO
-        return true;
+    private static int splitSlot(Split split){
+        return (split.address << 5) | (split.endpoint << 1) | (split.token == TransactionEvent.Token.IN ? 1 : 0);
+    }
+    
+    /**
+     * Ends a split transaction once the answer of the device is known.
+     *
+     * @param split The split transaction
+     * @param handshake The answer of the device
+     * @param transfer True if the data was received and should turn into a transfer
+     */
+    private void finishSplit(Split split, TransactionEvent.Handshake handshake, boolean transfer){
+        beginTransaction(split.token, split.address, split.endpoint, split.timestamp);
+        if(split.hasData){
+            transactionLength = split.data.position();
+        }
+        if(transfer && split.hasData){
+            var data = BufferHelper.clone(split.data.flip());
+            pendingEvents.add(switch(split.token){
+                case SETUP -> new SetupDataEvent(split.address, split.endpoint, data);
+                case IN -> new DataEvent(DataEvent.Direction.IN, split.address, split.endpoint, data);
+                default -> new DataEvent(DataEvent.Direction.OUT, split.address, split.endpoint, data);
+            });
+        }
+        endTransaction(handshake);
+        split.clear();
+    }
+    
+    /**
+     * Ends a transaction that has no handshake, passing on its data if there is any.
+     */
+    private void finishIsochronous(){
+        if(pendingEvent != null){
+            pendingEvents.add(pendingEvent);
+            pendingEvent = null;
+        }
+        endTransaction(TransactionEvent.Handshake.NONE);
+        state = State.IDLE;
+    }
+    
+    /**
+     * Checks if the data of a transaction is for an endpoint that is known to be isochronous.
+     */
+    private boolean isIsochronous(Event data){
+        return devices != null && data instanceof DataEvent transfer
+            && devices.isIsochronous(transfer.address(), transfer.endpoint(), transfer.direction());
+    }
+    
+    private static boolean isData(byte pid){
+        return pid == BG_USB_PID_DATA0 || pid == BG_USB_PID_DATA1 || isHighBandwidth(pid);
+    }
+    
+    /**
+     * Checks if a data PID is only used by high bandwidth isochronous endpoints, which send up to three packets per
+     * microframe and never get a handshake.
+     */
+    private static boolean isHighBandwidth(byte pid){
+        return pid == BG_USB_PID_DATA2 || pid == BG_USB_PID_MDATA;
+    }
+    
+    private static boolean isToken(byte pid){
+        return switch(pid){
+            case BG_USB_PID_OUT, BG_USB_PID_IN, BG_USB_PID_SOF, BG_USB_PID_SETUP, BG_USB_PID_SPLIT, BG_USB_PID_PING -> true;
+            default -> false;
+        };
+    }
+    
+    private static TransactionEvent.Handshake handshake(byte pid){
+        return switch(pid){
+            case BG_USB_PID_ACK -> TransactionEvent.Handshake.ACK;
+            case BG_USB_PID_NAK -> TransactionEvent.Handshake.NAK;
+            case BG_USB_PID_STALL -> TransactionEvent.Handshake.STALL;
+            case BG_USB_PID_NYET -> TransactionEvent.Handshake.NYET;
+            default -> TransactionEvent.Handshake.NONE;
+        };
+    }
+    
+    @Override
+    public byte @NotNull [] saveCheckpoint(){
+        ByteBuffer data = null;
+        byte type = 0;
+        int pendingAddress = 0;
+        int pendingEndpoint = 0;
+        if(pendingEvent instanceof SetupDataEvent setup){
+            type = 1;
+            pendingAddress = setup.address();
+            pendingEndpoint = setup.endpoint();
+            data = setup.data();
+        }else if(pendingEvent instanceof DataEvent transfer){
+            type = transfer.direction() == DataEvent.Direction.IN ? (byte)2 : (byte)3;
+            pendingAddress = transfer.address();
+            pendingEndpoint = transfer.endpoint();
+            data = transfer.data();
+        }
+        
+        // [state][expectedData][frameNumber][isSetup][address][endpoint][pending type]([address][endpoint][length][data])
+        // [token]([address][endpoint][length][timestamp][host timestamp][turnaround])
+        // [in frame]([microframe][timestamp][lost][count]([token][address][endpoint][handshake][length][timestamp][turnaround])*)
+        // [split token]([hub][complete][port][start][end][type])[current split]
+        // [split count]([slot][hub][port][type][token][end][pending][length][timestamp][data])*
+        int splitCount = 0;
+        int splitSize = 0;
+        for(var split : splits){
+            if(isSaved(split)){
+                splitCount++;
+                splitSize += 20 + (split.hasData ? split.data.position() : 0);
+            }
+        }
+        var checkpoint = ByteBuffer.allocate(
+            13 + (data == null ? 0 : 6 + data.capacity()) + (token == null ? 0 : 30) +
+            (inFrame ? 18 + frameTransactions.size() * 24 : 0) +
+            5 + (splitToken ? 6 : 0) + splitSize
+        );
+        checkpoint.put((byte)state.ordinal());
+        checkpoint.put((byte)expectedData);
+        checkpoint.putShort((short)frameNumber);
+        checkpoint.put((byte)(isSetup ? 1 : 0));
+        checkpoint.put((byte)address);
+        checkpoint.put((byte)endpoint);
+        checkpoint.put(type);
+        if(data != null){
+            checkpoint.put((byte)pendingAddress);
+            checkpoint.put((byte)pendingEndpoint);
+            checkpoint.putInt(data.capacity());
+            checkpoint.put(data.duplicate().clear());
+        }
+        checkpoint.put(token == null ? 0 : (byte)(token.ordinal() + 1));
+        if(token != null){
+            checkpoint.put((byte)transactionAddress);
+            checkpoint.put((byte)transactionEndpoint);
+            checkpoint.putInt(transactionLength);
+            checkpoint.putLong(transactionTimestamp);
+            checkpoint.putLong(hostTimestamp);
+            checkpoint.putLong(turnaround);
+        }
+        checkpoint.put((byte)(inFrame ? 1 : 0));
+        if(inFrame){
+            checkpoint.putInt(microframe);
+            checkpoint.putLong(frameTimestamp);
+            checkpoint.putShort((short)framesLost);
+            checkpoint.putInt(frameTransactions.size());
+            for(var transaction : frameTransactions){
+                checkpoint.put((byte)transaction.token().ordinal());
+                checkpoint.put((byte)transaction.address());
+                checkpoint.put((byte)transaction.endpoint());
+                checkpoint.put((byte)transaction.handshake().ordinal());
+                checkpoint.putInt(transaction.length());
+                checkpoint.putLong(transaction.timestamp());
+                checkpoint.putLong(transaction.turnaround());
+            }
+        }
+        checkpoint.put((byte)(splitToken ? 1 : 0));
+        if(splitToken){
+            checkpoint.put((byte)splitHub);
+            checkpoint.put((byte)(splitComplete ? 1 : 0));
+            checkpoint.put((byte)splitPort);
+            checkpoint.put((byte)(splitStart ? 1 : 0));
+            checkpoint.put((byte)(splitEnd ? 1 : 0));
+            checkpoint.put((byte)splitType);
+        }
+        checkpoint.putShort((short)(split == null ? -1 : splitSlot(split)));
+        checkpoint.putShort((short)splitCount);
+        for(var split : splits){
+            if(isSaved(split)){
+                checkpoint.putShort((short)splitSlot(split));
+                checkpoint.put((byte)split.hub);
+                checkpoint.put((byte)split.port);
+                checkpoint.put((byte)split.type);
+                checkpoint.put((byte)split.token.ordinal());
+                checkpoint.put((byte)(split.end ? 1 : 0));
+                checkpoint.put((byte)(split.pending ? 1 : 0));
+                checkpoint.putInt(split.hasData ? split.data.position() : -1);
+                checkpoint.putLong(split.timestamp);
+                if(split.hasData){
+                    checkpoint.put(split.data.duplicate().flip());
+                }
+            }
+        }
+        return checkpoint.array();
+    }
+    
+    private boolean isSaved(Split split){
+        return split != null && (split.pending || split.hasData || split == this.split);
+    }
+    
+    @Override
+    public void restoreCheckpoint(byte @NotNull [] checkpoint){
+        var buffer = ByteBuffer.wrap(checkpoint);
+        try{
+            var states = State.values();
+            int state = buffer.get();
+            if(state < 0 || state >= states.length){
+                throw new IllegalArgumentException("Unknown state in checkpoint: " + state);
+            }
+            this.state = states[state];
+            expectedData = buffer.get();
+            frameNumber = buffer.getShort() & 0x7FF;
+            isSetup = buffer.get() != 0;
+            address = buffer.get() & 0x7F;
+            endpoint = buffer.get() & 0x0F;
+            byte type = buffer.get();
+            if(type == 0){
+                pendingEvent = null;
+            }else{
+                int pendingAddress = buffer.get() & 0x7F;
+                int pendingEndpoint = buffer.get() & 0x0F;
+                int length = buffer.getInt();
+                var data = ByteBuffer.wrap(checkpoint, buffer.position(), length).slice();
+                buffer.position(buffer.position() + length);
+                pendingEvent = switch(type){
+                    case 1 -> new SetupDataEvent(pendingAddress, pendingEndpoint, data);
+                    case 2 -> new DataEvent(DataEvent.Direction.IN, pendingAddress, pendingEndpoint, data);
+                    case 3 -> new DataEvent(DataEvent.Direction.OUT, pendingAddress, pendingEndpoint, data);
+                    default -> throw new IllegalArgumentException("Unknown pending event in checkpoint: " + type);
+                };
+            }
+            // Checkpoints from before transactions were tracked end here
+            int token = buffer.hasRemaining() ? buffer.get() : 0;
+            var tokens = TransactionEvent.Token.values();
+            if(token < 0 || token > tokens.length){
+                throw new IllegalArgumentException("Unknown token in checkpoint: " + token);
+            }
+            this.token = token == 0 ? null : tokens[token - 1];
+            if(this.token != null){
+                transactionAddress = buffer.get() & 0x7F;
+                transactionEndpoint = buffer.get() & 0x0F;
+                transactionLength = buffer.getInt();
+                transactionTimestamp = buffer.getLong();
+                hostTimestamp = buffer.getLong();
+                turnaround = buffer.getLong();
+            }
+            // Checkpoints from before frames were tracked end here
+            inFrame = buffer.hasRemaining() && buffer.get() != 0;
+            frameTransactions.clear();
+            if(inFrame){
+                microframe = buffer.getInt();
+                frameTimestamp = buffer.getLong();
+                framesLost = buffer.getShort() & 0x7FF;
+                int count = buffer.getInt();
+                var handshakes = TransactionEvent.Handshake.values();
+                for(int i = 0; i < count; i++){
+                    int transactionToken = buffer.get();
+                    int transactionAddress = buffer.get() & 0x7F;
+                    int transactionEndpoint = buffer.get() & 0x0F;
+                    int handshake = buffer.get();
+                    if(transactionToken < 0 || transactionToken >= tokens.length){
+                        throw new IllegalArgumentException("Unknown token in checkpoint: " + transactionToken);
+                    }
+                    if(handshake < 0 || handshake >= handshakes.length){
+                        throw new IllegalArgumentException("Unknown handshake in checkpoint: " + handshake);
+                    }
+                    frameTransactions.add(new TransactionEvent(
+                        tokens[transactionToken], transactionAddress, transactionEndpoint, handshakes[handshake],
+                        buffer.getInt(), buffer.getLong(), buffer.getLong()
+                    ));
+                }
+            }
+            // Checkpoints from before splits were tracked end here
+            Arrays.fill(splits, null);
+            split = null;
+            splitToken = buffer.hasRemaining() && buffer.get() != 0;
+            if(splitToken){
+                splitHub = buffer.get() & 0x7F;
+                splitComplete = buffer.get() != 0;
+                splitPort = buffer.get() & 0x7F;
+                splitStart = buffer.get() != 0;
+                splitEnd = buffer.get() != 0;
+                splitType = buffer.get() & 0b11;
+            }
+            if(buffer.hasRemaining()){
+                int current = buffer.getShort();
+                int count = buffer.getShort() & 0xFFFF;
+                for(int i = 0; i < count; i++){
+                    int slot = buffer.getShort() & 0xFFFF;
+                    if(slot >= SPLIT_SLOTS){
+                        throw new IllegalArgumentException("Bad split endpoint in checkpoint: " + slot);
+                    }
+                    var split = new Split(slot >>> 5, (slot >>> 1) & 0x0F);
+                    int hub = buffer.get() & 0x7F;
+                    int port = buffer.get() & 0x7F;
+                    int splitType = buffer.get() & 0b11;
+                    int ordinal = buffer.get();
+                    if(ordinal < 0 || ordinal >= tokens.length){
+                        throw new IllegalArgumentException("Unknown token in checkpoint: " + ordinal);
+                    }
+                    boolean end = buffer.get() != 0;
+                    boolean pending = buffer.get() != 0;
+                    int length = buffer.getInt();
+                    split.begin(hub, port, splitType, tokens[ordinal], buffer.getLong());
+                    split.end = end;
+                    if(length >= 0){
+                        split.append(buffer.slice(buffer.position(), length));
+                        buffer.position(buffer.position() + length);
+                    }
+                    split.pending = pending;
+                    splits[slot] = split;
+                }
+                if(current != -1){
+                    if(current >= SPLIT_SLOTS || splits[current] == null){
+                        throw new IllegalArgumentException("Bad current split in checkpoint: " + current);
+                    }
+                    split = splits[current];
+                }
+            }
+        }catch(BufferUnderflowException | IndexOutOfBoundsException e){
+            throw new IllegalArgumentException("Checkpoint was truncated", e);
+        }
+        pendingEvents.clear();
+    }
+    
+    private static boolean verifyCrc5(int data, int bits, int crc){
+        return CRC.crc5(data, bits) == crc;
+    }
+    
+    private static boolean verifyCrc16(ByteBuffer packet){
+        // The CRC follows the payload as a little endian short
+        int length = packet.capacity();
+        return length >= 3 && CRC.crc16(packet, 1, length - 3) == (packet.getShort(length - 2) & 0xFFFF);
     }
     
     @Override
@@ -260,6 +1012,29 @@ public final class PacketFilter implements Filter{
         }
     }
     
+    @Override
+    public void drainPendingEvents(@NotNull Collection<? super Event> destination){
+        // Indexed so we don't need an iterator or the array addAll would make
+        for(int i = 0, size = pendingEvents.size(); i < size; i++){
+            destination.add(pendingEvents.get(i));
+        }
+        pendingEvents.clear();
+    }
+    
+    /**
+     * Extra events a packet filter can generate.
+     */
+    public enum Option{
+        /**
+         * Generate a {@link TransactionEvent} for every transaction.
+         */
+        TRANSACTIONS,
+        /**
+         * Generate a {@link FrameEvent} with the transactions of every frame or microframe.
+         */
+        FRAMES
+    }
+    
     /**
      * The state of the internal state machine.
      * @hidden
@@ -281,5 +1056,72 @@ public final class PacketFilter implements Filter{
          * The payload has been transferred, waiting for the ACK.
          */
         ACK,
+        /**
+         * A start split of an OUT or SETUP has started, waiting for the payload.
+         */
+        SPLIT_DATA,
+        /**
+         * A start split was sent, waiting for the hub to acknowledge it.
+         */
+        SPLIT_HANDSHAKE,
+        /**
+         * A complete split has started, waiting for the answer of the device.
+         */
+        SPLIT_COMPLETE,
+    }
+    
+    /**
+     * A split transaction of a single endpoint.
+     */
+    private static final class Split{
+        private final int address;
+        private final int endpoint;
+        private int hub;
+        private int port;
+        private int type;
+        private TransactionEvent.Token token;
+        private long timestamp;
+        // The last part of an isochronous OUT packet was sent
+        private boolean end;
+        // The hub has the transaction and the host has to collect the answer with a complete split
+        private boolean pending;
+        private boolean hasData;
+        private ByteBuffer data;
+        
+        private Split(int address, int endpoint){
+            this.address = address;
+            this.endpoint = endpoint;
+        }
+        
+        private void begin(int hub, int port, int type, TransactionEvent.Token token, long timestamp){
+            this.hub = hub;
+            this.port = port;
+            this.type = type;
+            this.token = token;
+            this.timestamp = timestamp;
+            clear();
+        }
+        
+        private void append(ByteBuffer payload){
+            if(data == null || data.remaining() < payload.remaining()){
+                // Full speed packets are at most 1023 bytes, so this stops growing quickly
+                int length = (hasData ? data.position() : 0) + payload.remaining();
+                var grown = ByteBuffer.allocate(Math.max(64, Integer.highestOneBit(length) << 1));
+                if(hasData){
+                    grown.put(data.flip());
+                }
+                data = grown;
+            }
+            data.put(payload);
+            hasData = true;
+        }
+        
+        private void clear(){
+            pending = false;
+            hasData = false;
+            if(data != null){
+                data.clear();
+            }
+        }
     }
 }
@@ -0,0 +1,178 @@
+package net.gudenau.usbcap.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import org.jetbrains.annotations.NotNull;
+
+import static net.gudenau.usbcap.internal.PcapngFormat.*;
+
+/**
+ * A filter that writes packets into a pcapng file with the USB 2.0 link type so they can be opened with Wireshark.
+ *
+ * Timestamps are written with nanosecond resolution. Resets are written as empty packets with a comment, they can be
+ * read back with {@link net.gudenau.usbcap.capture.PcapngCaptureDevice}.
+ */
+public final class PcapngFilter implements Filter, AutoCloseable{
+    private static final byte[] APPLICATION = "UsbCapture".getBytes(StandardCharsets.UTF_8);
+    private static final byte[] RESET = RESET_COMMENT.getBytes(StandardCharsets.UTF_8);
+    
+    private final SeekableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(1024 * 1024).order(ByteOrder.LITTLE_ENDIAN);
+    
+    /**
+     * Creates a new pcapng filter that writes packets to the provided path.
+     *
+     * @param path The path to write to
+     *
+     * @throws IOException If the file could not be created or opened for writing
+     */
+    public PcapngFilter(@NotNull Path path) throws IOException{
+        Objects.requireNonNull(path, "path was null");
+        path = path.toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        Files.deleteIfExists(path);
+        channel = Files.newByteChannel(path, StandardOpenOption.WRITE, StandardOpenOption.CREATE);
+        
+        try{
+            // Section header
+            int length = 28 + 4 + padded(APPLICATION.length) + 4;
+            buffer.putInt(BLOCK_SECTION_HEADER);
+            buffer.putInt(length);
+            buffer.putInt(BYTE_ORDER_MAGIC);
+            buffer.putShort((short)1);
+            buffer.putShort((short)0);
+            buffer.putLong(-1);
+            putOption(OPTION_SHB_USER_APPLICATION, APPLICATION);
+            buffer.putInt(OPTION_END);
+            buffer.putInt(length);
+            
+            // Interface description, timestamps are in nanoseconds
+            length = 20 + 8 + 4;
+            buffer.putInt(BLOCK_INTERFACE_DESCRIPTION);
+            buffer.putInt(length);
+            buffer.putShort((short)LINKTYPE_USB_2_0);
+            buffer.putShort((short)0);
+            buffer.putInt(0);
+            putOption(OPTION_IF_TSRESOL, new byte[]{9});
+            buffer.putInt(OPTION_END);
+            buffer.putInt(length);
+            
+            flush();
+        }catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    private static int padded(int length){
+        return (length + 3) & ~3;
+    }
+    
+    /**
+     * Adds an option to the current block.
+     *
+     * @param code The option code
+     * @param value The option value
+     */
+    private void putOption(short code, byte[] value){
+        buffer.putShort(code);
+        buffer.putShort((short)value.length);
+        buffer.put(value);
+        for(int i = value.length; i < padded(value.length); i++){
+            buffer.put((byte)0);
+        }
+    }
+    
+    /**
+     * Adds an enhanced packet block to the buffer, writing the buffer out first if there is not enough room.
+     *
+     * @param payload The packet contents, may be null
+     * @param timestamp The timestamp of the packet
+     * @param comment A comment to attach, may be null
+     *
+     * @throws IOException If the buffer could not be written
+     */
+    private void writePacket(ByteBuffer payload, long timestamp, byte[] comment) throws IOException{
+        int dataLength = payload == null ? 0 : payload.remaining();
+        int length = 32 + padded(dataLength) + (comment == null ? 0 : 4 + padded(comment.length) + 4);
+        if(buffer.remaining() < length){
+            flush();
+            if(buffer.capacity() < length){
+                throw new IOException("Packet of " + dataLength + " bytes is too large");
+            }
+        }
+        
+        int start = buffer.position();
+        buffer.putInt(BLOCK_ENHANCED_PACKET);
+        buffer.putInt(length);
+        buffer.putInt(0);
+        buffer.putInt((int)(timestamp >>> 32));
+        buffer.putInt((int)timestamp);
+        buffer.putInt(dataLength);
+        buffer.putInt(dataLength);
+        if(payload != null){
+            buffer.put(payload);
+        }
+        // Zero the padding, the buffer is reused.
+        while(((buffer.position() - start) & 3) != 0){
+            buffer.put((byte)0);
+        }
+        if(comment != null){
+            putOption(OPTION_COMMENT, comment);
+            buffer.putInt(OPTION_END);
+        }
+        buffer.putInt(length);
+    }
+    
+    /**
+     * Writes all buffered blocks to the file.
+     *
+     * @throws IOException If the blocks could not be written
+     */
+    public void flush() throws IOException{
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event rawEvent){
+        try{
+            if(rawEvent instanceof PacketEvent event){
+                writePacket(event.buffer().clear(), event.timestamp(), null);
+            }else if(rawEvent instanceof ResetEvent event){
+                writePacket(null, event.timestamp(), RESET);
+            }
+        }catch(IOException e){
+            throw new RuntimeException("Failed to write to pcapng file", e);
+        }
+        return false;
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        return List.of();
+    }
+    
+    @Override
+    public void close() throws IOException{
+        try{
+            flush();
+        }finally{
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package net.gudenau.usbcap.filter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.internal.FilterChain;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A filter that fans every event out to a tree of {@link Branch}es instead of a single chain.
+ *
+ * Every branch is a chain of filters of its own. The events that make it through a branch go to its sink and to the
+ * branches after it, so filters that several branches need only run once in the branch they all follow. A branch can
+ * record raw packets while a sibling decodes them without either one seeing the events of the other.
+ *
+ * Branches run on the thread that captures unless they are {@link Branch#threaded(int) threaded}. A threaded branch
+ * runs with the branches after it on its own thread and gets the events through a bounded queue, capturing waits when
+ * the queue is full. Threaded branches get a {@link Event#copy() copy} of every event, so the filters of either thread
+ * can reset and read their events without getting in the way of the other.
+ *
+ * The events this filter gets are left alone, so {@link net.gudenau.usbcap.capture.CaptureDevice#captureEvent()}
+ * keeps returning them and drives the pipeline. Close the pipeline before the filters of its threaded branches, it
+ * waits for the queued events to be handled. Events that show up after that are rejected.
+ */
+public final class Pipeline implements Filter, AutoCloseable{
+    private static final Event STOP = ()->"pipeline_stop";
+    
+    private final List<Branch> branches;
+    // Every threaded branch in the tree, parents before their children
+    private final List<Branch> threaded = new ArrayList<>();
+    private volatile Throwable failure = null;
+    private volatile boolean closed = false;
+    
+    /**
+     * Creates a new pipeline and starts the threads of its threaded branches.
+     *
+     * @param branches The branches that get every event
+     *
+     * @throws IllegalArgumentException If a branch is already part of a pipeline or appears twice
+     */
+    public Pipeline(@NotNull Branch @NotNull ... branches){
+        Objects.requireNonNull(branches, "branches was null");
+        this.branches = List.of(branches);
+        for(var branch : this.branches){
+            attach(branch);
+        }
+        for(var branch : threaded){
+            branch.thread.start();
+        }
+    }
+    
+    private void attach(Branch branch){
+        if(branch.pipeline != null){
+            throw new IllegalArgumentException("Branch was already part of a pipeline");
+        }
+        branch.pipeline = this;
+        if(branch.capacity != 0){
+            branch.queue = new ArrayBlockingQueue<>(branch.capacity);
+            branch.thread = new Thread(branch::run, "Pipeline branch " + threaded.size());
+            branch.thread.setDaemon(true);
+            threaded.add(branch);
+        }
+        for(var child : branch.children){
+            attach(child);
+        }
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        checkOpen();
+        for(int i = 0, size = branches.size(); i < size; i++){
+            branches.get(i).accept(event);
+        }
+        return false;
+    }
+    
+    /**
+     * Makes sure the pipeline can still take events, a closed pipeline has no threads to hand them to.
+     */
+    private void checkOpen(){
+        if(closed){
+            throw new IllegalStateException("Pipeline was closed");
+        }
+        checkFailure();
+    }
+    
+    private void checkFailure(){
+        var failure = this.failure;
+        if(failure != null){
+            throw new IllegalStateException("A threaded branch failed", failure);
+        }
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        return List.of();
+    }
+    
+    /**
+     * Waits for the threaded branches to handle the events that are queued and stops their threads.
+     *
+     * @throws IllegalStateException If a threaded branch failed
+     */
+    @Override
+    public void close(){
+        closed = true;
+        try{
+            for(var branch : threaded){
+                var thread = branch.thread;
+                // A branch that failed does not empty its queue anymore
+                while(thread.isAlive() && !branch.queue.offer(STOP, 10, TimeUnit.MILLISECONDS)){}
+                thread.join();
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        checkFailure();
+    }
+    
+    /**
+     * A chain of filters in a {@link Pipeline}, with the branches that get the events that make it through.
+     *
+     * Branches are set up before they are given to a pipeline and can only be part of one.
+     */
+    public static final class Branch{
+        private final FilterChain filters = new FilterChain();
+        private final List<Branch> children = new ArrayList<>();
+        private Consumer<? super Event> sink = null;
+        private int capacity = 0;
+        private Pipeline pipeline = null;
+        
+        // Reused for every event
+        private final List<Event> pendingEvents = new ArrayList<>();
+        private final List<Event> output = new ArrayList<>();
+        
+        // Only set for threaded branches
+        private BlockingQueue<Event> queue;
+        private Thread thread;
+        
+        /**
+         * Creates a new branch.
+         *
+         * @param filters The filters of the branch in order, none to pass every event along
+         */
+        public Branch(@NotNull Filter @NotNull ... filters){
+            Objects.requireNonNull(filters, "filters was null");
+            for(var filter : filters){
+                this.filters.add(Objects.requireNonNull(filter, "filter was null"));
+            }
+        }
+        
+        /**
+         * Adds branches that get the events that make it through this one.
+         *
+         * @param branches The branches to add
+         *
+         * @return This branch
+         */
+        public @NotNull Branch then(@NotNull Branch @NotNull ... branches){
+            checkDetached();
+            Objects.requireNonNull(branches, "branches was null");
+            for(var branch : branches){
+                if(branch == this){
+                    throw new IllegalArgumentException("Branch can not follow itself");
+                }
+                children.add(Objects.requireNonNull(branch, "branch was null"));
+            }
+            return this;
+        }
+        
+        /**
+         * Sets where the events that make it through this branch go, before they are passed to the branches after it.
+         *
+         * @param sink The consumer of the events
+         *
+         * @return This branch
+         */
+        public @NotNull Branch sink(@NotNull Consumer<? super @NotNull Event> sink){
+            checkDetached();
+            this.sink = Objects.requireNonNull(sink, "sink was null");
+            return this;
+        }
+        
+        /**
+         * Runs this branch and the branches after it on a thread of their own.
+         *
+         * @param capacity How many events can wait for the thread before capturing has to wait
+         *
+         * @return This branch
+         */
+        public @NotNull Branch threaded(int capacity){
+            checkDetached();
+            if(capacity < 1){
+                throw new IllegalArgumentException("capacity must be positive, got " + capacity);
+            }
+            this.capacity = capacity;
+            return this;
+        }
+        
+        private void checkDetached(){
+            if(pipeline != null){
+                throw new IllegalStateException("Branch was already part of a pipeline");
+            }
+        }
+        
+        private void accept(Event event){
+            if(queue == null){
+                process(event);
+                return;
+            }
+            
+            event = event.copy();
+            try{
+                while(!queue.offer(event, 10, TimeUnit.MILLISECONDS)){
+                    pipeline.checkFailure();
+                    // Only happens when the pipeline was closed while the event was on its way here
+                    if(!thread.isAlive()){
+                        throw new IllegalStateException("Pipeline was closed");
+                    }
+                }
+            }catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for a threaded branch", e);
+            }
+        }
+        
+        private void process(Event event){
+            pendingEvents.add(event);
+            filters.process(pendingEvents, output);
+            pendingEvents.clear();
+            for(int i = 0, size = output.size(); i < size; i++){
+                var result = output.get(i);
+                if(sink != null){
+                    sink.accept(result);
+                }
+                for(int j = 0, count = children.size(); j < count; j++){
+                    children.get(j).accept(result);
+                }
+            }
+            output.clear();
+        }
+        
+        private void run(){
+            try{
+                while(true){
+                    var event = queue.take();
+                    if(event == STOP){
+                        return;
+                    }
+                    process(event);
+                }
+            }catch(InterruptedException ignored){
+            }catch(Throwable e){
+                pipeline.failure = e;
+            }
+        }
+    }
+}
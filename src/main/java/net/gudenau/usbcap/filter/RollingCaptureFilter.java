@@ -0,0 +1,261 @@
+package net.gudenau.usbcap.filter;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.*;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.CaptureSegments;
+import net.gudenau.usbcap.internal.CaptureWriter;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A filter that dumps events into a directory of numbered capture file segments, starting a new segment once the
+ * current one gets too big or too old and deleting the oldest segments to stay within the retention limits.
+ *
+ * Segments are opened ahead of time and closed on a background thread, so rotating never waits on the disk. The
+ * directory can be read back with {@link net.gudenau.usbcap.capture.FileCaptureDevice}.
+ */
+public final class RollingCaptureFilter implements Filter, AutoCloseable{
+    private final Path directory;
+    private final boolean compress;
+    private final long maxSegmentSize;
+    private final long maxSegmentAge;
+    private final long maxTotalSize;
+    private final int maxSegments;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor((runnable)->{
+        var thread = new Thread(runnable, "RollingCaptureFilter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    /**
+     * Segments that have been finished, only touched by the background thread.
+     */
+    private final Deque<Path> segments = new ArrayDeque<>();
+    private long totalSize = 0;
+    
+    private long segmentIndex;
+    private Segment segment;
+    private Future<Segment> nextSegment;
+    private volatile IOException backgroundException = null;
+    
+    /**
+     * Creates a new rolling capture filter that starts a new compressed segment every 1GiB and never deletes segments.
+     *
+     * @param directory The directory to write the segments to
+     *
+     * @throws IOException If the first segment could not be created
+     */
+    public RollingCaptureFilter(@NotNull Path directory) throws IOException{
+        this(directory, true, 1024 * 1024 * 1024, null, 0, 0);
+    }
+    
+    /**
+     * Creates a new rolling capture filter.
+     *
+     * @param directory The directory to write the segments to
+     * @param compress True to compress the events in the background
+     * @param maxSegmentSize The approximate maximum size of a segment in bytes, 0 for no limit
+     * @param maxSegmentAge The maximum time a segment is written to, null for no limit
+     * @param maxTotalSize The maximum size of all finished segments in bytes, 0 for no limit
+     * @param maxSegments The maximum amount of finished segments, 0 for no limit
+     *
+     * @throws IOException If the first segment could not be created
+     */
+    public RollingCaptureFilter(
+        @NotNull Path directory, boolean compress,
+        long maxSegmentSize, Duration maxSegmentAge,
+        long maxTotalSize, int maxSegments
+    ) throws IOException{
+        Objects.requireNonNull(directory, "directory was null");
+        if(maxSegmentSize < 0 || maxTotalSize < 0 || maxSegments < 0){
+            throw new IllegalArgumentException("Limits can not be negative");
+        }
+        this.directory = directory.toAbsolutePath();
+        this.compress = compress;
+        this.maxSegmentSize = maxSegmentSize;
+        this.maxSegmentAge = maxSegmentAge == null ? 0 : maxSegmentAge.toNanos();
+        this.maxTotalSize = maxTotalSize;
+        this.maxSegments = maxSegments;
+        
+        Files.createDirectories(this.directory);
+        // Keep the segments from previous runs around and continue the numbering after them, including the ones a
+        // crash left unfinished.
+        for(var path : CaptureSegments.list(this.directory)){
+            segments.add(path);
+            totalSize += Files.size(path);
+        }
+        segmentIndex = CaptureSegments.nextIndex(this.directory);
+        
+        try{
+            segment = executor.submit(this::openSegment).get();
+        }catch(InterruptedException | ExecutionException e){
+            executor.shutdownNow();
+            throw new IOException("Failed to open the first segment", e);
+        }
+        segment.start = System.nanoTime();
+        nextSegment = executor.submit(this::openSegment);
+    }
+    
+    /**
+     * Opens the segment with the next index, runs on the background thread.
+     *
+     * @return The new segment
+     *
+     * @throws IOException If the segment could not be opened
+     */
+    private Segment openSegment() throws IOException{
+        var path = directory.resolve(CaptureSegments.name(segmentIndex++) + CaptureSegments.PARTIAL_EXTENSION);
+        var channel = Files.newByteChannel(
+            path,
+            StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW
+        );
+        try{
+            return new Segment(path, new CaptureWriter(channel, compress, ForkJoinPool.commonPool()));
+        }catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Closes a segment, gives it its final name and enforces the retention limits, runs on the background thread.
+     *
+     * @param segment The segment to finish
+     */
+    private void finishSegment(Segment segment){
+        try{
+            segment.writer.close();
+            var name = segment.path.getFileName().toString();
+            var path = segment.path.resolveSibling(name.substring(0, name.length() - CaptureSegments.PARTIAL_EXTENSION.length()));
+            Files.move(segment.path, path, StandardCopyOption.ATOMIC_MOVE);
+            
+            segments.add(path);
+            totalSize += Files.size(path);
+            while(
+                segments.size() > 1 && (
+                    (maxSegments != 0 && segments.size() > maxSegments) ||
+                    (maxTotalSize != 0 && totalSize > maxTotalSize)
+                )
+            ){
+                var oldest = segments.remove();
+                totalSize -= Files.size(oldest);
+                Files.delete(oldest);
+            }
+        }catch(IOException e){
+            backgroundException = e;
+        }
+    }
+    
+    /**
+     * Swaps the current segment for the one that was opened ahead of time.
+     *
+     * @throws IOException If the new segment could not be opened
+     */
+    private void rotate() throws IOException{
+        Segment next;
+        try{
+            next = nextSegment.get();
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the next segment", e);
+        }catch(ExecutionException e){
+            throw new IOException("Failed to open the next segment", e.getCause());
+        }
+        
+        var previous = segment;
+        segment = next;
+        segment.start = System.nanoTime();
+        executor.execute(()->finishSegment(previous));
+        nextSegment = executor.submit(this::openSegment);
+    }
+    
+    /**
+     * Checks if the current segment is done.
+     *
+     * @return True if a new segment should be started
+     */
+    private boolean shouldRotate(){
+        return (maxSegmentSize != 0 && segment.writer.written() >= maxSegmentSize) ||
+            (maxSegmentAge != 0 && System.nanoTime() - segment.start >= maxSegmentAge);
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event rawEvent){
+        try{
+            var exception = backgroundException;
+            if(exception != null){
+                throw exception;
+            }
+            
+            if(rawEvent instanceof PacketEvent event){
+                segment.writer.writePacket(event.buffer().clear(), event.timestamp());
+            }else if(rawEvent instanceof ResetEvent event){
+                segment.writer.writeReset(event.timestamp());
+            }else{
+                return false;
+            }
+            
+            if(shouldRotate()){
+                rotate();
+            }
+        }catch(IOException e){
+            throw new RuntimeException("Failed to write to capture segment", e);
+        }
+        return false;
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        return List.of();
+    }
+    
+    @Override
+    public void close() throws IOException{
+        var current = segment;
+        executor.execute(()->finishSegment(current));
+        // The segment opened ahead of time was never used, get rid of it.
+        executor.execute(()->{
+            try{
+                var unused = nextSegment.get();
+                unused.writer.close();
+                Files.delete(unused.path);
+            }catch(IOException | InterruptedException | ExecutionException ignored){}
+        });
+        executor.shutdown();
+        try{
+            if(!executor.awaitTermination(1, TimeUnit.MINUTES)){
+                throw new IOException("Timed out while closing capture segments");
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing capture segments", e);
+        }
+        
+        var exception = backgroundException;
+        if(exception != null){
+            throw exception;
+        }
+    }
+    
+    private static final class Segment{
+        private final Path path;
+        private final CaptureWriter writer;
+        private long start;
+        
+        private Segment(Path path, CaptureWriter writer){
+            this.path = path;
+            this.writer = writer;
+        }
+    }
+}
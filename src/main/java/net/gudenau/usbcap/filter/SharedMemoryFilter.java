@@ -0,0 +1,123 @@
+package net.gudenau.usbcap.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.SharedRing;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Writes events into a memory mapped ring file for a {@link net.gudenau.usbcap.capture.SharedMemoryCaptureDevice} in
+ * another process on the same machine.
+ *
+ * If the ring is full this filter waits for the reader to catch up.
+ */
+public final class SharedMemoryFilter implements Filter, AutoCloseable{
+    private final SharedRing ring;
+    private final ByteBuffer data;
+    private final int capacity;
+    private long head = 0;
+    
+    /**
+     * Creates a new ring file with a capacity of 64MiB.
+     *
+     * @param path The path of the ring file
+     *
+     * @throws IOException If the ring file could not be created
+     */
+    public SharedMemoryFilter(@NotNull Path path) throws IOException{
+        this(path, 64 * 1024 * 1024);
+    }
+    
+    /**
+     * Creates a new ring file.
+     *
+     * @param path The path of the ring file
+     * @param capacity The capacity of the ring in bytes, must be a multiple of 4 that fits at least a record header
+     *
+     * @throws IOException If the ring file could not be created
+     */
+    public SharedMemoryFilter(@NotNull Path path, int capacity) throws IOException{
+        Objects.requireNonNull(path, "path was null");
+        path = path.toAbsolutePath();
+        Files.createDirectories(path.getParent());
+        ring = SharedRing.create(path, capacity);
+        data = ring.data();
+        this.capacity = capacity;
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        if(event instanceof PacketEvent packet){
+            var buffer = packet.buffer();
+            write(buffer.capacity(), packet.timestamp(), buffer);
+        }else if(event instanceof ResetEvent reset){
+            write(SharedRing.RESET, reset.timestamp(), null);
+        }else{
+            var type = event.getClass();
+            throw new IllegalStateException("Unsupported event: %s/%s".formatted(type.getModule().getName(), type.getName()));
+        }
+        return true;
+    }
+    
+    /**
+     * Writes a record into the ring and publishes it.
+     *
+     * @param length The length of the record
+     * @param timestamp The timestamp of the record
+     * @param payload The payload of the record, may be null for resets
+     */
+    private void write(int length, long timestamp, ByteBuffer payload){
+        // Records are padded to keep the lengths aligned.
+        int size = SharedRing.RECORD_HEADER_SIZE + ((Math.max(length, 0) + 3) & ~3);
+        if(size > capacity){
+            throw new IllegalStateException("Event of " + length + " bytes does not fit into the shared ring");
+        }
+        
+        int position = (int)(head % capacity);
+        if(capacity - position < size){
+            // Not enough room before the end of the ring, skip the rest of it.
+            awaitSpace(capacity - position);
+            data.putInt(position, SharedRing.PADDING);
+            head += capacity - position;
+            position = 0;
+        }
+        awaitSpace(size);
+        
+        if(payload != null){
+            data.put(position + SharedRing.RECORD_HEADER_SIZE, payload, 0, length);
+        }
+        data.putLong(position + Integer.BYTES, timestamp);
+        data.putInt(position, length);
+        head += size;
+        ring.head(head);
+    }
+    
+    /**
+     * Waits for the reader to free enough space in the ring.
+     *
+     * @param size The amount of bytes required
+     */
+    private void awaitSpace(int size){
+        for(int i = 0; head + size - ring.tail() > capacity; i++){
+            SharedRing.await(i);
+        }
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        return List.of();
+    }
+    
+    @Override
+    public void close() throws IOException{
+        ring.markClosed();
+        ring.close();
+    }
+}
@@ -0,0 +1,217 @@
+package net.gudenau.usbcap.filter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.event.TransactionEvent;
+import net.gudenau.usbcap.event.enumeration.Device;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * Counts the bytes, transactions, NAKs, STALLs and retries of every endpoint over fixed windows of capture time.
+ *
+ * Needs the {@link TransactionEvent}s of a {@link PacketFilter} created with {@link PacketFilter.Option#TRANSACTIONS}
+ * and a {@link DeviceFilter} to tell devices apart, both have to come before this filter in the chain. Transaction
+ * events are left for the filters after this one.
+ *
+ * The counters are only touched by the capturing thread, once a window is over it is copied into a {@link Snapshot}
+ * that any thread can get from {@link #lastWindow()}. Windows are based on the timestamps of the captured packets, a
+ * window without any transactions is skipped.
+ */
+public final class StatisticsFilter implements Filter{
+    // [address][endpoint][direction]
+    private static final int SLOTS = 128 * 16 * 2;
+    
+    private final DeviceFilter devices;
+    private final long window;
+    
+    private final long[] bytes = new long[SLOTS];
+    private final long[] transactions = new long[SLOTS];
+    private final long[] naks = new long[SLOTS];
+    private final long[] stalls = new long[SLOTS];
+    private final long[] retries = new long[SLOTS];
+    private final Device[] owners = new Device[SLOTS];
+    // Survives windows, a NAKed transaction is retried in the next one sometimes
+    private final boolean[] nakPending = new boolean[SLOTS];
+    // Counters of devices that went away during the window
+    private final List<Entry> retired = new ArrayList<>();
+    
+    private long windowStart = -1;
+    private volatile Snapshot lastWindow = null;
+    
+    /**
+     * Creates a new statistics filter.
+     *
+     * @param devices The device filter used to find the device of a transaction
+     * @param window How long a window is
+     */
+    public StatisticsFilter(@NotNull DeviceFilter devices, @NotNull Duration window){
+        this.devices = Objects.requireNonNull(devices, "devices was null");
+        Objects.requireNonNull(window, "window was null");
+        if(window.isNegative() || window.isZero()){
+            throw new IllegalArgumentException("window was not positive: " + window);
+        }
+        this.window = window.toNanos();
+    }
+    
+    /**
+     * Gets the counters of the last window that is over.
+     *
+     * @return The snapshot of the window or null if no window is over yet
+     */
+    public @Nullable Snapshot lastWindow(){
+        return lastWindow;
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        if(event instanceof TransactionEvent transaction){
+            count(transaction);
+        }else if(event instanceof ResetEvent){
+            Arrays.fill(nakPending, false);
+        }
+        return false;
+    }
+    
+    private void count(TransactionEvent transaction){
+        long timestamp = transaction.timestamp();
+        if(windowStart == -1){
+            windowStart = timestamp - Math.floorMod(timestamp, window);
+        }else if(timestamp - windowStart >= window){
+            lastWindow = snapshot(windowStart, windowStart + window);
+            windowStart = timestamp - Math.floorMod(timestamp, window);
+        }
+        
+        int address = transaction.address();
+        int slot = (address << 5) | (transaction.endpoint() << 1) | transaction.direction().ordinal();
+        
+        // The address belongs to a different device after a reset, keep the counters of the old one apart.
+        var device = devices.getDevice(address);
+        if(!Objects.equals(owners[slot], device)){
+            if(transactions[slot] != 0){
+                retired.add(entry(slot, window));
+                clear(slot);
+            }
+            owners[slot] = device;
+        }
+        
+        transactions[slot]++;
+        if(transaction.length() > 0){
+            bytes[slot] += transaction.length();
+        }
+        if(nakPending[slot]){
+            retries[slot]++;
+        }
+        switch(transaction.handshake()){
+            case NAK -> naks[slot]++;
+            case STALL -> stalls[slot]++;
+        }
+        nakPending[slot] = transaction.handshake() == TransactionEvent.Handshake.NAK;
+    }
+    
+    private Snapshot snapshot(long start, long end){
+        List<Entry> entries = new ArrayList<>(retired);
+        retired.clear();
+        for(int slot = 0; slot < SLOTS; slot++){
+            if(transactions[slot] != 0){
+                entries.add(entry(slot, end - start));
+                clear(slot);
+            }
+        }
+        return new Snapshot(start, end, List.copyOf(entries));
+    }
+    
+    private Entry entry(int slot, long duration){
+        double seconds = duration / 1e9;
+        return new Entry(
+            slot >>> 5, (slot >>> 1) & 0x0F, DataEvent.Direction.values()[slot & 1], owners[slot],
+            bytes[slot], transactions[slot], naks[slot], stalls[slot], retries[slot],
+            bytes[slot] / seconds, transactions[slot] / seconds
+        );
+    }
+    
+    private void clear(int slot){
+        bytes[slot] = 0;
+        transactions[slot] = 0;
+        naks[slot] = 0;
+        stalls[slot] = 0;
+        retries[slot] = 0;
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        return List.of();
+    }
+    
+    /**
+     * The counters of a single window.
+     *
+     * @param start The start of the window in nanoseconds since the Unix epoch
+     * @param end The end of the window in nanoseconds since the Unix epoch
+     * @param endpoints The counters of every endpoint that had transactions
+     */
+    public record Snapshot(
+        long start,
+        long end,
+        @NotNull List<@NotNull Entry> endpoints
+    ){
+        /**
+         * Gets the endpoint that moved the most bytes in this window.
+         *
+         * @return The busiest endpoint or null if there were no transactions
+         */
+        public @Nullable Entry busiest(){
+            Entry busiest = null;
+            for(var entry : endpoints){
+                if(busiest == null || entry.bytes() > busiest.bytes()){
+                    busiest = entry;
+                }
+            }
+            return busiest;
+        }
+    }
+    
+    /**
+     * The counters of a single endpoint and direction.
+     *
+     * @param address The address of the device
+     * @param endpoint The endpoint
+     * @param direction The direction of the transactions, PING transactions count as OUT
+     * @param device The device that had the address or null if it was not enumerated
+     * @param bytes The amount of data bytes that were sent, including data that was NAKed
+     * @param transactions The amount of transactions
+     * @param naks The amount of NAKed transactions
+     * @param stalls The amount of stalled transactions
+     * @param retries The amount of transactions that followed a NAKed one
+     * @param bytesPerSecond The bytes per second over the window
+     * @param transactionsPerSecond The transactions per second over the window
+     */
+    public record Entry(
+        int address,
+        int endpoint,
+        @NotNull DataEvent.Direction direction,
+        @Nullable Device device,
+        long bytes,
+        long transactions,
+        long naks,
+        long stalls,
+        long retries,
+        double bytesPerSecond,
+        double transactionsPerSecond
+    ){
+        /**
+         * Gets the share of transactions that were NAKed.
+         *
+         * @return The NAK ratio, between 0 and 1
+         */
+        public double nakRatio(){
+            return transactions == 0 ? 0 : (double)naks / transactions;
+        }
+    }
+}
@@ -0,0 +1,456 @@
+package net.gudenau.usbcap.filter;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+import net.gudenau.usbcap.internal.AhoCorasick;
+import net.gudenau.usbcap.internal.BufferHelper;
+import net.gudenau.usbcap.internal.CRC;
+import net.gudenau.usbcap.internal.CaptureSegments;
+import net.gudenau.usbcap.internal.CaptureWriter;
+import net.gudenau.usbcap.internal.EventRing;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+/**
+ * A filter that keeps the most recent packets and resets in a preallocated off-heap ring and only writes them to disk
+ * when something interesting happens.
+ *
+ * When a {@link Trigger} fires, or {@link #trigger()} is called, everything in the ring is written to a new capture
+ * file in the output directory along with everything captured until the post-trigger window is over. Triggers that fire
+ * during the post-trigger window extend it. The files are numbered like the segments of a
+ * {@link RollingCaptureFilter} and can be read with {@link net.gudenau.usbcap.capture.FileCaptureDevice}.
+ *
+ * Until a trigger fires every event costs a copy into the ring and the checks of the triggers, the files are written
+ * and compressed on a background thread. This filter has to come before {@link PacketFilter} to see the packets.
+ *
+ * Packets that are bigger than the ring are written straight to the capture file while a trigger is active and counted
+ * by {@link #getOversizedPackets()} otherwise.
+ */
+public final class TriggerCaptureFilter implements Filter, AutoCloseable{
+    private static final byte PID_SOF = (byte)0xA5;
+    private static final byte PID_OUT = (byte)0xE1;
+    private static final byte PID_IN = (byte)0x69;
+    private static final byte PID_SETUP = (byte)0x2D;
+    private static final byte PID_PING = (byte)0xB4;
+    private static final byte PID_DATA0 = (byte)0xC3;
+    private static final byte PID_DATA1 = (byte)0x4B;
+    private static final byte PID_DATA2 = (byte)0x87;
+    private static final byte PID_MDATA = (byte)0x0F;
+    private static final byte PID_STALL = (byte)0x1E;
+    
+    private final Path directory;
+    private final EventRing ring;
+    private final long preTrigger;
+    private final long postTrigger;
+    private final List<Trigger> triggers;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor((runnable)->{
+        var thread = new Thread(runnable, "TriggerCaptureFilter");
+        thread.setDaemon(true);
+        return thread;
+    });
+    
+    private long nextIndex;
+    private long lastTimestamp = 0;
+    private volatile long oversizedPackets = 0;
+    private volatile boolean requested = false;
+    private volatile IOException backgroundException = null;
+    
+    // The file that is being written, null if no trigger fired.
+    private Capture capture = null;
+    // The position of the oldest record in the ring that was not handed to the background thread yet
+    private long captureStart;
+    // The end of the post-trigger window
+    private long captureEnd;
+    
+    /**
+     * Creates a new trigger capture filter.
+     *
+     * @param directory The directory to write the capture files to
+     * @param ringSize The size of the ring in bytes, limits how much is kept before a trigger
+     * @param preTrigger How far back to keep events before a trigger, null to keep whatever fits into the ring
+     * @param postTrigger How long to keep capturing after a trigger
+     * @param triggers The conditions that start a capture file
+     *
+     * @throws IOException If the directory could not be created
+     */
+    public TriggerCaptureFilter(
+        @NotNull Path directory, int ringSize,
+        @Nullable Duration preTrigger, @NotNull Duration postTrigger,
+        @NotNull Trigger @NotNull ... triggers
+    ) throws IOException{
+        Objects.requireNonNull(directory, "directory was null");
+        Objects.requireNonNull(postTrigger, "postTrigger was null");
+        if(preTrigger != null && (preTrigger.isNegative() || preTrigger.isZero())){
+            throw new IllegalArgumentException("preTrigger was not positive: " + preTrigger);
+        }
+        if(postTrigger.isNegative()){
+            throw new IllegalArgumentException("postTrigger was negative: " + postTrigger);
+        }
+        this.directory = directory.toAbsolutePath();
+        this.preTrigger = preTrigger == null ? 0 : preTrigger.toNanos();
+        this.postTrigger = postTrigger.toNanos();
+        this.triggers = List.of(triggers);
+        ring = new EventRing(ringSize);
+        
+        Files.createDirectories(this.directory);
+        // Don't overwrite the files of previous runs
+        nextIndex = CaptureSegments.nextIndex(this.directory);
+    }
+    
+    /**
+     * Fires a trigger from any thread, the capture file is started when the next event is handled.
+     */
+    public void trigger(){
+        requested = true;
+    }
+    
+    /**
+     * Gets the number of packets that were too big for the ring and were dropped because no trigger was active, can be
+     * called from any thread.
+     *
+     * @return The number of dropped packets
+     */
+    public long getOversizedPackets(){
+        return oversizedPackets;
+    }
+    
+    @Override
+    public boolean handleEvent(@NotNull Event event){
+        var exception = backgroundException;
+        if(exception != null){
+            throw new RuntimeException("Failed to write triggered capture", exception);
+        }
+        
+        PacketEvent oversized = null;
+        if(event instanceof PacketEvent packet){
+            var payload = packet.buffer().clear();
+            record(payload.remaining(), packet.timestamp());
+            if(!ring.writePacket(payload, packet.timestamp())){
+                oversized = packet;
+            }
+        }else if(event instanceof ResetEvent reset){
+            record(0, reset.timestamp());
+            ring.writeReset(reset.timestamp());
+        }
+        
+        boolean fire = requested;
+        if(fire){
+            requested = false;
+        }
+        for(int i = 0, size = triggers.size(); i < size && !fire; i++){
+            fire = triggers.get(i).test(event);
+        }
+        if(fire){
+            fire();
+        }
+        
+        if(oversized != null){
+            if(capture != null){
+                writeOversized(oversized);
+            }else{
+                oversizedPackets++;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Gets the ring ready for a new record, finishing or flushing the current capture file as needed.
+     *
+     * @param length The length of the payload of the record
+     * @param timestamp The time of the record
+     */
+    private void record(int length, long timestamp){
+        lastTimestamp = timestamp;
+        if(capture != null){
+            if(timestamp > captureEnd){
+                finishCapture();
+            }else if(!ring.fits(captureStart, length)){
+                // The post-trigger window is bigger than the ring, hand over what we have before it is overwritten.
+                flushCapture();
+            }
+        }
+        if(capture == null && preTrigger != 0){
+            ring.evictOlderThan(timestamp - preTrigger);
+        }
+    }
+    
+    /**
+     * Starts a new capture file or extends the post-trigger window of the current one.
+     */
+    private void fire(){
+        captureEnd = lastTimestamp + postTrigger;
+        if(capture != null){
+            return;
+        }
+        var path = directory.resolve(CaptureSegments.name(nextIndex++) + CaptureSegments.PARTIAL_EXTENSION);
+        var capture = new Capture(path);
+        this.capture = capture;
+        captureStart = ring.tail();
+        executor.execute(()->{
+            try{
+                var channel = Files.newByteChannel(
+                    path,
+                    StandardOpenOption.WRITE, StandardOpenOption.CREATE_NEW
+                );
+                try{
+                    capture.writer = new CaptureWriter(channel, true, ForkJoinPool.commonPool());
+                }catch(IOException e){
+                    channel.close();
+                    throw e;
+                }
+            }catch(IOException e){
+                backgroundException = e;
+            }
+        });
+    }
+    
+    /**
+     * Copies the records of the current capture out of the ring and writes them on the background thread.
+     */
+    private void flushCapture(){
+        var records = ring.copy(captureStart, ring.head());
+        captureStart = ring.head();
+        var capture = this.capture;
+        executor.execute(()->{
+            if(capture.writer == null){
+                return;
+            }
+            try{
+                EventRing.read(records, capture.writer);
+            }catch(IOException e){
+                backgroundException = e;
+            }
+        });
+    }
+    
+    /**
+     * Writes a packet that does not fit into the ring to the current capture file on the background thread.
+     *
+     * @param packet The packet
+     */
+    private void writeOversized(PacketEvent packet){
+        // Everything before it has to be written first
+        flushCapture();
+        var payload = BufferHelper.clone(packet.buffer().duplicate().clear());
+        long timestamp = packet.timestamp();
+        var capture = this.capture;
+        executor.execute(()->{
+            if(capture.writer == null){
+                return;
+            }
+            try{
+                capture.writer.writePacket(payload, timestamp);
+            }catch(IOException e){
+                backgroundException = e;
+            }
+        });
+    }
+    
+    /**
+     * Writes the rest of the current capture and closes the file on the background thread.
+     */
+    private void finishCapture(){
+        flushCapture();
+        var capture = this.capture;
+        this.capture = null;
+        executor.execute(()->{
+            if(capture.writer == null){
+                return;
+            }
+            try{
+                capture.writer.close();
+                var name = capture.path.getFileName().toString();
+                var path = capture.path.resolveSibling(name.substring(0, name.length() - CaptureSegments.PARTIAL_EXTENSION.length()));
+                Files.move(capture.path, path, StandardCopyOption.ATOMIC_MOVE);
+            }catch(IOException e){
+                backgroundException = e;
+            }
+        });
+    }
+    
+    @Override
+    public @NotNull List<@NotNull Event> getPendingEvents(){
+        return List.of();
+    }
+    
+    /**
+     * Finishes the current capture file, cutting the post-trigger window short, and waits for it to be written.
+     *
+     * @throws IOException If a capture file could not be written
+     */
+    @Override
+    public void close() throws IOException{
+        if(capture != null){
+            finishCapture();
+        }
+        executor.shutdown();
+        try{
+            if(!executor.awaitTermination(1, TimeUnit.MINUTES)){
+                throw new IOException("Timed out while writing triggered captures");
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing triggered captures", e);
+        }
+        
+        var exception = backgroundException;
+        if(exception != null){
+            throw exception;
+        }
+    }
+    
+    /**
+     * A condition that starts a capture file, checked for every event on the capturing thread.
+     */
+    @FunctionalInterface
+    public interface Trigger{
+        /**
+         * Checks if an event should start a capture file.
+         *
+         * @param event The event, buffers have to be left as they are
+         *
+         * @return True to fire
+         */
+        boolean test(@NotNull Event event);
+        
+        /**
+         * Fires on bus resets.
+         *
+         * @return The trigger
+         */
+        static @NotNull Trigger reset(){
+            return (event)->event instanceof ResetEvent;
+        }
+        
+        /**
+         * Fires when a device answers with a STALL handshake.
+         *
+         * @return The trigger
+         */
+        static @NotNull Trigger stall(){
+            return (event)->event instanceof PacketEvent packet &&
+                packet.buffer().capacity() == 1 && packet.buffer().get(0) == PID_STALL;
+        }
+        
+        /**
+         * Fires when the CRC of a token, SOF or data packet is wrong.
+         *
+         * @return The trigger
+         */
+        static @NotNull Trigger crcError(){
+            return (event)->event instanceof PacketEvent packet && hasCrcError(packet.buffer());
+        }
+        
+        /**
+         * Fires when the payload of a data packet contains any of the patterns. Patterns that are split over multiple
+         * packets are not found.
+         *
+         * @param patterns The byte sequences to look for
+         *
+         * @return The trigger
+         */
+        static @NotNull Trigger pattern(byte @NotNull [] @NotNull ... patterns){
+            if(patterns.length == 0){
+                throw new IllegalArgumentException("No patterns were provided");
+            }
+            var automaton = new AhoCorasick(Arrays.asList(patterns));
+            return (event)->event instanceof PacketEvent packet && contains(automaton, packet.buffer());
+        }
+    }
+    
+    /**
+     * Checks the CRC of a packet.
+     *
+     * @param packet The packet, including the PID
+     *
+     * @return True if the packet has a CRC and it is wrong
+     */
+    private static boolean hasCrcError(ByteBuffer packet){
+        int length = packet.capacity();
+        if(length == 0){
+            return false;
+        }
+        switch(packet.get(0)){
+            // +-----+-------------------------+-----+
+            // | PID | address, endpoint/frame | CRC |
+            // +-----+-------------------------+-----+
+            // |  8  |            11           |  5  |
+            // +-----+-------------------------+-----+
+            case PID_SOF, PID_OUT, PID_IN, PID_SETUP, PID_PING -> {
+                if(length != 3){
+                    return true;
+                }
+                int data = (packet.get(1) & 0xFF) | (packet.get(2) & 0xFF) << 8;
+                return CRC.crc5(data) != data >>> 11;
+            }
+            case PID_DATA0, PID_DATA1, PID_DATA2, PID_MDATA -> {
+                if(length < 3){
+                    return true;
+                }
+                int crc = (packet.get(length - 2) & 0xFF) | (packet.get(length - 1) & 0xFF) << 8;
+                return CRC.crc16(packet, 1, length - 3) != crc;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * Searches the payload of a data packet.
+     *
+     * @param automaton The patterns
+     * @param packet The packet, including the PID
+     *
+     * @return True if a pattern was found
+     */
+    private static boolean contains(AhoCorasick automaton, ByteBuffer packet){
+        int length = packet.capacity();
+        if(length < 3){
+            return false;
+        }
+        switch(packet.get(0)){
+            case PID_DATA0, PID_DATA1, PID_DATA2, PID_MDATA -> {
+                int state = automaton.start();
+                for(int i = 1, end = length - 2; i < end; i++){
+                    state = automaton.next(state, packet.get(i));
+                    if(automaton.matches(state).length != 0){
+                        return true;
+                    }
+                }
+                return false;
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+    
+    /**
+     * A capture file, the writer is only touched by the background thread.
+     */
+    private static final class Capture{
+        private final Path path;
+        private CaptureWriter writer;
+        
+        private Capture(Path path){
+            this.path = path;
+        }
+    }
+}
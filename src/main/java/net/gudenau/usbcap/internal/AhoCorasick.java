@@ -0,0 +1,139 @@
+package net.gudenau.usbcap.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+
+/**
+ * An Aho-Corasick automaton that finds every occurrence of a set of byte patterns in a single pass.
+ *
+ * The failure links are folded into a dense transition table, so every byte is a single array lookup. The automaton
+ * is immutable and can be shared between threads, the state of a search is just an int.
+ */
+public final class AhoCorasick{
+    private static final int[] NO_MATCHES = new int[0];
+    
+    private final int[] transitions;
+    private final int[][] matches;
+    private final int[] lengths;
+    
+    /**
+     * Builds an automaton for a set of patterns.
+     *
+     * @param patterns The patterns to find, none of them may be empty
+     */
+    public AhoCorasick(List<byte[]> patterns){
+        if(patterns.isEmpty()){
+            throw new IllegalArgumentException("No patterns to search for");
+        }
+        lengths = new int[patterns.size()];
+        
+        // Build the trie, -1 is a missing edge.
+        int maxStates = 1;
+        for(var pattern : patterns){
+            maxStates += pattern.length;
+        }
+        var table = new int[maxStates * 256];
+        Arrays.fill(table, -1);
+        List<List<Integer>> outputs = new ArrayList<>();
+        outputs.add(new ArrayList<>());
+        int states = 1;
+        for(int id = 0; id < patterns.size(); id++){
+            var pattern = patterns.get(id);
+            if(pattern.length == 0){
+                throw new IllegalArgumentException("Pattern " + id + " was empty");
+            }
+            lengths[id] = pattern.length;
+            int state = 0;
+            for(var value : pattern){
+                int edge = (state << 8) | (value & 0xFF);
+                if(table[edge] == -1){
+                    table[edge] = states++;
+                    outputs.add(new ArrayList<>());
+                }
+                state = table[edge];
+            }
+            outputs.get(state).add(id);
+        }
+        
+        // Breadth first so failure links always point at states that are already finished.
+        var failures = new int[states];
+        Queue<Integer> queue = new ArrayDeque<>();
+        for(int value = 0; value < 256; value++){
+            int next = table[value];
+            if(next == -1){
+                table[value] = 0;
+            }else{
+                failures[next] = 0;
+                queue.add(next);
+            }
+        }
+        while(!queue.isEmpty()){
+            int state = queue.remove();
+            outputs.get(state).addAll(outputs.get(failures[state]));
+            for(int value = 0; value < 256; value++){
+                int edge = (state << 8) | value;
+                int next = table[edge];
+                int fallback = table[(failures[state] << 8) | value];
+                if(next == -1){
+                    table[edge] = fallback;
+                }else{
+                    failures[next] = fallback;
+                    queue.add(next);
+                }
+            }
+        }
+        
+        transitions = Arrays.copyOf(table, states << 8);
+        matches = new int[states][];
+        for(int state = 0; state < states; state++){
+            var output = outputs.get(state);
+            matches[state] = output.isEmpty() ? NO_MATCHES : output.stream().mapToInt(Integer::intValue).toArray();
+        }
+    }
+    
+    /**
+     * Gets the state a search starts in.
+     *
+     * @return The initial state
+     */
+    public int start(){
+        return 0;
+    }
+    
+    /**
+     * Advances the automaton by a single byte.
+     *
+     * @param state The current state
+     * @param value The next byte of the input
+     *
+     * @return The new state
+     */
+    public int next(int state, byte value){
+        return transitions[(state << 8) | (value & 0xFF)];
+    }
+    
+    /**
+     * Gets the patterns that end at the last byte that was passed to {@link #next(int, byte)}.
+     *
+     * @param state The current state
+     *
+     * @return The indices of the patterns, empty if there are none
+     */
+    public int[] matches(int state){
+        return matches[state];
+    }
+    
+    /**
+     * Gets the length of a pattern.
+     *
+     * @param pattern The index of the pattern
+     *
+     * @return The length of the pattern
+     */
+    public int length(int pattern){
+        return lengths[pattern];
+    }
+}
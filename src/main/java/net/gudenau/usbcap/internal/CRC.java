@@ -1,47 +1,76 @@
 package net.gudenau.usbcap.internal;
 
-//TODO
+import java.nio.ByteBuffer;
+
+/**
+ * The CRCs used by USB 2.0 packets.
+ *
+ * Both are transmitted least significant bit first, so they are calculated with the reflected polynomials. The CRC5 of
+ * token and SOF packets covers the 11 bits after the PID (19 bits for SPLIT tokens), the CRC16 of data packets covers
+ * the payload and is sent as a little endian short after it.
+ */
 public final class CRC{
-    static{
-        generateTables();
-    }
+    private CRC(){}
     
-    private static final byte[] CRC5 = new byte[256];
-    private static final byte[] CRC16 = new byte[256];
-    
-    private static void generateTables(){
-        generateTable(CRC5, 0x05);
-        generateTable(CRC16, 0x8005);
-    }
+    private static final int CRC5_POLYNOMIAL = 0x14;
+    private static final int CRC16_POLYNOMIAL = 0xA001;
+    private static final char[] CRC16 = new char[256];
     
-    private static void generateTable(byte[] crc, int dwPolynomial){
+    static{
         for(int i = 0; i < 256; i++){
-            int dwCrc = i;
-            for(int j = 5; j > 0; j--){
-                if((dwCrc & 1) != 0){
-                    dwCrc = (dwCrc >> 1) ^ dwPolynomial;
-                }else{
-                    dwCrc >>= 1;
-                }
+            int crc = i;
+            for(int bit = 0; bit < 8; bit++){
+                crc = (crc & 1) != 0 ? (crc >>> 1) ^ CRC16_POLYNOMIAL : crc >>> 1;
             }
-        
-            crc[i] = (byte)dwCrc;
+            CRC16[i] = (char)crc;
         }
     }
     
-    public static int crc5(int crc, byte[] buffer){
-        int remainder = ~crc;
-        for(var datum : buffer){
-            remainder = (remainder >> 8) ^ CRC5[(remainder ^ datum) & 0xFF];
+    /**
+     * Calculates the CRC5 of the 11 bits of a token or SOF packet.
+     *
+     * @param data The address and endpoint or frame number, only the low 11 bits are used
+     *
+     * @return The 5 bit CRC
+     */
+    public static int crc5(int data){
+        return crc5(data, 11);
+    }
+    
+    /**
+     * Calculates the CRC5 of the bits of a token.
+     *
+     * @param data The bits after the PID, lowest bit first
+     * @param bits The amount of bits to use, 11 for most tokens and 19 for SPLIT tokens
+     *
+     * @return The 5 bit CRC
+     */
+    public static int crc5(int data, int bits){
+        int crc = 0x1F;
+        for(int bit = 0; bit < bits; bit++){
+            if(((crc ^ (data >>> bit)) & 1) != 0){
+                crc = (crc >>> 1) ^ CRC5_POLYNOMIAL;
+            }else{
+                crc >>>= 1;
+            }
         }
-        return ~remainder;
+        return ~crc & 0x1F;
     }
     
-    public static int crc16(int crc, byte[] buffer){
-        int remainder = ~crc;
-        for(var datum : buffer){
-            remainder = (remainder >> 8) ^ CRC16[(remainder ^ datum) & 0xFF];
+    /**
+     * Calculates the CRC16 of a data packet payload.
+     *
+     * @param buffer The buffer with the payload
+     * @param offset The offset of the payload
+     * @param length The length of the payload
+     *
+     * @return The 16 bit CRC
+     */
+    public static int crc16(ByteBuffer buffer, int offset, int length){
+        int crc = 0xFFFF;
+        for(int i = offset, end = offset + length; i < end; i++){
+            crc = (crc >>> 8) ^ CRC16[(crc ^ buffer.get(i)) & 0xFF];
         }
-        return ~remainder;
+        return ~crc & 0xFFFF;
     }
 }
@@ -0,0 +1,250 @@
+package net.gudenau.usbcap.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+
+import static net.gudenau.usbcap.internal.CaptureFormat.*;
+
+/**
+ * Random access to the blocks of a block based capture file, used by tools that work on parts of a file at the same
+ * time. Blocks are read with positional reads, so {@link #read(Block)} can be called from multiple threads.
+ */
+public final class CaptureBlocks implements AutoCloseable{
+    // Deflate can not compress any better than this
+    private static final int MAX_DEFLATE_RATIO = 1032;
+    
+    private final FileChannel channel;
+    private final boolean timed;
+    
+    private CaptureBlocks(FileChannel channel, boolean timed){
+        this.channel = channel;
+        this.timed = timed;
+    }
+    
+    /**
+     * Opens a capture file and checks the header.
+     *
+     * @param path The path of the capture file
+     *
+     * @return The opened file
+     *
+     * @throws IOException If the file could not be opened or is not in the block format
+     */
+    public static CaptureBlocks open(Path path) throws IOException{
+        var channel = FileChannel.open(path, StandardOpenOption.READ);
+        try{
+            var header = ByteBuffer.allocate(HEADER_SIZE);
+            readFully(channel, header, 0);
+            if(header.hasRemaining() || header.getLong(0) != MAGIC){
+                throw new IOException("Capture file " + path + " is not in the block format");
+            }
+            int version = header.getInt(Long.BYTES);
+            if(version < VERSION_UNTIMED || version > VERSION){
+                throw new IOException("Unsupported capture file version: " + version);
+            }
+            return new CaptureBlocks(channel, version != VERSION_UNTIMED);
+        }catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Checks if the records of this file have timestamps.
+     *
+     * @return True if the records have timestamps
+     */
+    public boolean timed(){
+        return timed;
+    }
+    
+    /**
+     * Gets the size of the file.
+     *
+     * @return The size of the file in bytes
+     *
+     * @throws IOException If the size could not be read
+     */
+    public long size() throws IOException{
+        return channel.size();
+    }
+    
+    /**
+     * Reads the headers of every complete data block in the file, checkpoint blocks are skipped.
+     *
+     * @return The data blocks in file order
+     *
+     * @throws IOException If the file could not be read
+     */
+    public List<Block> scan() throws IOException{
+        List<Block> blocks = new ArrayList<>();
+        long size = channel.size();
+        long position = HEADER_SIZE;
+        long firstEvent = 0;
+        var header = ByteBuffer.allocate(BLOCK_HEADER_SIZE);
+        while(position + BLOCK_HEADER_SIZE <= size){
+            readFully(channel, header.clear(), position);
+            byte type = header.get(0);
+            int events = header.getInt(2);
+            int storedLength = header.getInt(10);
+            checkHeader(header.get(1), events, header.getInt(6), storedLength, timed);
+            long next = position + BLOCK_HEADER_SIZE + storedLength;
+            if(next > size){
+                // Still being written.
+                break;
+            }
+            if(type == BLOCK_DATA){
+                blocks.add(new Block(position, firstEvent, events, header.get(1), header.getInt(6), storedLength));
+                firstEvent += events;
+            }else if(type != BLOCK_CHECKPOINT){
+                throw new IOException("Unknown capture block type: " + type);
+            }
+            position = next;
+        }
+        return blocks;
+    }
+    
+    /**
+     * Reads and decompresses the records of a block.
+     *
+     * @param block The block to read
+     *
+     * @return The records of the block
+     *
+     * @throws IOException If the block could not be read
+     */
+    public ByteBuffer read(Block block) throws IOException{
+        checkHeader(block.compression(), block.events(), block.rawLength(), block.storedLength(), timed);
+        var stored = ByteBuffer.allocate(block.storedLength());
+        readFully(channel, stored, block.position() + BLOCK_HEADER_SIZE);
+        if(stored.hasRemaining()){
+            throw new IOException("Unexpected end of capture file");
+        }
+        return switch(block.compression()){
+            case COMPRESSION_NONE -> stored.flip();
+            case COMPRESSION_DEFLATE -> {
+                try{
+                    yield inflate(stored.array(), block.rawLength());
+                }catch(DataFormatException e){
+                    throw new IOException("Failed to decompress capture block", e);
+                }
+            }
+            default -> throw new IOException("Unknown capture block compression: " + block.compression());
+        };
+    }
+    
+    /**
+     * Checks that the lengths in a block header are possible, so a corrupt header can not make a reader go backwards
+     * or allocate a negative or absurd amount of memory.
+     *
+     * @param compression The compression of the block
+     * @param events The amount of events in the block
+     * @param rawLength The size of the decompressed records
+     * @param storedLength The size of the block in the file
+     * @param timed True if the records have timestamps
+     *
+     * @throws IOException If the header is corrupt
+     */
+    static void checkHeader(
+        byte compression, int events, int rawLength, int storedLength, boolean timed
+    ) throws IOException{
+        long maxRawLength = compression == COMPRESSION_DEFLATE ? (long)storedLength * MAX_DEFLATE_RATIO : storedLength;
+        int minRecordLength = timed ? Integer.BYTES + Long.BYTES : Integer.BYTES;
+        if(
+            storedLength < 0 || rawLength < 0 || events < 0 ||
+            rawLength > maxRawLength || (long)events * minRecordLength > rawLength
+        ){
+            throw new IOException("Corrupt capture block");
+        }
+    }
+    
+    /**
+     * Decompresses a block.
+     *
+     * @param stored The compressed block
+     * @param rawLength The size of the decompressed block
+     *
+     * @return The decompressed block
+     *
+     * @throws DataFormatException If the block was corrupt
+     */
+    static ByteBuffer inflate(byte[] stored, int rawLength) throws DataFormatException{
+        // Cheap to create compared to a block, and ending it right away keeps the native memory from piling up.
+        var inflater = new Inflater(true);
+        try{
+            inflater.setInput(stored);
+            var raw = new byte[rawLength];
+            if(inflater.inflate(raw) != rawLength){
+                throw new DataFormatException("Capture block was truncated");
+            }
+            return ByteBuffer.wrap(raw);
+        }finally{
+            inflater.end();
+        }
+    }
+    
+    /**
+     * Reads the next record of a decoded block, packet payloads are slices of the block.
+     *
+     * @param records The records of a block, positioned at the next record
+     * @param timed True if the records have timestamps
+     *
+     * @return The event of the record
+     */
+    public static Event readRecord(ByteBuffer records, boolean timed){
+        int length = records.getInt();
+        long timestamp = timed ? records.getLong() : 0;
+        if(length == RESET){
+            return new ResetEvent(timestamp);
+        }
+        var payload = records.slice(records.position(), length);
+        records.position(records.position() + length);
+        return new PacketEvent(payload, timestamp);
+    }
+    
+    /**
+     * Reads from a position until the buffer is full or the end of the file is reached.
+     *
+     * @param channel The channel to read from
+     * @param buffer The buffer to read into
+     * @param position The offset to start reading at
+     *
+     * @throws IOException If the channel could not be read
+     */
+    private static void readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+        while(buffer.hasRemaining()){
+            int read = channel.read(buffer, position);
+            if(read == -1){
+                break;
+            }
+            position += read;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+    
+    /**
+     * The header of a data block.
+     *
+     * @param position The offset of the block header in the file
+     * @param firstEvent The index of the first event in the block
+     * @param events The amount of events in the block
+     * @param compression The compression of the block
+     * @param rawLength The size of the decompressed records
+     * @param storedLength The size of the block in the file
+     */
+    public record Block(long position, long firstEvent, int events, byte compression, int rawLength, int storedLength){}
+}
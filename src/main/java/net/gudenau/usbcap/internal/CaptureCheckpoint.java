@@ -0,0 +1,122 @@
+package net.gudenau.usbcap.internal;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import net.gudenau.usbcap.filter.Checkpointable;
+
+/**
+ * The saved state of a set of filters at a position in a capture file.
+ *
+ * Encoded as [long event][int count] followed by count [short name length][name][int state length][state] entries,
+ * the name is the class name of the filter.
+ *
+ * @param event The index of the first event after the checkpoint
+ * @param states The saved filter states, in filter order
+ */
+public record CaptureCheckpoint(long event, List<State> states){
+    /**
+     * Saves the state of a list of filters.
+     *
+     * @param event The index of the first event after the checkpoint
+     * @param filters The filters to save
+     *
+     * @return The new checkpoint
+     */
+    public static CaptureCheckpoint save(long event, List<? extends Checkpointable> filters){
+        var states = new ArrayList<State>(filters.size());
+        for(var filter : filters){
+            states.add(new State(filter.getClass().getName(), filter.saveCheckpoint()));
+        }
+        return new CaptureCheckpoint(event, states);
+    }
+    
+    /**
+     * Restores the state of a list of filters, states are matched to filters by class in order.
+     *
+     * @param filters The filters to restore
+     *
+     * @throws IllegalArgumentException If a filter has no saved state
+     */
+    public void restore(List<? extends Checkpointable> filters){
+        int index = 0;
+        outer:
+        for(var filter : filters){
+            var name = filter.getClass().getName();
+            while(index < states.size()){
+                var state = states.get(index++);
+                if(state.filter().equals(name)){
+                    filter.restoreCheckpoint(state.data());
+                    continue outer;
+                }
+            }
+            throw new IllegalArgumentException("Checkpoint has no state for " + name);
+        }
+    }
+    
+    /**
+     * Encodes this checkpoint.
+     *
+     * @return The encoded checkpoint
+     */
+    public ByteBuffer encode(){
+        var names = new byte[states.size()][];
+        int size = Long.BYTES + Integer.BYTES;
+        for(int i = 0; i < names.length; i++){
+            names[i] = states.get(i).filter().getBytes(StandardCharsets.UTF_8);
+            size += Short.BYTES + names[i].length + Integer.BYTES + states.get(i).data().length;
+        }
+        
+        var buffer = ByteBuffer.allocate(size);
+        buffer.putLong(event);
+        buffer.putInt(names.length);
+        for(int i = 0; i < names.length; i++){
+            var data = states.get(i).data();
+            buffer.putShort((short)names[i].length);
+            buffer.put(names[i]);
+            buffer.putInt(data.length);
+            buffer.put(data);
+        }
+        return buffer.flip();
+    }
+    
+    /**
+     * Decodes a checkpoint.
+     *
+     * @param buffer The encoded checkpoint
+     *
+     * @return The decoded checkpoint
+     *
+     * @throws IllegalArgumentException If the checkpoint is malformed
+     */
+    public static CaptureCheckpoint decode(ByteBuffer buffer){
+        try{
+            long event = buffer.getLong();
+            int count = buffer.getInt();
+            if(count < 0){
+                throw new IllegalArgumentException("Negative filter count in checkpoint: " + count);
+            }
+            var states = new ArrayList<State>(Math.min(count, 64));
+            for(int i = 0; i < count; i++){
+                var name = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(name);
+                var data = new byte[buffer.getInt()];
+                buffer.get(data);
+                states.add(new State(new String(name, StandardCharsets.UTF_8), data));
+            }
+            return new CaptureCheckpoint(event, states);
+        }catch(BufferUnderflowException | NegativeArraySizeException e){
+            throw new IllegalArgumentException("Checkpoint was truncated", e);
+        }
+    }
+    
+    /**
+     * The saved state of a single filter.
+     *
+     * @param filter The class name of the filter
+     * @param data The saved state
+     */
+    public record State(String filter, byte[] data){}
+}
@@ -0,0 +1,95 @@
+package net.gudenau.usbcap.internal;
+
+/**
+ * Constants for the capture file format.
+ *
+ * The original format is a plain stream of records, [signed int length][payload length bytes long] where a length of -1
+ * is a reset event.
+ *
+ * The block format starts with a header and groups records into blocks that can be compressed on their own:
+ * <pre>
+ * +-------+---------+-------+
+ * | magic | version | flags |
+ * +-------+---------+-------+
+ * |   8   |    4    |   4   |
+ * +-------+---------+-------+
+ *
+ * +------+-------------+--------+-----------+--------------+--------------------+
+ * | type | compression | events | rawLength | storedLength | storedLength bytes |
+ * +------+-------------+--------+-----------+--------------+--------------------+
+ * |  1   |      1      |   4    |     4     |      4       |        ...         |
+ * +------+-------------+--------+-----------+--------------+--------------------+
+ * </pre>
+ *
+ * Version 1 blocks contain records in the original format, version 2 adds the timestamp of the event in nanoseconds
+ * since the Unix epoch after the length, [signed int length][long timestamp][payload length bytes long].
+ *
+ * Version 3 adds checkpoint blocks, they are never compressed and hold the state of the filters right before the first
+ * event of the next data block, see {@link CaptureCheckpoint}. The event count of a checkpoint block is 0.
+ *
+ * The first int of the magic is negative and never -1, so it can not be mistaken for a record of the original format.
+ * Everything is big endian.
+ */
+public final class CaptureFormat{
+    private CaptureFormat(){}
+    
+    /**
+     * The magic at the start of block based capture files.
+     */
+    public static final long MAGIC = 0x8055534243415000L;
+    
+    /**
+     * The current version of the block format.
+     */
+    public static final int VERSION = 3;
+    
+    /**
+     * The first version of the block format, records do not have timestamps.
+     */
+    public static final int VERSION_UNTIMED = 1;
+    
+    /**
+     * The version of the block format that added checkpoint blocks.
+     */
+    public static final int VERSION_CHECKPOINTS = 3;
+    
+    /**
+     * The size of the file header.
+     */
+    public static final int HEADER_SIZE = Long.BYTES + Integer.BYTES * 2;
+    
+    /**
+     * The size of the header in front of every block.
+     */
+    public static final int BLOCK_HEADER_SIZE = 2 + Integer.BYTES * 3;
+    
+    /**
+     * The amount of record bytes collected before a block is written.
+     */
+    public static final int BLOCK_SIZE = 64 * 1024;
+    
+    /**
+     * The record length of a reset event.
+     */
+    public static final int RESET = -1;
+    
+    /**
+     * A block of records.
+     */
+    public static final byte BLOCK_DATA = 0;
+    
+    /**
+     * A block with a filter checkpoint.
+     */
+    public static final byte BLOCK_CHECKPOINT = 1;
+    
+    /**
+     * The block is stored as is.
+     */
+    public static final byte COMPRESSION_NONE = 0;
+    
+    /**
+     * The block is stored as a raw deflate stream.
+     */
+    public static final byte COMPRESSION_DEFLATE = 1;
+}
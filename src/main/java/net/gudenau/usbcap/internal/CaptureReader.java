@@ -0,0 +1,346 @@
+package net.gudenau.usbcap.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.zip.DataFormatException;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+
+import static net.gudenau.usbcap.internal.CaptureFormat.*;
+
+/**
+ * Reads records from a channel in either capture file format.
+ *
+ * Blocks of the block based format are read ahead and decompressed on an executor while the records of the current
+ * block are handed out.
+ *
+ * Files opened from a seekable channel can jump to checkpoints, the block headers are scanned without reading the
+ * blocks themselves and the locations of the checkpoints are remembered for later seeks.
+ */
+public final class CaptureReader implements AutoCloseable{
+    private static final int READ_AHEAD = 8;
+    // Files in the old format have no blocks, this many records are treated as one.
+    private static final int LEGACY_BLOCK_EVENTS = 4096;
+    
+    private final ChannelInput input;
+    private final ByteBuffer buffer;
+    private final Executor executor;
+    private final boolean blocked;
+    private final boolean timed;
+    private final Queue<CompletableFuture<ByteBuffer>> pendingBlocks = new ArrayDeque<>();
+    private ByteBuffer block = null;
+    private boolean blockStart = false;
+    private long nextEvent = 0;
+    
+    private final List<CheckpointLocation> checkpoints = new ArrayList<>();
+    private long scanPosition = HEADER_SIZE;
+    private long scanEvents = 0;
+    
+    /**
+     * Creates a new reader and figures out the format of the file.
+     *
+     * @param channel The channel to read from
+     * @param executor The executor to decompress blocks on
+     *
+     * @throws IOException If the header could not be read
+     */
+    public CaptureReader(ReadableByteChannel channel, Executor executor) throws IOException{
+        input = new ChannelInput(channel);
+        buffer = input.buffer();
+        this.executor = executor;
+        
+        if(input.fill(HEADER_SIZE) && buffer.getLong(buffer.position()) == MAGIC){
+            int version = buffer.getInt(buffer.position() + Long.BYTES);
+            if(version < VERSION_UNTIMED || version > VERSION){
+                throw new IOException("Unsupported capture file version: " + version);
+            }
+            buffer.position(buffer.position() + HEADER_SIZE);
+            blocked = true;
+            timed = version != VERSION_UNTIMED;
+        }else{
+            blocked = false;
+            timed = false;
+        }
+    }
+    
+    /**
+     * Reads the next event.
+     *
+     * @return The next event or null if the end of the file was reached
+     *
+     * @throws IOException If the file could not be read
+     */
+    public Event next() throws IOException{
+        if(!blocked){
+            if(!input.fill(Integer.BYTES)){
+                if(buffer.hasRemaining()){
+                    throw new IOException("Unexpected end of capture file");
+                }
+                return null;
+            }
+            int length = buffer.getInt();
+            if(length < 0 && length != RESET){
+                throw new IOException("Corrupt capture file, record length was " + length);
+            }
+            blockStart = nextEvent % LEGACY_BLOCK_EVENTS == 0;
+            nextEvent++;
+            return length == RESET ? new ResetEvent(0) : new PacketEvent(ByteBuffer.wrap(input.readBytes(length)), 0);
+        }
+        
+        blockStart = false;
+        while(block == null || !block.hasRemaining()){
+            block = nextBlock();
+            if(block == null){
+                return null;
+            }
+            blockStart = true;
+        }
+        
+        nextEvent++;
+        return CaptureBlocks.readRecord(block, timed);
+    }
+    
+    /**
+     * Gets the index of the event that the next call to {@link #next()} will return.
+     *
+     * @return The index of the next event
+     */
+    public long nextEvent(){
+        return nextEvent;
+    }
+    
+    /**
+     * Checks if the event that was returned by the last call to {@link #next()} was the first one of its block.
+     *
+     * @return True if the last event started a block
+     */
+    public boolean startsBlock(){
+        return blockStart;
+    }
+    
+    /**
+     * Finds the closest checkpoint at or before an event without moving the reader.
+     *
+     * @param event The index of the event
+     *
+     * @return The checkpoint or null if there is none
+     *
+     * @throws IOException If the file could not be read, is not seekable or ends before the event
+     */
+    public CaptureCheckpoint findCheckpoint(long event) throws IOException{
+        if(!blocked){
+            throw new IOException("Capture file does not support checkpoints");
+        }
+        
+        // Blocks that were read ahead are already in memory, only the position of the channel has to be put back.
+        long resume = input.position();
+        try{
+            scanCheckpoints(event);
+            if(scanEvents < event){
+                throw new IOException("End of recorded data");
+            }
+            var location = checkpointBefore(event);
+            if(location == null){
+                return null;
+            }
+            
+            input.seek(location.position());
+            if(!input.fill(BLOCK_HEADER_SIZE)){
+                throw new IOException("Unexpected end of capture file");
+            }
+            buffer.position(buffer.position() + BLOCK_HEADER_SIZE - Integer.BYTES);
+            var stored = input.readBytes(buffer.getInt());
+            try{
+                return CaptureCheckpoint.decode(ByteBuffer.wrap(stored));
+            }catch(IllegalArgumentException e){
+                throw new IOException("Malformed checkpoint in capture file", e);
+            }
+        }finally{
+            input.seek(resume);
+        }
+    }
+    
+    /**
+     * Moves the reader to a checkpoint from {@link #findCheckpoint(long)}, the next call to {@link #next()} returns the
+     * first event after it.
+     *
+     * @param checkpoint The checkpoint or null to move to the start of the file
+     *
+     * @throws IOException If the file could not be read or is not seekable
+     */
+    public void seek(CaptureCheckpoint checkpoint) throws IOException{
+        if(!blocked){
+            throw new IOException("Capture file does not support checkpoints");
+        }
+        
+        long position = HEADER_SIZE;
+        if(checkpoint != null){
+            var location = checkpointBefore(checkpoint.event());
+            if(location == null || location.event() != checkpoint.event()){
+                throw new IllegalArgumentException("Checkpoint is not from this file");
+            }
+            // Data blocks start after the checkpoint block.
+            input.seek(location.position());
+            if(!input.fill(BLOCK_HEADER_SIZE)){
+                throw new IOException("Unexpected end of capture file");
+            }
+            position = location.position() + BLOCK_HEADER_SIZE + buffer.getInt(buffer.position() + BLOCK_HEADER_SIZE - Integer.BYTES);
+        }
+        
+        // Everything that was read ahead is from the wrong place now.
+        for(var future : pendingBlocks){
+            future.cancel(false);
+        }
+        pendingBlocks.clear();
+        block = null;
+        input.seek(position);
+        nextEvent = checkpoint == null ? 0 : checkpoint.event();
+    }
+    
+    /**
+     * Gets the last known checkpoint at or before an event.
+     *
+     * @param event The index of the event
+     *
+     * @return The location of the checkpoint or null if there is none
+     */
+    private CheckpointLocation checkpointBefore(long event){
+        for(int i = checkpoints.size() - 1; i >= 0; i--){
+            if(checkpoints.get(i).event() <= event){
+                return checkpoints.get(i);
+            }
+        }
+        return null;
+    }
+    
+    /**
+     * Scans block headers for checkpoints until the scan is past an event or the end of the file.
+     *
+     * @param event The index of the event
+     *
+     * @throws IOException If the file could not be read or is not seekable
+     */
+    private void scanCheckpoints(long event) throws IOException{
+        if(scanEvents > event){
+            return;
+        }
+        
+        input.seek(scanPosition);
+        while(scanEvents <= event){
+            // A partial block at the end might still be getting written, it is looked at again next time.
+            if(!input.fill(BLOCK_HEADER_SIZE)){
+                return;
+            }
+            long position = input.position();
+            byte type = buffer.get();
+            byte compression = buffer.get();
+            int events = buffer.getInt();
+            int rawLength = buffer.getInt();
+            int storedLength = buffer.getInt();
+            CaptureBlocks.checkHeader(compression, events, rawLength, storedLength, timed);
+            try{
+                input.skip(storedLength);
+            }catch(IOException e){
+                return;
+            }
+            
+            if(type == BLOCK_CHECKPOINT){
+                checkpoints.add(new CheckpointLocation(scanEvents, position));
+            }
+            scanEvents += events;
+            scanPosition = input.position();
+        }
+    }
+    
+    /**
+     * Gets the next decoded block, keeping the read ahead queue full.
+     *
+     * @return The records of the next block or null if there are no more blocks
+     *
+     * @throws IOException If a block could not be read
+     */
+    private ByteBuffer nextBlock() throws IOException{
+        while(pendingBlocks.size() < READ_AHEAD){
+            var future = readBlock();
+            if(future == null){
+                break;
+            }
+            pendingBlocks.add(future);
+        }
+        
+        var future = pendingBlocks.poll();
+        if(future == null){
+            return null;
+        }
+        try{
+            return future.join();
+        }catch(CompletionException e){
+            throw new IOException("Failed to decompress capture block", e.getCause());
+        }
+    }
+    
+    /**
+     * Reads a block from the channel and starts decoding it.
+     *
+     * @return The pending block or null if there are no more blocks
+     *
+     * @throws IOException If the block could not be read
+     */
+    private CompletableFuture<ByteBuffer> readBlock() throws IOException{
+        if(!input.fill(BLOCK_HEADER_SIZE)){
+            if(buffer.hasRemaining()){
+                throw new IOException("Unexpected end of capture file");
+            }
+            return null;
+        }
+        
+        byte type = buffer.get();
+        byte compression = buffer.get();
+        int events = buffer.getInt();
+        int rawLength = buffer.getInt();
+        int storedLength = buffer.getInt();
+        CaptureBlocks.checkHeader(compression, events, rawLength, storedLength, timed);
+        
+        if(type == BLOCK_CHECKPOINT){
+            // Only needed when seeking.
+            input.skip(storedLength);
+            return readBlock();
+        }else if(type != BLOCK_DATA){
+            throw new IOException("Unknown capture block type: " + type);
+        }
+        var stored = input.readBytes(storedLength);
+        return switch(compression){
+            case COMPRESSION_NONE -> CompletableFuture.completedFuture(ByteBuffer.wrap(stored));
+            case COMPRESSION_DEFLATE -> CompletableFuture.supplyAsync(()->{
+                try{
+                    return CaptureBlocks.inflate(stored, rawLength);
+                }catch(DataFormatException e){
+                    throw new CompletionException(e);
+                }
+            }, executor);
+            default -> throw new IOException("Unknown capture block compression: " + compression);
+        };
+    }
+    
+    @Override
+    public void close() throws IOException{
+        input.close();
+    }
+    
+    /**
+     * Where a checkpoint block is in the file.
+     *
+     * @param event The index of the first event after the checkpoint
+     * @param position The offset of the block header
+     */
+    private record CheckpointLocation(long event, long position){}
+}
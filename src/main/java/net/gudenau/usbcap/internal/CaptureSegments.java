@@ -0,0 +1,88 @@
+package net.gudenau.usbcap.internal;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Helpers for directories of capture file segments.
+ *
+ * Finished segments are named capture-[index].bin, the segment that is currently being written has an extra .part
+ * extension until it is closed. A segment that still has it after a crash is left alone, it might end in the middle
+ * of a block.
+ */
+public final class CaptureSegments{
+    private CaptureSegments(){}
+    
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile("capture-(\\d{8,})\\.bin");
+    private static final Pattern PARTIAL_PATTERN = Pattern.compile("capture-(\\d{8,})\\.bin\\.part");
+    
+    /**
+     * The extension of the segment that is being written.
+     */
+    public static final String PARTIAL_EXTENSION = ".part";
+    
+    /**
+     * Gets the file name of a segment.
+     *
+     * @param index The index of the segment
+     *
+     * @return The name of the segment
+     */
+    public static String name(long index){
+        return "capture-%08d.bin".formatted(index);
+    }
+    
+    /**
+     * Gets the index of a segment from its path.
+     *
+     * @param path The path of the segment
+     *
+     * @return The index or -1 if the path is not a finished segment
+     */
+    public static long index(Path path){
+        var matcher = SEGMENT_PATTERN.matcher(path.getFileName().toString());
+        return matcher.matches() ? Long.parseLong(matcher.group(1)) : -1;
+    }
+    
+    /**
+     * Lists the finished segments in a directory, oldest first.
+     *
+     * @param directory The directory to search
+     *
+     * @return The paths of the segments
+     *
+     * @throws IOException If the directory could not be listed
+     */
+    public static List<Path> list(Path directory) throws IOException{
+        try(var stream = Files.list(directory)){
+            return stream
+                .filter((path)->index(path) != -1)
+                .sorted((a, b)->Long.compare(index(a), index(b)))
+                .collect(Collectors.toList());
+        }
+    }
+    
+    /**
+     * Gets the index after every segment in a directory, including the segments that were never finished.
+     *
+     * @param directory The directory to search
+     *
+     * @return The index for the next segment
+     *
+     * @throws IOException If the directory could not be listed
+     */
+    public static long nextIndex(Path directory) throws IOException{
+        try(var stream = Files.list(directory)){
+            return stream
+                .mapToLong((path)->{
+                    var matcher = PARTIAL_PATTERN.matcher(path.getFileName().toString());
+                    return matcher.matches() ? Long.parseLong(matcher.group(1)) : index(path);
+                })
+                .max().orElse(-1) + 1;
+        }
+    }
+}
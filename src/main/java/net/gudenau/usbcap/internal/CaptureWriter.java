@@ -0,0 +1,319 @@
+package net.gudenau.usbcap.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.zip.Deflater;
+import net.gudenau.usbcap.filter.Checkpointable;
+import net.gudenau.usbcap.internal.jfr.FileFlushEvent;
+
+import static net.gudenau.usbcap.internal.CaptureFormat.*;
+
+/**
+ * Writes records to a channel in the block based capture format.
+ *
+ * Compression is done by an executor so the thread that writes records never has to wait for it unless too many blocks
+ * are waiting to be compressed. Blocks are always written to the channel in order.
+ *
+ * If checkpoints are enabled the state of the filters is saved in front of the first data block and every few blocks
+ * after that, the filters must not have seen the record that is being written yet.
+ */
+public final class CaptureWriter implements AutoCloseable{
+    private static final int MAX_PENDING_BLOCKS = 16;
+    
+    private final WritableByteChannel channel;
+    private final boolean compress;
+    private final Executor executor;
+    private final List<? extends Checkpointable> checkpointFilters;
+    private final int checkpointInterval;
+    private final Queue<CompletableFuture<ByteBuffer>> pendingBlocks = new ArrayDeque<>();
+    // Deflaters hold native memory, they are shared by the compressing threads and ended when the writer is closed.
+    private final Queue<Deflater> deflaters = new ConcurrentLinkedQueue<>();
+    private volatile boolean closed = false;
+    private ByteBuffer block = ByteBuffer.allocate(BLOCK_SIZE);
+    private int blockEvents = 0;
+    private long events = 0;
+    private long blocks = 0;
+    private long written = 0;
+    
+    /**
+     * Creates a new writer and writes the file header.
+     *
+     * @param channel The channel to write to
+     * @param compress True to compress blocks
+     * @param executor The executor to compress blocks on
+     *
+     * @throws IOException If the header could not be written
+     */
+    public CaptureWriter(WritableByteChannel channel, boolean compress, Executor executor) throws IOException{
+        this(channel, compress, executor, List.of(), 0);
+    }
+    
+    /**
+     * Creates a new writer that saves filter checkpoints and writes the file header.
+     *
+     * @param channel The channel to write to
+     * @param compress True to compress blocks
+     * @param executor The executor to compress blocks on
+     * @param checkpointFilters The filters to save the state of
+     * @param checkpointInterval The amount of data blocks between checkpoints, 0 to disable checkpoints
+     *
+     * @throws IOException If the header could not be written
+     */
+    public CaptureWriter(
+        WritableByteChannel channel, boolean compress, Executor executor,
+        List<? extends Checkpointable> checkpointFilters, int checkpointInterval
+    ) throws IOException{
+        if(checkpointInterval < 0){
+            throw new IllegalArgumentException("checkpointInterval was negative: " + checkpointInterval);
+        }
+        this.channel = channel;
+        this.compress = compress;
+        this.executor = executor;
+        this.checkpointFilters = List.copyOf(checkpointFilters);
+        this.checkpointInterval = checkpointInterval;
+        
+        var header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putLong(MAGIC);
+        header.putInt(VERSION);
+        header.putInt(0);
+        write(header.flip());
+    }
+    
+    /**
+     * Adds a packet record.
+     *
+     * @param payload The packet contents, from position to limit
+     * @param timestamp The timestamp of the packet
+     *
+     * @throws IOException If a block could not be written
+     */
+    public void writePacket(ByteBuffer payload, long timestamp) throws IOException{
+        int length = payload.remaining();
+        ensureSpace(Integer.BYTES + Long.BYTES + length);
+        block.putInt(length);
+        block.putLong(timestamp);
+        block.put(payload);
+        blockEvents++;
+        events++;
+    }
+    
+    /**
+     * Adds a reset record.
+     *
+     * @param timestamp The timestamp of the reset
+     *
+     * @throws IOException If a block could not be written
+     */
+    public void writeReset(long timestamp) throws IOException{
+        ensureSpace(Integer.BYTES + Long.BYTES);
+        block.putInt(RESET);
+        block.putLong(timestamp);
+        blockEvents++;
+        events++;
+    }
+    
+    /**
+     * Makes sure the current block has room for a record, finishing it if it does not. Saves a checkpoint if the record
+     * starts a new block and one is due.
+     *
+     * @param size The size of the record
+     *
+     * @throws IOException If a block could not be written
+     */
+    private void ensureSpace(int size) throws IOException{
+        if(blockEvents != 0){
+            if(block.remaining() >= size){
+                return;
+            }
+            finishBlock();
+        }
+        if(checkpointInterval != 0 && blocks % checkpointInterval == 0){
+            writeCheckpoint();
+        }
+        if(block.capacity() < size){
+            // Huge records get a block of their own.
+            block = ByteBuffer.allocate(size);
+        }
+    }
+    
+    /**
+     * Hands the current block off to be compressed and starts a new one.
+     *
+     * @throws IOException If a block could not be written
+     */
+    private void finishBlock() throws IOException{
+        var raw = block.flip();
+        int events = blockEvents;
+        block = ByteBuffer.allocate(BLOCK_SIZE);
+        blockEvents = 0;
+        blocks++;
+        
+        if(compress){
+            pendingBlocks.add(CompletableFuture.supplyAsync(()->encodeBlock(raw, events), executor));
+            writeBlocks(pendingBlocks.size() > MAX_PENDING_BLOCKS);
+        }else{
+            write(encodeBlock(raw, events));
+        }
+    }
+    
+    /**
+     * Saves the state of the filters into a checkpoint block, it is written after every pending block.
+     *
+     * @throws IOException If a block could not be written
+     */
+    private void writeCheckpoint() throws IOException{
+        var checkpoint = CaptureCheckpoint.save(events, checkpointFilters).encode();
+        var encoded = ByteBuffer.allocate(BLOCK_HEADER_SIZE + checkpoint.remaining());
+        encoded.put(BLOCK_CHECKPOINT);
+        encoded.put(COMPRESSION_NONE);
+        encoded.putInt(0);
+        encoded.putInt(checkpoint.remaining());
+        encoded.putInt(checkpoint.remaining());
+        encoded.put(checkpoint);
+        encoded.flip();
+        
+        if(pendingBlocks.isEmpty()){
+            write(encoded);
+        }else{
+            pendingBlocks.add(CompletableFuture.completedFuture(encoded));
+        }
+    }
+    
+    /**
+     * Compresses a block if enabled and adds the block header.
+     *
+     * @param raw The records of the block
+     * @param events The amount of records in the block
+     *
+     * @return The encoded block
+     */
+    private ByteBuffer encodeBlock(ByteBuffer raw, int events){
+        int rawLength = raw.remaining();
+        byte compression = COMPRESSION_NONE;
+        var encoded = ByteBuffer.allocate(BLOCK_HEADER_SIZE + rawLength);
+        encoded.position(BLOCK_HEADER_SIZE);
+        
+        if(compress){
+            var deflater = deflaters.poll();
+            if(deflater == null){
+                deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+            }
+            try{
+                deflater.reset();
+                deflater.setInput(raw.duplicate());
+                deflater.finish();
+                deflater.deflate(encoded);
+                // Only keep the compressed version when it actually is smaller.
+                if(deflater.finished()){
+                    compression = COMPRESSION_DEFLATE;
+                }else{
+                    encoded.position(BLOCK_HEADER_SIZE);
+                }
+            }finally{
+                deflaters.add(deflater);
+                if(closed){
+                    endDeflaters();
+                }
+            }
+        }
+        if(compression == COMPRESSION_NONE){
+            encoded.put(raw);
+        }
+        
+        encoded.flip();
+        encoded.put(0, BLOCK_DATA);
+        encoded.put(1, compression);
+        encoded.putInt(2, events);
+        encoded.putInt(6, rawLength);
+        encoded.putInt(10, encoded.limit() - BLOCK_HEADER_SIZE);
+        return encoded;
+    }
+    
+    /**
+     * Writes finished blocks to the channel in order.
+     *
+     * @param wait True to wait for at least the oldest pending block
+     *
+     * @throws IOException If a block could not be written
+     */
+    private void writeBlocks(boolean wait) throws IOException{
+        CompletableFuture<ByteBuffer> future;
+        while((future = pendingBlocks.peek()) != null && (wait || future.isDone())){
+            pendingBlocks.remove();
+            try{
+                write(future.join());
+            }catch(CompletionException e){
+                throw new IOException("Failed to compress capture block", e.getCause());
+            }
+            wait = false;
+        }
+    }
+    
+    /**
+     * Writes out the current block and waits for every pending block to be written.
+     *
+     * @throws IOException If a block could not be written
+     */
+    public void flush() throws IOException{
+        if(blockEvents != 0){
+            finishBlock();
+        }
+        while(!pendingBlocks.isEmpty()){
+            writeBlocks(true);
+        }
+    }
+    
+    /**
+     * Gets the amount of bytes that have been written to the channel.
+     *
+     * @return The amount of bytes written
+     */
+    public long written(){
+        return written;
+    }
+    
+    /**
+     * Frees the native memory of every idle deflater.
+     */
+    private void endDeflaters(){
+        Deflater deflater;
+        while((deflater = deflaters.poll()) != null){
+            deflater.end();
+        }
+    }
+    
+    private void write(ByteBuffer buffer) throws IOException{
+        var flush = new FileFlushEvent();
+        flush.begin();
+        int length = buffer.remaining();
+        written += length;
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        if(flush.shouldCommit()){
+            flush.bytes = length;
+            flush.pendingBlocks = pendingBlocks.size();
+            flush.commit();
+        }
+    }
+    
+    @Override
+    public void close() throws IOException{
+        try{
+            flush();
+        }finally{
+            // A block that is still being compressed after a failed flush ends its deflater once it is done.
+            closed = true;
+            endDeflaters();
+            channel.close();
+        }
+    }
+}
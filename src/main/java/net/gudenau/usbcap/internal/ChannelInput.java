@@ -0,0 +1,160 @@
+package net.gudenau.usbcap.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+
+/**
+ * A large read buffer in front of a channel, used to parse files without a read call for every field.
+ */
+public final class ChannelInput implements AutoCloseable{
+    private final ReadableByteChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(256 * 1024);
+    private boolean endOfInput = false;
+    private long position = 0;
+    
+    /**
+     * Creates a new buffered input.
+     *
+     * @param channel The channel to read from
+     */
+    public ChannelInput(ReadableByteChannel channel){
+        this.channel = channel;
+        buffer.limit(0);
+    }
+    
+    /**
+     * Gets the buffer, data starts at the position of the buffer. Only valid until the next call to
+     * {@link #fill(int)}.
+     *
+     * @return The read buffer
+     */
+    public ByteBuffer buffer(){
+        return buffer;
+    }
+    
+    /**
+     * Sets the byte order used to read values.
+     *
+     * @param order The new byte order
+     */
+    public void order(ByteOrder order){
+        buffer.order(order);
+    }
+    
+    /**
+     * Gets the offset in the channel of the next byte that will be read from the buffer.
+     *
+     * @return The offset of the next byte
+     */
+    public long position(){
+        return position - buffer.remaining();
+    }
+    
+    /**
+     * Makes sure the buffer has at least the requested amount of bytes, unless the channel runs out of data.
+     *
+     * @param size The amount of bytes required, at most the size of the buffer
+     *
+     * @return True if there are enough bytes
+     *
+     * @throws IOException If the channel could not be read
+     */
+    public boolean fill(int size) throws IOException{
+        while(buffer.remaining() < size && !endOfInput){
+            buffer.compact();
+            int read = channel.read(buffer);
+            if(read == -1){
+                endOfInput = true;
+            }else{
+                position += read;
+            }
+            buffer.flip();
+        }
+        return buffer.remaining() >= size;
+    }
+    
+    /**
+     * Checks if all the data has been consumed.
+     *
+     * @return True if there is no more data
+     *
+     * @throws IOException If the channel could not be read
+     */
+    public boolean isEmpty() throws IOException{
+        return !fill(1);
+    }
+    
+    /**
+     * Reads bytes into a new array, used for payloads that might be larger than the buffer.
+     *
+     * @param size The amount of bytes to read
+     *
+     * @return The read bytes
+     *
+     * @throws IOException If there were not enough bytes
+     */
+    public byte[] readBytes(int size) throws IOException{
+        var data = new byte[size];
+        int offset = 0;
+        while(offset < size){
+            if(!fill(1)){
+                throw new IOException("Unexpected end of file");
+            }
+            int length = Math.min(size - offset, buffer.remaining());
+            buffer.get(data, offset, length);
+            offset += length;
+        }
+        return data;
+    }
+    
+    /**
+     * Moves to a new offset in the channel and throws away the buffered data.
+     *
+     * @param position The offset to move to
+     *
+     * @throws IOException If the channel is not seekable or could not be moved
+     */
+    public void seek(long position) throws IOException{
+        if(!(channel instanceof SeekableByteChannel seekable)){
+            throw new IOException("Channel is not seekable");
+        }
+        seekable.position(position);
+        this.position = position;
+        endOfInput = false;
+        buffer.clear().limit(0);
+    }
+    
+    /**
+     * Skips over bytes, seekable channels skip whatever is not buffered without reading it.
+     *
+     * @param size The amount of bytes to skip
+     *
+     * @throws IOException If there were not enough bytes
+     */
+    public void skip(long size) throws IOException{
+        if(size > buffer.remaining() && channel instanceof SeekableByteChannel seekable){
+            long target = position() + size;
+            if(target > seekable.size()){
+                throw new IOException("Unexpected end of file");
+            }
+            seek(target);
+            return;
+        }
+        while(size > 0){
+            if(!fill(1)){
+                throw new IOException("Unexpected end of file");
+            }
+            int length = (int)Math.min(size, buffer.remaining());
+            buffer.position(buffer.position() + length);
+            size -= length;
+        }
+    }
+    
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
@@ -0,0 +1,246 @@
+package net.gudenau.usbcap.internal;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * A preallocated off-heap ring of packet and reset records that overwrites the oldest records when it runs out of
+ * space. Only used by a single thread.
+ *
+ * Records are laid out like the records of a {@link SharedRing}, [int length][long timestamp][payload] padded to 4
+ * bytes. A record that does not fit in front of the end of the ring is preceded by a padding record and starts at the
+ * beginning again, if the record and the padding are larger than the ring together it replaces everything. Positions are absolute and only ever grow, the offset in the ring is the position modulo the
+ * capacity.
+ */
+public final class EventRing{
+    private static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    private static final int RESET = -1;
+    private static final int PADDING = -2;
+    
+    private final ByteBuffer data;
+    private final int capacity;
+    private long head = 0;
+    private long tail = 0;
+    
+    /**
+     * Allocates a new ring.
+     *
+     * @param capacity The size of the ring in bytes, rounded down to a multiple of 4
+     */
+    public EventRing(int capacity){
+        capacity &= ~3;
+        if(capacity < RECORD_HEADER_SIZE * 2){
+            throw new IllegalArgumentException("capacity was too small: " + capacity);
+        }
+        this.capacity = capacity;
+        data = ByteBuffer.allocateDirect(capacity).order(ByteOrder.nativeOrder());
+    }
+    
+    /**
+     * Gets the position the next record will be written at.
+     *
+     * @return The head position
+     */
+    public long head(){
+        return head;
+    }
+    
+    /**
+     * Gets the position of the oldest record.
+     *
+     * @return The tail position
+     */
+    public long tail(){
+        return tail;
+    }
+    
+    /**
+     * Gets the space a packet record takes up.
+     *
+     * @param length The length of the payload
+     *
+     * @return The size of the record in bytes
+     */
+    private static int recordSize(int length){
+        return RECORD_HEADER_SIZE + ((length + 3) & ~3);
+    }
+    
+    /**
+     * Checks if a packet can be written without overwriting the records after a position.
+     *
+     * @param keep The position of the oldest record that has to stay
+     * @param length The length of the payload
+     *
+     * @return True if the records after {@code keep} survive the write
+     */
+    public boolean fits(long keep, int length){
+        int size = recordSize(length);
+        int offset = (int)(head % capacity);
+        long end = head + (offset + size > capacity ? capacity - offset : 0) + size;
+        return end - keep <= capacity;
+    }
+    
+    /**
+     * Copies a packet into the ring, dropping the oldest records if needed.
+     *
+     * @param payload The packet contents, from position to limit
+     * @param timestamp The time of the packet
+     *
+     * @return False if the packet is larger than the ring and was dropped
+     */
+    public boolean writePacket(ByteBuffer payload, long timestamp){
+        int length = payload.remaining();
+        int size = recordSize(length);
+        if(size > capacity){
+            return false;
+        }
+        int offset = reserve(size);
+        data.putInt(offset, length);
+        data.putLong(offset + Integer.BYTES, timestamp);
+        data.put(offset + RECORD_HEADER_SIZE, payload, payload.position(), length);
+        head += size;
+        return true;
+    }
+    
+    /**
+     * Writes a reset into the ring, dropping the oldest records if needed.
+     *
+     * @param timestamp The time of the reset
+     */
+    public void writeReset(long timestamp){
+        int offset = reserve(RECORD_HEADER_SIZE);
+        data.putInt(offset, RESET);
+        data.putLong(offset + Integer.BYTES, timestamp);
+        head += RECORD_HEADER_SIZE;
+    }
+    
+    /**
+     * Makes room for a record at the head, wrapping around to the start of the ring if needed.
+     *
+     * @param size The size of the record
+     *
+     * @return The offset to write the record at
+     */
+    private int reserve(int size){
+        int offset = (int)(head % capacity);
+        if(offset + size > capacity){
+            int padding = capacity - offset;
+            if(padding + size > capacity){
+                // Every record has to go, including the padding that would be overwritten by this one.
+                head += padding;
+                tail = head;
+                return 0;
+            }
+            evict(head + padding + size - capacity);
+            // The rest of the ring is too small for a header sometimes, the reader knows to skip it anyway.
+            if(padding >= Integer.BYTES){
+                data.putInt(offset, PADDING);
+            }
+            head += padding;
+            offset = 0;
+        }else{
+            evict(head + size - capacity);
+        }
+        return offset;
+    }
+    
+    /**
+     * Drops the oldest records until the tail is at or after a position.
+     *
+     * @param position The position the tail has to reach
+     */
+    private void evict(long position){
+        while(tail < position){
+            tail = next(tail);
+        }
+    }
+    
+    /**
+     * Drops the oldest records that are older than a timestamp, stopping at the first record that is not.
+     *
+     * @param timestamp The oldest timestamp to keep
+     */
+    public void evictOlderThan(long timestamp){
+        while(tail != head){
+            int offset = (int)(tail % capacity);
+            if(!isPadding(offset) && data.getLong(offset + Integer.BYTES) >= timestamp){
+                return;
+            }
+            tail = next(tail);
+        }
+    }
+    
+    /**
+     * Gets the position of the record after the record at a position.
+     *
+     * @param position The position of a record
+     *
+     * @return The position of the next record
+     */
+    private long next(long position){
+        int offset = (int)(position % capacity);
+        if(isPadding(offset)){
+            return position + capacity - offset;
+        }
+        int length = data.getInt(offset);
+        return position + (length == RESET ? RECORD_HEADER_SIZE : recordSize(length));
+    }
+    
+    /**
+     * Checks if the rest of the ring after an offset is unused.
+     *
+     * @param offset The offset of a record
+     *
+     * @return True if the record is padding
+     */
+    private boolean isPadding(int offset){
+        return capacity - offset < RECORD_HEADER_SIZE || data.getInt(offset) == PADDING;
+    }
+    
+    /**
+     * Copies the records between two positions into a new heap buffer without the padding.
+     *
+     * @param from The position of the first record, must not have been dropped yet
+     * @param to The position after the last record
+     *
+     * @return The records, read them with {@link #read(ByteBuffer, CaptureWriter)}
+     */
+    public ByteBuffer copy(long from, long to){
+        if(from < tail || to > head || from > to){
+            throw new IllegalArgumentException("Range " + from + " to " + to + " is not in the ring");
+        }
+        var copy = ByteBuffer.allocate((int)(to - from)).order(ByteOrder.nativeOrder());
+        for(long position = from; position < to; ){
+            long next = next(position);
+            int offset = (int)(position % capacity);
+            if(!isPadding(offset)){
+                copy.put(data.slice(offset, (int)(next - position)));
+            }
+            position = next;
+        }
+        return copy.flip();
+    }
+    
+    /**
+     * Writes records copied out of a ring to a capture file.
+     *
+     * @param records The records from {@link #copy(long, long)}
+     * @param writer The writer to add the records to
+     *
+     * @throws IOException If the records could not be written
+     */
+    public static void read(ByteBuffer records, CaptureWriter writer) throws IOException{
+        while(records.hasRemaining()){
+            int length = records.getInt();
+            long timestamp = records.getLong();
+            if(length == RESET){
+                writer.writeReset(timestamp);
+            }else{
+                int position = records.position();
+                writer.writePacket(records.slice(position, length), timestamp);
+                records.position(position + ((length + 3) & ~3));
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package net.gudenau.usbcap.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.filter.Filter;
+import net.gudenau.usbcap.metrics.CaptureMetrics;
+import net.gudenau.usbcap.metrics.FilterMetrics;
+
+/**
+ * An ordered list of filters that events are passed through.
+ */
+public final class FilterChain{
+    private final List<Filter> filters = new ArrayList<>();
+    
+    // Only set while metrics are enabled, the metrics of every filter are at the same index as the filter.
+    private CaptureMetrics metrics = null;
+    private final List<FilterMetrics> filterMetrics = new ArrayList<>();
+    
+    // Reused for the events generated by a filter, so passing an event along doesn't allocate.
+    private final List<Event> generated = new ArrayList<>();
+    
+    /**
+     * Adds a filter to the end of the chain.
+     *
+     * @param filter The filter to add
+     */
+    public void add(Filter filter){
+        if(metrics != null){
+            filterMetrics.add(metrics.addFilter(filter.getClass().getName()));
+        }
+        filters.add(filter);
+    }
+    
+    /**
+     * Removes a filter from the chain.
+     *
+     * @param filter The filter to remove
+     */
+    public void remove(Filter filter){
+        int index = filters.indexOf(filter);
+        if(index != -1){
+            filters.remove(index);
+            if(metrics != null){
+                metrics.removeFilter(filterMetrics.remove(index));
+            }
+        }
+    }
+    
+    /**
+     * Starts recording the metrics of every filter in this chain and registers their JMX beans, replacing the current
+     * metrics. Nothing changes if the beans could not be registered.
+     *
+     * @param metrics The metrics to record into or null to stop recording
+     *
+     * @throws IllegalStateException If the JMX beans could not be registered
+     */
+    public void metrics(CaptureMetrics metrics){
+        List<FilterMetrics> replacement = new ArrayList<>(filters.size());
+        if(metrics != null){
+            for(var filter : filters){
+                replacement.add(metrics.addFilter(filter.getClass().getName()));
+            }
+            metrics.register();
+        }
+        if(this.metrics != null){
+            filterMetrics.forEach(this.metrics::removeFilter);
+        }
+        filterMetrics.clear();
+        filterMetrics.addAll(replacement);
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Gets the filters of this chain in order.
+     *
+     * @return An unmodifiable view of the filters
+     */
+    public List<Filter> filters(){
+        return Collections.unmodifiableList(filters);
+    }
+    
+    /**
+     * Passes events though the filters.
+     *
+     * Events generated by a filter are inserted after the event that caused them and pass through the entire chain
+     * as well.
+     *
+     * @param pendingEvents The events to process, generated events are added to this list
+     * @param output Where to put the events that made it though every filter
+     */
+    public void process(List<Event> pendingEvents, Collection<Event> output){
+        if(metrics != null){
+            processMeasured(pendingEvents, output);
+            return;
+        }
+        
+        // The jank filter code, there is likely a much better way to handle this
+        
+        int index = 0;
+        outer:
+        while(index < pendingEvents.size()){
+            // Get the oldest pending event
+            var event = pendingEvents.get(index);
+            // Just in case
+            assert (event != null) : new IllegalStateException("null event");
+            
+            // Pass the event though the filters.
+            for(var filter : filters){
+                // Tell the event to reset, cleans up reads and writes to Buffers.
+                event.reset();
+                // Pass the event to a filter
+                var shouldRemove = filter.handleEvent(event);
+                // Insert all of the events the filter generated after the current event.
+                filter.drainPendingEvents(generated);
+                insertGenerated(pendingEvents, index + 1);
+                
+                // If the filter wants the event to be removed we don't have to keep passing it to other filters.
+                if(shouldRemove){
+                    index++;
+                    continue outer;
+                }
+            }
+            
+            // The event made it all the way through the filter chain, pass it along to the consumer.
+            index++;
+            output.add(event);
+        }
+    }
+    
+    /**
+     * The same as {@link #process(List, Collection)}, but records how every filter handled every event.
+     *
+     * @param pendingEvents The events to process, generated events are added to this list
+     * @param output Where to put the events that made it though every filter
+     */
+    private void processMeasured(List<Event> pendingEvents, Collection<Event> output){
+        int index = 0;
+        outer:
+        while(index < pendingEvents.size()){
+            var event = pendingEvents.get(index);
+            assert (event != null) : new IllegalStateException("null event");
+            
+            for(int i = 0, size = filters.size(); i < size; i++){
+                var filter = filters.get(i);
+                event.reset();
+                long start = System.nanoTime();
+                var shouldRemove = filter.handleEvent(event);
+                filter.drainPendingEvents(generated);
+                filterMetrics.get(i).record(shouldRemove, generated.size(), System.nanoTime() - start);
+                insertGenerated(pendingEvents, index + 1);
+                
+                if(shouldRemove){
+                    index++;
+                    continue outer;
+                }
+            }
+            
+            index++;
+            output.add(event);
+        }
+    }
+    
+    /**
+     * Moves the events a filter generated into the pending events.
+     *
+     * @param pendingEvents The events that are being processed
+     * @param index Where to insert the generated events
+     */
+    private void insertGenerated(List<Event> pendingEvents, int index){
+        switch(generated.size()){
+            case 0 -> {
+                return;
+            }
+            // The common case, addAll would copy the events into a new array first
+            case 1 -> pendingEvents.add(index, generated.get(0));
+            default -> pendingEvents.addAll(index, generated);
+        }
+        generated.clear();
+    }
+}
@@ -0,0 +1,45 @@
+package net.gudenau.usbcap.internal;
+
+/**
+ * Constants for the pcapng file format.
+ *
+ * Every block has the same framing, everything is in the byte order of the section:
+ * <pre>
+ * +------+--------+------+--------+
+ * | type | length | body | length |
+ * +------+--------+------+--------+
+ * |  4   |   4    | ...  |   4    |
+ * +------+--------+------+--------+
+ * </pre>
+ */
+public final class PcapngFormat{
+    private PcapngFormat(){}
+    
+    public static final int BLOCK_SECTION_HEADER = 0x0A0D0D0A;
+    public static final int BLOCK_INTERFACE_DESCRIPTION = 0x00000001;
+    public static final int BLOCK_SIMPLE_PACKET = 0x00000003;
+    public static final int BLOCK_ENHANCED_PACKET = 0x00000006;
+    
+    /**
+     * Written in the section header in the byte order of the section.
+     */
+    public static final int BYTE_ORDER_MAGIC = 0x1A2B3C4D;
+    
+    public static final short OPTION_END = 0;
+    public static final short OPTION_COMMENT = 1;
+    public static final short OPTION_SHB_USER_APPLICATION = 4;
+    public static final short OPTION_IF_TSRESOL = 9;
+    
+    /**
+     * Raw USB 2.0 packets, starting with the PID and including the CRC.
+     */
+    public static final int LINKTYPE_USB_2_0 = 288;
+    public static final int LINKTYPE_USB_2_0_LOW_SPEED = 293;
+    public static final int LINKTYPE_USB_2_0_FULL_SPEED = 294;
+    public static final int LINKTYPE_USB_2_0_HIGH_SPEED = 295;
+    
+    /**
+     * The comment attached to the empty packets used for reset events.
+     */
+    public static final String RESET_COMMENT = "USB reset";
+}
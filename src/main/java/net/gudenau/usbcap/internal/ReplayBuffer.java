@@ -0,0 +1,80 @@
+package net.gudenau.usbcap.internal;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A bounded buffer of already sent network frames, used to resume a session after the connection drops.
+ *
+ * Frames are identified by consecutive sequence numbers, the oldest frames are discarded once the buffer grows past
+ * its byte budget.
+ */
+public final class ReplayBuffer{
+    private final Deque<byte[]> frames = new ArrayDeque<>();
+    private final long capacity;
+    private long size = 0;
+    private long firstSequence = 0;
+    private long nextSequence = 0;
+    
+    /**
+     * Creates a new replay buffer that will hold at most the provided amount of bytes.
+     *
+     * @param capacity The maximum amount of bytes to retain
+     */
+    public ReplayBuffer(long capacity){
+        if(capacity < 0){
+            throw new IllegalArgumentException("Capacity was negative: " + capacity);
+        }
+        this.capacity = capacity;
+    }
+    
+    /**
+     * Gets the sequence number that the next frame will be assigned.
+     *
+     * @return The next sequence number
+     */
+    public long nextSequence(){
+        return nextSequence;
+    }
+    
+    /**
+     * Adds a frame to the buffer, it is assigned the value of {@link #nextSequence()}.
+     *
+     * @param frame The frame to add
+     */
+    public void add(byte[] frame){
+        frames.addLast(frame);
+        size += frame.length;
+        nextSequence++;
+        
+        while(size > capacity && !frames.isEmpty()){
+            size -= frames.removeFirst().length;
+            firstSequence++;
+        }
+    }
+    
+    /**
+     * Gets all frames after the provided sequence number, oldest first.
+     *
+     * @param lastSequence The last sequence number the remote has received, -1 for none
+     *
+     * @return The frames to resend or null if frames required to resume have already been discarded
+     */
+    public List<byte[]> replay(long lastSequence){
+        if(lastSequence + 1 < firstSequence || lastSequence >= nextSequence){
+            return null;
+        }
+        
+        List<byte[]> result = new ArrayList<>((int)(nextSequence - lastSequence - 1));
+        long sequence = firstSequence;
+        for(var frame : frames){
+            if(sequence > lastSequence){
+                result.add(frame);
+            }
+            sequence++;
+        }
+        return result;
+    }
+}
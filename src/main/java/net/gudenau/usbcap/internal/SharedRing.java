@@ -0,0 +1,228 @@
+package net.gudenau.usbcap.internal;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A single producer single consumer ring buffer inside of a memory mapped file, used to pass events between processes.
+ *
+ * The file starts with a header, each cursor has its own cache line to avoid false sharing:
+ * <pre>
+ * +-------+----------+------+------+--------+------+
+ * | magic | capacity | head | tail | closed | data |
+ * +-------+----------+------+------+--------+------+
+ * |   0   |     8    |  64  |  128 |   192  |  256 |
+ * +-------+----------+------+------+--------+------+
+ * </pre>
+ *
+ * The head and tail are the total amount of bytes written and read, the data is a stream of records in the same format
+ * as capture files. [signed int length][long timestamp][payload length bytes long], a length of -1 is a reset event and
+ * a length of -2 means the rest of the ring is unused and the next record starts at the beginning.
+ */
+public final class SharedRing implements AutoCloseable{
+    // Changed whenever the record format changes, records gained a timestamp in the second version.
+    private static final long MAGIC = 0x474E495255534248L;
+    
+    private static final int MAGIC_OFFSET = 0;
+    private static final int CAPACITY_OFFSET = 8;
+    private static final int HEAD_OFFSET = 64;
+    private static final int TAIL_OFFSET = 128;
+    private static final int CLOSED_OFFSET = 192;
+    private static final int DATA_OFFSET = 256;
+    
+    /**
+     * The size of the length and timestamp in front of every record.
+     */
+    public static final int RECORD_HEADER_SIZE = Integer.BYTES + Long.BYTES;
+    
+    /**
+     * The length of a record that marks a reset event.
+     */
+    public static final int RESET = -1;
+    
+    /**
+     * The length of a record that marks the end of the used ring space.
+     */
+    public static final int PADDING = -2;
+    
+    private static final int SPIN_LIMIT = 1024;
+    private static final long PARK_NANOS = 50_000;
+    
+    private static final VarHandle LONG_HANDLE = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.nativeOrder());
+    private static final VarHandle INT_HANDLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+    
+    private final FileChannel channel;
+    private final MappedByteBuffer header;
+    private final MappedByteBuffer data;
+    private final int capacity;
+    
+    private SharedRing(FileChannel channel, int capacity) throws IOException{
+        this.channel = channel;
+        this.capacity = capacity;
+        header = channel.map(FileChannel.MapMode.READ_WRITE, 0, DATA_OFFSET);
+        header.order(ByteOrder.nativeOrder());
+        data = channel.map(FileChannel.MapMode.READ_WRITE, DATA_OFFSET, capacity);
+        data.order(ByteOrder.nativeOrder());
+    }
+    
+    /**
+     * Creates a new ring, replacing any existing file.
+     *
+     * @param path The path of the ring file
+     * @param capacity The amount of bytes available for records, a multiple of 4 that fits at least a record header
+     *
+     * @return The new ring
+     *
+     * @throws IOException If the ring could not be created
+     */
+    public static SharedRing create(Path path, int capacity) throws IOException{
+        // Anything smaller could never hold a record, not even a reset
+        if(capacity < RECORD_HEADER_SIZE || (capacity & 3) != 0){
+            throw new IllegalArgumentException(
+                "Capacity must be a multiple of 4 of at least " + RECORD_HEADER_SIZE + ", got " + capacity
+            );
+        }
+        
+        var channel = FileChannel.open(
+            path,
+            StandardOpenOption.READ, StandardOpenOption.WRITE,
+            StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING
+        );
+        try{
+            var ring = new SharedRing(channel, capacity);
+            ring.header.putInt(CAPACITY_OFFSET, capacity);
+            LONG_HANDLE.setRelease(ring.header, MAGIC_OFFSET, MAGIC);
+            return ring;
+        }catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Opens a ring that was created by another process.
+     *
+     * @param path The path of the ring file
+     *
+     * @return The opened ring
+     *
+     * @throws IOException If the ring could not be opened
+     */
+    public static SharedRing open(Path path) throws IOException{
+        var channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try{
+            // Mapping past the end would grow the file, which is not what a reader should do.
+            long size = channel.size();
+            if(size < DATA_OFFSET){
+                throw new IOException("Shared ring " + path + " is too small for its header");
+            }
+            var header = channel.map(FileChannel.MapMode.READ_ONLY, 0, DATA_OFFSET).order(ByteOrder.nativeOrder());
+            if((long)LONG_HANDLE.getAcquire(header, MAGIC_OFFSET) != MAGIC){
+                throw new IOException("Bad magic in shared ring " + path);
+            }
+            int capacity = header.getInt(CAPACITY_OFFSET);
+            if(capacity < RECORD_HEADER_SIZE || (capacity & 3) != 0 || DATA_OFFSET + (long)capacity > size){
+                throw new IOException("Shared ring " + path + " has a bad capacity of " + capacity + " for a file of " + size + " bytes");
+            }
+            return new SharedRing(channel, capacity);
+        }catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    /**
+     * Gets the data region of the ring, records are at their cursor modulo the capacity.
+     *
+     * @return The data region
+     */
+    public MappedByteBuffer data(){
+        return data;
+    }
+    
+    /**
+     * Gets the amount of bytes available for records.
+     *
+     * @return The capacity
+     */
+    public int capacity(){
+        return capacity;
+    }
+    
+    /**
+     * Gets the write cursor.
+     *
+     * @return The total amount of bytes written
+     */
+    public long head(){
+        return (long)LONG_HANDLE.getAcquire(header, HEAD_OFFSET);
+    }
+    
+    /**
+     * Publishes records up to the provided cursor to the reader.
+     *
+     * @param head The new write cursor
+     */
+    public void head(long head){
+        LONG_HANDLE.setRelease(header, HEAD_OFFSET, head);
+    }
+    
+    /**
+     * Gets the read cursor.
+     *
+     * @return The total amount of bytes read
+     */
+    public long tail(){
+        return (long)LONG_HANDLE.getAcquire(header, TAIL_OFFSET);
+    }
+    
+    /**
+     * Releases records up to the provided cursor to the writer.
+     *
+     * @param tail The new read cursor
+     */
+    public void tail(long tail){
+        LONG_HANDLE.setRelease(header, TAIL_OFFSET, tail);
+    }
+    
+    /**
+     * Checks if the writer has closed the ring.
+     *
+     * @return True if no more records will be written
+     */
+    public boolean isClosed(){
+        return (int)INT_HANDLE.getAcquire(header, CLOSED_OFFSET) != 0;
+    }
+    
+    /**
+     * Marks the ring as closed, the reader will stop once it drains the remaining records.
+     */
+    public void markClosed(){
+        INT_HANDLE.setRelease(header, CLOSED_OFFSET, 1);
+    }
+    
+    /**
+     * Waits for a short time, spins first and parks the thread once it has waited for a while.
+     *
+     * @param iteration How many times the caller has waited so far
+     */
+    public static void await(int iteration){
+        if(iteration < SPIN_LIMIT){
+            Thread.onSpinWait();
+        }else{
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+    }
+    
+    @Override
+    public void close() throws IOException{
+        channel.close();
+    }
+}
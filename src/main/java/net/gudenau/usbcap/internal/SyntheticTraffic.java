@@ -0,0 +1,400 @@
+package net.gudenau.usbcap.internal;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.SplittableRandom;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+
+/**
+ * Generates a deterministic stream of USB 2.0 high speed packets, used to test and benchmark without capture hardware.
+ *
+ * The bus is simulated one 125 microsecond microframe at a time. Every microframe starts with a SOF, followed by the periodic
+ * isochronous and interrupt transactions and then as many control and bulk transactions as fit in the bandwidth of
+ * the bus. Three devices are attached:
+ * <ul>
+ *     <li>a mass storage device doing bulk-only transport reads and writes, sometimes NAKing for a long time</li>
+ *     <li>a mouse that is polled by an interrupt endpoint</li>
+ *     <li>a camera streaming over an isochronous endpoint</li>
+ * </ul>
+ * The bus is reset every few seconds of bus time and the devices are enumerated again.
+ *
+ * Tokens and data packets have valid CRCs and the timestamps follow the simulated bus time starting at
+ * 2021-01-01T00:00:00Z, the same seed always produces the same events.
+ */
+public final class SyntheticTraffic{
+    private static final long START_TIME = 1_609_459_200_000_000_000L;
+    private static final long MICROFRAME_NANOS = 125_000;
+    private static final int MICROFRAME_BYTES = 7500;
+    // Sync, EOP and the gap between packets, roughly.
+    private static final int PACKET_OVERHEAD = 16;
+    private static final int MEAN_RESET_INTERVAL = 8 * 8000;
+    
+    private static final byte PID_OUT = (byte)0xE1;
+    private static final byte PID_IN = (byte)0x69;
+    private static final byte PID_SOF = (byte)0xA5;
+    private static final byte PID_SETUP = (byte)0x2D;
+    private static final byte PID_PING = (byte)0xB4;
+    private static final byte PID_DATA0 = (byte)0xC3;
+    private static final byte PID_DATA1 = (byte)0x4B;
+    private static final byte PID_ACK = (byte)0xD2;
+    private static final byte PID_NAK = (byte)0x5A;
+    private static final byte NONE = 0;
+    
+    private static final int STORAGE = 0;
+    private static final int MOUSE = 1;
+    private static final int CAMERA = 2;
+    
+    private static final byte[][] DEVICE_DESCRIPTORS = {
+        {18, 1, 0x00, 0x02, 0, 0, 0, 64, (byte)0x81, 0x07, (byte)0x81, 0x55, 0x00, 0x01, 1, 2, 3, 1},
+        {18, 1, 0x00, 0x02, 0, 0, 0, 64, 0x6D, 0x04, 0x77, (byte)0xC0, 0x00, 0x01, 1, 2, 0, 1},
+        {18, 1, 0x00, 0x02, (byte)0xEF, 2, 1, 64, 0x6D, 0x04, 0x25, 0x08, 0x00, 0x01, 0, 2, 0, 1},
+    };
+    private static final byte[][] CONFIGURATION_DESCRIPTORS = {
+        {
+            9, 2, 32, 0, 1, 1, 0, (byte)0x80, 50,
+            9, 4, 0, 0, 2, 8, 6, 0x50, 0,
+            7, 5, (byte)0x81, 2, 0x00, 0x02, 0,
+            7, 5, 0x02, 2, 0x00, 0x02, 0,
+        },
+        {
+            9, 2, 34, 0, 1, 1, 0, (byte)0xA0, 50,
+            9, 4, 0, 0, 1, 3, 1, 2, 0,
+            9, 0x21, 0x11, 0x01, 0, 1, 0x22, 52, 0,
+            7, 5, (byte)0x81, 3, 8, 0, 4,
+        },
+        {
+            9, 2, 43, 0, 2, 1, 0, (byte)0x80, (byte)0xFA,
+            9, 4, 0, 0, 0, 0x0E, 1, 0, 0,
+            9, 4, 1, 0, 0, 0x0E, 2, 0, 0,
+            9, 4, 1, 1, 1, 0x0E, 2, 0, 0,
+            7, 5, (byte)0x81, 5, 0x00, 0x04, 1,
+        },
+    };
+    
+    private final SplittableRandom random;
+    private final byte[] noise = new byte[64 * 1024];
+    private final Queue<Transaction> control = new ArrayDeque<>();
+    private final Queue<Transaction> bulk = new ArrayDeque<>();
+    private final int[] addresses = new int[3];
+    private final boolean[] configured = new boolean[3];
+    private final byte[] toggles = new byte[3 * 32];
+    
+    private long microframe = 0;
+    private long time = START_TIME;
+    private long nextReset = 0;
+    private int nextAddress = 1;
+    private int storageTag = 0;
+    
+    private List<Event> events;
+    private ByteBuffer buffer;
+    private int budget;
+    
+    /**
+     * Creates a new generator.
+     *
+     * @param seed The seed of the generator
+     */
+    public SyntheticTraffic(long seed){
+        random = new SplittableRandom(seed);
+        random.nextBytes(noise);
+    }
+    
+    /**
+     * Generates the events of the next microframe.
+     *
+     * @param events The list to add the events to
+     *
+     * @return The amount of bytes that were put on the bus
+     */
+    public int nextMicroframe(List<Event> events){
+        this.events = events;
+        // Packets are slices of a single buffer per microframe, large enough for a full microframe and one transaction.
+        buffer = ByteBuffer.allocate(MICROFRAME_BYTES * 2).order(ByteOrder.LITTLE_ENDIAN);
+        budget = MICROFRAME_BYTES;
+        time = START_TIME + microframe * MICROFRAME_NANOS;
+        
+        if(microframe == nextReset){
+            reset();
+        }
+        
+        // High speed sends a SOF every microframe, the frame number only changes every 8.
+        token(PID_SOF, (int)(microframe >>> 3) & 0x7FF);
+        
+        if(configured[CAMERA]){
+            // Isochronous, no handshake and always DATA0.
+            int length = 800 + random.nextInt(1024 - 800 + 1);
+            token(PID_IN, pair(addresses[CAMERA], 1));
+            data(PID_DATA0, new byte[]{12, (byte)(0x80 | ((microframe >>> 6) & 1))}, length);
+        }
+        if(configured[MOUSE] && (microframe & 7) == 0){
+            token(PID_IN, pair(addresses[MOUSE], 1));
+            if(random.nextInt(5) == 0){
+                data(toggle(MOUSE, 1), new byte[]{(byte)random.nextInt(8)}, 4);
+                handshake(PID_ACK);
+            }else{
+                handshake(PID_NAK);
+            }
+        }
+        
+        while(budget > 0 && !control.isEmpty()){
+            transaction(control.remove());
+        }
+        while(budget > 0 && configured[STORAGE]){
+            if(bulk.isEmpty()){
+                queueStorageCommand();
+            }
+            transaction(bulk.remove());
+        }
+        
+        microframe++;
+        return MICROFRAME_BYTES - budget;
+    }
+    
+    /**
+     * Resets the bus and queues the enumeration of every device.
+     */
+    private void reset(){
+        events.add(new ResetEvent(time));
+        nextReset = microframe + 8000 + random.nextInt(MEAN_RESET_INTERVAL * 2 - 8000);
+        control.clear();
+        bulk.clear();
+        
+        Arrays.fill(addresses, 0);
+        Arrays.fill(configured, false);
+        Arrays.fill(toggles, (byte)0);
+        for(int device = 0; device < addresses.length; device++){
+            int address = nextAddress;
+            nextAddress = nextAddress % 127 + 1;
+            // GET_DESCRIPTOR(DEVICE), SET_ADDRESS, GET_DESCRIPTOR(DEVICE), GET_DESCRIPTOR(CONFIGURATION) twice, SET_CONFIGURATION
+            controlTransfer(device, 0, new byte[]{(byte)0x80, 6, 0, 1, 0, 0, 64, 0}, DEVICE_DESCRIPTORS[device]);
+            controlTransfer(device, 0, new byte[]{0, 5, (byte)address, 0, 0, 0, 0, 0}, null);
+            controlTransfer(device, address, new byte[]{(byte)0x80, 6, 0, 1, 0, 0, 18, 0}, DEVICE_DESCRIPTORS[device]);
+            var configuration = CONFIGURATION_DESCRIPTORS[device];
+            controlTransfer(device, address, new byte[]{(byte)0x80, 6, 0, 2, 0, 0, 9, 0}, slice(configuration, 9));
+            controlTransfer(device, address, new byte[]{(byte)0x80, 6, 0, 2, 0, 0, (byte)configuration.length, 0}, configuration);
+            controlTransfer(device, address, new byte[]{0, 9, 1, 0, 0, 0, 0, 0}, null);
+            // Start the camera stream.
+            if(device == CAMERA){
+                controlTransfer(device, address, new byte[]{1, 11, 1, 0, 1, 0, 0, 0}, null);
+            }
+            control.add(new Transaction(NONE, device, address, 0, NONE, null, 0, NONE, true));
+        }
+    }
+    
+    /**
+     * Queues the transactions of a control transfer on endpoint 0.
+     *
+     * @param device The device index
+     * @param address The address of the device
+     * @param setup The setup packet
+     * @param response The data the device returns or null if the transfer has no data stage
+     */
+    private void controlTransfer(int device, int address, byte[] setup, byte[] response){
+        control.add(new Transaction(PID_SETUP, device, address, 0, PID_DATA0, setup, setup.length, PID_ACK, false));
+        if(response == null){
+            control.add(new Transaction(PID_IN, device, address, 0, PID_DATA1, null, 0, PID_ACK, false));
+            return;
+        }
+        
+        int length = Math.min(response.length, (setup[6] & 0xFF) | ((setup[7] & 0xFF) << 8));
+        byte pid = PID_DATA1;
+        int offset = 0;
+        do{
+            int chunk = Math.min(64, length - offset);
+            control.add(new Transaction(PID_IN, device, address, 0, pid, slice(response, offset, chunk), chunk, PID_ACK, false));
+            pid = pid == PID_DATA0 ? PID_DATA1 : PID_DATA0;
+            offset += chunk;
+        }while(offset < length);
+        control.add(new Transaction(PID_OUT, device, address, 0, PID_DATA1, null, 0, PID_ACK, false));
+    }
+    
+    /**
+     * Queues a single bulk-only transport command for the storage device, a read or write of a few blocks.
+     */
+    private void queueStorageCommand(){
+        int address = addresses[STORAGE];
+        boolean read = random.nextInt(3) != 0;
+        int blocks = 1 + random.nextInt(64);
+        int length = blocks * 512;
+        int tag = ++storageTag;
+        
+        var cbw = ByteBuffer.allocate(31).order(ByteOrder.LITTLE_ENDIAN);
+        cbw.putInt(0x43425355);
+        cbw.putInt(tag);
+        cbw.putInt(length);
+        cbw.put((byte)(read ? 0x80 : 0x00));
+        cbw.put((byte)0);
+        cbw.put((byte)10);
+        cbw.put((byte)(read ? 0x28 : 0x2A));
+        cbw.put((byte)0);
+        cbw.order(ByteOrder.BIG_ENDIAN).putInt(random.nextInt(1 << 24));
+        cbw.put((byte)0);
+        cbw.putShort((short)blocks);
+        bulk.add(new Transaction(PID_OUT, STORAGE, address, 2, toggle(STORAGE, 2 | 0x10), cbw.array(), 31, PID_ACK, false));
+        
+        // Sometimes the device is busy for a while.
+        if(read && random.nextInt(20) == 0){
+            for(int i = 50 + random.nextInt(2000); i > 0; i--){
+                bulk.add(new Transaction(PID_IN, STORAGE, address, 1, NONE, null, 0, PID_NAK, false));
+            }
+        }
+        for(int i = 0; i < blocks; i++){
+            if(read){
+                bulk.add(new Transaction(PID_IN, STORAGE, address, 1, toggle(STORAGE, 1), null, 512, PID_ACK, false));
+            }else{
+                if(random.nextInt(8) == 0){
+                    bulk.add(new Transaction(PID_PING, STORAGE, address, 2, NONE, null, 0, PID_ACK, false));
+                }
+                bulk.add(new Transaction(PID_OUT, STORAGE, address, 2, toggle(STORAGE, 2 | 0x10), null, 512, PID_ACK, false));
+            }
+        }
+        
+        var csw = ByteBuffer.allocate(13).order(ByteOrder.LITTLE_ENDIAN);
+        csw.putInt(0x53425355);
+        csw.putInt(tag);
+        csw.putInt(0);
+        csw.put((byte)0);
+        bulk.add(new Transaction(PID_IN, STORAGE, address, 1, toggle(STORAGE, 1), csw.array(), 13, PID_ACK, false));
+    }
+    
+    /**
+     * Puts a queued transaction on the bus.
+     *
+     * @param transaction The transaction
+     */
+    private void transaction(Transaction transaction){
+        if(transaction.configures()){
+            configured[transaction.device()] = true;
+            addresses[transaction.device()] = transaction.address();
+            return;
+        }
+        
+        token(transaction.token(), pair(transaction.address(), transaction.endpoint()));
+        if(transaction.data() != NONE){
+            data(transaction.data(), transaction.payload(), transaction.length());
+        }
+        if(transaction.handshake() != NONE){
+            handshake(transaction.handshake());
+        }
+    }
+    
+    /**
+     * Gets the data PID for the next transaction on an endpoint and flips the toggle.
+     *
+     * @param device The device index
+     * @param endpoint The endpoint, OUT endpoints have bit 4 set
+     *
+     * @return The data PID
+     */
+    private byte toggle(int device, int endpoint){
+        int index = device * 32 + endpoint;
+        byte pid = toggles[index] == 0 ? PID_DATA0 : PID_DATA1;
+        toggles[index] ^= 1;
+        return pid;
+    }
+    
+    /**
+     * Packs an address and endpoint into the 11 bits of a token.
+     *
+     * @param address The address
+     * @param endpoint The endpoint
+     *
+     * @return The token bits
+     */
+    private static int pair(int address, int endpoint){
+        return address | (endpoint << 7);
+    }
+    
+    /**
+     * Emits a token or SOF packet.
+     *
+     * @param pid The PID of the packet
+     * @param data The 11 bits after the PID
+     */
+    private void token(byte pid, int data){
+        var packet = packet(3);
+        packet.put(0, pid);
+        packet.putShort(1, (short)(data | (CRC.crc5(data) << 11)));
+    }
+    
+    /**
+     * Emits a data packet, the payload is filled with noise and then the provided bytes.
+     *
+     * @param pid The PID of the packet
+     * @param payload The start of the payload or null for just noise
+     * @param length The length of the payload
+     */
+    private void data(byte pid, byte[] payload, int length){
+        var packet = packet(length + 3);
+        packet.put(0, pid);
+        packet.put(1, noise, random.nextInt(noise.length - length + 1), length);
+        if(payload != null){
+            packet.put(1, payload);
+        }
+        packet.putShort(length + 1, (short)CRC.crc16(packet, 1, length));
+    }
+    
+    /**
+     * Emits a handshake packet.
+     *
+     * @param pid The PID of the packet
+     */
+    private void handshake(byte pid){
+        packet(1).put(0, pid);
+    }
+    
+    /**
+     * Reserves space for a packet and adds its event.
+     *
+     * @param length The length of the packet
+     *
+     * @return The contents of the packet
+     */
+    private ByteBuffer packet(int length){
+        if(buffer.remaining() < length){
+            buffer = ByteBuffer.allocate(Math.max(length, MICROFRAME_BYTES)).order(ByteOrder.LITTLE_ENDIAN);
+        }
+        var packet = buffer.slice(buffer.position(), length).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position(buffer.position() + length);
+        events.add(new PacketEvent(packet, time));
+        
+        int bytes = length + PACKET_OVERHEAD;
+        budget -= bytes;
+        time += bytes * 50L / 3;
+        return packet;
+    }
+    
+    private static byte[] slice(byte[] array, int length){
+        return slice(array, 0, length);
+    }
+    
+    private static byte[] slice(byte[] array, int offset, int length){
+        var slice = new byte[length];
+        System.arraycopy(array, offset, slice, 0, length);
+        return slice;
+    }
+    
+    /**
+     * A queued transaction.
+     *
+     * @param token The PID of the token
+     * @param device The device index
+     * @param address The address of the device
+     * @param endpoint The endpoint number
+     * @param data The PID of the data packet or {@link #NONE}
+     * @param payload The payload of the data packet or null for noise
+     * @param length The length of the payload
+     * @param handshake The PID of the handshake or {@link #NONE}
+     * @param configures True if this is a marker that the device was configured instead of a transaction
+     */
+    private record Transaction(
+        byte token, int device, int address, int endpoint,
+        byte data, byte[] payload, int length, byte handshake, boolean configures
+    ){}
+}
@@ -0,0 +1,40 @@
+package net.gudenau.usbcap.internal;
+
+import java.time.Instant;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import net.gudenau.usbcap.event.ResetEvent;
+
+/**
+ * Helpers for event timestamps, which are nanoseconds since the Unix epoch.
+ */
+public final class TimeHelper{
+    private TimeHelper(){}
+    
+    /**
+     * Gets the current time as a timestamp.
+     *
+     * @return The current time in nanoseconds since the Unix epoch
+     */
+    public static long now(){
+        var instant = Instant.now();
+        return instant.getEpochSecond() * 1_000_000_000L + instant.getNano();
+    }
+    
+    /**
+     * Gets the timestamp of a raw event.
+     *
+     * @param event The event
+     *
+     * @return The timestamp of the event or 0 if it does not have one
+     */
+    public static long timestamp(Event event){
+        if(event instanceof PacketEvent packet){
+            return packet.timestamp();
+        }else if(event instanceof ResetEvent reset){
+            return reset.timestamp();
+        }else{
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package net.gudenau.usbcap.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A batch of events read from a capture device, the duration is how long the device took to produce them.
+ */
+@Name("net.gudenau.usbcap.CaptureRead")
+@Label("Capture Read")
+@Description("A batch of events read from a capture device")
+@Category("UsbCapture")
+@StackTrace(false)
+@Enabled(false)
+public final class CaptureReadEvent extends jdk.jfr.Event{
+    @Label("Device")
+    public String device;
+    
+    @Label("Events")
+    public int events;
+}
@@ -0,0 +1,67 @@
+package net.gudenau.usbcap.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import net.gudenau.usbcap.event.ControlTransferEvent;
+import net.gudenau.usbcap.event.DataEvent;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.SetupDataEvent;
+
+/**
+ * The transfers that came out of a filter chain in a single batch.
+ */
+@Name("net.gudenau.usbcap.DecodedTransfers")
+@Label("Decoded Transfers")
+@Description("Transfers that made it through the filters of a capture device in a single batch")
+@Category("UsbCapture")
+@StackTrace(false)
+@Enabled(false)
+public final class DecodedTransfersEvent extends jdk.jfr.Event{
+    @Label("Data Transfers")
+    public int dataTransfers;
+    
+    @Label("Setup Transfers")
+    public int setupTransfers;
+    
+    @Label("Control Transfers")
+    public int controlTransfers;
+    
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+    
+    /**
+     * Counts the transfers in a batch of events and commits them, does nothing if this event is disabled.
+     *
+     * @param events The events that came out of a filter chain
+     */
+    public static void record(Iterable<Event> events){
+        var transfers = new DecodedTransfersEvent();
+        if(!transfers.isEnabled()){
+            return;
+        }
+        for(var event : events){
+            if(event instanceof DataEvent data){
+                transfers.dataTransfers++;
+                transfers.bytes += data.data().remaining();
+            }else if(event instanceof DeviceDataEvent data){
+                transfers.dataTransfers++;
+                transfers.bytes += data.data().remaining();
+            }else if(event instanceof ControlTransferEvent control){
+                transfers.controlTransfers++;
+                transfers.bytes += control.data().remaining();
+            }else if(event instanceof SetupDataEvent){
+                transfers.setupTransfers++;
+            }
+        }
+        if(transfers.dataTransfers + transfers.setupTransfers + transfers.controlTransfers != 0 && transfers.shouldCommit()){
+            transfers.commit();
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package net.gudenau.usbcap.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A block written to a capture file, the duration is how long the write took.
+ */
+@Name("net.gudenau.usbcap.FileFlush")
+@Label("File Flush")
+@Description("A block written to a capture file")
+@Category("UsbCapture")
+@StackTrace(false)
+@Enabled(false)
+public final class FileFlushEvent extends jdk.jfr.Event{
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+    
+    @Label("Pending Blocks")
+    @Description("Blocks that are still being compressed")
+    public int pendingBlocks;
+}
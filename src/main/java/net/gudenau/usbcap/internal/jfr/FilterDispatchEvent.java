@@ -0,0 +1,34 @@
+package net.gudenau.usbcap.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * A batch of events passed through a filter chain.
+ */
+@Name("net.gudenau.usbcap.FilterDispatch")
+@Label("Filter Dispatch")
+@Description("A batch of events passed through the filters of a capture device")
+@Category("UsbCapture")
+@StackTrace(false)
+@Enabled(false)
+public final class FilterDispatchEvent extends jdk.jfr.Event{
+    @Label("Filters")
+    public int filters;
+    
+    @Label("Events In")
+    @Description("Events passed into the chain")
+    public int eventsIn;
+    
+    @Label("Events Processed")
+    @Description("Events passed into the chain and events generated by filters")
+    public int eventsProcessed;
+    
+    @Label("Events Out")
+    @Description("Events that made it through every filter")
+    public int eventsOut;
+}
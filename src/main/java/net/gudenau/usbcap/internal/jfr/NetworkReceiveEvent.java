@@ -0,0 +1,39 @@
+package net.gudenau.usbcap.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Frames received from a network filter, the duration spans from the first to the last frame.
+ */
+@Name("net.gudenau.usbcap.NetworkReceive")
+@Label("Network Receive")
+@Description("Frames received by a network capture device")
+@Category("UsbCapture")
+@StackTrace(false)
+@Enabled(false)
+public final class NetworkReceiveEvent extends jdk.jfr.Event{
+    /**
+     * How many frames are aggregated into a single event.
+     */
+    public static final int BATCH_SIZE = 256;
+    
+    @Label("Frames")
+    public int frames;
+    
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+    
+    @Label("Duplicates")
+    @Description("Frames that were resent after a reconnect and dropped")
+    public int duplicates;
+    
+    @Label("Reconnects")
+    public int reconnects;
+}
@@ -0,0 +1,35 @@
+package net.gudenau.usbcap.internal.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Frames sent to a remote capture device, the duration spans from the first to the last frame.
+ */
+@Name("net.gudenau.usbcap.NetworkSend")
+@Label("Network Send")
+@Description("Frames sent by a network filter")
+@Category("UsbCapture")
+@StackTrace(false)
+@Enabled(false)
+public final class NetworkSendEvent extends jdk.jfr.Event{
+    /**
+     * How many frames are aggregated into a single event.
+     */
+    public static final int BATCH_SIZE = 256;
+    
+    @Label("Frames")
+    public int frames;
+    
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+    
+    @Label("Reconnects")
+    public int reconnects;
+}
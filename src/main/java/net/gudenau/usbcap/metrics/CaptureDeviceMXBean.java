@@ -0,0 +1,55 @@
+package net.gudenau.usbcap.metrics;
+
+/**
+ * The JMX view of the metrics of a capture device, registered as
+ * {@code net.gudenau.usbcap:type=CaptureDevice,name=<device>}.
+ *
+ * A batch is a single read from the device followed by passing the read events through the filters. Durations are in
+ * nanoseconds.
+ */
+public interface CaptureDeviceMXBean{
+    /**
+     * @return The amount of batches read from the device
+     */
+    long getBatches();
+    
+    /**
+     * @return The amount of events read from the device
+     */
+    long getEventsCaptured();
+    
+    /**
+     * @return The amount of events that made it through the filters
+     */
+    long getEventsDelivered();
+    
+    /**
+     * @return The amount of events read from the device per second, over the last second
+     */
+    double getCaptureRate();
+    
+    /**
+     * @return The mean amount of events per batch
+     */
+    double getBatchSizeMean();
+    
+    /**
+     * @return The mean time it took to read a batch from the device
+     */
+    double getReadTimeMean();
+    
+    /**
+     * @return The 99th percentile of the time it took to read a batch from the device
+     */
+    long getReadTimeP99();
+    
+    /**
+     * @return The mean amount of events waiting to be consumed after a batch went through the filters
+     */
+    double getOccupancyMean();
+    
+    /**
+     * @return The largest amount of events waiting to be consumed after a batch went through the filters
+     */
+    long getOccupancyMax();
+}
@@ -0,0 +1,260 @@
+package net.gudenau.usbcap.metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The metrics of a capture device and the filters in its chain, enabled with
+ * {@link net.gudenau.usbcap.capture.CaptureDevice#enableMetrics(String)}.
+ *
+ * Everything is recorded by the thread that captures events, snapshots and the JMX beans can be read from any thread
+ * but may be slightly behind.
+ */
+public final class CaptureMetrics implements CaptureDeviceMXBean{
+    private static final String DOMAIN = "net.gudenau.usbcap";
+    private static final long RATE_WINDOW = 1_000_000_000L;
+    
+    private final String name;
+    private final Histogram batchSize = new Histogram();
+    private final Histogram readTime = new Histogram();
+    private final Histogram occupancy = new Histogram();
+    private final Map<FilterMetrics, ObjectName> filters = new LinkedHashMap<>();
+    private long eventsCaptured = 0;
+    private long eventsDelivered = 0;
+    private int nextFilter = 0;
+    private boolean registered = false;
+    
+    private long windowStart = System.nanoTime();
+    private long windowEvents = 0;
+    private volatile double captureRate = 0;
+    
+    /**
+     * Creates the metrics for a capture device.
+     *
+     * @param name The name used for the JMX beans
+     */
+    public CaptureMetrics(@NotNull String name){
+        this.name = Objects.requireNonNull(name, "name was null");
+    }
+    
+    /**
+     * Gets the name used for the JMX beans.
+     *
+     * @return The name
+     */
+    public @NotNull String name(){
+        return name;
+    }
+    
+    /**
+     * Records a batch of events read from the device.
+     *
+     * @param events The amount of events that were read
+     * @param nanos How long the read took
+     */
+    public void recordBatch(int events, long nanos){
+        batchSize.record(events);
+        readTime.record(nanos);
+        eventsCaptured += events;
+        
+        long now = System.nanoTime();
+        if(now - windowStart >= RATE_WINDOW){
+            captureRate = (eventsCaptured - windowEvents) * 1e9 / (now - windowStart);
+            windowStart = now;
+            windowEvents = eventsCaptured;
+        }
+    }
+    
+    /**
+     * Records the events that are waiting to be consumed after a batch went through the filters.
+     *
+     * @param events The amount of events waiting
+     */
+    public void recordOccupancy(int events){
+        occupancy.record(events);
+        eventsDelivered += events;
+    }
+    
+    /**
+     * Creates the metrics for a filter that was added to the chain.
+     *
+     * @param filter The class name of the filter
+     *
+     * @return The metrics of the filter
+     */
+    public synchronized @NotNull FilterMetrics addFilter(@NotNull String filter){
+        var metrics = new FilterMetrics(filter);
+        var objectName = objectName("type=Filter,device=" + ObjectName.quote(name) + ",name=" + ObjectName.quote(nextFilter++ + "-" + filter));
+        if(registered){
+            register(metrics, objectName);
+        }
+        filters.put(metrics, objectName);
+        return metrics;
+    }
+    
+    /**
+     * Drops the metrics of a filter that was removed from the chain.
+     *
+     * @param metrics The metrics of the filter
+     */
+    public synchronized void removeFilter(@NotNull FilterMetrics metrics){
+        var objectName = filters.remove(metrics);
+        if(objectName != null && registered){
+            unregister(objectName);
+        }
+    }
+    
+    /**
+     * Registers the JMX beans of the device and its filters with the platform MBean server.
+     *
+     * If one of the beans could not be registered the ones that were are unregistered again.
+     *
+     * @throws IllegalStateException If the beans could not be registered, for example because the name is in use
+     */
+    public synchronized void register(){
+        if(registered){
+            return;
+        }
+        var deviceName = objectName("type=CaptureDevice,name=" + ObjectName.quote(name));
+        register(this, deviceName);
+        List<ObjectName> registeredFilters = new ArrayList<>(filters.size());
+        try{
+            for(var filter : filters.entrySet()){
+                register(filter.getKey(), filter.getValue());
+                registeredFilters.add(filter.getValue());
+            }
+        }catch(IllegalStateException e){
+            registeredFilters.forEach(this::unregister);
+            unregister(deviceName);
+            throw e;
+        }
+        registered = true;
+    }
+    
+    /**
+     * Unregisters the JMX beans of the device and its filters.
+     */
+    public synchronized void unregister(){
+        if(!registered){
+            return;
+        }
+        registered = false;
+        unregister(objectName("type=CaptureDevice,name=" + ObjectName.quote(name)));
+        filters.values().forEach(this::unregister);
+    }
+    
+    private static ObjectName objectName(String properties){
+        try{
+            return new ObjectName(DOMAIN + ':' + properties);
+        }catch(JMException e){
+            throw new IllegalArgumentException("Invalid bean name: " + properties, e);
+        }
+    }
+    
+    private void register(Object bean, ObjectName objectName){
+        try{
+            ManagementFactory.getPlatformMBeanServer().registerMBean(bean, objectName);
+        }catch(JMException e){
+            throw new IllegalStateException("Failed to register " + objectName, e);
+        }
+    }
+    
+    private void unregister(ObjectName objectName){
+        try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        }catch(JMException ignored){}
+    }
+    
+    /**
+     * Copies the current state of these metrics.
+     *
+     * @return The snapshot
+     */
+    public synchronized @NotNull Snapshot snapshot(){
+        List<FilterMetrics.Snapshot> filters = new ArrayList<>(this.filters.size());
+        for(var filter : this.filters.keySet()){
+            filters.add(filter.snapshot());
+        }
+        return new Snapshot(
+            name,
+            eventsCaptured, eventsDelivered, captureRate,
+            batchSize.snapshot(), readTime.snapshot(), occupancy.snapshot(),
+            List.copyOf(filters)
+        );
+    }
+    
+    @Override
+    public long getBatches(){
+        return batchSize.count();
+    }
+    
+    @Override
+    public long getEventsCaptured(){
+        return eventsCaptured;
+    }
+    
+    @Override
+    public long getEventsDelivered(){
+        return eventsDelivered;
+    }
+    
+    @Override
+    public double getCaptureRate(){
+        return captureRate;
+    }
+    
+    @Override
+    public double getBatchSizeMean(){
+        return batchSize.snapshot().mean();
+    }
+    
+    @Override
+    public double getReadTimeMean(){
+        return readTime.snapshot().mean();
+    }
+    
+    @Override
+    public long getReadTimeP99(){
+        return readTime.snapshot().percentile(99);
+    }
+    
+    @Override
+    public double getOccupancyMean(){
+        return occupancy.snapshot().mean();
+    }
+    
+    @Override
+    public long getOccupancyMax(){
+        return occupancy.snapshot().max();
+    }
+    
+    /**
+     * A copy of the metrics of a capture device.
+     *
+     * @param name The name of the device
+     * @param eventsCaptured The amount of events read from the device
+     * @param eventsDelivered The amount of events that made it through the filters
+     * @param captureRate The amount of events read per second over the last second
+     * @param batchSize The amount of events per read
+     * @param readTime How long reads took in nanoseconds
+     * @param occupancy The amount of events waiting to be consumed after each batch
+     * @param filters The metrics of the filters
+     */
+    public record Snapshot(
+        @NotNull String name,
+        long eventsCaptured,
+        long eventsDelivered,
+        double captureRate,
+        @NotNull Histogram.Snapshot batchSize,
+        @NotNull Histogram.Snapshot readTime,
+        @NotNull Histogram.Snapshot occupancy,
+        @NotNull List<FilterMetrics.@NotNull Snapshot> filters
+    ){}
+}
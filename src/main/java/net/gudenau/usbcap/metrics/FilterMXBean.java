@@ -0,0 +1,54 @@
+package net.gudenau.usbcap.metrics;
+
+/**
+ * The JMX view of the metrics of a single filter, registered as
+ * {@code net.gudenau.usbcap:type=Filter,device=<device>,name=<index>-<class>}.
+ *
+ * Durations are in nanoseconds.
+ */
+public interface FilterMXBean{
+    /**
+     * @return The class name of the filter
+     */
+    String getFilter();
+    
+    /**
+     * @return The amount of events passed to the filter
+     */
+    long getEventsIn();
+    
+    /**
+     * @return The amount of events the filter removed
+     */
+    long getEventsRemoved();
+    
+    /**
+     * @return The amount of events the filter generated
+     */
+    long getEventsGenerated();
+    
+    /**
+     * @return The mean time the filter took to handle an event
+     */
+    double getHandlingTimeMean();
+    
+    /**
+     * @return The median time the filter took to handle an event
+     */
+    long getHandlingTimeP50();
+    
+    /**
+     * @return The 99th percentile of the time the filter took to handle an event
+     */
+    long getHandlingTimeP99();
+    
+    /**
+     * @return The 99.9th percentile of the time the filter took to handle an event
+     */
+    long getHandlingTimeP999();
+    
+    /**
+     * @return The longest time the filter took to handle an event
+     */
+    long getHandlingTimeMax();
+}
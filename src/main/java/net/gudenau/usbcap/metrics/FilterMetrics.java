@@ -0,0 +1,110 @@
+package net.gudenau.usbcap.metrics;
+
+import java.util.Objects;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * The metrics of a single filter in the chain of a capture device.
+ */
+public final class FilterMetrics implements FilterMXBean{
+    private final String filter;
+    private final Histogram handlingTime = new Histogram();
+    private long eventsRemoved = 0;
+    private long eventsGenerated = 0;
+    
+    /**
+     * Creates the metrics for a filter.
+     *
+     * @param filter The class name of the filter
+     */
+    public FilterMetrics(@NotNull String filter){
+        this.filter = Objects.requireNonNull(filter, "filter was null");
+    }
+    
+    /**
+     * Records the handling of a single event.
+     *
+     * @param removed True if the filter removed the event
+     * @param generated The amount of events the filter generated
+     * @param nanos How long the filter took
+     */
+    public void record(boolean removed, int generated, long nanos){
+        handlingTime.record(nanos);
+        if(removed){
+            eventsRemoved++;
+        }
+        eventsGenerated += generated;
+    }
+    
+    /**
+     * Copies the current state of these metrics.
+     *
+     * @return The snapshot
+     */
+    public @NotNull Snapshot snapshot(){
+        var handlingTime = this.handlingTime.snapshot();
+        return new Snapshot(filter, handlingTime.count(), eventsRemoved, eventsGenerated, handlingTime);
+    }
+    
+    @Override
+    public String getFilter(){
+        return filter;
+    }
+    
+    @Override
+    public long getEventsIn(){
+        return handlingTime.count();
+    }
+    
+    @Override
+    public long getEventsRemoved(){
+        return eventsRemoved;
+    }
+    
+    @Override
+    public long getEventsGenerated(){
+        return eventsGenerated;
+    }
+    
+    @Override
+    public double getHandlingTimeMean(){
+        return handlingTime.snapshot().mean();
+    }
+    
+    @Override
+    public long getHandlingTimeP50(){
+        return handlingTime.snapshot().percentile(50);
+    }
+    
+    @Override
+    public long getHandlingTimeP99(){
+        return handlingTime.snapshot().percentile(99);
+    }
+    
+    @Override
+    public long getHandlingTimeP999(){
+        return handlingTime.snapshot().percentile(99.9);
+    }
+    
+    @Override
+    public long getHandlingTimeMax(){
+        return handlingTime.snapshot().max();
+    }
+    
+    /**
+     * A copy of the metrics of a filter.
+     *
+     * @param filter The class name of the filter
+     * @param eventsIn The amount of events passed to the filter
+     * @param eventsRemoved The amount of events the filter removed
+     * @param eventsGenerated The amount of events the filter generated
+     * @param handlingTime How long the filter took to handle events in nanoseconds
+     */
+    public record Snapshot(
+        @NotNull String filter,
+        long eventsIn,
+        long eventsRemoved,
+        long eventsGenerated,
+        @NotNull Histogram.Snapshot handlingTime
+    ){}
+}
@@ -0,0 +1,168 @@
+package net.gudenau.usbcap.metrics;
+
+import java.util.Arrays;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A log-linear histogram of non-negative long values, like nanosecond durations or event counts.
+ *
+ * Values below 16 get their own bucket, above that every power of two is split into 16 buckets so a recorded value is
+ * off by at most 6.25%. Recording only increments a few primitive fields, nothing is allocated. Values are recorded by
+ * a single thread, snapshots can be taken from any thread but may be slightly behind the recording thread.
+ */
+public final class Histogram{
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (Long.SIZE - 1 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+    
+    private final long[] counts = new long[BUCKETS];
+    private long count = 0;
+    private long sum = 0;
+    private long min = Long.MAX_VALUE;
+    private long max = 0;
+    
+    /**
+     * Records a value, negative values are recorded as 0.
+     *
+     * @param value The value to record
+     */
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        }
+        counts[bucket(value)]++;
+        count++;
+        sum += value;
+        if(value < min){
+            min = value;
+        }
+        if(value > max){
+            max = value;
+        }
+    }
+    
+    /**
+     * Gets the amount of recorded values.
+     *
+     * @return The amount of recorded values
+     */
+    public long count(){
+        return count;
+    }
+    
+    /**
+     * Forgets every recorded value, only call this from the thread that records the values.
+     */
+    public void clear(){
+        Arrays.fill(counts, 0);
+        count = 0;
+        sum = 0;
+        min = Long.MAX_VALUE;
+        max = 0;
+    }
+    
+    /**
+     * Copies the current state of this histogram.
+     *
+     * @return The snapshot
+     */
+    public @NotNull Snapshot snapshot(){
+        long count = this.count;
+        return new Snapshot(count, sum, count == 0 ? 0 : min, max, counts.clone());
+    }
+    
+    /**
+     * Gets the bucket of a value.
+     *
+     * @param value The value, must not be negative
+     *
+     * @return The index of the bucket
+     */
+    static int bucket(long value){
+        if(value < SUB_BUCKETS){
+            return (int)value;
+        }
+        int exponent = Long.SIZE - 1 - Long.numberOfLeadingZeros(value);
+        int sub = (int)(value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + sub;
+    }
+    
+    /**
+     * Gets the largest value that is recorded into a bucket.
+     *
+     * @param bucket The index of the bucket
+     *
+     * @return The largest value of the bucket
+     */
+    static long highestValue(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long)(SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+    
+    /**
+     * A copy of the state of a histogram.
+     *
+     * @param count The amount of recorded values
+     * @param sum The sum of the recorded values
+     * @param min The smallest recorded value or 0 if there are none
+     * @param max The largest recorded value or 0 if there are none
+     * @param counts The amount of values in each bucket
+     */
+    public record Snapshot(long count, long sum, long min, long max, long @NotNull [] counts){
+        /**
+         * Gets the mean of the recorded values.
+         *
+         * @return The mean or 0 if there are no values
+         */
+        public double mean(){
+            return count == 0 ? 0 : (double)sum / count;
+        }
+        
+        /**
+         * Gets an upper bound of a percentile of the recorded values.
+         *
+         * @param percentile The percentile, between 0 and 100
+         *
+         * @return The largest value of the bucket that contains the percentile, limited to the largest value
+         */
+        public long percentile(double percentile){
+            if(percentile < 0 || percentile > 100){
+                throw new IllegalArgumentException("Percentile out of range: " + percentile);
+            }
+            if(count == 0){
+                return 0;
+            }
+            long rank = Math.max(1, (long)Math.ceil(percentile / 100 * count));
+            long seen = 0;
+            for(int i = 0; i < counts.length; i++){
+                seen += counts[i];
+                if(seen >= rank){
+                    return Math.max(min, Math.min(max, highestValue(i)));
+                }
+            }
+            return max;
+        }
+        
+        @Override
+        public boolean equals(Object o){
+            return this == o || o instanceof Snapshot other &&
+                count == other.count && sum == other.sum && min == other.min && max == other.max &&
+                Arrays.equals(counts, other.counts);
+        }
+        
+        @Override
+        public int hashCode(){
+            return 31 * Long.hashCode(count) + Arrays.hashCode(counts);
+        }
+        
+        @Override
+        public String toString(){
+            return "Snapshot[count=" + count + ",mean=" + mean() + ",min=" + min + ",p50=" + percentile(50) +
+                   ",p99=" + percentile(99) + ",max=" + max + ']';
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package net.gudenau.usbcap;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.function.Supplier;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.filter.ControlTransferFilter;
+import net.gudenau.usbcap.filter.DeviceFilter;
+import net.gudenau.usbcap.filter.Filter;
+import net.gudenau.usbcap.filter.PacketFilter;
+import org.jetbrains.annotations.Nullable;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * Makes sure steady state decoding stays under a fixed amount of allocated bytes per captured packet.
+ *
+ * A deterministic packet stream is replayed through a capture device, every stage adds one more decoding filter to the
+ * chain. The packets are generated up front and the JIT gets to warm up before the allocations of the capturing thread
+ * are measured, so only the dispatch loop and the filters are counted.
+ */
+class AllocationBudgetTest{
+    private static final long SEED = 0x55534243L;
+    private static final int PACKETS = 200_000;
+    private static final int BATCH_SIZE = 64;
+    private static final long WARMUP_EVENTS = 2_000_000;
+    private static final long MEASURED_EVENTS = 2_000_000;
+    
+    private static List<Event> packets;
+    
+    @BeforeAll
+    static void generatePackets() throws IOException{
+        packets = ReplayDevice.generatePackets(SEED, PACKETS);
+    }
+    
+    @ParameterizedTest
+    @EnumSource(Stage.class)
+    void staysWithinBudget(Stage stage) throws IOException{
+        var bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(
+            bean instanceof com.sun.management.ThreadMXBean supported && supported.isThreadAllocatedMemorySupported(),
+            "Allocated bytes per thread are not supported by this JVM"
+        );
+        var threads = (com.sun.management.ThreadMXBean)bean;
+        threads.setThreadAllocatedMemoryEnabled(true);
+        
+        try(var device = new ReplayDevice(packets, BATCH_SIZE, true)){
+            device.open();
+            for(var filter : Stage.values()){
+                if(filter.ordinal() > stage.ordinal()){
+                    break;
+                }
+                if(filter.filter != null){
+                    device.addFilter(filter.filter.get());
+                }
+            }
+            device.beginCapture(UsbSpeed.HIGH_SPEED);
+            
+            while(device.replayed() < WARMUP_EVENTS){
+                device.captureEvent();
+            }
+            
+            long replayed = device.replayed();
+            long allocated = threads.getCurrentThreadAllocatedBytes();
+            while(device.replayed() - replayed < MEASURED_EVENTS){
+                device.captureEvent();
+            }
+            allocated = threads.getCurrentThreadAllocatedBytes() - allocated;
+            replayed = device.replayed() - replayed;
+            
+            double perEvent = (double)allocated / replayed;
+            assertTrue(
+                perEvent <= stage.budget,
+                () -> String.format("%s allocated %.2f bytes per packet, the budget is %.2f", stage, perEvent, stage.budget)
+            );
+        }
+    }
+    
+    /**
+     * The stages of the decoding chain, every stage runs the filters of the stages before it as well.
+     */
+    enum Stage{
+        /**
+         * The dispatch loop of the capture device without any filters.
+         */
+        DISPATCH(1, null),
+        /**
+         * Creates a {@link net.gudenau.usbcap.event.DataEvent} and a slice of the packet for every transfer.
+         */
+        PACKET(24, PacketFilter::new),
+        /**
+         * Only allocates for control transfers, which are rare after the enumeration.
+         */
+        CONTROL_TRANSFER(24, ControlTransferFilter::new),
+        /**
+         * Wraps every transfer in a {@link net.gudenau.usbcap.event.DeviceDataEvent} and a duplicate of its payload.
+         */
+        DEVICE(40, DeviceFilter::new),
+        ;
+        
+        private final double budget;
+        private final Supplier<Filter> filter;
+        
+        /**
+         * @param budget The allocated bytes per replayed packet that the chain up to this stage may not exceed
+         * @param filter The filter this stage adds to the chain
+         */
+        Stage(double budget, @Nullable Supplier<Filter> filter){
+            this.budget = budget;
+            this.filter = filter;
+        }
+    }
+}
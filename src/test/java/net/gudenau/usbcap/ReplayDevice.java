@@ -0,0 +1,101 @@
+package net.gudenau.usbcap;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import net.gudenau.usbcap.capture.AbstractCaptureDevice;
+import net.gudenau.usbcap.capture.SyntheticCaptureDevice;
+import net.gudenau.usbcap.event.Event;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * A capture device for tests that hands out batches of events from memory, either once or starting over at the first
+ * event when it runs out. Synthetic traffic starts with a reset, so the filters start over with it.
+ */
+public final class ReplayDevice extends AbstractCaptureDevice{
+    private final List<Event> events;
+    private final int batchSize;
+    private final boolean repeat;
+    private int position = 0;
+    private long replayed = 0;
+    
+    /**
+     * Creates a new replay device.
+     *
+     * @param events The events to hand out, they are not copied
+     * @param batchSize How many events are handed out at once
+     * @param repeat True to start over when the events run out, false to end the capture with an {@link EOFException}
+     */
+    public ReplayDevice(@NotNull List<@NotNull Event> events, int batchSize, boolean repeat){
+        this.events = Objects.requireNonNull(events, "events was null");
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize was not positive: " + batchSize);
+        }
+        if(repeat && events.isEmpty()){
+            throw new IllegalArgumentException("Can not repeat without events");
+        }
+        this.batchSize = batchSize;
+        this.repeat = repeat;
+    }
+    
+    /**
+     * Captures the packets of a {@link SyntheticCaptureDevice}.
+     *
+     * @param seed The seed of the synthetic traffic
+     * @param packets How many packets to capture
+     *
+     * @return The packets, in a list that can be changed
+     *
+     * @throws IOException If the synthetic device failed
+     */
+    public static @NotNull List<@NotNull Event> generatePackets(long seed, int packets) throws IOException{
+        try(var device = new SyntheticCaptureDevice(seed)){
+            device.open();
+            device.beginCapture(UsbSpeed.HIGH_SPEED);
+            List<Event> events = new ArrayList<>(packets);
+            for(int i = 0; i < packets; i++){
+                events.add(device.captureEvent());
+            }
+            return events;
+        }
+    }
+    
+    /**
+     * Gets the number of events that were handed out so far.
+     *
+     * @return The number of replayed events
+     */
+    public long replayed(){
+        return replayed;
+    }
+    
+    @Override
+    protected void doOpen(){}
+    
+    @Override
+    protected void doBeginCapture(UsbSpeed speed){}
+    
+    @Override
+    protected void doCaptureEvent(List<Event> eventBuffer) throws IOException{
+        int count = 0;
+        while(count < batchSize){
+            if(position == events.size()){
+                if(!repeat){
+                    break;
+                }
+                position = 0;
+            }
+            eventBuffer.add(events.get(position++));
+            count++;
+        }
+        if(count == 0){
+            throw new EOFException("Replayed every event");
+        }
+        replayed += count;
+    }
+    
+    @Override
+    protected void doClose(){}
+}
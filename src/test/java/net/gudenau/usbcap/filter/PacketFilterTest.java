@@ -0,0 +1,123 @@
+package net.gudenau.usbcap.filter;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import net.gudenau.usbcap.ReplayDevice;
+import net.gudenau.usbcap.UsbSpeed;
+import net.gudenau.usbcap.event.DeviceDataEvent;
+import net.gudenau.usbcap.event.Event;
+import net.gudenau.usbcap.event.PacketEvent;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks that data without a handshake is only passed on for isochronous endpoints.
+ *
+ * The synthetic traffic has a camera that streams over an isochronous endpoint with 800 to 1024 bytes per packet and
+ * a storage device that moves 512 byte blocks over bulk endpoints, so the length of a payload tells the two apart.
+ */
+class PacketFilterTest{
+    private static final long SEED = 0x49534F43L;
+    private static final int PACKETS = 100_000;
+    private static final byte PID_DATA0 = (byte)0xC3;
+    private static final byte PID_DATA1 = (byte)0x4B;
+    private static final byte PID_ACK = (byte)0xD2;
+    private static final int BLOCK_SIZE = 512;
+    private static final int MIN_FRAME_SIZE = 800;
+    
+    @Test
+    void isochronousDataIsPassedOn() throws IOException{
+        var packets = ReplayDevice.generatePackets(SEED, PACKETS);
+        
+        int frames = 0;
+        // The last packet has nothing after it to end its transaction
+        for(int i = 0; i < packets.size() - 1; i++){
+            if(payloadLength(packets.get(i)) >= MIN_FRAME_SIZE){
+                frames++;
+            }
+        }
+        assertTrue(frames > 0, "The synthetic traffic had no isochronous data");
+        
+        var events = decode(packets);
+        assertEquals(frames, countPayloads(events, MIN_FRAME_SIZE, Integer.MAX_VALUE));
+        assertEquals(countAcknowledgedBlocks(packets), countPayloads(events, BLOCK_SIZE, BLOCK_SIZE));
+    }
+    
+    @Test
+    void lostBulkDataIsDropped() throws IOException{
+        var packets = ReplayDevice.generatePackets(SEED, PACKETS);
+        
+        // Every third block loses its handshake, the data never made it to the other side
+        int lost = 0;
+        int blocks = 0;
+        for(int i = 0; i < packets.size() - 1; i++){
+            if(payloadLength(packets.get(i)) == BLOCK_SIZE && pid(packets.get(i + 1)) == PID_ACK && blocks++ % 3 == 0){
+                packets.remove(i + 1);
+                lost++;
+            }
+        }
+        assertTrue(lost > 0, "The synthetic traffic had no bulk data");
+        
+        var events = decode(packets);
+        assertEquals(countAcknowledgedBlocks(packets), countPayloads(events, BLOCK_SIZE, BLOCK_SIZE));
+        assertEquals(blocks - lost, countPayloads(events, BLOCK_SIZE, BLOCK_SIZE));
+    }
+    
+    private static List<Event> decode(List<Event> packets) throws IOException{
+        List<Event> events = new ArrayList<>();
+        try(var device = new ReplayDevice(packets, 1, false)){
+            device.open();
+            var devices = new DeviceFilter();
+            device.addFilter(new PacketFilter(devices));
+            device.addFilter(new ControlTransferFilter());
+            device.addFilter(devices);
+            device.beginCapture(UsbSpeed.HIGH_SPEED);
+            while(true){
+                try{
+                    events.add(device.captureEvent());
+                }catch(EOFException e){
+                    return events;
+                }
+            }
+        }
+    }
+    
+    private static int countAcknowledgedBlocks(List<Event> packets){
+        int blocks = 0;
+        for(int i = 0; i < packets.size() - 1; i++){
+            if(payloadLength(packets.get(i)) == BLOCK_SIZE && pid(packets.get(i + 1)) == PID_ACK){
+                blocks++;
+            }
+        }
+        return blocks;
+    }
+    
+    private static int countPayloads(List<Event> events, int min, int max){
+        int count = 0;
+        for(var event : events){
+            if(event instanceof DeviceDataEvent data){
+                int length = data.data().remaining();
+                if(length >= min && length <= max){
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+    
+    private static byte pid(Event event){
+        return event instanceof PacketEvent packet ? packet.buffer().get(0) : 0;
+    }
+    
+    /**
+     * Gets the length of the payload of a DATA0 or DATA1 packet, without the PID and CRC.
+     */
+    private static int payloadLength(Event event){
+        byte pid = pid(event);
+        return pid == PID_DATA0 || pid == PID_DATA1 ? ((PacketEvent)event).buffer().capacity() - 3 : -1;
+    }
+}